@@ -0,0 +1,134 @@
+package com.tomwen.tools.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 比较两次 JMH 的 CSV 结果 (-rf csv).
+ * 单位以 ops/ 开头时越大越好, 其它 (ns/op, B/op, MB/sec) 越小越好.
+ */
+public class BaselineComparison {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: BaselineComparison <baseline.csv> <result.csv> [threshold%]");
+      System.exit(2);
+    }
+    double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+    int regressions = compare(new File(args[0]), new File(args[1]), threshold, System.out);
+    System.exit(regressions > 0 ? 1 : 0);
+  }
+
+  /**
+   * @param threshold 变差超过这个百分比并且超出两次结果的误差范围时算作回退
+   * @return 回退的个数
+   */
+  public static int compare(File baselineFile, File resultFile, double threshold, PrintStream out) throws IOException {
+    Map<String, Row> baseline = read(baselineFile);
+    Map<String, Row> result = read(resultFile);
+    int regressions = 0;
+    out.printf("%n%-90s %14s %14s %9s%n", "Benchmark (mode, threads, params)", "Baseline", "Current", "Change");
+    for (Map.Entry<String, Row> entry : result.entrySet()) {
+      Row current = entry.getValue();
+      Row base = baseline.get(entry.getKey());
+      if (base == null) {
+        out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", current.score, "", current.unit);
+        continue;
+      }
+      boolean higherIsBetter = current.unit.startsWith("ops/");
+      double change = base.score == 0 ? (current.score == 0 ? 0 : Double.POSITIVE_INFINITY)
+        : (current.score - base.score) / base.score * 100;
+      double worse = higherIsBetter ? -change : change;
+      double noise = err(base) + err(current);
+      boolean regression = worse > threshold && Math.abs(current.score - base.score) > noise
+        && !(base.score == 0 && current.score < 0.5);
+      if (regression)
+        regressions++;
+      out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), base.score, current.score,
+        change, current.unit, regression ? "  REGRESSION" : "");
+    }
+    out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+    return regressions;
+  }
+
+  private static double err(Row row) {
+    return Double.isNaN(row.error) ? 0 : row.error;
+  }
+
+  static Map<String, Row> read(File file) throws IOException {
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    Map<String, Row> rows = new LinkedHashMap<>();
+    if (lines.isEmpty())
+      return rows;
+    List<String> header = split(lines.get(0));
+    int benchmark = header.indexOf("Benchmark");
+    int mode = header.indexOf("Mode");
+    int threads = header.indexOf("Threads");
+    int score = header.indexOf("Score");
+    int error = header.indexOf("Score Error (99.9%)");
+    int unit = header.indexOf("Unit");
+    for (int i = 1; i < lines.size(); i++) {
+      if (lines.get(i).trim().isEmpty())
+        continue;
+      List<String> fields = split(lines.get(i));
+      StringBuilder key = new StringBuilder(fields.get(benchmark))
+        .append(" (").append(fields.get(mode)).append(", ").append(fields.get(threads));
+      for (int j = 0; j < header.size(); j++) {
+        if (header.get(j).startsWith("Param: ") && !fields.get(j).isEmpty())
+          key.append(", ").append(header.get(j).substring(7)).append('=').append(fields.get(j));
+      }
+      key.append(')');
+      rows.put(key.toString(), new Row(number(fields.get(score)), number(fields.get(error)), fields.get(unit)));
+    }
+    return rows;
+  }
+
+  private static double number(String s) {
+    if (s.isEmpty() || s.equalsIgnoreCase("NaN"))
+      return Double.NaN;
+    return Double.parseDouble(s.replace(',', '.'));
+  }
+
+  private static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          sb.append('"');
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        fields.add(sb.toString());
+        sb.setLength(0);
+      } else {
+        sb.append(c);
+      }
+    }
+    fields.add(sb.toString());
+    return fields;
+  }
+
+  static final class Row {
+    final double score;
+    final double error;
+    final String unit;
+
+    Row(double score, double error, String unit) {
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+  }
+}
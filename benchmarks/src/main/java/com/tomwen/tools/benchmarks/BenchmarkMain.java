@@ -0,0 +1,74 @@
+package com.tomwen.tools.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * benchmarks.jar 的入口. 接受 JMH 的所有命令行参数, 另外:
+ * <ul>
+ * <li>总是加上 GC profiler, 报告分配速率 (gc.alloc.rate.norm 即每次操作分配的字节数)</li>
+ * <li>结果写到 CSV (-Dresult, 默认 target/jmh-result.csv)</li>
+ * <li>与保存的基线 (-Dbaseline, 默认 baseline/baseline.csv) 比较, 慢于基线超过 -Dbaseline.threshold 百分比
+ * (默认 10) 的结果标记为 REGRESSION, -Dbaseline.fail=true 时有回退则以状态码 1 退出</li>
+ * <li>-Dbaseline.update=true 时用这次的结果覆盖基线</li>
+ * </ul>
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+      || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(cmd);
+    if (!hasGcProfiler(cmd))
+      builder.addProfiler(GCProfiler.class);
+    File result = new File(cmd.getResult().orElse(System.getProperty("result", "target/jmh-result.csv")));
+    if (!cmd.getResultFormat().hasValue())
+      builder.resultFormat(ResultFormatType.CSV);
+    builder.result(result.getPath());
+    Options options = builder.build();
+    if (result.getParentFile() != null)
+      result.getParentFile().mkdirs();
+
+    new Runner(options).run();
+
+    if (options.getResultFormat().orElse(ResultFormatType.CSV) != ResultFormatType.CSV)
+      return;
+    File baseline = new File(System.getProperty("baseline", "baseline/baseline.csv"));
+    if (Boolean.getBoolean("baseline.update")) {
+      if (baseline.getParentFile() != null)
+        baseline.getParentFile().mkdirs();
+      Files.copy(result.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      System.out.println("Baseline updated: " + baseline);
+    } else if (baseline.exists()) {
+      double threshold = Double.parseDouble(System.getProperty("baseline.threshold", "10"));
+      int regressions = BaselineComparison.compare(baseline, result, threshold, System.out);
+      if (regressions > 0 && Boolean.getBoolean("baseline.fail"))
+        System.exit(1);
+    } else {
+      System.out.println("No baseline at " + baseline + ", run with -Dbaseline.update=true to record one.");
+    }
+  }
+
+  private static boolean hasGcProfiler(CommandLineOptions cmd) {
+    for (ProfilerConfig profiler : cmd.getProfilers()) {
+      if (profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc"))
+        return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,59 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Compare;
+import com.tomwen.tools.Hasher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Compare} 的哈希和比较
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareBenchmark {
+  @Param({"8", "64", "1024"})
+  private int length;
+
+  private String text;
+  private Long boxedLong = 1234567890123L;
+  private Double boxedDouble = 1234.5678;
+  private Double otherDouble = 1234.5678;
+
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++)
+      sb.append((char) ('a' + i % 26));
+    text = sb.toString();
+  }
+
+  @Benchmark
+  public long calcLongHashCodeCharSequence() {
+    return Compare.calcLongHashCode(text);
+  }
+
+  @Benchmark
+  public long hasherCharSequence() {
+    return Hasher.hash(text);
+  }
+
+  @Benchmark
+  public long calcLongHashCodeLong() {
+    return Compare.calcLongHashCode(boxedLong);
+  }
+
+  @Benchmark
+  public long calcLongHashCodeDouble() {
+    return Compare.calcLongHashCode(boxedDouble);
+  }
+
+  @Benchmark
+  public boolean isEqualDouble() {
+    return Compare.isEqual(boxedDouble, otherDouble);
+  }
+}
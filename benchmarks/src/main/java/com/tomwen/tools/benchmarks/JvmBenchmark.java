@@ -0,0 +1,28 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Jvm;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Jvm} 的热点方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JvmBenchmark {
+
+  @Benchmark
+  public long getUniqueTid() {
+    return Jvm.getUniqueTid();
+  }
+
+  @Benchmark
+  public void checkInterrupted() {
+    Jvm.checkInterrupted();
+  }
+}
@@ -0,0 +1,44 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Locker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Locker#lock()} 在 1/4/16 个线程竞争下的开销, 临界区只做一次自增
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockerBenchmark {
+  private final Locker locker = new Locker();
+  private long counter;
+
+  @Benchmark
+  @Threads(1)
+  public long uncontended() {
+    return increment();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long contended4() {
+    return increment();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public long contended16() {
+    return increment();
+  }
+
+  private long increment() {
+    try (Locker.Lock lock = locker.lock()) {
+      return ++counter;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Maths;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Maths} 的热点方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathsBenchmark {
+  private double value = 12345.678901234;
+  private long longValue = 0x123456789ABCL;
+  private int intValue = 0x12345678;
+  private int smallPower = 1000;
+  private long largePower = (1L << 40) + 1;
+  private String shortText = "IBM.N";
+  private String longText = "com.tomwen.tools.benchmarks.MathsBenchmark#longText-0123456789";
+  private double[] src;
+  private double[] dst;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    src = new double[4096];
+    dst = new double[src.length];
+    for (int i = 0; i < src.length; i++)
+      src[i] = random.nextDouble() * 1e6;
+  }
+
+  @Benchmark
+  public double round2() {
+    return Maths.round2(value);
+  }
+
+  @Benchmark
+  public double round4() {
+    return Maths.round4(value);
+  }
+
+  @Benchmark
+  public double round6() {
+    return Maths.round6(value);
+  }
+
+  @Benchmark
+  public double round8() {
+    return Maths.round8(value);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(4096)
+  public double[] round4Bulk() {
+    Maths.round4(src, dst, 0, src.length);
+    return dst;
+  }
+
+  @Benchmark
+  public int hashInt() {
+    return Maths.hash(intValue);
+  }
+
+  @Benchmark
+  public long hashLong() {
+    return Maths.hash(longValue);
+  }
+
+  @Benchmark
+  public long hashShortCharSequence() {
+    return Maths.hash(shortText);
+  }
+
+  @Benchmark
+  public long hashLongCharSequence() {
+    return Maths.hash(longText);
+  }
+
+  @Benchmark
+  public long agitate() {
+    return Maths.agitate(longValue);
+  }
+
+  @Benchmark
+  public int nextPower2Int() {
+    return Maths.nextPower2(smallPower, 16);
+  }
+
+  @Benchmark
+  public long nextPower2Long() {
+    return Maths.nextPower2(largePower, 16L);
+  }
+
+  @Benchmark
+  public int intLog2() {
+    return Maths.intLog2(longValue);
+  }
+}
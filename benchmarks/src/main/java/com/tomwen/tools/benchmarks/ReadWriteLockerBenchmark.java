@@ -0,0 +1,78 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Locker;
+import com.tomwen.tools.ReadWriteLocker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写比为 95/5 和 99/1 时 {@link Locker}, {@link ReadWriteLocker} 的读写锁和乐观读的比较.
+ * 默认 4 个线程, 可以用 -t 修改.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ReadWriteLockerBenchmark {
+  @Param({"95", "99"})
+  private int readPercent;
+
+  private final Locker locker = new Locker();
+  private final ReadWriteLocker readWriteLocker = new ReadWriteLocker();
+  private long x;
+  private long y;
+
+  @Benchmark
+  public long locker() {
+    if (isRead()) {
+      try (Locker.Lock lock = locker.lock()) {
+        return x + y;
+      }
+    }
+    try (Locker.Lock lock = locker.lock()) {
+      return write();
+    }
+  }
+
+  @Benchmark
+  public long readWriteLock() {
+    if (isRead()) {
+      try (Locker.Lock lock = readWriteLocker.readLock()) {
+        return x + y;
+      }
+    }
+    try (Locker.Lock lock = readWriteLocker.writeLock()) {
+      return write();
+    }
+  }
+
+  @Benchmark
+  public long optimisticRead() {
+    if (isRead()) {
+      long sum;
+      try (ReadWriteLocker.Optimistic read = readWriteLocker.optimisticRead()) {
+        do {
+          sum = x + y;
+        } while (read.retry());
+      }
+      return sum;
+    }
+    try (Locker.Lock lock = readWriteLocker.writeLock()) {
+      return write();
+    }
+  }
+
+  private boolean isRead() {
+    return ThreadLocalRandom.current().nextInt(100) < readPercent;
+  }
+
+  private long write() {
+    x++;
+    return --y;
+  }
+}
@@ -0,0 +1,77 @@
+package com.tomwen.tools.benchmarks;
+
+import com.tomwen.tools.Typ;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Typ} 的类型判断, 每次调用判断一组有代表性的类型
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypBenchmark {
+  private static final int TYPES = 8;
+
+  private Class<?>[] types = {int.class, Long.class, String.class, StringBuilder.class,
+    ArrayList.class, HashMap.class, Currency.class, TypBenchmark.class};
+  private Object[] values = {1, 2L, "text", new StringBuilder("sb"),
+    new ArrayList<>(), new HashMap<>(), Currency.getInstance("USD"), this};
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isBasicTypeClass(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isBasicType(type));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isBasicTypeObject(Blackhole bh) {
+    for (Object value : values)
+      bh.consume(Typ.isBasicType(value));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isPrimitiveOrWrapper(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isPrimitiveOrWrapper(type));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isBasicTypeOrCollection(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isBasicTypeOrCollection(type));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isCollection(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isCollection(type));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isMap(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isMap(type));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TYPES)
+  public void isPrimitiveNumber(Blackhole bh) {
+    for (Class<?> type : types)
+      bh.consume(Typ.isPrimitiveNumber(type));
+  }
+}
@@ -0,0 +1,1137 @@
+package com.tomwen.tools;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Typ#isBasicTypeOrCollection(Class)} 范围内的值的紧凑二进制格式, 直接读写堆内或者堆外的 {@link ByteBuffer}.
+ * <p>
+ * 每个值是一个字节的标签加上内容: 整数用 zigzag 的 varint, float 和 double 是小端的定长, 字符串是 UTF-8,
+ * 集合和数组先写元素个数. 格式与 buffer 的 order 无关.
+ * <pre>
+ * byte[] bytes = BinaryCodec.toBytes(map);                  // 每个线程重用同一个 Encoder
+ * Object copy = BinaryCodec.fromBytes(bytes);
+ *
+ * BinaryCodec.Encoder out = BinaryCodec.encoder();          // 流式写大集合, 不需要先组装 List
+ * out.beginList(n);
+ * for (long id : ids) out.writeLong(id);
+ * channel.write(out.buffer());
+ *
+ * BinaryCodec.Decoder in = new BinaryCodec.Decoder(buffer);
+ * for (int i = 0, n = in.readCollection(); i &lt; n; i++)
+ *   process(in.readLong());                                 // 不装箱
+ * </pre>
+ * 读出的类型: List 为 ArrayList, Set 为 LinkedHashSet, SortedSet 为 TreeSet, Map 为 LinkedHashMap,
+ * SortedMap 为 TreeMap (比较器不保存, 按自然顺序), 字符串数组为 String[], 其它对象数组为 Object[].
+ * AtomicInteger 读出为 Integer, AtomicLong 和 LongAdder 为 Long, 其它 Number 按 doubleValue 读出为 Double,
+ * 其它 CharSequence 为 String. Calendar 保存毫秒数和时区.
+ * <p>
+ * 不支持的类型抛出 {@link IllegalArgumentException}, 数据不完整或者格式不对时 Decoder 也抛出 IllegalArgumentException.
+ */
+public final class BinaryCodec {
+  public static final byte NULL = 0;
+  public static final byte FALSE = 1;
+  public static final byte TRUE = 2;
+  public static final byte BYTE = 3;
+  public static final byte SHORT = 4;
+  public static final byte CHAR = 5;
+  public static final byte INT = 6;
+  public static final byte LONG = 7;
+  public static final byte FLOAT = 8;
+  public static final byte DOUBLE = 9;
+  /** BigInteger 的 bitLength 小于 64 时为 zigzag 的 varint, 否则为补码的字节 */
+  public static final byte BIG_INTEGER = 10;
+  public static final byte BIG_INTEGER_BYTES = 11;
+  /** scale 和 unscaled value, unscaled value 的规则同 BigInteger */
+  public static final byte BIG_DECIMAL = 12;
+  public static final byte BIG_DECIMAL_BYTES = 13;
+  public static final byte STRING = 14;
+  public static final byte DATE = 15;
+  public static final byte CALENDAR = 16;
+  public static final byte BOOLEAN_ARRAY = 17;
+  public static final byte BYTE_ARRAY = 18;
+  public static final byte SHORT_ARRAY = 19;
+  public static final byte CHAR_ARRAY = 20;
+  public static final byte INT_ARRAY = 21;
+  public static final byte LONG_ARRAY = 22;
+  public static final byte FLOAT_ARRAY = 23;
+  public static final byte DOUBLE_ARRAY = 24;
+  public static final byte STRING_ARRAY = 25;
+  public static final byte OBJECT_ARRAY = 26;
+  public static final byte LIST = 27;
+  public static final byte SET = 28;
+  public static final byte SORTED_SET = 29;
+  public static final byte MAP = 30;
+  public static final byte SORTED_MAP = 31;
+
+  /**
+   * 线程的 Encoder 超过这个大小时 reset 会换回一个小的, 一次大的消息不会让每个线程一直占着大块内存
+   */
+  private static final int MAX_RETAINED = 1 << 20;
+  /**
+   * 集合, Map 和对象数组最多嵌套的层数, 超过时抛出 {@link IllegalArgumentException}, 损坏或者恶意的输入不会耗尽栈
+   */
+  public static final int MAX_DEPTH = 512;
+  private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(() -> new Encoder(256));
+
+  private BinaryCodec() {
+  }
+
+  /**
+   * 当前线程的 Encoder, 已经 reset. 在下一次调用 encoder 或者 {@link #toBytes(Object)} 之前有效
+   */
+  public static Encoder encoder() {
+    return ENCODERS.get().reset();
+  }
+
+  public static byte[] toBytes(Object value) {
+    return encoder().write(value).toBytes();
+  }
+
+  /**
+   * @throws IllegalArgumentException bytes 不是一个完整的值
+   */
+  public static Object fromBytes(byte[] bytes) {
+    Decoder in = new Decoder(ByteBuffer.wrap(bytes));
+    Object value = in.read();
+    if (in.buffer.hasRemaining())
+      throw new IllegalArgumentException(in.buffer.remaining() + " trailing bytes");
+    return value;
+  }
+
+  /**
+   * 从 buffer 的 position 开始写, position 移到值的后面. 抛出异常时 position 不变
+   *
+   * @throws BufferOverflowException  放不下
+   * @throws IllegalArgumentException 不支持的类型, 嵌套超过 {@link #MAX_DEPTH} 层
+   */
+  public static void write(ByteBuffer buffer, Object value) {
+    new Encoder(buffer).write(value);
+  }
+
+  /**
+   * 从 buffer 的 position 开始读一个值, position 移到值的后面
+   */
+  public static Object read(ByteBuffer buffer) {
+    return new Decoder(buffer).read();
+  }
+
+  static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /**
+   * 不成对的代理字符按 '?' 编码, 与 {@link String#getBytes(java.nio.charset.Charset)} 相同
+   */
+  static int utf8Length(CharSequence cs) {
+    int n = cs.length();
+    int length = n;
+    for (int i = 0; i < n; i++) {
+      char c = cs.charAt(i);
+      if (c < 0x80)
+        continue;
+      if (c < 0x800) {
+        length++;
+      } else if (!Character.isSurrogate(c)) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))) {
+        // 2 chars, 4 bytes
+        length += 2;
+        i++;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * 写值的 Encoder. 自己的 buffer 放不下时自动扩大; 包装调用者的 buffer 时不扩大, 放不下抛出 {@link BufferOverflowException}.
+   * 同一个 Encoder 不能被多个线程同时使用.
+   */
+  public static final class Encoder {
+    private final boolean growable;
+    private final int initialCapacity;
+    /* where a wrapped buffer's content starts */
+    private final int start;
+    private ByteBuffer buffer;
+    private int depth;
+
+    /**
+     * 自己的堆内 buffer, 按需扩大
+     */
+    public Encoder(int initialCapacity) {
+      if (initialCapacity < 16)
+        throw new IllegalArgumentException("initialCapacity must be >= 16, was " + initialCapacity);
+      this.growable = true;
+      this.initialCapacity = initialCapacity;
+      this.start = 0;
+      this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * 从 buffer 的 position 开始写, 可以是堆外的 buffer. 每个值只需要它实际编码的长度
+     */
+    public Encoder(ByteBuffer buffer) {
+      this.growable = false;
+      this.initialCapacity = buffer.capacity();
+      this.start = buffer.position();
+      this.buffer = buffer;
+    }
+
+    /**
+     * 丢弃已经写的内容. 自己的 buffer 超过 1M 时换回初始大小的; 包装的 buffer 回到创建 Encoder 时的 position
+     */
+    public Encoder reset() {
+      if (!growable) {
+        buffer.position(start);
+        return this;
+      }
+      if (buffer.capacity() > MAX_RETAINED)
+        buffer = ByteBuffer.allocate(initialCapacity);
+      buffer.clear();
+      return this;
+    }
+
+    /**
+     * 已经写的字节数
+     */
+    public int size() {
+      return buffer.position() - start;
+    }
+
+    /**
+     * 已经写的内容, 共享底层的数据, 不修改 Encoder 的 position
+     */
+    public ByteBuffer buffer() {
+      ByteBuffer view = buffer.duplicate();
+      view.limit(view.position()).position(start);
+      return view.slice();
+    }
+
+    public byte[] toBytes() {
+      byte[] bytes = new byte[size()];
+      buffer().get(bytes);
+      return bytes;
+    }
+
+    /**
+     * 抛出异常时 position 回到写这个值之前, 已经写的部分不会留在 buffer 里
+     *
+     * @throws BufferOverflowException  包装调用者的 buffer 时放不下
+     * @throws IllegalArgumentException 不支持的类型, 嵌套超过 {@link #MAX_DEPTH} 层
+     * @throws IllegalStateException    集合在写的过程中被修改
+     */
+    public Encoder write(Object value) {
+      int start = buffer.position();
+      try {
+        writeValue(value);
+      } catch (RuntimeException e) {
+        buffer.position(start);
+        throw e;
+      } finally {
+        depth = 0;
+      }
+      return this;
+    }
+
+    public Encoder writeNull() {
+      ensure(1);
+      buffer.put(NULL);
+      return this;
+    }
+
+    public Encoder writeBoolean(boolean v) {
+      ensure(1);
+      buffer.put(v ? TRUE : FALSE);
+      return this;
+    }
+
+    public Encoder writeInt(int v) {
+      return tagged(INT, zigzag(v));
+    }
+
+    public Encoder writeLong(long v) {
+      return tagged(LONG, zigzag(v));
+    }
+
+    public Encoder writeFloat(float v) {
+      ensure(5);
+      buffer.put(FLOAT);
+      putIntLE(Float.floatToRawIntBits(v));
+      return this;
+    }
+
+    public Encoder writeDouble(double v) {
+      ensure(9);
+      buffer.put(DOUBLE);
+      putLongLE(Double.doubleToRawLongBits(v));
+      return this;
+    }
+
+    /**
+     * null 写为 NULL
+     */
+    public Encoder writeString(CharSequence cs) {
+      if (cs == null)
+        return writeNull();
+      int length = utf8Length(cs);
+      ensure(1 + Sketches.varLongSize(length) + (long) length);
+      buffer.put(STRING);
+      Sketches.putVarLong(buffer, length);
+      putUtf8(cs);
+      return this;
+    }
+
+    /**
+     * 流式写 List: 之后必须写 count 个元素
+     */
+    public Encoder beginList(int count) {
+      return header(LIST, count);
+    }
+
+    public Encoder beginSet(int count) {
+      return header(SET, count);
+    }
+
+    /**
+     * 之后必须写 count 对 key 和 value
+     */
+    public Encoder beginMap(int count) {
+      return header(MAP, count);
+    }
+
+    private Encoder header(byte tag, int count) {
+      if (count < 0)
+        throw new IllegalArgumentException("count must be >= 0, was " + count);
+      return tagged(tag, count);
+    }
+
+    private Encoder tagged(byte tag, long varint) {
+      ensure(1 + Sketches.varLongSize(varint));
+      buffer.put(tag);
+      Sketches.putVarLong(buffer, varint);
+      return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value) {
+      if (value == null) {
+        writeNull();
+        return;
+      }
+      Class<?> type = value.getClass();
+      // the common final classes first, the rest by Typ classification
+      if (type == String.class) {
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        writeInt((Integer) value);
+      } else if (type == Long.class) {
+        writeLong((Long) value);
+      } else if (type == Double.class) {
+        writeDouble((Double) value);
+      } else if (type == Boolean.class) {
+        writeBoolean((Boolean) value);
+      } else if (type == Float.class) {
+        writeFloat((Float) value);
+      } else if (type == Short.class) {
+        tagged(SHORT, zigzag((Short) value));
+      } else if (type == Byte.class) {
+        ensure(2);
+        buffer.put(BYTE).put((Byte) value);
+      } else if (type == Character.class) {
+        tagged(CHAR, (Character) value);
+      } else {
+        Typ.Info info = Typ.classify(type);
+        if (info.isArray())
+          writeArray(value, type);
+        else if (info.isCollection())
+          writeCollection((Collection<Object>) value, info);
+        else if (info.isMap())
+          writeMap((Map<Object, Object>) value);
+        else if (info.isCharSequence())
+          writeString((CharSequence) value);
+        else if (info.isNumber())
+          writeNumber((Number) value);
+        else if (info.is(Typ.DATE))
+          tagged(DATE, zigzag(((Date) value).getTime()));
+        else if (info.is(Typ.CALENDAR))
+          writeCalendar((Calendar) value);
+        else
+          throw new IllegalArgumentException("cannot encode " + type.getName());
+      }
+    }
+
+    private void writeNumber(Number n) {
+      if (n instanceof BigInteger) {
+        writeBig(BIG_INTEGER, BIG_INTEGER_BYTES, (BigInteger) n);
+      } else if (n instanceof BigDecimal) {
+        BigDecimal d = (BigDecimal) n;
+        BigInteger unscaled = d.unscaledValue();
+        boolean small = unscaled.bitLength() < 64;
+        long scale = zigzag(d.scale());
+        ensure(1 + Sketches.varLongSize(scale));
+        buffer.put(small ? BIG_DECIMAL : BIG_DECIMAL_BYTES);
+        Sketches.putVarLong(buffer, scale);
+        putBig(small, unscaled);
+      } else if (n instanceof AtomicInteger) {
+        writeInt(n.intValue());
+      } else if (n instanceof AtomicLong || n instanceof LongAdder) {
+        writeLong(n.longValue());
+      } else {
+        writeDouble(n.doubleValue());
+      }
+    }
+
+    private void writeBig(byte smallTag, byte bytesTag, BigInteger v) {
+      boolean small = v.bitLength() < 64;
+      ensure(1);
+      buffer.put(small ? smallTag : bytesTag);
+      putBig(small, v);
+    }
+
+    private void putBig(boolean small, BigInteger v) {
+      if (small) {
+        long zz = zigzag(v.longValue());
+        ensure(Sketches.varLongSize(zz));
+        Sketches.putVarLong(buffer, zz);
+      } else {
+        byte[] bytes = v.toByteArray();
+        ensure(Sketches.varLongSize(bytes.length) + bytes.length);
+        Sketches.putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+      }
+    }
+
+    private void writeCalendar(Calendar c) {
+      tagged(CALENDAR, zigzag(c.getTimeInMillis()));
+      String zone = c.getTimeZone().getID();
+      int length = utf8Length(zone);
+      ensure(Sketches.varLongSize(length) + (long) length);
+      Sketches.putVarLong(buffer, length);
+      putUtf8(zone);
+    }
+
+    private void writeCollection(Collection<Object> values, Typ.Info info) {
+      byte tag = info.is(Typ.SORTED_SET) ? SORTED_SET : info.isSet() ? SET : LIST;
+      header(tag, values.size());
+      enter();
+      int written = 0;
+      for (Object v : values) {
+        writeValue(v);
+        written++;
+      }
+      depth--;
+      checkCount(values.size(), written);
+    }
+
+    private void writeMap(Map<Object, Object> map) {
+      header(map instanceof SortedMap ? SORTED_MAP : MAP, map.size());
+      enter();
+      int written = 0;
+      for (Map.Entry<Object, Object> e : map.entrySet()) {
+        writeValue(e.getKey());
+        writeValue(e.getValue());
+        written++;
+      }
+      depth--;
+      checkCount(map.size(), written);
+    }
+
+    /* depth is reset by write(), so an exception does not need to unwind it */
+    private void enter() {
+      if (++depth > MAX_DEPTH)
+        throw new IllegalArgumentException("nesting deeper than " + MAX_DEPTH + " levels, or a collection contains itself");
+    }
+
+    private static void checkCount(int size, int written) {
+      if (size != written)
+        throw new IllegalStateException("collection changed while encoding, size " + size + " but " + written + " elements");
+    }
+
+    private void writeArray(Object array, Class<?> type) {
+      if (type == byte[].class) {
+        byte[] a = (byte[]) array;
+        header(BYTE_ARRAY, a.length);
+        ensure(a.length);
+        buffer.put(a);
+      } else if (type == int[].class) {
+        int[] a = (int[]) array;
+        header(INT_ARRAY, a.length);
+        if (buffer.remaining() < 5L * a.length) {
+          long size = 0;
+          for (int v : a)
+            size += Sketches.varLongSize(zigzag(v));
+          ensure(size);
+        }
+        for (int v : a)
+          Sketches.putVarLong(buffer, zigzag(v));
+      } else if (type == long[].class) {
+        long[] a = (long[]) array;
+        header(LONG_ARRAY, a.length);
+        if (buffer.remaining() < 10L * a.length) {
+          long size = 0;
+          for (long v : a)
+            size += Sketches.varLongSize(zigzag(v));
+          ensure(size);
+        }
+        for (long v : a)
+          Sketches.putVarLong(buffer, zigzag(v));
+      } else if (type == double[].class) {
+        double[] a = (double[]) array;
+        header(DOUBLE_ARRAY, a.length);
+        ensure(8L * a.length);
+        for (double v : a)
+          putLongLE(Double.doubleToRawLongBits(v));
+      } else if (type == float[].class) {
+        float[] a = (float[]) array;
+        header(FLOAT_ARRAY, a.length);
+        ensure(4L * a.length);
+        for (float v : a)
+          putIntLE(Float.floatToRawIntBits(v));
+      } else if (type == short[].class) {
+        short[] a = (short[]) array;
+        header(SHORT_ARRAY, a.length);
+        if (buffer.remaining() < 3L * a.length) {
+          long size = 0;
+          for (short v : a)
+            size += Sketches.varLongSize(zigzag(v));
+          ensure(size);
+        }
+        for (short v : a)
+          Sketches.putVarLong(buffer, zigzag(v));
+      } else if (type == char[].class) {
+        char[] a = (char[]) array;
+        header(CHAR_ARRAY, a.length);
+        if (buffer.remaining() < 3L * a.length) {
+          long size = 0;
+          for (char v : a)
+            size += Sketches.varLongSize(v);
+          ensure(size);
+        }
+        for (char v : a)
+          Sketches.putVarLong(buffer, v);
+      } else if (type == boolean[].class) {
+        boolean[] a = (boolean[]) array;
+        header(BOOLEAN_ARRAY, a.length);
+        ensure(a.length);
+        for (boolean v : a)
+          buffer.put((byte) (v ? 1 : 0));
+      } else {
+        Object[] a = (Object[]) array;
+        header(type == String[].class ? STRING_ARRAY : OBJECT_ARRAY, a.length);
+        enter();
+        for (Object v : a)
+          writeValue(v);
+        depth--;
+      }
+    }
+
+    private void putUtf8(CharSequence cs) {
+      ByteBuffer b = buffer;
+      for (int i = 0, n = cs.length(); i < n; i++) {
+        char c = cs.charAt(i);
+        if (c < 0x80) {
+          b.put((byte) c);
+        } else if (c < 0x800) {
+          b.put((byte) (0xC0 | c >> 6));
+          b.put((byte) (0x80 | c & 0x3F));
+        } else if (!Character.isSurrogate(c)) {
+          b.put((byte) (0xE0 | c >> 12));
+          b.put((byte) (0x80 | c >> 6 & 0x3F));
+          b.put((byte) (0x80 | c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, cs.charAt(++i));
+          b.put((byte) (0xF0 | cp >> 18));
+          b.put((byte) (0x80 | cp >> 12 & 0x3F));
+          b.put((byte) (0x80 | cp >> 6 & 0x3F));
+          b.put((byte) (0x80 | cp & 0x3F));
+        } else {
+          b.put((byte) '?');
+        }
+      }
+    }
+
+    private void putIntLE(int v) {
+      buffer.putInt(buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Integer.reverseBytes(v));
+    }
+
+    private void putLongLE(long v) {
+      buffer.putLong(buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v));
+    }
+
+    private void ensure(long bytes) {
+      if (buffer.remaining() >= bytes)
+        return;
+      if (!growable)
+        throw new BufferOverflowException();
+      long needed = buffer.position() + bytes;
+      if (needed > Integer.MAX_VALUE - 8)
+        throw new IllegalArgumentException("encoded value is too large: " + needed + " bytes");
+      int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, (long) buffer.capacity() * 2));
+      ByteBuffer larger = ByteBuffer.allocate(capacity);
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+  }
+
+  /**
+   * 从 buffer 的 position 开始读值的 Decoder. 大的集合可以先用 {@link #readCollection()} 或者 {@link #readMap()}
+   * 读出元素个数, 再逐个读元素, 不需要一次读出整个集合. 同一个 Decoder 不能被多个线程同时使用.
+   */
+  public static final class Decoder {
+    private final ByteBuffer buffer;
+    private SymbolTable symbols;
+    private char[] chars = new char[64];
+    private int depth;
+
+    public Decoder(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * 用 symbols 去重读出的 ASCII 字符串, 反复出现的字段名和代码只在第一次分配
+     */
+    public Decoder symbols(SymbolTable symbols) {
+      this.symbols = symbols;
+      return this;
+    }
+
+    public boolean hasRemaining() {
+      return buffer.hasRemaining();
+    }
+
+    /**
+     * 下一个值的标签, 不移动 position
+     */
+    public byte peek() {
+      if (!buffer.hasRemaining())
+        throw truncated();
+      return buffer.get(buffer.position());
+    }
+
+    public Object read() {
+      byte tag = tag();
+      switch (tag) {
+        case NULL:
+          return null;
+        case FALSE:
+          return Boolean.FALSE;
+        case TRUE:
+          return Boolean.TRUE;
+        case BYTE:
+          return get();
+        case SHORT:
+          return (short) unzigzag(varLong());
+        case CHAR:
+          return (char) varLong();
+        case INT:
+          return (int) unzigzag(varLong());
+        case LONG:
+          return unzigzag(varLong());
+        case FLOAT:
+          return Float.intBitsToFloat(getIntLE());
+        case DOUBLE:
+          return Double.longBitsToDouble(getLongLE());
+        case BIG_INTEGER:
+          return BigInteger.valueOf(unzigzag(varLong()));
+        case BIG_INTEGER_BYTES:
+          return new BigInteger(bytes(count()));
+        case BIG_DECIMAL: {
+          int scale = checkScale(unzigzag(varLong()));
+          return BigDecimal.valueOf(unzigzag(varLong()), scale);
+        }
+        case BIG_DECIMAL_BYTES: {
+          int scale = checkScale(unzigzag(varLong()));
+          return new BigDecimal(new BigInteger(bytes(count())), scale);
+        }
+        case STRING:
+          return string();
+        case DATE:
+          return new Date(unzigzag(varLong()));
+        case CALENDAR: {
+          long millis = unzigzag(varLong());
+          Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(utf8(count())));
+          calendar.setTimeInMillis(millis);
+          return calendar;
+        }
+        case LIST:
+        case SET:
+        case SORTED_SET:
+          return collection(tag);
+        case MAP:
+        case SORTED_MAP:
+          return map(tag);
+        default:
+          return array(tag);
+      }
+    }
+
+    public boolean readBoolean() {
+      byte tag = tag();
+      if (tag == TRUE || tag == FALSE)
+        return tag == TRUE;
+      throw unexpected(tag, "boolean");
+    }
+
+    /**
+     * 读 BYTE, SHORT, CHAR, INT 或者 LONG, 不装箱
+     */
+    public long readLong() {
+      byte tag = tag();
+      switch (tag) {
+        case BYTE:
+          return get();
+        case CHAR:
+          return varLong();
+        case SHORT:
+        case INT:
+        case LONG:
+          return unzigzag(varLong());
+        default:
+          throw unexpected(tag, "integer");
+      }
+    }
+
+    /**
+     * @throws IllegalArgumentException 值超出 int 的范围
+     */
+    public int readInt() {
+      return Converters.toInt(readLong());
+    }
+
+    /**
+     * 读 FLOAT, DOUBLE 或者整数, 不装箱
+     */
+    public double readDouble() {
+      byte tag = peek();
+      if (tag == FLOAT || tag == DOUBLE) {
+        buffer.get();
+        return tag == FLOAT ? Float.intBitsToFloat(getIntLE()) : Double.longBitsToDouble(getLongLE());
+      }
+      return readLong();
+    }
+
+    /**
+     * @return NULL 返回 null
+     */
+    public String readString() {
+      byte tag = tag();
+      if (tag == NULL)
+        return null;
+      if (tag != STRING)
+        throw unexpected(tag, "string");
+      return string();
+    }
+
+    /**
+     * 把字符串追加到 sb, 不创建 String
+     *
+     * @return NULL 返回 false
+     */
+    public boolean readString(StringBuilder sb) {
+      byte tag = tag();
+      if (tag == NULL)
+        return false;
+      if (tag != STRING)
+        throw unexpected(tag, "string");
+      int length = count();
+      int n = decodeUtf8(length);
+      sb.append(chars, 0, n);
+      return true;
+    }
+
+    /**
+     * 读 List, Set 或者对象数组的标签和元素个数, 之后逐个读元素. 基本类型数组的元素没有标签, 用 {@link #read()} 整个读出
+     */
+    public int readCollection() {
+      byte tag = tag();
+      if (tag == LIST || tag == SET || tag == SORTED_SET || tag == STRING_ARRAY || tag == OBJECT_ARRAY)
+        return count();
+      throw unexpected(tag, "collection");
+    }
+
+    /**
+     * 读 Map 的标签和元素个数, 之后交替读 key 和 value
+     */
+    public int readMap() {
+      byte tag = tag();
+      if (tag == MAP || tag == SORTED_MAP)
+        return count();
+      throw unexpected(tag, "map");
+    }
+
+    /**
+     * 跳过下一个值, 不创建对象
+     */
+    public void skip() {
+      byte tag = tag();
+      switch (tag) {
+        case NULL:
+        case FALSE:
+        case TRUE:
+          return;
+        case BYTE:
+          skipBytes(1);
+          return;
+        case SHORT:
+        case CHAR:
+        case INT:
+        case LONG:
+        case DATE:
+        case BIG_INTEGER:
+          varLong();
+          return;
+        case FLOAT:
+          skipBytes(4);
+          return;
+        case DOUBLE:
+          skipBytes(8);
+          return;
+        case BIG_INTEGER_BYTES:
+        case STRING:
+          skipBytes(count());
+          return;
+        case BIG_DECIMAL:
+          varLong();
+          varLong();
+          return;
+        case BIG_DECIMAL_BYTES:
+          varLong();
+          skipBytes(count());
+          return;
+        case CALENDAR:
+          varLong();
+          skipBytes(count());
+          return;
+        case BOOLEAN_ARRAY:
+        case BYTE_ARRAY:
+          skipBytes(count());
+          return;
+        case FLOAT_ARRAY:
+          skipBytes(4L * count());
+          return;
+        case DOUBLE_ARRAY:
+          skipBytes(8L * count());
+          return;
+        case SHORT_ARRAY:
+        case CHAR_ARRAY:
+        case INT_ARRAY:
+        case LONG_ARRAY:
+          for (int i = count(); i > 0; i--)
+            varLong();
+          return;
+        case STRING_ARRAY:
+        case OBJECT_ARRAY:
+        case LIST:
+        case SET:
+        case SORTED_SET:
+          skipElements(count());
+          return;
+        case MAP:
+        case SORTED_MAP:
+          skipElements(2L * count());
+          return;
+        default:
+          throw unknown(tag);
+      }
+    }
+
+    private void skipElements(long n) {
+      enter();
+      try {
+        for (; n > 0; n--)
+          skip();
+      } finally {
+        depth--;
+      }
+    }
+
+    private Collection<Object> collection(byte tag) {
+      int n = count();
+      Collection<Object> values = tag == LIST ? new ArrayList<>(capacity(n))
+        : tag == SET ? new LinkedHashSet<>(capacity(n) * 4 / 3 + 1) : new TreeSet<>();
+      enter();
+      try {
+        for (int i = 0; i < n; i++)
+          values.add(read());
+      } finally {
+        depth--;
+      }
+      return values;
+    }
+
+    private Map<Object, Object> map(byte tag) {
+      int n = count();
+      Map<Object, Object> map = tag == MAP ? new LinkedHashMap<>(capacity(n) * 4 / 3 + 1) : new TreeMap<>();
+      enter();
+      try {
+        for (int i = 0; i < n; i++) {
+          Object key = read();
+          map.put(key, read());
+        }
+      } finally {
+        depth--;
+      }
+      return map;
+    }
+
+    private Object array(byte tag) {
+      switch (tag) {
+        case BOOLEAN_ARRAY: {
+          boolean[] a = new boolean[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = buffer.get() != 0;
+          return a;
+        }
+        case BYTE_ARRAY:
+          return bytes(count());
+        case SHORT_ARRAY: {
+          short[] a = new short[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = (short) unzigzag(varLong());
+          return a;
+        }
+        case CHAR_ARRAY: {
+          char[] a = new char[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = (char) varLong();
+          return a;
+        }
+        case INT_ARRAY: {
+          int[] a = new int[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = (int) unzigzag(varLong());
+          return a;
+        }
+        case LONG_ARRAY: {
+          long[] a = new long[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = unzigzag(varLong());
+          return a;
+        }
+        case FLOAT_ARRAY: {
+          float[] a = new float[checkFixed(count(), 4)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = Float.intBitsToFloat(getIntLE());
+          return a;
+        }
+        case DOUBLE_ARRAY: {
+          double[] a = new double[checkFixed(count(), 8)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = Double.longBitsToDouble(getLongLE());
+          return a;
+        }
+        case STRING_ARRAY: {
+          String[] a = new String[checkFixed(count(), 1)];
+          for (int i = 0; i < a.length; i++)
+            a[i] = readString();
+          return a;
+        }
+        case OBJECT_ARRAY: {
+          Object[] a = new Object[checkFixed(count(), 1)];
+          enter();
+          try {
+            for (int i = 0; i < a.length; i++)
+              a[i] = read();
+          } finally {
+            depth--;
+          }
+          return a;
+        }
+        default:
+          throw unknown(tag);
+      }
+    }
+
+    private String string() {
+      int length = count();
+      if (length > buffer.remaining())
+        throw truncated();
+      if (symbols != null && isAscii(length)) {
+        String s = symbols.intern(buffer, buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return s;
+      }
+      return utf8(length);
+    }
+
+    private String utf8(int length) {
+      if (length > buffer.remaining())
+        throw truncated();
+      if (buffer.hasArray()) {
+        int start = buffer.position();
+        buffer.position(start + length);
+        return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+      }
+      return new String(chars, 0, decodeUtf8(length));
+    }
+
+    private boolean isAscii(int length) {
+      for (int i = buffer.position(), end = i + length; i < end; i++) {
+        if (buffer.get(i) < 0)
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * 解码到 chars, 不正确的 UTF-8 按 U+FFFD
+     *
+     * @return 字符个数
+     */
+    private int decodeUtf8(int length) {
+      if (length > buffer.remaining())
+        throw truncated();
+      // every byte decodes to at most one char
+      if (chars.length < length)
+        chars = new char[Math.max(length, chars.length * 2)];
+      char[] out = chars;
+      int n = 0;
+      int end = buffer.position() + length;
+      for (int i = buffer.position(); i < end; ) {
+        int b = buffer.get(i++);
+        if (b >= 0) {
+          out[n++] = (char) b;
+          continue;
+        }
+        int extra = (b & 0xE0) == 0xC0 ? 1 : (b & 0xF0) == 0xE0 ? 2 : (b & 0xF8) == 0xF0 ? 3 : -1;
+        if (extra < 0 || i + extra > end) {
+          out[n++] = '\uFFFD';
+          continue;
+        }
+        int cp = b & (0x3F >> extra);
+        boolean valid = true;
+        for (int k = 0; k < extra; k++) {
+          int c = buffer.get(i + k);
+          valid &= (c & 0xC0) == 0x80;
+          cp = cp << 6 | c & 0x3F;
+        }
+        if (!valid) {
+          out[n++] = '\uFFFD';
+          continue;
+        }
+        i += extra;
+        if (cp >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+          out[n++] = Character.highSurrogate(cp);
+          out[n++] = Character.lowSurrogate(cp);
+        } else {
+          out[n++] = (char) cp;
+        }
+      }
+      buffer.position(end);
+      return n;
+    }
+
+    private byte[] bytes(int length) {
+      if (length > buffer.remaining())
+        throw truncated();
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    private byte tag() {
+      if (!buffer.hasRemaining())
+        throw truncated();
+      return buffer.get();
+    }
+
+    private byte get() {
+      if (!buffer.hasRemaining())
+        throw truncated();
+      return buffer.get();
+    }
+
+    private long varLong() {
+      return Sketches.getVarLong(buffer);
+    }
+
+    private int count() {
+      long n = varLong();
+      if (n < 0 || n > Integer.MAX_VALUE)
+        throw new IllegalArgumentException("Malformed length " + n);
+      return (int) n;
+    }
+
+    /**
+     * 每个元素至少 width 个字节, 不会因为损坏的长度分配过大的数组
+     */
+    private int checkFixed(int n, int width) {
+      if ((long) n * width > buffer.remaining())
+        throw truncated();
+      return n;
+    }
+
+    private int capacity(int n) {
+      return Math.min(n, buffer.remaining());
+    }
+
+    private void enter() {
+      if (++depth > MAX_DEPTH) {
+        depth--;
+        throw new IllegalArgumentException("Nesting deeper than " + MAX_DEPTH + " levels");
+      }
+    }
+
+    private static int checkScale(long scale) {
+      if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE)
+        throw new IllegalArgumentException("Malformed scale " + scale);
+      return (int) scale;
+    }
+
+    private void skipBytes(long n) {
+      if (n > buffer.remaining())
+        throw truncated();
+      buffer.position(buffer.position() + (int) n);
+    }
+
+    private int getIntLE() {
+      if (buffer.remaining() < 4)
+        throw truncated();
+      int v = buffer.getInt();
+      return buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+
+    private long getLongLE() {
+      if (buffer.remaining() < 8)
+        throw truncated();
+      long v = buffer.getLong();
+      return buffer.order() == ByteOrder.LITTLE_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    private static IllegalArgumentException truncated() {
+      return new IllegalArgumentException("Truncated value", new BufferUnderflowException());
+    }
+
+    private static IllegalArgumentException unexpected(byte tag, String expected) {
+      return new IllegalArgumentException("Expected " + expected + " but found tag " + tag);
+    }
+
+    private static IllegalArgumentException unknown(byte tag) {
+      return new IllegalArgumentException("Unknown tag " + tag);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter: 判断一个值是否 <b>可能</b> 出现过, 没有漏报, 误报率由位数和哈希函数的个数决定.
+ * 用来代替去重时保存所有值的 HashSet.
+ * <pre>
+ * BloomFilter seen = BloomFilter.create(10_000_000, 0.001);
+ * if (seen.put(eventId))
+ *   process(event);   // 一定是第一次出现
+ * </pre>
+ * <ul>
+ * <li>位数向上取整为 2 的幂, 存在 long[] 里. k 个位置由 Kirsch-Mitzenmacher 的 h1 + i * h2 得到, 只计算两个哈希.</li>
+ * <li>{@link #concurrent(boolean)} 之后 put 用 CAS 更新, 多个线程可以同时 put 和查询.</li>
+ * <li>位数和哈希个数相同的 filter 可以 {@link #merge(BloomFilter)}, 结果等于把两边的值都 put 进一个 filter.</li>
+ * <li>{@link #toBytes()} 和 {@link #fromBytes(byte[])} 在进程之间传递.</li>
+ * </ul>
+ * 装箱的数字按 {@link Compare} 的规则哈希, put(Long) 与 put(long) 相同; 字符串使用 {@link Hasher}.
+ */
+public class BloomFilter {
+  private static final long MIN_BITS = 64;
+  private static final long MAX_BITS = 1L << 36;
+  private static final int MAX_HASHES = 32;
+
+  private final long[] words;
+  private final int numHashes;
+  private final int shift;
+  private boolean concurrent;
+
+  /**
+   * @param numBits   向上取整为 2 的幂, 最少 64 位, 最多 2^36 位
+   * @param numHashes 每个值设置的位数
+   */
+  public BloomFilter(long numBits, int numHashes) {
+    this(new long[(int) (checkBits(numBits) >>> 6)], numHashes);
+  }
+
+  private BloomFilter(long[] words, int numHashes) {
+    if (numHashes < 1 || numHashes > MAX_HASHES)
+      throw new IllegalArgumentException("numHashes must be in [1, " + MAX_HASHES + "], was " + numHashes);
+    this.words = words;
+    this.numHashes = numHashes;
+    this.shift = 64 - Sketches.log2((long) words.length << 6);
+  }
+
+  private static long checkBits(long numBits) {
+    if (numBits < 1 || numBits > MAX_BITS)
+      throw new IllegalArgumentException("numBits must be in [1, " + MAX_BITS + "], was " + numBits);
+    return Maths.nextPower2(numBits, MIN_BITS);
+  }
+
+  /**
+   * 按预计的个数和误报率计算位数和哈希个数. 位数取整为 2 的幂, put 了 expectedInsertions 个值之后
+   * 理论上的误报率 (1 - e^(-kn/m))^k 不超过 fpp
+   *
+   * @throws IllegalArgumentException 需要的位数超过 2^36 时
+   */
+  public static BloomFilter create(long expectedInsertions, double fpp) {
+    if (expectedInsertions < 1)
+      throw new IllegalArgumentException("expectedInsertions must be > 0, was " + expectedInsertions);
+    if (!(fpp > 0 && fpp < 1))
+      throw new IllegalArgumentException("fpp must be in (0, 1), was " + fpp);
+    double ln2 = Math.log(2);
+    double optimal = Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2));
+    // rounding the number of hashes, or capping it at MAX_HASHES, can miss fpp, then more bits are needed
+    for (long bits = checkBits((long) Math.min(MAX_BITS, optimal)); bits <= MAX_BITS; bits <<= 1) {
+      int hashes = Math.max(1, Math.min(MAX_HASHES, (int) Math.round((double) bits / expectedInsertions * ln2)));
+      if (Math.pow(-Math.expm1(-(double) hashes * expectedInsertions / bits), hashes) <= fpp)
+        return new BloomFilter(bits, hashes);
+    }
+    throw new IllegalArgumentException(expectedInsertions + " insertions with fpp " + fpp + " need more than "
+      + MAX_BITS + " bits");
+  }
+
+  /**
+   * 是否允许多个线程同时 put, 在共享给其它线程之前设置
+   */
+  public BloomFilter concurrent(boolean concurrent) {
+    this.concurrent = concurrent;
+    return this;
+  }
+
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  /**
+   * @return true 时这个值一定是第一次 put; false 时可能 put 过
+   */
+  public boolean put(long key) {
+    return putHash(Sketches.hash(key));
+  }
+
+  public boolean put(CharSequence key) {
+    return putHash(Sketches.hash(key));
+  }
+
+  public boolean put(Object key) {
+    return putHash(Sketches.hash(key));
+  }
+
+  public boolean mightContain(long key) {
+    return mightContainHash(Sketches.hash(key));
+  }
+
+  public boolean mightContain(CharSequence key) {
+    return mightContainHash(Sketches.hash(key));
+  }
+
+  public boolean mightContain(Object key) {
+    return mightContainHash(Sketches.hash(key));
+  }
+
+  /**
+   * @param hash 调用者计算的 64 位哈希, 每一位都需要均匀分布
+   */
+  public boolean putHash(long hash) {
+    long h2 = Sketches.second(hash);
+    boolean changed = false;
+    for (int i = 0; i < numHashes; i++, hash += h2) {
+      long bit = hash >>> shift;
+      changed |= Sketches.or(words, (int) (bit >>> 6), 1L << bit, concurrent);
+    }
+    return changed;
+  }
+
+  public boolean mightContainHash(long hash) {
+    long h2 = Sketches.second(hash);
+    for (int i = 0; i < numHashes; i++, hash += h2) {
+      long bit = hash >>> shift;
+      int index = (int) (bit >>> 6);
+      long word = concurrent ? Sketches.getVolatile(words, index) : words[index];
+      if ((word & 1L << bit) == 0)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * 把 other 的值合并进来, 两者的位数和哈希个数必须相同
+   */
+  public void merge(BloomFilter other) {
+    if (other.words.length != words.length || other.numHashes != numHashes)
+      throw new IllegalArgumentException("Incompatible filters: " + this + " and " + other);
+    for (int i = 0; i < words.length; i++) {
+      long word = other.concurrent ? Sketches.getVolatile(other.words, i) : other.words[i];
+      if (word != 0)
+        Sketches.or(words, i, word, concurrent);
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < words.length; i++)
+      words[i] = 0;
+  }
+
+  public long numBits() {
+    return (long) words.length << 6;
+  }
+
+  public int numHashes() {
+    return numHashes;
+  }
+
+  public long bitCount() {
+    long count = 0;
+    for (int i = 0; i < words.length; i++)
+      count += Long.bitCount(concurrent ? Sketches.getVolatile(words, i) : words[i]);
+    return count;
+  }
+
+  /**
+   * 按置 1 的位数估计 put 过的不同值的个数
+   */
+  public long approximateCount() {
+    double bits = numBits();
+    double fraction = bitCount() / bits;
+    if (fraction >= 1)
+      return Long.MAX_VALUE;
+    return Math.round(-bits / numHashes * Math.log1p(-fraction));
+  }
+
+  /**
+   * 按当前置 1 的位数估计的误报率
+   */
+  public double expectedFpp() {
+    return Math.pow((double) bitCount() / numBits(), numHashes);
+  }
+
+  /**
+   * | type 1 | version 1 | numHashes 1 | words 4 | words * 8 |
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer = Sketches.header(Sketches.TYPE_BLOOM, 7 + (words.length << 3));
+    buffer.put((byte) numHashes).putInt(words.length);
+    Sketches.putLongs(buffer, words, concurrent);
+    return buffer.array();
+  }
+
+  public static BloomFilter fromBytes(byte[] bytes) {
+    ByteBuffer buffer = Sketches.readHeader(bytes, Sketches.TYPE_BLOOM);
+    if (buffer.remaining() < 5)
+      throw new IllegalArgumentException("Truncated BloomFilter");
+    int numHashes = buffer.get();
+    int length = buffer.getInt();
+    if (length < 1 || !Maths.isPowerOf2(length) || (long) length << 6 > MAX_BITS)
+      throw new IllegalArgumentException("Invalid BloomFilter length " + length);
+    return new BloomFilter(Sketches.getLongs(buffer, length), numHashes);
+  }
+
+  @Override
+  public String toString() {
+    return "BloomFilter{numBits=" + numBits() + ", numHashes=" + numHashes + ", concurrent=" + concurrent + '}';
+  }
+}
@@ -0,0 +1,169 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 长循环的协作式取消, 代替每次迭代都调用 {@link Jvm#checkInterrupted()}.
+ * <p>
+ * {@link #poll()} 每 N 次才真正检查一次线程中断, {@link #cancel()} 和截止时间, N 按测得的迭代耗时调整,
+ * 使两次检查之间大约间隔 checkInterval (默认 100 微秒), 所以取消的延迟也是这个量级.
+ * <pre>
+ * CancellationToken token = CancellationToken.withTimeout(5, TimeUnit.SECONDS);
+ * for (Order order : orders) {
+ *   token.poll();
+ *   process(order);
+ * }
+ * token.forEach(0, prices.length, i -&gt; prices[i] = Maths.round2(prices[i]));
+ * </pre>
+ * 中断或者取消时抛出 {@link InterruptedRuntimeException}, 超时抛出 {@link TimeoutRuntimeException}.
+ * 与 {@link Jvm#checkInterrupted()} 一样不清除线程的中断状态.
+ * <p>
+ * poll, check 和 forEach 只能在一个线程里调用, cancel 可以在任何线程里调用.
+ */
+public class CancellationToken {
+  private static final long NO_DEADLINE = Long.MAX_VALUE;
+  private static final long DEFAULT_CHECK_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final int MAX_STRIDE = 1 << 20;
+
+  private final long deadline;
+  private final long checkIntervalNanos;
+  private volatile boolean cancelled;
+  private int stride = 1;
+  private int countdown = 1;
+  private long lastCheck = System.nanoTime();
+
+  private CancellationToken(long deadline, long checkIntervalNanos) {
+    if (checkIntervalNanos <= 0)
+      throw new IllegalArgumentException("checkInterval must be > 0, was " + checkIntervalNanos);
+    this.deadline = deadline;
+    this.checkIntervalNanos = checkIntervalNanos;
+  }
+
+  /**
+   * 没有截止时间
+   */
+  public static CancellationToken create() {
+    return new CancellationToken(NO_DEADLINE, DEFAULT_CHECK_INTERVAL_NANOS);
+  }
+
+  public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+    return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  /**
+   * @param deadlineNanos {@link System#nanoTime()} 的值
+   */
+  public static CancellationToken withDeadline(long deadlineNanos) {
+    return new CancellationToken(deadlineNanos, DEFAULT_CHECK_INTERVAL_NANOS);
+  }
+
+  /**
+   * @param deadlineNanos {@link System#nanoTime()} 的值, 没有截止时间时为 Long.MAX_VALUE
+   * @param checkInterval 两次真正检查之间的目标间隔
+   */
+  public static CancellationToken withDeadline(long deadlineNanos, long checkInterval, TimeUnit unit) {
+    return new CancellationToken(deadlineNanos, unit.toNanos(checkInterval));
+  }
+
+  /**
+   * 下一次真正检查时抛出 {@link InterruptedRuntimeException}
+   */
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public boolean hasDeadline() {
+    return deadline != NO_DEADLINE;
+  }
+
+  /**
+   * 到截止时间还剩多少纳秒, 没有截止时间时为 Long.MAX_VALUE
+   */
+  public long remainingNanos() {
+    return deadline == NO_DEADLINE ? NO_DEADLINE : deadline - System.nanoTime();
+  }
+
+  /**
+   * 每次迭代调用一次, 大部分调用只是一次减法
+   */
+  public void poll() {
+    if (--countdown <= 0)
+      check();
+  }
+
+  /**
+   * 立即检查, 并按距离上一次检查的时间调整检查的频率
+   *
+   * @throws InterruptedRuntimeException 线程被中断或者已经取消
+   * @throws TimeoutRuntimeException     超过了截止时间
+   */
+  public void check() {
+    long now = System.nanoTime();
+    if (Thread.currentThread().isInterrupted())
+      throw new InterruptedRuntimeException("Interrupted");
+    if (cancelled)
+      throw new InterruptedRuntimeException("Cancelled");
+    if (deadline != NO_DEADLINE && now - deadline >= 0)
+      throw new TimeoutRuntimeException("Deadline exceeded by " + (now - deadline) / 1000 + " us");
+    adapt(now);
+  }
+
+  /**
+   * 对 [from, to) 的每个值调用 action, 期间按 {@link #poll()} 的频率检查
+   */
+  public void forEach(int from, int to, IntConsumer action) {
+    int i = from;
+    while (i < to) {
+      int end = (int) Math.min(to, (long) i + countdown);
+      for (; i < end; i++)
+        action.accept(i);
+      countdown = 0;
+      check();
+    }
+  }
+
+  /**
+   * 对 [from, to) 的每个值调用 action, 期间按 {@link #poll()} 的频率检查
+   */
+  public void forEachLong(long from, long to, LongConsumer action) {
+    long i = from;
+    while (i < to) {
+      long end = Math.min(to, i + countdown);
+      for (; i < end; i++)
+        action.accept(i);
+      countdown = 0;
+      check();
+    }
+  }
+
+  /**
+   * 调整步长使两次检查之间大约间隔 checkIntervalNanos, 每次最多放大或缩小一倍, 避免一次异常的测量影响太大
+   */
+  private void adapt(long now) {
+    long elapsed = now - lastCheck;
+    int iterations = stride;
+    lastCheck = now;
+    if (elapsed < checkIntervalNanos >> 1)
+      stride = Math.min(stride << 1, MAX_STRIDE);
+    else if (elapsed > checkIntervalNanos << 1)
+      stride = Math.max(stride >> 1, 1);
+    if (deadline != NO_DEADLINE) {
+      // do not run far past the deadline: estimate the iterations left before it
+      long remaining = deadline - now;
+      if (elapsed > 0 && remaining < checkIntervalNanos)
+        stride = (int) Math.max(1, Math.min(stride, remaining * iterations / elapsed));
+    }
+    countdown = stride;
+  }
+
+  @Override
+  public String toString() {
+    return "CancellationToken{cancelled=" + cancelled + ", remainingNanos=" + remainingNanos() + ", stride=" + stride + '}';
+  }
+}
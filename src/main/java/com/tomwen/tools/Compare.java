@@ -139,6 +139,9 @@ public abstract class Compare {
     return a == null ? b == null : b != null && a.equals(b);
   }
 
+  /**
+   * 逐个字符计算. 长字符串或者需要分布更均匀的哈希(比如分片)请使用 {@link Hasher#hash(CharSequence)}, 两者的结果不同.
+   */
   public static long calcLongHashCode(CharSequence s) {
     if (s == null)
       return NULL_HASHCODE;
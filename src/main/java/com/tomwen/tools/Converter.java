@@ -0,0 +1,74 @@
+package com.tomwen.tools;
+
+/**
+ * 把一种类型的值转换为 target 类型, 由 {@link Converters#get(Class, Class)} 按 (source, target) 解析一次后缓存.
+ * <p>
+ * toLong, toInt, toDouble 和 toBoolean 是不装箱的入口: 结果等于 convert 之后拆箱再按 java 的规则拓宽,
+ * 例如 target 为 int 时四个方法里只有 toBoolean 不可用. 基本类型和包装类型的 target 不经过包装对象, 其它 target 抛出
+ * {@link UnsupportedOperationException}.
+ * <p>
+ * 转换失败 (格式不对, 超出范围, 有小数部分的值转为整数) 时抛出 {@link IllegalArgumentException}.
+ */
+public abstract class Converter<T> {
+  final Class<?> source;
+  final Class<T> target;
+  /* Converters.BOOLEAN ... DOUBLE for primitive and wrapper targets, otherwise -1 */
+  final int kind;
+
+  Converter(Class<?> source, Class<T> target) {
+    this.source = source;
+    this.target = target;
+    this.kind = Converters.kind(target);
+  }
+
+  /**
+   * 基本类型以包装类型表示
+   */
+  public Class<?> source() {
+    return source;
+  }
+
+  public Class<T> target() {
+    return target;
+  }
+
+  /**
+   * @param value source 类型的值. null 转换为 null, target 为基本类型时转换为 0 或者 false
+   */
+  public abstract T convert(Object value);
+
+  public long toLong(Object value) {
+    if (!Converters.widens(kind, Converters.LONG))
+      throw unsupported("toLong");
+    return Converters.longValue(convert(value));
+  }
+
+  public int toInt(Object value) {
+    if (!Converters.widens(kind, Converters.INT))
+      throw unsupported("toInt");
+    return (int) Converters.longValue(convert(value));
+  }
+
+  public double toDouble(Object value) {
+    if (!Converters.widens(kind, Converters.DOUBLE))
+      throw unsupported("toDouble");
+    Object v = convert(value);
+    return v instanceof Number ? ((Number) v).doubleValue() : Converters.longValue(v);
+  }
+
+  public boolean toBoolean(Object value) {
+    if (kind != Converters.BOOLEAN)
+      throw unsupported("toBoolean");
+    Object v = convert(value);
+    return v != null && (Boolean) v;
+  }
+
+  final UnsupportedOperationException unsupported(String method) {
+    return new UnsupportedOperationException(method + " is not supported for target " + target.getName());
+  }
+
+  @Override
+  public String toString() {
+    return "Converter{" + source.getName() + " -> " + target.getName() + '}';
+  }
+}
@@ -0,0 +1,1202 @@
+package com.tomwen.tools;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 (source, target) 类型解析并缓存 {@link Converter}, 用来把配置, CSV 和 JSON 里类型不定的值转换为字段的类型,
+ * 代替每个值都做一遍 instanceof 和 {@link Typ#isPrimitiveOrWrapper(Class)} 判断.
+ * <pre>
+ * Converter&lt;Integer&gt; port = Converters.get(String.class, int.class);   // 解析一次, 保存起来
+ * int p = port.toInt("8080");                                          // 不装箱
+ * Converter&lt;Long&gt; toLong = Converters.to(long.class);                   // source 按值的实际类型, 缓存上一次的
+ * long id = toLong.toLong(json.get("id"));
+ * TimeUnit unit = Converters.convert("seconds", TimeUnit.class);
+ * </pre>
+ * 支持的 target:
+ * <ul>
+ * <li>基本类型和包装类型: 来自数字, 字符串, Boolean (1/0), Character, Date 和 Calendar (毫秒), 枚举 (ordinal).
+ * 整数类型只接受范围内的整数值, 3.0 可以转为 int 但 3.5 不行; 字符串转 char 要求只有一个字符;
+ * 转 boolean 接受 true/false (不区分大小写) 和数值 1/0.</li>
+ * <li>BigDecimal, BigInteger 和 Number.</li>
+ * <li>String 和 CharSequence: char[] 为其中的字符, 枚举为 name(), Date 和 Calendar 为 ISO-8601, BigDecimal 不用指数形式,
+ * 数组为逗号分隔的元素.</li>
+ * <li>Date 和 Calendar: 来自毫秒数或者 ISO-8601 的日期, 日期时间, 没有时区的按系统时区.</li>
+ * <li>枚举: 来自名字 (先精确匹配, 再不区分大小写), ordinal 或者另一个枚举的同名常量.</li>
+ * <li>数组: 来自数组, 集合或者逗号分隔的字符串, 元素逐个转换. 基本类型数组之间的转换不装箱.</li>
+ * </ul>
+ * source 可以赋值给 target 时原样返回, 不复制. 不支持的组合由 {@link #get(Class, Class)} 抛出 {@link IllegalArgumentException}.
+ */
+public final class Converters {
+  static final int BOOLEAN = 0;
+  static final int CHAR = 1;
+  static final int BYTE = 2;
+  static final int SHORT = 3;
+  static final int INT = 4;
+  static final int LONG = 5;
+  static final int FLOAT = 6;
+  static final int DOUBLE = 7;
+
+  private static final Class<?>[] PRIMITIVES = {boolean.class, char.class, byte.class, short.class, int.class,
+    long.class, float.class, double.class};
+  private static final Class<?>[] WRAPPERS = {Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+    Long.class, Float.class, Double.class};
+  private static final Object[] ZEROS = {false, (char) 0, (byte) 0, (short) 0, 0, 0L, 0f, 0d};
+  private static final List<Class<?>> INTEGRAL = Arrays.<Class<?>>asList(Long.class, Integer.class, Short.class,
+    Byte.class, AtomicLong.class, AtomicInteger.class, LongAdder.class, LongAccumulator.class);
+
+  private static final ClassValue<Target<?>> TARGETS = new ClassValue<Target<?>>() {
+    @Override
+    protected Target<?> computeValue(Class<?> type) {
+      return new Target<>(type);
+    }
+  };
+
+  private Converters() {
+  }
+
+  /**
+   * source 为基本类型时按包装类型处理. source 是接口或者 Object 而且不能直接确定转换方式时 (例如 Comparable 到 int)
+   * 返回与 {@link #to(Class)} 相同的按值的实际类型转换的 Converter.
+   *
+   * @throws IllegalArgumentException 不支持从 source 转换为 target
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Converter<T> get(Class<?> source, Class<T> target) {
+    Target<T> t = (Target<T>) TARGETS.get(target);
+    Converter<T> c = t.exact(wrap(source));
+    if (c instanceof Unsupported) {
+      if (source == Object.class || source.isInterface())
+        return t;
+      throw cannotConvert(source, target);
+    }
+    return c;
+  }
+
+  /**
+   * 转换为 target 的 Converter, 按每个值的实际类型选择转换方式. 连续的值类型相同时只比较一次类型, 不查表.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Converter<T> to(Class<T> target) {
+    return (Converter<T>) TARGETS.get(target);
+  }
+
+  public static boolean supports(Class<?> source, Class<?> target) {
+    return !(TARGETS.get(target).exact(wrap(source)) instanceof Unsupported);
+  }
+
+  /**
+   * @throws IllegalArgumentException 不支持 value 的类型, 或者 value 不能转换
+   */
+  public static <T> T convert(Object value, Class<T> target) {
+    return to(target).convert(value);
+  }
+
+  /* primitive to primitive, no boxing. Out of range values are rejected rather than truncated. */
+
+  public static boolean toBoolean(long v) {
+    if (v == 0 || v == 1)
+      return v == 1;
+    throw new IllegalArgumentException(v + " is not a boolean, expected 0 or 1");
+  }
+
+  public static char toChar(long v) {
+    if (v < Character.MIN_VALUE || v > Character.MAX_VALUE)
+      throw outOfRange(v, "char");
+    return (char) v;
+  }
+
+  public static byte toByte(long v) {
+    if (v < Byte.MIN_VALUE || v > Byte.MAX_VALUE)
+      throw outOfRange(v, "byte");
+    return (byte) v;
+  }
+
+  public static short toShort(long v) {
+    if (v < Short.MIN_VALUE || v > Short.MAX_VALUE)
+      throw outOfRange(v, "short");
+    return (short) v;
+  }
+
+  public static int toInt(long v) {
+    if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+      throw outOfRange(v, "int");
+    return (int) v;
+  }
+
+  /**
+   * @throws IllegalArgumentException d 有小数部分, 超出 long 的范围或者是 NaN
+   */
+  public static long toLong(double d) {
+    // (long) d saturates, 0x1p63 itself is already out of range
+    if (d >= -0x1p63 && d < 0x1p63 && (long) d == d)
+      return (long) d;
+    throw new IllegalArgumentException(d + " is not an integer in the range of long");
+  }
+
+  public static int toInt(double d) {
+    return toInt(toLong(d));
+  }
+
+  /**
+   * 舍入到最近的 float, NaN 和 Infinity 保持不变
+   *
+   * @throws IllegalArgumentException 有限的 d 超出 float 的范围
+   */
+  public static float toFloat(double d) {
+    float f = (float) d;
+    if (Float.isInfinite(f) && !Double.isInfinite(d))
+      throw new IllegalArgumentException(d + " is out of range for float");
+    return f;
+  }
+
+  static int kind(Class<?> type) {
+    for (int i = 0; i < PRIMITIVES.length; i++) {
+      if (type == PRIMITIVES[i] || type == WRAPPERS[i])
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * 按 java 的拓宽规则, kind 类型的值是否可以作为 to 类型返回
+   */
+  static boolean widens(int kind, int to) {
+    return to == BOOLEAN ? kind == BOOLEAN : kind >= CHAR && kind <= to;
+  }
+
+  static long longValue(Object v) {
+    if (v == null)
+      return 0;
+    return v instanceof Character ? (Character) v : ((Number) v).longValue();
+  }
+
+  static Class<?> wrap(Class<?> type) {
+    if (type.isPrimitive()) {
+      int kind = kind(type);
+      return kind < 0 ? type : WRAPPERS[kind];
+    }
+    return type;
+  }
+
+  private static IllegalArgumentException outOfRange(long v, String type) {
+    return new IllegalArgumentException(v + " is out of range for " + type);
+  }
+
+  static IllegalArgumentException cannotConvert(Class<?> source, Class<?> target) {
+    return new IllegalArgumentException("cannot convert " + source.getName() + " to " + target.getName());
+  }
+
+  private static IllegalArgumentException cannotConvert(Object value, Class<?> target) {
+    return new IllegalArgumentException("cannot convert \"" + value + "\" to " + target.getName());
+  }
+
+  /**
+   * 解析一对类型, 每对只调用一次
+   *
+   * @return 不支持时返回 null
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> Converter<T> resolve(Class<?> source, Class<T> target) {
+    if (target == source || !target.isPrimitive() && target.isAssignableFrom(source))
+      return new Identity<>(source, target);
+    Typ.Info t = Typ.classify(target);
+    Typ.Info s = Typ.classify(source);
+    if (t.isPrimitive() || t.isWrapper())
+      return toPrimitive(source, s, target);
+    if (target == BigDecimal.class)
+      return (Converter<T>) toBigDecimal(source, s);
+    if (target == BigInteger.class)
+      return (Converter<T>) toBigInteger(source, s);
+    if (target == Number.class)
+      return (Converter<T>) toNumber(source, s);
+    if (target == String.class || target == CharSequence.class)
+      return new ToString<>(source, target);
+    if (target == Date.class)
+      return (Converter<T>) toDate(source, s);
+    if (target == Calendar.class)
+      return (Converter<T>) toCalendar(source, s);
+    if (t.isEnum())
+      return toEnum(source, s, target);
+    if (t.isArray() && (s.isArray() || s.isCollection() || s.isCharSequence()))
+      return toArray(source, s, target);
+    return null;
+  }
+
+  private static <T> ToPrimitive<T> toPrimitive(Class<?> source, Typ.Info s, Class<T> target) {
+    if (INTEGRAL.contains(source))
+      return new FromIntegral<>(source, target);
+    if (source == Double.class || source == Float.class)
+      return new FromFloating<>(source, target);
+    if (BigInteger.class.isAssignableFrom(source))
+      return new FromBigInteger<>(source, target);
+    if (BigDecimal.class.isAssignableFrom(source))
+      return new FromBigDecimal<>(source, target);
+    if (s.isNumber())
+      return new FromNumber<>(source, target);
+    if (source == Boolean.class)
+      return new FromBoolean<>(source, target);
+    if (source == Character.class)
+      return new FromCharacter<>(source, target);
+    if (s.isCharSequence())
+      return new FromChars<>(source, target);
+    if (s.is(Typ.DATE))
+      return new FromDate<>(source, target);
+    if (s.is(Typ.CALENDAR))
+      return new FromCalendar<>(source, target);
+    if (Enum.class.isAssignableFrom(source))
+      return new FromEnum<>(source, target);
+    return null;
+  }
+
+  /**
+   * source 的值可以精确地表示为 long: 整数, Boolean, Character, Date, Calendar 和枚举
+   */
+  private static boolean hasLongValue(Class<?> source, Typ.Info s) {
+    return INTEGRAL.contains(source) || source == Boolean.class || source == Character.class
+      || s.is(Typ.DATE) || s.is(Typ.CALENDAR) || Enum.class.isAssignableFrom(source);
+  }
+
+  private static Converter<BigDecimal> toBigDecimal(Class<?> source, Typ.Info s) {
+    if (hasLongValue(source, s)) {
+      Converter<Long> millis = resolve(source, long.class);
+      return new Converter<BigDecimal>(source, BigDecimal.class) {
+        @Override
+        public BigDecimal convert(Object value) {
+          return value == null ? null : BigDecimal.valueOf(millis.toLong(value));
+        }
+      };
+    }
+    if (BigInteger.class.isAssignableFrom(source)) {
+      return new Converter<BigDecimal>(source, BigDecimal.class) {
+        @Override
+        public BigDecimal convert(Object value) {
+          return value == null ? null : new BigDecimal((BigInteger) value);
+        }
+      };
+    }
+    if (source == Float.class) {
+      return new Converter<BigDecimal>(source, BigDecimal.class) {
+        @Override
+        public BigDecimal convert(Object value) {
+          if (value == null)
+            return null;
+          float f = (Float) value;
+          if (Float.isNaN(f) || Float.isInfinite(f))
+            throw cannotConvert(value, target);
+          // the shortest decimal that round trips as a float, 1.1 rather than 1.100000023841858 through double
+          return new BigDecimal(Float.toString(f));
+        }
+      };
+    }
+    if (s.isNumber()) {
+      return new Converter<BigDecimal>(source, BigDecimal.class) {
+        @Override
+        public BigDecimal convert(Object value) {
+          if (value == null)
+            return null;
+          double d = ((Number) value).doubleValue();
+          if (Double.isNaN(d) || Double.isInfinite(d))
+            throw cannotConvert(value, target);
+          // the shortest decimal that round trips, 0.1 rather than 0.1000000000000000055511151231257827
+          return BigDecimal.valueOf(d);
+        }
+      };
+    }
+    if (s.isCharSequence()) {
+      return new Converter<BigDecimal>(source, BigDecimal.class) {
+        @Override
+        public BigDecimal convert(Object value) {
+          return value == null ? null : parseBigDecimal((CharSequence) value);
+        }
+      };
+    }
+    return null;
+  }
+
+  private static Converter<BigInteger> toBigInteger(Class<?> source, Typ.Info s) {
+    if (hasLongValue(source, s)) {
+      Converter<Long> longs = resolve(source, long.class);
+      return new Converter<BigInteger>(source, BigInteger.class) {
+        @Override
+        public BigInteger convert(Object value) {
+          return value == null ? null : BigInteger.valueOf(longs.toLong(value));
+        }
+      };
+    }
+    Converter<BigDecimal> decimals = toBigDecimal(source, s);
+    if (decimals == null)
+      return null;
+    return new Converter<BigInteger>(source, BigInteger.class) {
+      @Override
+      public BigInteger convert(Object value) {
+        if (value == null)
+          return null;
+        try {
+          return decimals.convert(value).toBigIntegerExact();
+        } catch (ArithmeticException e) {
+          throw cannotConvert(value, target);
+        }
+      }
+    };
+  }
+
+  /**
+   * 字符串转换为 Long, 超出范围的整数为 BigInteger, 其它为 Double; 其它类型按 long 值转换为 Long
+   */
+  private static Converter<Number> toNumber(Class<?> source, Typ.Info s) {
+    if (s.isCharSequence()) {
+      return new Converter<Number>(source, Number.class) {
+        @Override
+        public Number convert(Object value) {
+          if (value == null)
+            return null;
+          CharSequence cs = (CharSequence) value;
+          if (!isInteger(cs))
+            return parseDouble(cs);
+          BigInteger big = parseBigDecimal(cs).toBigIntegerExact();
+          return big.bitLength() < 64 ? (Number) big.longValue() : big;
+        }
+      };
+    }
+    if (hasLongValue(source, s)) {
+      Converter<Long> longs = resolve(source, long.class);
+      return new Converter<Number>(source, Number.class) {
+        @Override
+        public Number convert(Object value) {
+          return value == null ? null : longs.toLong(value);
+        }
+      };
+    }
+    return null;
+  }
+
+  private static Converter<Date> toDate(Class<?> source, Typ.Info s) {
+    Converter<Long> millis = millis(source, s);
+    if (millis == null)
+      return null;
+    return new Converter<Date>(source, Date.class) {
+      @Override
+      public Date convert(Object value) {
+        return value == null ? null : new Date(millis.toLong(value));
+      }
+    };
+  }
+
+  private static Converter<Calendar> toCalendar(Class<?> source, Typ.Info s) {
+    Converter<Long> millis = millis(source, s);
+    if (millis == null)
+      return null;
+    return new Converter<Calendar>(source, Calendar.class) {
+      @Override
+      public Calendar convert(Object value) {
+        if (value == null)
+          return null;
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis.toLong(value));
+        return calendar;
+      }
+    };
+  }
+
+  /**
+   * Date, Calendar 和数字本身就是毫秒数, 字符串按 ISO-8601 解析
+   */
+  private static Converter<Long> millis(Class<?> source, Typ.Info s) {
+    if (s.isCharSequence()) {
+      return new Converter<Long>(source, Long.class) {
+        @Override
+        public Long convert(Object value) {
+          return value == null ? null : parseMillis((CharSequence) value);
+        }
+
+        @Override
+        public long toLong(Object value) {
+          return parseMillis((CharSequence) value);
+        }
+      };
+    }
+    if (s.isNumber() || s.is(Typ.DATE) || s.is(Typ.CALENDAR))
+      return resolve(source, long.class);
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Converter<T> toEnum(Class<?> source, Typ.Info s, Class<T> target) {
+    Enum<?>[] constants = ((Class<Enum<?>>) target).getEnumConstants();
+    if (s.isCharSequence() || Enum.class.isAssignableFrom(source)) {
+      Map<String, Enum<?>> byName = new HashMap<>();
+      Map<String, Enum<?>> byUpperCase = new HashMap<>();
+      for (Enum<?> e : constants) {
+        byName.put(e.name(), e);
+        byUpperCase.putIfAbsent(e.name().toUpperCase(Locale.ROOT), e);
+      }
+      return new Converter<T>(source, target) {
+        @Override
+        public T convert(Object value) {
+          if (value == null)
+            return null;
+          String name = value instanceof Enum ? ((Enum<?>) value).name() : value.toString().trim();
+          Enum<?> e = byName.get(name);
+          if (e == null)
+            e = byUpperCase.get(name.toUpperCase(Locale.ROOT));
+          if (e == null)
+            throw cannotConvert(value, target);
+          return (T) e;
+        }
+      };
+    }
+    if (s.isNumber()) {
+      Converter<Integer> ordinals = resolve(source, int.class);
+      return new Converter<T>(source, target) {
+        @Override
+        public T convert(Object value) {
+          if (value == null)
+            return null;
+          int ordinal = ordinals.toInt(value);
+          if (ordinal < 0 || ordinal >= constants.length)
+            throw cannotConvert(value, target);
+          return (T) constants[ordinal];
+        }
+      };
+    }
+    return null;
+  }
+
+  private static <T> Converter<T> toArray(Class<?> source, Typ.Info s, Class<T> target) {
+    Class<?> component = target.getComponentType();
+    Class<?> sourceComponent = source.isArray() ? source.getComponentType() : s.isCharSequence() ? String.class : null;
+    Converter<?> elements;
+    if (sourceComponent != null && (sourceComponent.isPrimitive() || Modifier.isFinal(sourceComponent.getModifiers()))) {
+      elements = TARGETS.get(component).exact(wrap(sourceComponent));
+      if (elements instanceof Unsupported)
+        return null;
+    } else {
+      elements = to(component);
+    }
+    return new ToArray<>(source, target, sourceComponent, elements);
+  }
+
+  static long parseLong(CharSequence cs) {
+    int from = 0, to = cs.length();
+    while (from < to && cs.charAt(from) <= ' ')
+      from++;
+    while (to > from && cs.charAt(to - 1) <= ' ')
+      to--;
+    int i = from;
+    boolean negative = false;
+    if (i < to && (cs.charAt(i) == '-' || cs.charAt(i) == '+')) {
+      negative = cs.charAt(i) == '-';
+      i++;
+    }
+    // 18 digits can not overflow
+    if (i == to || to - i > 18)
+      return slowParseLong(cs);
+    long v = 0;
+    for (; i < to; i++) {
+      char c = cs.charAt(i);
+      if (c < '0' || c > '9')
+        return slowParseLong(cs);
+      v = v * 10 + (c - '0');
+    }
+    return negative ? -v : v;
+  }
+
+  /**
+   * 19 位以上, 小数和指数形式的整数, 例如 "3.0" 和 "1e3"
+   */
+  private static long slowParseLong(CharSequence cs) {
+    try {
+      return parseBigDecimal(cs).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("\"" + cs + "\" is not an integer in the range of long");
+    }
+  }
+
+  static double parseDouble(CharSequence cs) {
+    try {
+      return Decimals.parseDouble(cs);
+    } catch (NumberFormatException e) {
+      throw cannotConvert(cs, double.class);
+    }
+  }
+
+  private static BigDecimal parseBigDecimal(CharSequence cs) {
+    try {
+      return new BigDecimal(cs.toString().trim());
+    } catch (NumberFormatException e) {
+      throw cannotConvert(cs, BigDecimal.class);
+    }
+  }
+
+  /**
+   * 可选的符号后面只有数字
+   */
+  private static boolean isInteger(CharSequence cs) {
+    String s = cs.toString().trim();
+    int i = s.startsWith("-") || s.startsWith("+") ? 1 : 0;
+    if (i == s.length())
+      return false;
+    for (; i < s.length(); i++) {
+      if (s.charAt(i) < '0' || s.charAt(i) > '9')
+        return false;
+    }
+    return true;
+  }
+
+  static boolean parseBoolean(CharSequence cs) {
+    String s = cs.toString().trim();
+    if (s.equalsIgnoreCase("true") || s.equals("1"))
+      return true;
+    if (s.equalsIgnoreCase("false") || s.equals("0"))
+      return false;
+    throw cannotConvert(cs, boolean.class);
+  }
+
+  /**
+   * 毫秒数, 或者 ISO-8601 的日期时间, 例如 2017-01-16T10:15:30Z, 2017-01-16T10:15:30+08:00, 2017-01-16T10:15:30
+   * 和 2017-01-16, 没有时区的按系统时区
+   */
+  static long parseMillis(CharSequence cs) {
+    String s = cs.toString().trim();
+    if (isInteger(s))
+      return parseLong(s);
+    try {
+      TemporalAccessor t = DateTimeFormatter.ISO_DATE_TIME.parseBest(s, ZonedDateTime::from, LocalDateTime::from);
+      if (t instanceof LocalDateTime)
+        t = ((LocalDateTime) t).atZone(ZoneId.systemDefault());
+      return Instant.from(t).toEpochMilli();
+    } catch (DateTimeParseException e) {
+      // fall through, a date without time
+    }
+    try {
+      return LocalDate.parse(s).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      throw cannotConvert(cs, Date.class);
+    }
+  }
+
+  /**
+   * 每个 target 一个, 按值的实际类型缓存转换方式. last 不是 volatile: Converter 是不可变的, 读到旧值只会多查一次表
+   */
+  private static final class Target<T> extends Converter<T> {
+    private final ClassValue<Converter<T>> bySource = new ClassValue<Converter<T>>() {
+      @Override
+      protected Converter<T> computeValue(Class<?> type) {
+        Converter<T> c = resolve(type, target);
+        return c != null ? c : new Unsupported<>(type, target);
+      }
+    };
+    private Converter<T> last;
+
+    @SuppressWarnings("unchecked")
+    Target(Class<?> target) {
+      super(Object.class, (Class<T>) target);
+    }
+
+    Converter<T> exact(Class<?> source) {
+      return bySource.get(source);
+    }
+
+    private Converter<T> of(Object value) {
+      Class<?> type = value.getClass();
+      Converter<T> c = last;
+      if (c == null || c.source != type) {
+        c = bySource.get(type);
+        if (c instanceof Unsupported)
+          throw cannotConvert(type, target);
+        last = c;
+      }
+      return c;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T convert(Object value) {
+      if (value == null)
+        return kind >= 0 && target.isPrimitive() ? (T) ZEROS[kind] : null;
+      return of(value).convert(value);
+    }
+
+    @Override
+    public long toLong(Object value) {
+      return value == null ? super.toLong(null) : of(value).toLong(value);
+    }
+
+    @Override
+    public int toInt(Object value) {
+      return value == null ? super.toInt(null) : of(value).toInt(value);
+    }
+
+    @Override
+    public double toDouble(Object value) {
+      return value == null ? super.toDouble(null) : of(value).toDouble(value);
+    }
+
+    @Override
+    public boolean toBoolean(Object value) {
+      return value == null ? super.toBoolean(null) : of(value).toBoolean(value);
+    }
+  }
+
+  private static final class Unsupported<T> extends Converter<T> {
+    Unsupported(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    public T convert(Object value) {
+      throw cannotConvert(source, target);
+    }
+  }
+
+  private static final class Identity<T> extends Converter<T> {
+    Identity(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    public T convert(Object value) {
+      return target.cast(value);
+    }
+  }
+
+  /**
+   * target 为基本类型或者包装类型. 子类按 source 的类型读出 long, double 或者 boolean, 这里按 target 检查范围
+   */
+  private abstract static class ToPrimitive<T> extends Converter<T> {
+    ToPrimitive(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    /**
+     * @throws IllegalArgumentException 值不是 long 范围内的整数
+     */
+    abstract long readLong(Object value);
+
+    abstract double readDouble(Object value);
+
+    boolean readBoolean(Object value) {
+      return Converters.toBoolean(readLong(value));
+    }
+
+    private long narrow(long v) {
+      switch (kind) {
+        case CHAR:
+          return Converters.toChar(v);
+        case BYTE:
+          return Converters.toByte(v);
+        case SHORT:
+          return Converters.toShort(v);
+        case INT:
+          return Converters.toInt(v);
+        default:
+          return v;
+      }
+    }
+
+    @Override
+    public long toLong(Object value) {
+      if (!widens(kind, LONG))
+        throw unsupported("toLong");
+      return value == null ? 0 : narrow(readLong(value));
+    }
+
+    @Override
+    public int toInt(Object value) {
+      if (!widens(kind, INT))
+        throw unsupported("toInt");
+      return value == null ? 0 : (int) narrow(readLong(value));
+    }
+
+    @Override
+    public double toDouble(Object value) {
+      if (!widens(kind, DOUBLE))
+        throw unsupported("toDouble");
+      if (value == null)
+        return 0;
+      if (kind == DOUBLE)
+        return readDouble(value);
+      if (kind == FLOAT)
+        return Converters.toFloat(readDouble(value));
+      return narrow(readLong(value));
+    }
+
+    @Override
+    public boolean toBoolean(Object value) {
+      if (kind != BOOLEAN)
+        throw unsupported("toBoolean");
+      return value != null && readBoolean(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T convert(Object value) {
+      if (value == null)
+        return target.isPrimitive() ? (T) ZEROS[kind] : null;
+      Object v;
+      switch (kind) {
+        case BOOLEAN:
+          v = readBoolean(value);
+          break;
+        case CHAR:
+          v = Converters.toChar(readLong(value));
+          break;
+        case BYTE:
+          v = Converters.toByte(readLong(value));
+          break;
+        case SHORT:
+          v = Converters.toShort(readLong(value));
+          break;
+        case INT:
+          v = Converters.toInt(readLong(value));
+          break;
+        case LONG:
+          v = readLong(value);
+          break;
+        case FLOAT:
+          v = Converters.toFloat(readDouble(value));
+          break;
+        default:
+          v = readDouble(value);
+      }
+      return (T) v;
+    }
+  }
+
+  private static final class FromIntegral<T> extends ToPrimitive<T> {
+    FromIntegral(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return ((Number) value).longValue();
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Number) value).longValue();
+    }
+  }
+
+  private static final class FromFloating<T> extends ToPrimitive<T> {
+    FromFloating(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return Converters.toLong(((Number) value).doubleValue());
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Number) value).doubleValue();
+    }
+  }
+
+  private static final class FromBigInteger<T> extends ToPrimitive<T> {
+    FromBigInteger(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      BigInteger v = (BigInteger) value;
+      if (v.bitLength() >= 64)
+        throw new IllegalArgumentException(v + " is out of range for long");
+      return v.longValue();
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((BigInteger) value).doubleValue();
+    }
+  }
+
+  private static final class FromBigDecimal<T> extends ToPrimitive<T> {
+    FromBigDecimal(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      try {
+        return ((BigDecimal) value).longValueExact();
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException(value + " is not an integer in the range of long");
+      }
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((BigDecimal) value).doubleValue();
+    }
+  }
+
+  /**
+   * 其它 Number, 例如 DoubleAdder
+   */
+  private static final class FromNumber<T> extends ToPrimitive<T> {
+    FromNumber(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      Number n = (Number) value;
+      long l = n.longValue();
+      double d = n.doubleValue();
+      return l == d ? l : Converters.toLong(d);
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Number) value).doubleValue();
+    }
+  }
+
+  private static final class FromBoolean<T> extends ToPrimitive<T> {
+    FromBoolean(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return (Boolean) value ? 1 : 0;
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return (Boolean) value ? 1 : 0;
+    }
+
+    @Override
+    boolean readBoolean(Object value) {
+      return (Boolean) value;
+    }
+  }
+
+  private static final class FromCharacter<T> extends ToPrimitive<T> {
+    FromCharacter(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return (Character) value;
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return (Character) value;
+    }
+  }
+
+  private static final class FromChars<T> extends ToPrimitive<T> {
+    FromChars(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      CharSequence cs = (CharSequence) value;
+      if (kind != CHAR)
+        return parseLong(cs);
+      if (cs.length() != 1)
+        throw cannotConvert(cs, char.class);
+      return cs.charAt(0);
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return parseDouble((CharSequence) value);
+    }
+
+    @Override
+    boolean readBoolean(Object value) {
+      return parseBoolean((CharSequence) value);
+    }
+  }
+
+  private static final class FromDate<T> extends ToPrimitive<T> {
+    FromDate(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return ((Date) value).getTime();
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Date) value).getTime();
+    }
+
+    @Override
+    boolean readBoolean(Object value) {
+      throw cannotConvert(source, target);
+    }
+  }
+
+  private static final class FromCalendar<T> extends ToPrimitive<T> {
+    FromCalendar(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return ((Calendar) value).getTimeInMillis();
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Calendar) value).getTimeInMillis();
+    }
+
+    @Override
+    boolean readBoolean(Object value) {
+      throw cannotConvert(source, target);
+    }
+  }
+
+  private static final class FromEnum<T> extends ToPrimitive<T> {
+    FromEnum(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    long readLong(Object value) {
+      return ((Enum<?>) value).ordinal();
+    }
+
+    @Override
+    double readDouble(Object value) {
+      return ((Enum<?>) value).ordinal();
+    }
+
+    @Override
+    boolean readBoolean(Object value) {
+      throw cannotConvert(source, target);
+    }
+  }
+
+  private static final class ToString<T> extends Converter<T> {
+    ToString(Class<?> source, Class<T> target) {
+      super(source, target);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T convert(Object value) {
+      return (T) toString(value);
+    }
+
+    private static String toString(Object value) {
+      if (value == null)
+        return null;
+      if (value instanceof char[])
+        return new String((char[]) value);
+      if (value instanceof Enum)
+        return ((Enum<?>) value).name();
+      if (value instanceof BigDecimal)
+        return ((BigDecimal) value).toPlainString();
+      if (value instanceof Date)
+        return Instant.ofEpochMilli(((Date) value).getTime()).toString();
+      if (value instanceof Calendar) {
+        Calendar c = (Calendar) value;
+        return ZonedDateTime.ofInstant(c.toInstant(), c.getTimeZone().toZoneId()).toOffsetDateTime().toString();
+      }
+      if (value.getClass().isArray()) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0, n = Array.getLength(value); i < n; i++) {
+          if (i > 0)
+            sb.append(',');
+          sb.append(toString(Array.get(value, i)));
+        }
+        return sb.toString();
+      }
+      return value.toString();
+    }
+  }
+
+  /**
+   * 基本类型数组之间按元素的 long 或 double 值直接转换; 其它情况按 source 的元素类型解析一次元素的 Converter,
+   * 元素类型不是 final 的时候按每个元素的实际类型转换
+   */
+  private static final class ToArray<T> extends Converter<T> {
+    private final Class<?> component;
+    private final int componentKind;
+    private final int sourceKind;
+    private final Converter<?> elements;
+
+    /**
+     * @param sourceComponent 集合为 null, 字符串为 String
+     */
+    ToArray(Class<?> source, Class<T> target, Class<?> sourceComponent, Converter<?> elements) {
+      super(source, target);
+      this.component = target.getComponentType();
+      this.componentKind = component.isPrimitive() ? kind(component) : -1;
+      this.sourceKind = sourceComponent != null && sourceComponent.isPrimitive() ? kind(sourceComponent) : -1;
+      this.elements = elements;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T convert(Object value) {
+      if (value == null)
+        return null;
+      if (value instanceof CharSequence) {
+        if (componentKind == CHAR)
+          return (T) value.toString().toCharArray();
+        value = split((CharSequence) value);
+      }
+      if (value instanceof Collection)
+        value = ((Collection<?>) value).toArray();
+      int n = Array.getLength(value);
+      Object array = Array.newInstance(component, n);
+      if (sourceKind >= 0 && componentKind >= 0) {
+        boolean floating = sourceKind == FLOAT || sourceKind == DOUBLE;
+        for (int i = 0; i < n; i++) {
+          if (floating)
+            setDouble(array, i, sourceKind == FLOAT ? ((float[]) value)[i] : ((double[]) value)[i]);
+          else
+            setLong(array, i, getLong(value, i));
+        }
+      } else if (sourceKind >= 0) {
+        for (int i = 0; i < n; i++)
+          ((Object[]) array)[i] = elements.convert(Array.get(value, i));
+      } else {
+        Object[] values = (Object[]) value;
+        for (int i = 0; i < n; i++)
+          set(array, i, values[i]);
+      }
+      return (T) array;
+    }
+
+    private static String[] split(CharSequence cs) {
+      String s = cs.toString().trim();
+      // Arrays.toString format
+      if (s.startsWith("[") && s.endsWith("]"))
+        s = s.substring(1, s.length() - 1).trim();
+      if (s.isEmpty())
+        return new String[0];
+      List<String> parts = new ArrayList<>();
+      for (String part : s.split(","))
+        parts.add(part.trim());
+      return parts.toArray(new String[parts.size()]);
+    }
+
+    private long getLong(Object array, int i) {
+      switch (sourceKind) {
+        case BOOLEAN:
+          return ((boolean[]) array)[i] ? 1 : 0;
+        case CHAR:
+          return ((char[]) array)[i];
+        case BYTE:
+          return ((byte[]) array)[i];
+        case SHORT:
+          return ((short[]) array)[i];
+        case INT:
+          return ((int[]) array)[i];
+        default:
+          return ((long[]) array)[i];
+      }
+    }
+
+    private void setLong(Object array, int i, long v) {
+      switch (componentKind) {
+        case BOOLEAN:
+          ((boolean[]) array)[i] = Converters.toBoolean(v);
+          break;
+        case CHAR:
+          ((char[]) array)[i] = Converters.toChar(v);
+          break;
+        case BYTE:
+          ((byte[]) array)[i] = Converters.toByte(v);
+          break;
+        case SHORT:
+          ((short[]) array)[i] = Converters.toShort(v);
+          break;
+        case INT:
+          ((int[]) array)[i] = Converters.toInt(v);
+          break;
+        case LONG:
+          ((long[]) array)[i] = v;
+          break;
+        case FLOAT:
+          ((float[]) array)[i] = v;
+          break;
+        default:
+          ((double[]) array)[i] = v;
+      }
+    }
+
+    private void setDouble(Object array, int i, double v) {
+      if (componentKind == FLOAT)
+        ((float[]) array)[i] = Converters.toFloat(v);
+      else if (componentKind == DOUBLE)
+        ((double[]) array)[i] = v;
+      else
+        setLong(array, i, Converters.toLong(v));
+    }
+
+    private void set(Object array, int i, Object e) {
+      Converter<?> c = elements;
+      switch (componentKind) {
+        case BOOLEAN:
+          ((boolean[]) array)[i] = c.toBoolean(e);
+          break;
+        case CHAR:
+          ((char[]) array)[i] = (char) c.toInt(e);
+          break;
+        case BYTE:
+          ((byte[]) array)[i] = (byte) c.toInt(e);
+          break;
+        case SHORT:
+          ((short[]) array)[i] = (short) c.toInt(e);
+          break;
+        case INT:
+          ((int[]) array)[i] = c.toInt(e);
+          break;
+        case LONG:
+          ((long[]) array)[i] = c.toLong(e);
+          break;
+        case FLOAT:
+          // already rounded and range checked by the float converter
+          ((float[]) array)[i] = (float) c.toDouble(e);
+          break;
+        case DOUBLE:
+          ((double[]) array)[i] = c.toDouble(e);
+          break;
+        default:
+          ((Object[]) array)[i] = c.convert(e);
+      }
+    }
+  }
+}
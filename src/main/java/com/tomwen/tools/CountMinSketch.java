@@ -0,0 +1,216 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Count-Min sketch: 用固定的内存估计每个值出现的次数, 只会高估不会低估.
+ * 总次数为 N 时, 估计值超过真实值 epsilon * N 的概率不超过 delta.
+ * <pre>
+ * CountMinSketch hits = CountMinSketch.create(0.0001, 0.001);
+ * hits.add(symbol);
+ * hits.add(accountId, quantity);
+ * long approx = hits.estimateCount(symbol);
+ * </pre>
+ * <ul>
+ * <li>depth 行, 每行 width (2 的幂) 个 long 计数器, 每行的位置由 Kirsch-Mitzenmacher 的 h1 + i * h2 得到.</li>
+ * <li>{@link #concurrent(boolean)} 之后 add 用原子加; 大小相同的 sketch 可以 {@link #merge(CountMinSketch)}.</li>
+ * <li>{@link #toBytes()} 把计数器写成变长整数, 稀疏的 sketch 比 long[] 小得多.</li>
+ * </ul>
+ * 装箱的数字按 {@link Compare} 的规则哈希, add(Long) 与 add(long) 相同; 字符串使用 {@link Hasher}.
+ */
+public class CountMinSketch {
+  private static final int MIN_WIDTH = 16;
+  private static final int MAX_DEPTH = 32;
+  private static final long MAX_COUNTERS = 1 << 30;
+
+  private final int width;
+  private final int depth;
+  private final int shift;
+  private final long[] counters;
+  private boolean concurrent;
+
+  /**
+   * @param width 每行的计数器个数, 向上取整为 2 的幂, 最少 16
+   * @param depth 行数, 在 [1, 32] 之间
+   */
+  public CountMinSketch(int width, int depth) {
+    this(checkWidth(width, depth), depth, null);
+  }
+
+  private CountMinSketch(int width, int depth, long[] counters) {
+    this.width = width;
+    this.depth = depth;
+    this.shift = 64 - Sketches.log2(width);
+    this.counters = counters == null ? new long[width * depth] : counters;
+  }
+
+  private static int checkWidth(int width, int depth) {
+    if (depth < 1 || depth > MAX_DEPTH)
+      throw new IllegalArgumentException("depth must be in [1, " + MAX_DEPTH + "], was " + depth);
+    if (width < 1)
+      throw new IllegalArgumentException("width must be > 0, was " + width);
+    long rounded = Maths.nextPower2((long) width, MIN_WIDTH);
+    if (rounded * depth > MAX_COUNTERS)
+      throw new IllegalArgumentException("width * depth must be <= " + MAX_COUNTERS + ", was " + rounded + " * " + depth);
+    return (int) rounded;
+  }
+
+  /**
+   * width = e / epsilon 取整为 2 的幂, depth = ln(1 / delta)
+   */
+  public static CountMinSketch create(double epsilon, double delta) {
+    if (!(epsilon > 0 && epsilon < 1))
+      throw new IllegalArgumentException("epsilon must be in (0, 1), was " + epsilon);
+    if (!(delta > 0 && delta < 1))
+      throw new IllegalArgumentException("delta must be in (0, 1), was " + delta);
+    int width = (int) Math.min(MAX_COUNTERS, (long) Math.ceil(Math.E / epsilon));
+    int depth = (int) Math.max(1, Math.min(MAX_DEPTH, Math.ceil(Math.log(1 / delta))));
+    return new CountMinSketch(width, depth);
+  }
+
+  /**
+   * 是否允许多个线程同时 add, 在共享给其它线程之前设置
+   */
+  public CountMinSketch concurrent(boolean concurrent) {
+    this.concurrent = concurrent;
+    return this;
+  }
+
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  public void add(long key) {
+    addHash(Sketches.hash(key), 1);
+  }
+
+  public void add(long key, long count) {
+    addHash(Sketches.hash(key), count);
+  }
+
+  public void add(CharSequence key) {
+    addHash(Sketches.hash(key), 1);
+  }
+
+  public void add(CharSequence key, long count) {
+    addHash(Sketches.hash(key), count);
+  }
+
+  public void add(Object key) {
+    addHash(Sketches.hash(key), 1);
+  }
+
+  public void add(Object key, long count) {
+    addHash(Sketches.hash(key), count);
+  }
+
+  /**
+   * @param hash  调用者计算的 64 位哈希, 每一位都需要均匀分布
+   * @param count 不能为负数
+   */
+  public void addHash(long hash, long count) {
+    if (count < 0)
+      throw new IllegalArgumentException("count must be >= 0, was " + count);
+    long h2 = Sketches.second(hash);
+    for (int row = 0, base = 0; row < depth; row++, base += width, hash += h2)
+      Sketches.add(counters, base + (int) (hash >>> shift), count, concurrent);
+  }
+
+  public long estimateCount(long key) {
+    return estimateCountHash(Sketches.hash(key));
+  }
+
+  public long estimateCount(CharSequence key) {
+    return estimateCountHash(Sketches.hash(key));
+  }
+
+  public long estimateCount(Object key) {
+    return estimateCountHash(Sketches.hash(key));
+  }
+
+  public long estimateCountHash(long hash) {
+    long h2 = Sketches.second(hash);
+    long min = Long.MAX_VALUE;
+    for (int row = 0, base = 0; row < depth; row++, base += width, hash += h2)
+      min = Math.min(min, counter(base + (int) (hash >>> shift)));
+    return min;
+  }
+
+  private long counter(int index) {
+    return concurrent ? Sketches.getVolatile(counters, index) : counters[index];
+  }
+
+  /**
+   * 所有 add 的 count 之和
+   */
+  public long size() {
+    long sum = 0;
+    for (int i = 0; i < width; i++)
+      sum += counter(i);
+    return sum;
+  }
+
+  /**
+   * 把 other 的计数加进来, 两者的 width 和 depth 必须相同
+   */
+  public void merge(CountMinSketch other) {
+    if (other.width != width || other.depth != depth)
+      throw new IllegalArgumentException("Incompatible sketches: " + this + " and " + other);
+    for (int i = 0; i < counters.length; i++) {
+      long count = other.counter(i);
+      if (count != 0)
+        Sketches.add(counters, i, count, concurrent);
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < counters.length; i++)
+      counters[i] = 0;
+  }
+
+  public int width() {
+    return width;
+  }
+
+  public int depth() {
+    return depth;
+  }
+
+  /**
+   * | type 1 | version 1 | width 4 | depth 1 | 每个计数器一个变长整数 |
+   */
+  public byte[] toBytes() {
+    long[] snapshot = new long[counters.length];
+    int size = 7;
+    for (int i = 0; i < counters.length; i++) {
+      snapshot[i] = counter(i);
+      size += Sketches.varLongSize(snapshot[i]);
+    }
+    ByteBuffer buffer = Sketches.header(Sketches.TYPE_CMS, size);
+    buffer.putInt(width).put((byte) depth);
+    for (long count : snapshot)
+      Sketches.putVarLong(buffer, count);
+    return buffer.array();
+  }
+
+  public static CountMinSketch fromBytes(byte[] bytes) {
+    ByteBuffer buffer = Sketches.readHeader(bytes, Sketches.TYPE_CMS);
+    if (buffer.remaining() < 5)
+      throw new IllegalArgumentException("Truncated CountMinSketch");
+    int width = buffer.getInt();
+    int depth = buffer.get();
+    if (width < MIN_WIDTH || !Maths.isPowerOf2(width) || checkWidth(width, depth) != width)
+      throw new IllegalArgumentException("Invalid CountMinSketch width " + width);
+    long[] counters = new long[width * depth];
+    for (int i = 0; i < counters.length; i++)
+      counters[i] = Sketches.getVarLong(buffer);
+    if (buffer.hasRemaining())
+      throw new IllegalArgumentException(buffer.remaining() + " trailing bytes after CountMinSketch");
+    return new CountMinSketch(width, depth, counters);
+  }
+
+  @Override
+  public String toString() {
+    return "CountMinSketch{width=" + width + ", depth=" + depth + ", concurrent=" + concurrent + '}';
+  }
+}
@@ -0,0 +1,313 @@
+package com.tomwen.tools;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * 定点小数的格式化和解析, 不创建中间的 String.
+ * <p>
+ * 格式化时的舍入与 {@link Maths#round2(double)} 等方法相同: 误差在 1 ulp 以内, 非常接近 0.5 的值可能向上也可能向下舍入.
+ * 超出 long 能表示的范围, NaN 和 Infinity 时退回到 {@link Double#toString(double)} 的格式, 此时会分配对象.
+ * <pre>
+ * Decimals.append(sb, 1.23456, 4);         // 1.2346
+ * Decimals.parseDouble("1.2346");           // 1.2346
+ * Decimals.parseScaled("1.2346", 0, 6, 2);  // 123
+ * </pre>
+ */
+public class Decimals {
+  /**
+   * 小于等于这个值的 long 可以精确地转换为 double
+   */
+  private static final long EXACT_LONG = 1L << 53;
+  /**
+   * 10^22 是能被 double 精确表示的最大的 10 的幂
+   */
+  private static final int MAX_EXACT_POWER10 = 22;
+  private static final int MAX_DIGITS = 18;
+
+  public static StringBuilder append(StringBuilder sb, double d, int decimals) {
+    long factor = factor(decimals);
+    if (!inRange(d, factor))
+      return sb.append(d);
+    long scaled = scale(d, factor);
+    if (scaled < 0) {
+      sb.append('-');
+      scaled = -scaled;
+    }
+    sb.append(scaled / factor);
+    if (decimals > 0) {
+      sb.append('.');
+      long fraction = scaled % factor;
+      for (int i = digits(fraction); i < decimals; i++)
+        sb.append('0');
+      sb.append(fraction);
+    }
+    return sb;
+  }
+
+  /**
+   * @return 写入后的下一个位置
+   * @throws ArrayIndexOutOfBoundsException 如果 buf 放不下
+   */
+  public static int append(char[] buf, int offset, double d, int decimals) {
+    long factor = factor(decimals);
+    if (!inRange(d, factor)) {
+      String s = Double.toString(d);
+      s.getChars(0, s.length(), buf, offset);
+      return offset + s.length();
+    }
+    long scaled = scale(d, factor);
+    if (scaled < 0) {
+      buf[offset++] = '-';
+      scaled = -scaled;
+    }
+    long whole = scaled / factor;
+    offset = putDigits(buf, offset, whole, digits(whole));
+    if (decimals > 0) {
+      buf[offset++] = '.';
+      offset = putDigits(buf, offset, scaled % factor, decimals);
+    }
+    return offset;
+  }
+
+  /**
+   * 以 ASCII 写入到 buffer 的 position, 并移动 position
+   *
+   * @throws BufferOverflowException 如果 buffer 放不下, 此时不写入任何内容
+   */
+  public static ByteBuffer append(ByteBuffer bb, double d, int decimals) {
+    long factor = factor(decimals);
+    if (!inRange(d, factor)) {
+      String s = Double.toString(d);
+      if (bb.remaining() < s.length())
+        throw new BufferOverflowException();
+      for (int i = 0; i < s.length(); i++)
+        bb.put((byte) s.charAt(i));
+      return bb;
+    }
+    long scaled = scale(d, factor);
+    long abs = Math.abs(scaled);
+    long whole = abs / factor;
+    int wholeDigits = digits(whole);
+    int length = (scaled < 0 ? 1 : 0) + wholeDigits + (decimals > 0 ? decimals + 1 : 0);
+    if (bb.remaining() < length)
+      throw new BufferOverflowException();
+    int offset = bb.position();
+    if (scaled < 0)
+      bb.put(offset++, (byte) '-');
+    offset = putDigits(bb, offset, whole, wholeDigits);
+    if (decimals > 0) {
+      bb.put(offset++, (byte) '.');
+      offset = putDigits(bb, offset, abs % factor, decimals);
+    }
+    bb.position(offset);
+    return bb;
+  }
+
+  public static double parseDouble(CharSequence cs) {
+    return parseDouble(cs, null, 0, cs.length());
+  }
+
+  public static double parseDouble(CharSequence cs, int from, int to) {
+    checkRange(from, to, cs.length());
+    return parseDouble(cs, null, from, to);
+  }
+
+  /**
+   * 解析 position 到 limit 之间的 ASCII 字节, 不修改 buffer 的 position
+   */
+  public static double parseDouble(ByteBuffer bb) {
+    return parseDouble(null, bb, bb.position(), bb.limit());
+  }
+
+  /**
+   * 解析 [from, to) 之间的 ASCII 字节, 使用绝对位置
+   */
+  public static double parseDouble(ByteBuffer bb, int from, int to) {
+    checkRange(from, to, bb.limit());
+    return parseDouble(null, bb, from, to);
+  }
+
+  /**
+   * 把小数解析为乘以 10^decimals 后的 long, 多出的小数位四舍五入(远离 0).
+   * 不支持指数形式.
+   * <pre>
+   * parseScaled("-1.235", 0, 6, 2) == -124
+   * </pre>
+   */
+  public static long parseScaled(CharSequence cs, int from, int to, int decimals) {
+    checkRange(from, to, cs.length());
+    return parseScaled(cs, null, from, to, decimals);
+  }
+
+  /**
+   * 同 {@link #parseScaled(CharSequence, int, int, int)}, 解析 [from, to) 之间的 ASCII 字节
+   */
+  public static long parseScaled(ByteBuffer bb, int from, int to, int decimals) {
+    checkRange(from, to, bb.limit());
+    return parseScaled(null, bb, from, to, decimals);
+  }
+
+  private static double parseDouble(CharSequence cs, ByteBuffer bb, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to) {
+      int c = charAt(cs, bb, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean point = false;
+    boolean exact = false;
+    for (; i < to; i++) {
+      int c = charAt(cs, bb, i);
+      if (c >= '0' && c <= '9') {
+        exact = true;
+        if (mantissa == 0 && c == '0') {
+          // leading zeros are not significant
+        } else if (++digits > MAX_DIGITS) {
+          exact = false;
+          break;
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        if (point)
+          scale++;
+      } else if (c == '.' && !point) {
+        point = true;
+      } else {
+        // exponent, NaN, Infinity or a malformed number
+        exact = false;
+        break;
+      }
+    }
+    if (!exact || mantissa > EXACT_LONG || scale > MAX_EXACT_POWER10)
+      return slowParseDouble(cs, bb, from, to);
+    // both operands are exact so the division is correctly rounded.
+    double d = scale == 0 ? mantissa : mantissa / power10d(scale);
+    return negative ? -d : d;
+  }
+
+  private static long parseScaled(CharSequence cs, ByteBuffer bb, int from, int to, int decimals) {
+    factor(decimals);
+    int i = from;
+    boolean negative = false;
+    if (i < to) {
+      int c = charAt(cs, bb, i);
+      if (c == '-' || c == '+') {
+        negative = c == '-';
+        i++;
+      }
+    }
+    long value = 0;
+    int scale = 0;
+    int digits = 0;
+    boolean point = false;
+    boolean roundUp = false;
+    for (; i < to; i++) {
+      int c = charAt(cs, bb, i);
+      if (c >= '0' && c <= '9') {
+        digits++;
+        if (!point || scale < decimals) {
+          if (value > (Long.MAX_VALUE - 9) / 10)
+            throw new NumberFormatException("Out of range: " + text(cs, bb, from, to));
+          value = value * 10 + (c - '0');
+          if (point)
+            scale++;
+        } else if (scale == decimals) {
+          roundUp = c >= '5';
+          scale++;
+        }
+      } else if (c == '.' && !point) {
+        point = true;
+      } else {
+        throw new NumberFormatException("Invalid decimal: " + text(cs, bb, from, to));
+      }
+    }
+    if (digits == 0)
+      throw new NumberFormatException("Invalid decimal: " + text(cs, bb, from, to));
+    long pad = Maths.power10(decimals - Math.min(scale, decimals));
+    if (value > Long.MAX_VALUE / pad)
+      throw new NumberFormatException("Out of range: " + text(cs, bb, from, to));
+    value *= pad;
+    if (roundUp)
+      value++;
+    return negative ? -value : value;
+  }
+
+  private static double slowParseDouble(CharSequence cs, ByteBuffer bb, int from, int to) {
+    return Double.parseDouble(text(cs, bb, from, to));
+  }
+
+  private static String text(CharSequence cs, ByteBuffer bb, int from, int to) {
+    if (cs != null)
+      return cs.subSequence(from, to).toString();
+    StringBuilder sb = new StringBuilder(to - from);
+    for (int i = from; i < to; i++)
+      sb.append((char) (bb.get(i) & 0xFF));
+    return sb.toString();
+  }
+
+  private static int charAt(CharSequence cs, ByteBuffer bb, int i) {
+    return cs != null ? cs.charAt(i) : bb.get(i) & 0xFF;
+  }
+
+  private static double power10d(int n) {
+    return n <= MAX_DIGITS ? Maths.power10(n) : Math.pow(10, n);
+  }
+
+  private static long factor(int decimals) {
+    long factor = Maths.power10(decimals);
+    if (factor < 0)
+      throw new IllegalArgumentException("decimals must be in [0, 18], was " + decimals);
+    return factor;
+  }
+
+  /**
+   * d * factor 严格小于 2^63, 舍入后不会饱和为 Long.MIN_VALUE 或 Long.MAX_VALUE (取反和取绝对值会溢出). NaN 和 Infinity 不在范围内
+   */
+  private static boolean inRange(double d, long factor) {
+    // the largest double below 2^63 is 2^63 - 1024, adding 0.5 in scale() rounds back to it
+    return Math.abs(d * factor) < 0x1p63;
+  }
+
+  private static long scale(double d, long factor) {
+    return (long) (d < 0 ? d * factor - 0.5 : d * factor + 0.5);
+  }
+
+  /**
+   * @param v 非负数
+   */
+  private static int digits(long v) {
+    int n = 1;
+    while (n <= MAX_DIGITS && v >= Maths.power10(n))
+      n++;
+    return n;
+  }
+
+  private static int putDigits(char[] buf, int offset, long v, int width) {
+    int end = offset + width;
+    for (int i = end - 1; i >= offset; i--) {
+      buf[i] = (char) ('0' + v % 10);
+      v /= 10;
+    }
+    return end;
+  }
+
+  private static int putDigits(ByteBuffer bb, int offset, long v, int width) {
+    int end = offset + width;
+    for (int i = end - 1; i >= offset; i--) {
+      bb.put(i, (byte) ('0' + v % 10));
+      v /= 10;
+    }
+    return end;
+  }
+
+  private static void checkRange(int from, int to, int length) {
+    if (from < 0 || to > length || from > to)
+      throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + length);
+  }
+}
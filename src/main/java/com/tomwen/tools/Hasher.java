@@ -0,0 +1,403 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.tomwen.tools.UnsafeMemory.BYTE_ARRAY_OFFSET;
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 64 位哈希, 算法为 xxHash64 (https://github.com/Cyan4973/xxHash), 每步处理 8 个字节, 不分配对象.
+ * 用来替代 {@link Compare#calcLongHashCode(CharSequence)} 和 {@link Maths#hash(CharSequence)} 里逐个字符相乘的写法.
+ * <p>
+ * 静态方法是一次性的哈希:
+ * <ul>
+ * <li>{@code byte[]}, {@link ByteBuffer}, 内存地址的结果就是标准 xxHash64 的结果.</li>
+ * <li>{@link CharSequence} 按 UTF-16LE 的字节计算, 与 {@code hash(s.getBytes(UTF_16LE))} 相同.</li>
+ * <li>hashLatin1 每个字符只取低 8 位, 与 {@code hash(s.getBytes(ISO_8859_1))} 相同, 所以同样内容的 ASCII 字节和字符
+ * 得到同样的哈希.</li>
+ * </ul>
+ * 实例用于增量地组合多个字段, 可以复用以避免分配:
+ * <pre>
+ * Hasher hasher = new Hasher();
+ * long key = hasher.reset().put(accountId).put(symbol).put(price).hash();
+ * </pre>
+ * 增量结果与把这些字段拼成字节后的一次性哈希 <b>不</b> 相等. 实例非线程安全.
+ */
+public final class Hasher {
+  private static final long P1 = 0x9E3779B185EBCA87L;
+  private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long P3 = 0x165667B19E3779F9L;
+  private static final long P4 = 0x85EBCA77C2B2AE63L;
+  private static final long P5 = 0x27D4EB2F165667C5L;
+  private static final long NULL_HASHCODE = Long.MIN_VALUE;
+
+  private final long seed;
+  private long hash;
+  private long length;
+
+  public Hasher() {
+    this(0);
+  }
+
+  public Hasher(long seed) {
+    this.seed = seed;
+    reset();
+  }
+
+  public static long hash(CharSequence cs) {
+    return hash(cs, 0);
+  }
+
+  public static long hash(CharSequence cs, long seed) {
+    if (cs == null)
+      return NULL_HASHCODE;
+    return xxh64(cs, CharsAccess.INSTANCE, 0, (long) cs.length() << 1, seed);
+  }
+
+  /**
+   * 每个字符只取低 8 位, 对 ISO-8859-1 (包括 ASCII) 的内容与同样内容的 byte[] 的哈希相同
+   */
+  public static long hashLatin1(CharSequence cs) {
+    return hashLatin1(cs, 0, cs.length());
+  }
+
+  public static long hashLatin1(CharSequence cs, int offset, int length) {
+    checkBounds(offset, length, cs.length());
+    return xxh64(cs, Latin1Access.INSTANCE, offset, length, 0);
+  }
+
+  public static long hashLatin1(char[] chars, int offset, int length) {
+    checkBounds(offset, length, chars.length);
+    return xxh64(chars, Latin1ArrayAccess.INSTANCE, offset, length, 0);
+  }
+
+  public static long hash(byte[] bytes) {
+    return hash(bytes, 0, bytes.length, 0);
+  }
+
+  public static long hash(byte[] bytes, int offset, int length) {
+    return hash(bytes, offset, length, 0);
+  }
+
+  public static long hash(byte[] bytes, int offset, int length, long seed) {
+    checkBounds(offset, length, bytes.length);
+    return xxh64(bytes, ByteArrayAccess.INSTANCE, BYTE_ARRAY_OFFSET + offset, length, seed);
+  }
+
+  /**
+   * 哈希 position 到 limit 之间的字节, 不修改 buffer 的 position
+   */
+  public static long hash(ByteBuffer buffer) {
+    return hash(buffer, buffer.position(), buffer.remaining(), 0);
+  }
+
+  /**
+   * 哈希 [offset, offset + length) 之间的字节, 使用绝对位置, 不修改 buffer 的 position
+   */
+  public static long hash(ByteBuffer buffer, int offset, int length, long seed) {
+    checkBounds(offset, length, buffer.limit());
+    if (buffer.hasArray())
+      return hash(buffer.array(), buffer.arrayOffset() + offset, length, seed);
+    if (buffer.isDirect())
+      return xxh64(null, ByteArrayAccess.INSTANCE, UnsafeMemory.address(buffer) + offset, length, seed);
+    // read-only heap buffer
+    return xxh64(buffer, ByteBufferAccess.INSTANCE, offset, length, seed);
+  }
+
+  /**
+   * 哈希堆外内存, 调用者保证 [address, address + length) 可读
+   */
+  public static long hashAddress(long address, long length) {
+    return hashAddress(address, length, 0);
+  }
+
+  public static long hashAddress(long address, long length, long seed) {
+    if (length < 0)
+      throw new IllegalArgumentException("length must be >= 0, was " + length);
+    return xxh64(null, ByteArrayAccess.INSTANCE, address, length, seed);
+  }
+
+  public Hasher reset() {
+    hash = seed + P5;
+    length = 0;
+    return this;
+  }
+
+  public Hasher put(long value) {
+    hash ^= round(0, value);
+    hash = Long.rotateLeft(hash, 27) * P1 + P4;
+    length += 8;
+    return this;
+  }
+
+  public Hasher put(int value) {
+    hash ^= (value & 0xFFFFFFFFL) * P1;
+    hash = Long.rotateLeft(hash, 23) * P2 + P3;
+    length += 4;
+    return this;
+  }
+
+  public Hasher put(short value) {
+    return put((int) value);
+  }
+
+  public Hasher put(char value) {
+    return put((int) value);
+  }
+
+  public Hasher put(byte value) {
+    return put((int) value);
+  }
+
+  public Hasher put(boolean value) {
+    return put(value ? 1 : 0);
+  }
+
+  /**
+   * 按原始位哈希, 与 {@link Compare#isEqual(Double, Double)} 一致
+   */
+  public Hasher put(double value) {
+    return put(Double.doubleToRawLongBits(value));
+  }
+
+  /**
+   * 按原始位哈希, 与 {@link Compare#isEqual(Float, Float)} 一致
+   */
+  public Hasher put(float value) {
+    return put(Float.floatToRawIntBits(value));
+  }
+
+  public Hasher put(CharSequence cs) {
+    return put(hash(cs, seed));
+  }
+
+  /**
+   * 基本类型的包装类型和 {@link CharSequence} 与对应的 put 结果相同, 其它对象使用 hashCode
+   */
+  public Hasher put(Object o) {
+    if (o == null)
+      return put(NULL_HASHCODE);
+    if (o instanceof CharSequence)
+      return put((CharSequence) o);
+    if (o instanceof Long)
+      return put(((Long) o).longValue());
+    if (o instanceof Integer)
+      return put(((Integer) o).intValue());
+    if (o instanceof Double)
+      return put(((Double) o).doubleValue());
+    if (o instanceof Float)
+      return put(((Float) o).floatValue());
+    if (o instanceof Short || o instanceof Byte)
+      return put(((Number) o).intValue());
+    if (o instanceof Character)
+      return put(((Character) o).charValue());
+    if (o instanceof Boolean)
+      return put(((Boolean) o).booleanValue());
+    return put(o.hashCode());
+  }
+
+  public long hash() {
+    return avalanche(hash + length);
+  }
+
+  private static <T> long xxh64(T input, Access<T> access, long offset, long length, long seed) {
+    long remaining = length;
+    long hash;
+    if (remaining >= 32) {
+      long v1 = seed + P1 + P2;
+      long v2 = seed + P2;
+      long v3 = seed;
+      long v4 = seed - P1;
+      do {
+        v1 = round(v1, access.i64(input, offset));
+        v2 = round(v2, access.i64(input, offset + 8));
+        v3 = round(v3, access.i64(input, offset + 16));
+        v4 = round(v4, access.i64(input, offset + 24));
+        offset += 32;
+        remaining -= 32;
+      } while (remaining >= 32);
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      hash = mergeRound(hash, v1);
+      hash = mergeRound(hash, v2);
+      hash = mergeRound(hash, v3);
+      hash = mergeRound(hash, v4);
+    } else {
+      hash = seed + P5;
+    }
+    hash += length;
+
+    while (remaining >= 8) {
+      hash ^= round(0, access.i64(input, offset));
+      hash = Long.rotateLeft(hash, 27) * P1 + P4;
+      offset += 8;
+      remaining -= 8;
+    }
+    if (remaining >= 4) {
+      hash ^= access.u32(input, offset) * P1;
+      hash = Long.rotateLeft(hash, 23) * P2 + P3;
+      offset += 4;
+      remaining -= 4;
+    }
+    while (remaining > 0) {
+      hash ^= access.u8(input, offset) * P5;
+      hash = Long.rotateLeft(hash, 11) * P1;
+      offset++;
+      remaining--;
+    }
+    return avalanche(hash);
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * P2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * P1;
+  }
+
+  private static long mergeRound(long acc, long val) {
+    acc ^= round(0, val);
+    return acc * P1 + P4;
+  }
+
+  private static long avalanche(long hash) {
+    hash ^= hash >>> 33;
+    hash *= P2;
+    hash ^= hash >>> 29;
+    hash *= P3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  private static void checkBounds(int offset, int length, int size) {
+    if (offset < 0 || length < 0 || offset > size - length)
+      throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + size);
+  }
+
+  /**
+   * 以 little endian 读取输入
+   */
+  private static abstract class Access<T> {
+    abstract long i64(T input, long offset);
+
+    abstract long u32(T input, long offset);
+
+    abstract int u8(T input, long offset);
+  }
+
+  /**
+   * byte[] 或者堆外内存 (input 为 null, offset 为地址)
+   */
+  private static final class ByteArrayAccess extends Access<Object> {
+    static final ByteArrayAccess INSTANCE = new ByteArrayAccess();
+
+    @Override
+    long i64(Object input, long offset) {
+      return UnsafeMemory.getLongLE(input, offset);
+    }
+
+    @Override
+    long u32(Object input, long offset) {
+      return UnsafeMemory.getUnsignedIntLE(input, offset);
+    }
+
+    @Override
+    int u8(Object input, long offset) {
+      return UNSAFE.getByte(input, offset) & 0xFF;
+    }
+  }
+
+  private static final class ByteBufferAccess extends Access<ByteBuffer> {
+    static final ByteBufferAccess INSTANCE = new ByteBufferAccess();
+
+    @Override
+    long i64(ByteBuffer input, long offset) {
+      long l = input.getLong((int) offset);
+      return input.order() == ByteOrder.LITTLE_ENDIAN ? l : Long.reverseBytes(l);
+    }
+
+    @Override
+    long u32(ByteBuffer input, long offset) {
+      int i = input.getInt((int) offset);
+      return (input.order() == ByteOrder.LITTLE_ENDIAN ? i : Integer.reverseBytes(i)) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    int u8(ByteBuffer input, long offset) {
+      return input.get((int) offset) & 0xFF;
+    }
+  }
+
+  /**
+   * 把 CharSequence 看作 UTF-16LE 的字节, offset 是字节的偏移.
+   * 总长度是偶数, 所以 i64 和 u32 的 offset 都是偶数.
+   */
+  private static final class CharsAccess extends Access<CharSequence> {
+    static final CharsAccess INSTANCE = new CharsAccess();
+
+    @Override
+    long i64(CharSequence input, long offset) {
+      int i = (int) (offset >> 1);
+      return input.charAt(i) | (long) input.charAt(i + 1) << 16
+        | (long) input.charAt(i + 2) << 32 | (long) input.charAt(i + 3) << 48;
+    }
+
+    @Override
+    long u32(CharSequence input, long offset) {
+      int i = (int) (offset >> 1);
+      return input.charAt(i) | (long) input.charAt(i + 1) << 16;
+    }
+
+    @Override
+    int u8(CharSequence input, long offset) {
+      char c = input.charAt((int) (offset >> 1));
+      return (offset & 1) == 0 ? c & 0xFF : c >>> 8;
+    }
+  }
+
+  /**
+   * 把每个字符的低 8 位看作一个字节, offset 是字符的下标
+   */
+  private static final class Latin1Access extends Access<CharSequence> {
+    static final Latin1Access INSTANCE = new Latin1Access();
+
+    @Override
+    long i64(CharSequence input, long offset) {
+      int i = (int) offset;
+      return u32(input, i) | u32(input, i + 4) << 32;
+    }
+
+    @Override
+    long u32(CharSequence input, long offset) {
+      int i = (int) offset;
+      return (input.charAt(i) & 0xFF | (input.charAt(i + 1) & 0xFF) << 8
+        | (input.charAt(i + 2) & 0xFF) << 16 | (input.charAt(i + 3) & 0xFF) << 24) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    int u8(CharSequence input, long offset) {
+      return input.charAt((int) offset) & 0xFF;
+    }
+  }
+
+  private static final class Latin1ArrayAccess extends Access<char[]> {
+    static final Latin1ArrayAccess INSTANCE = new Latin1ArrayAccess();
+
+    @Override
+    long i64(char[] input, long offset) {
+      int i = (int) offset;
+      return u32(input, i) | u32(input, i + 4) << 32;
+    }
+
+    @Override
+    long u32(char[] input, long offset) {
+      int i = (int) offset;
+      return (input[i] & 0xFF | (input[i + 1] & 0xFF) << 8 | (input[i + 2] & 0xFF) << 16 | (input[i + 3] & 0xFF) << 24)
+        & 0xFFFFFFFFL;
+    }
+
+    @Override
+    int u8(char[] input, long offset) {
+      return input[(int) offset] & 0xFF;
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog: 用固定的内存估计不同值的个数, 相对误差约为 1.04 / sqrt(2^precision).
+ * <pre>
+ * HyperLogLog users = HyperLogLog.create(0.01);   // 16384 个寄存器, 12K 字节
+ * users.add(userId);
+ * long distinct = users.cardinality();
+ * </pre>
+ * <ul>
+ * <li>哈希的高 precision 位选择寄存器, 剩下的位里第一个 1 的位置是这个寄存器的候选值, 寄存器保留最大值.
+ * 每个寄存器 6 位, 每个 long 放 10 个.</li>
+ * <li>小基数用 linear counting 修正, 64 位哈希不需要大基数修正.</li>
+ * <li>{@link #concurrent(boolean)} 之后 add 用 CAS 更新; precision 相同的可以 {@link #merge(HyperLogLog)},
+ * 结果等于把两边的值都 add 进一个估计器.</li>
+ * <li>{@link #toBytes()} 和 {@link #fromBytes(byte[])} 在进程之间传递.</li>
+ * </ul>
+ * 装箱的数字按 {@link Compare} 的规则哈希, add(Long) 与 add(long) 相同; 字符串使用 {@link Hasher}.
+ */
+public class HyperLogLog {
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 18;
+  private static final int REGISTER_BITS = 6;
+  private static final int REGISTERS_PER_WORD = Long.SIZE / REGISTER_BITS;
+
+  private final int precision;
+  private final int registers;
+  private final long[] words;
+  private boolean concurrent;
+
+  /**
+   * @param precision 寄存器个数为 2^precision, 在 [4, 18] 之间
+   */
+  public HyperLogLog(int precision) {
+    this(precision, new long[words(checkPrecision(precision))]);
+  }
+
+  private HyperLogLog(int precision, long[] words) {
+    this.precision = precision;
+    this.registers = 1 << precision;
+    this.words = words;
+  }
+
+  private static int checkPrecision(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException("precision must be in [" + MIN_PRECISION + ", " + MAX_PRECISION + "], was " + precision);
+    return precision;
+  }
+
+  private static int words(int precision) {
+    return ((1 << precision) + REGISTERS_PER_WORD - 1) / REGISTERS_PER_WORD;
+  }
+
+  /**
+   * 按期望的相对误差选择寄存器的个数 (向上取整为 2 的幂)
+   */
+  public static HyperLogLog create(double relativeError) {
+    if (!(relativeError > 0 && relativeError < 1))
+      throw new IllegalArgumentException("relativeError must be in (0, 1), was " + relativeError);
+    double m = Math.ceil(Math.pow(1.04 / relativeError, 2));
+    long registers = Maths.nextPower2((long) Math.min(m, 1 << MAX_PRECISION), 1L << MIN_PRECISION);
+    return new HyperLogLog(Sketches.log2(registers));
+  }
+
+  /**
+   * 是否允许多个线程同时 add, 在共享给其它线程之前设置
+   */
+  public HyperLogLog concurrent(boolean concurrent) {
+    this.concurrent = concurrent;
+    return this;
+  }
+
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  /**
+   * @return 估计值是否可能变化
+   */
+  public boolean add(long key) {
+    return addHash(Sketches.hash(key));
+  }
+
+  public boolean add(CharSequence key) {
+    return addHash(Sketches.hash(key));
+  }
+
+  public boolean add(Object key) {
+    return addHash(Sketches.hash(key));
+  }
+
+  /**
+   * @param hash 调用者计算的 64 位哈希, 每一位都需要均匀分布
+   */
+  public boolean addHash(long hash) {
+    int register = (int) (hash >>> (64 - precision));
+    // the guard bit bounds the rank by 64 - precision + 1, which fits in 6 bits
+    int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+    return Sketches.max(words, register / REGISTERS_PER_WORD, register % REGISTERS_PER_WORD * REGISTER_BITS,
+      REGISTER_BITS, rank, concurrent);
+  }
+
+  private int register(int register) {
+    int index = register / REGISTERS_PER_WORD;
+    long word = concurrent ? Sketches.getVolatile(words, index) : words[index];
+    return (int) (word >>> register % REGISTERS_PER_WORD * REGISTER_BITS) & ((1 << REGISTER_BITS) - 1);
+  }
+
+  /**
+   * 估计的不同值的个数
+   */
+  public long cardinality() {
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < registers; i++) {
+      int r = register(i);
+      if (r == 0)
+        zeros++;
+      sum += Double.longBitsToDouble((1023L - r) << 52); // 2^-r
+    }
+    double m = registers;
+    double estimate = alpha(registers) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0)
+      estimate = m * Math.log(m / zeros);
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+
+  /**
+   * 把 other 的值合并进来, 两者的 precision 必须相同
+   */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision)
+      throw new IllegalArgumentException("Incompatible precisions: " + precision + " and " + other.precision);
+    for (int i = 0; i < registers; i++) {
+      int r = other.register(i);
+      if (r != 0)
+        Sketches.max(words, i / REGISTERS_PER_WORD, i % REGISTERS_PER_WORD * REGISTER_BITS, REGISTER_BITS, r, concurrent);
+    }
+  }
+
+  public void clear() {
+    for (int i = 0; i < words.length; i++)
+      words[i] = 0;
+  }
+
+  public int precision() {
+    return precision;
+  }
+
+  /**
+   * 理论上的相对标准误差
+   */
+  public double relativeError() {
+    return 1.04 / Math.sqrt(registers);
+  }
+
+  /**
+   * | type 1 | version 1 | precision 1 | words * 8 |
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer = Sketches.header(Sketches.TYPE_HLL, 3 + (words.length << 3));
+    buffer.put((byte) precision);
+    Sketches.putLongs(buffer, words, concurrent);
+    return buffer.array();
+  }
+
+  public static HyperLogLog fromBytes(byte[] bytes) {
+    ByteBuffer buffer = Sketches.readHeader(bytes, Sketches.TYPE_HLL);
+    if (!buffer.hasRemaining())
+      throw new IllegalArgumentException("Truncated HyperLogLog");
+    int precision = checkPrecision(buffer.get());
+    return new HyperLogLog(precision, Sketches.getLongs(buffer, words(precision)));
+  }
+
+  @Override
+  public String toString() {
+    return "HyperLogLog{precision=" + precision + ", cardinality=" + cardinality() + ", concurrent=" + concurrent + '}';
+  }
+}
@@ -0,0 +1,232 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 同一台机器上多个进程之间不需要协调的 64 位唯一 ID, 大致按时间排序.
+ * <pre>
+ * | 时间 (timeBits 位, 单位 tickMillis) | 序号 (64 - timeBits - PID_BITS) | pid ({@link Jvm#PID_BITS}) |
+ * </pre>
+ * 不同的进程 pid 不同, 同一个进程里的线程从一个共享的计数器 (毫秒和序号合在一起) 租用一段连续的值,
+ * 在这一段用完或者 tick 变化之前都只操作线程自己的计数器, 不分配对象也没有 CAS.
+ * <ul>
+ * <li>同一个线程得到的 ID 严格递增.</li>
+ * <li>一个 tick 内的序号用完时借用后面的 tick, ID 暂时跑到时钟前面, 负载下降后追上; 时钟回拨时同样从计数器继续, 不会重复.
+ * 领先的时间 ({@link #leadMillis()}) 不超过 maxLeadMillis (默认 {@link #DEFAULT_MAX_LEAD_MILLIS}), 到达上限时 next 等待时钟追上.
+ * 时钟回拨超过 maxLeadMillis 时同样等待.</li>
+ * <li>位数是固定的: 每个进程在整个时间跨度里最多生成 2^(64 - PID_BITS) 个 ID, 所以持续速率 = 2^序号位数 / tickMillis
+ * 与时间跨度 = 2^timeBits * tickMillis 的乘积是定值. 序号至少有 {@link #MIN_SEQUENCE_BITS} 位.
+ * 默认构造器给序号留 12 位, 剩下的给时间, 并按 2 的幂放大 tick 使时间跨度仍为 2^40 毫秒 (从 2020-01-01 起约 34 年):
+ * <ul>
+ * <li>PID_BITS 为 15 时 timeBits 为 37, tick 为 8 毫秒, 持续每秒约 51 万个.</li>
+ * <li>PID_BITS 为 22 (pid_max 为 4194304) 时 timeBits 为 30, tick 为 1024 毫秒, 持续每秒约 4000 个,
+ * 短时间的突发受 maxLeadMillis 限制. 需要持续每秒百万个时只能缩短时间跨度, 例如
+ * {@code new IdGenerator(epoch, 32, 1)} 每毫秒 1024 个, 但只能用约 50 天; 更实际的做法是减小 pid_max.</li>
+ * </ul>
+ * </li>
+ * <li>ID 当作无符号数比较 ({@link Long#compareUnsigned(long, long)}).</li>
+ * </ul>
+ * <pre>
+ * IdGenerator ids = new IdGenerator();
+ * long id = ids.next();
+ * ids.timeMillis(id); ids.sequence(id); ids.pid(id);
+ * </pre>
+ * 进程重启后 pid 可能被复用, 只要重启间隔超过 maxLeadMillis 就不会重复.
+ */
+public class IdGenerator {
+  /**
+   * 2020-01-01T00:00:00Z
+   */
+  public static final long DEFAULT_EPOCH = 1577836800000L;
+  /**
+   * 默认的时间跨度为 2^DEFAULT_TIME_BITS 毫秒
+   */
+  public static final int DEFAULT_TIME_BITS = 40;
+  /**
+   * 序号少于这个位数时每个 tick 只能生成很少的 ID, 不接受这样的配置
+   */
+  public static final int MIN_SEQUENCE_BITS = 10;
+  /**
+   * 进程重启通常要超过 2 秒, 重启后复用同一个 pid 时不会与之前的 ID 重复
+   */
+  public static final long DEFAULT_MAX_LEAD_MILLIS = 2000;
+  private static final int DEFAULT_SEQUENCE_BITS = 12;
+  private static final int MAX_BLOCK = 1 << 10;
+
+  private final long epoch;
+  private final long tickMillis;
+  /* the last tick a lease may reach is the current tick plus maxLeadTicks */
+  private final long maxLeadTicks;
+  private final int pidBits;
+  private final int seqBits;
+  private final int timeShift;
+  private final long pid;
+  private final int maxBlock;
+  private final LongSupplier clock;
+  private final AtomicLong counter = new AtomicLong();
+  private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+  public IdGenerator() {
+    this(DEFAULT_EPOCH, defaultTimeBits(Jvm.PID_BITS), defaultTickMillis(Jvm.PID_BITS), DEFAULT_MAX_LEAD_MILLIS);
+  }
+
+  /**
+   * 时间以毫秒为单位
+   *
+   * @param epoch    时间为 0 的时刻
+   * @param timeBits 时间占的位数, 剩下的位数给序号
+   * @throws IllegalArgumentException 序号少于 {@link #MIN_SEQUENCE_BITS} 位
+   */
+  public IdGenerator(long epoch, int timeBits) {
+    this(epoch, timeBits, 1);
+  }
+
+  /**
+   * @param tickMillis 时间的单位, 毫秒
+   * @throws IllegalArgumentException 序号少于 {@link #MIN_SEQUENCE_BITS} 位
+   */
+  public IdGenerator(long epoch, int timeBits, long tickMillis) {
+    this(epoch, timeBits, tickMillis, DEFAULT_MAX_LEAD_MILLIS);
+  }
+
+  /**
+   * @param maxLeadMillis ID 最多领先时钟的毫秒数, 向下取整为 tickMillis 的倍数. 0 表示序号用完时等待下一个 tick
+   * @throws IllegalArgumentException 序号少于 {@link #MIN_SEQUENCE_BITS} 位
+   */
+  public IdGenerator(long epoch, int timeBits, long tickMillis, long maxLeadMillis) {
+    this(epoch, timeBits, tickMillis, maxLeadMillis, Jvm.getProcessId(), Jvm.PID_BITS, System::currentTimeMillis);
+  }
+
+  IdGenerator(long epoch, int timeBits, long tickMillis, long maxLeadMillis, long pid, int pidBits, LongSupplier clock) {
+    int seqBits = 64 - timeBits - pidBits;
+    if (timeBits < 1 || seqBits < MIN_SEQUENCE_BITS)
+      throw new IllegalArgumentException("timeBits must be in [1, " + (64 - pidBits - MIN_SEQUENCE_BITS) + "] to leave "
+          + MIN_SEQUENCE_BITS + " sequence bits with " + pidBits + " pid bits, was " + timeBits);
+    if (tickMillis < 1)
+      throw new IllegalArgumentException("tickMillis must be positive, was " + tickMillis);
+    if (maxLeadMillis < 0)
+      throw new IllegalArgumentException("maxLeadMillis must be >= 0, was " + maxLeadMillis);
+    if (pid < 0 || pid >>> pidBits != 0)
+      throw new IllegalArgumentException("pid " + pid + " does not fit in " + pidBits + " bits");
+    this.epoch = epoch;
+    this.tickMillis = tickMillis;
+    this.maxLeadTicks = maxLeadMillis / tickMillis;
+    this.pidBits = pidBits;
+    this.seqBits = seqBits;
+    this.timeShift = pidBits + seqBits;
+    this.pid = pid;
+    this.maxBlock = (int) Math.min(MAX_BLOCK, 1L << seqBits);
+    this.clock = clock;
+  }
+
+  /**
+   * @throws InterruptedRuntimeException 等待时钟追上时线程被中断
+   */
+  public long next() {
+    Block block = blocks.get();
+    long tick = tick();
+    long next = block.next;
+    if (next >= block.limit || next >>> seqBits < tick)
+      next = lease(block, tick);
+    block.next = next + 1;
+    return next << pidBits | pid;
+  }
+
+  /**
+   * 生成这个 ID 时所在 tick 的开始 (unix 毫秒). 序号用完或者时钟回拨时会比实际的时间晚
+   */
+  public long timeMillis(long id) {
+    return (id >>> timeShift) * tickMillis + epoch;
+  }
+
+  public long sequence(long id) {
+    return (id >>> pidBits) & ((1L << seqBits) - 1);
+  }
+
+  public long pid(long id) {
+    return id & ((1L << pidBits) - 1);
+  }
+
+  public int sequenceBits() {
+    return seqBits;
+  }
+
+  public int timeBits() {
+    return 64 - timeShift;
+  }
+
+  public long tickMillis() {
+    return tickMillis;
+  }
+
+  /**
+   * 已经租用的 ID 领先时钟的毫秒数 (按 tick 计), 没有领先时为 0
+   */
+  public long leadMillis() {
+    long issued = counter.get();
+    if (issued == 0)
+      return 0;
+    return Math.max(0, ((issued - 1) >>> seqBits) - tick()) * tickMillis;
+  }
+
+  private long tick() {
+    return (clock.getAsLong() - epoch) / tickMillis;
+  }
+
+  public String toString(long id) {
+    return "Id{time=" + timeMillis(id) + ", seq=" + sequence(id) + ", pid=" + pid(id) + '}';
+  }
+
+  /**
+   * 给序号留 {@link #DEFAULT_SEQUENCE_BITS} 位, 最多 {@link #DEFAULT_TIME_BITS} 位
+   */
+  static int defaultTimeBits(int pidBits) {
+    return Math.min(DEFAULT_TIME_BITS, 64 - pidBits - DEFAULT_SEQUENCE_BITS);
+  }
+
+  /**
+   * 让 {@link #defaultTimeBits(int)} 位的时间覆盖 2^DEFAULT_TIME_BITS 毫秒
+   */
+  static long defaultTickMillis(int pidBits) {
+    return 1L << (DEFAULT_TIME_BITS - defaultTimeBits(pidBits));
+  }
+
+  /**
+   * 从共享的计数器租用一段, 起点不早于当前 tick 的第一个序号, 终点不超过 maxLeadTicks 之后的 tick.
+   * 一直用完整段的线程每次租用的长度翻倍, tick 变化时还没用完的线程减半, 以减少浪费的序号.
+   */
+  private long lease(Block block, long tick) {
+    boolean exhausted = block.next >= block.limit && block.next >>> seqBits >= tick;
+    int size = exhausted ? Math.min(block.size << 1, maxBlock) : Math.max(block.size >> 1, 1);
+    long start;
+    long end;
+    for (int attempt = 0; ; ) {
+      long current = counter.get();
+      start = Math.max(current, Math.max(tick, 0) << seqBits);
+      // the sequence after the last tick this lease may reach
+      long limit = Math.max(tick + maxLeadTicks + 1, 0) << seqBits;
+      if (start >= limit) {
+        Jvm.checkInterrupted();
+        WaitStrategy.BACKOFF.idle(attempt++);
+        tick = tick();
+        continue;
+      }
+      end = Math.min(start + size, limit);
+      if (counter.compareAndSet(current, end))
+        break;
+    }
+    block.size = size;
+    block.limit = end;
+    return start;
+  }
+
+  /**
+   * 只被一个线程访问
+   */
+  private static final class Block {
+    long next;
+    long limit;
+    int size = 1;
+  }
+}
@@ -0,0 +1,173 @@
+package com.tomwen.tools;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * int 的开放寻址哈希集合, 元素不装箱.
+ * 使用线性探测, 删除时向后移位(backward-shift), 不留墓碑.
+ * 非线程安全.
+ */
+public class IntSet {
+  private static final int FREE_KEY = 0;
+
+  private final float loadFactor;
+  private int[] keys;
+  private int mask;
+  private int maxFill;
+  private int size;
+  private boolean hasFreeKey;
+
+  public IntSet() {
+    this(PrimitiveHash.DEFAULT_EXPECTED_SIZE, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+  }
+
+  public IntSet(int expectedSize) {
+    this(expectedSize, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+  }
+
+  /**
+   * @param expectedSize 预计的元素个数
+   * @param loadFactor   装载因子, (0, 1)
+   */
+  public IntSet(int expectedSize, float loadFactor) {
+    this.loadFactor = PrimitiveHash.checkLoadFactor(loadFactor);
+    allocate(PrimitiveHash.capacity(expectedSize, loadFactor));
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    mask = capacity - 1;
+    maxFill = PrimitiveHash.maxFill(capacity, loadFactor);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(int key) {
+    if (key == FREE_KEY)
+      return hasFreeKey;
+    int[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (int k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return 集合中原来没有这个元素时返回 true
+   */
+  public boolean add(int key) {
+    if (key == FREE_KEY) {
+      if (hasFreeKey)
+        return false;
+      hasFreeKey = true;
+      size++;
+      return true;
+    }
+    int[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (int k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key)
+        return false;
+    }
+    keys[index] = key;
+    if (++size > maxFill)
+      rehash();
+    return true;
+  }
+
+  /**
+   * @return 集合中有这个元素时返回 true
+   */
+  public boolean remove(int key) {
+    if (key == FREE_KEY) {
+      if (!hasFreeKey)
+        return false;
+      hasFreeKey = false;
+      size--;
+      return true;
+    }
+    int[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (int k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key) {
+        shiftKeys(index);
+        size--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void clear() {
+    if (size == 0)
+      return;
+    Arrays.fill(keys, FREE_KEY);
+    hasFreeKey = false;
+    size = 0;
+  }
+
+  /**
+   * 遍历所有的元素, 不分配对象. 遍历过程中不能修改集合.
+   */
+  public void forEach(IntConsumer consumer) {
+    if (hasFreeKey)
+      consumer.accept(FREE_KEY);
+    int[] keys = this.keys;
+    for (int k : keys) {
+      if (k != FREE_KEY)
+        consumer.accept(k);
+    }
+  }
+
+  private void shiftKeys(int hole) {
+    int[] keys = this.keys;
+    int j = hole;
+    while (true) {
+      j = (j + 1) & mask;
+      int k = keys[j];
+      if (k == FREE_KEY)
+        break;
+      if (PrimitiveHash.canShift(hole, j, PrimitiveHash.slot(k, mask))) {
+        keys[hole] = k;
+        hole = j;
+      }
+    }
+    keys[hole] = FREE_KEY;
+  }
+
+  private void rehash() {
+    if (keys.length == PrimitiveHash.MAX_CAPACITY)
+      throw PrimitiveHash.full(size);
+    int[] oldKeys = keys;
+    allocate(keys.length * 2);
+    int[] keys = this.keys;
+    for (int k : oldKeys) {
+      if (k == FREE_KEY)
+        continue;
+      int index = PrimitiveHash.slot(k, mask);
+      while (keys[index] != FREE_KEY)
+        index = (index + 1) & mask;
+      keys[index] = k;
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append('[');
+    forEach(key -> {
+      if (sb.length() > 1)
+        sb.append(", ");
+      sb.append(key);
+    });
+    return sb.append(']').toString();
+  }
+}
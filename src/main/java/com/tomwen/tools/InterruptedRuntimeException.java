@@ -4,4 +4,10 @@ package com.tomwen.tools;
  * Like InterruptedException except unchecked
  */
 public class InterruptedRuntimeException extends IllegalStateException {
+  public InterruptedRuntimeException() {
+  }
+
+  public InterruptedRuntimeException(String message) {
+    super(message);
+  }
 }
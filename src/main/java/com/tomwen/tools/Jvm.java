@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 关于jvm的一些信息
@@ -82,8 +83,15 @@ public enum Jvm {
   }
 
   public static long getUniqueTid(Thread thread) {
+    return getUniqueTid(thread.getId());
+  }
+
+  /**
+   * @param threadId {@link Thread#getId()}, 例如 {@link java.lang.management.ThreadMXBean} 返回的线程 id
+   */
+  public static long getUniqueTid(long threadId) {
     // Assume 48 bit for 16 to 24-bit process id and 16 million threads from the start.
-    return ((long) getProcessId() << 24) | thread.getId();
+    return ((long) getProcessId() << 24) | threadId;
   }
 
   public static boolean isWindows() {
@@ -181,6 +189,46 @@ public enum Jvm {
     }
   }
 
+  /**
+   * 这个进程实际可用的 cpu 和内存, 第一次调用时检测并缓存.
+   * 设置系统属性 {@code javatools.jvm.root} 时从这个目录读取假的 /sys 和 /proc, 用于测试.
+   */
+  public static SystemResources resources() {
+    return ResourcesHolder.INSTANCE;
+  }
+
+  private static class ResourcesHolder {
+    static final SystemResources INSTANCE = SystemResources.detect(System.getProperty("javatools.jvm.root", ""));
+  }
+
+  /**
+   * 共享的 {@link ProcSampler}, 第一次调用时创建, 每秒采样一次并注册到 JMX
+   */
+  public static ProcSampler procSampler() {
+    if (!isLinux()) {
+      throw new IllegalStateException("Method procSampler() should " +
+        "be called only on linux. Use Jvm.isLinux() to check the OS.");
+    }
+    return ProcSamplerHolder.INSTANCE;
+  }
+
+  private static class ProcSamplerHolder {
+    static final ProcSampler INSTANCE = create();
+
+    private static ProcSampler create() {
+      ProcSampler sampler = new ProcSampler();
+      try {
+        sampler.register();
+      } catch (IllegalStateException e) {
+        logger.warn("", e);
+      }
+      return sampler.start(1, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * 长循环里每次迭代都调用时考虑 {@link CancellationToken#poll()}
+   */
   public static void checkInterrupted() {
     if (Thread.currentThread().isInterrupted()) throw new InterruptedRuntimeException();
   }
@@ -192,7 +240,7 @@ public enum Jvm {
       sb.append("\n\tat ").append(stes[i]);
   }
 
-  private static int trimFirst(StackTraceElement[] stes) {
+  static int trimFirst(StackTraceElement[] stes) {
     int first = 0;
     for (; first < stes.length; first++)
       if (!isInternal(stes[first].getClassName()))
@@ -202,7 +250,7 @@ public enum Jvm {
     return first;
   }
 
-  private static int trimLast(int first, StackTraceElement[] stes) {
+  static int trimLast(int first, StackTraceElement[] stes) {
     int last = stes.length - 1;
     for (; first < last; last--)
       if (!isInternal(stes[last].getClassName()))
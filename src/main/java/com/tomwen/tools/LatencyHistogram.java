@@ -0,0 +1,413 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * HdrHistogram (http://hdrhistogram.org) 式的直方图: 值按 2 的幂分成若干段, 每段再等分成
+ * 2 * 10^significantDigits (取整为 2 的幂) 个桶, 所以任何值的相对误差都不超过 10^-significantDigits.
+ * <pre>
+ * LatencyHistogram latency = new LatencyHistogram(TimeUnit.SECONDS.toNanos(10), 3);
+ * long start = System.nanoTime();
+ * ...
+ * latency.record(System.nanoTime() - start);
+ * latency.percentile(0.99);
+ * </pre>
+ * <ul>
+ * <li>record 对一个 long[] 做原子加, 不分配对象也没有锁, 任意多个线程可以同时记录.</li>
+ * <li>小于 0 的值记为 0, 超过 highestTrackableValue 的值计在最后一个桶里, {@link #max()} 仍然是准确的.</li>
+ * <li>同时有线程在记录时读到的百分位只是近似值; 需要准确的区间统计时用 {@link Recorder}, 它切换两个直方图,
+ * 读取的一方不会让记录的线程等待.</li>
+ * <li>{@link #merge(LatencyHistogram)} 合并多个线程或者多个进程的直方图, {@link #toBytes()} 把计数写成
+ * zigzag 变长整数, 连续的 0 合并成一个负数.</li>
+ * </ul>
+ * 比 LockMetrics 里按 2 的幂分桶的直方图精确得多, 代价是内存: 3 位有效数字, 上限为 1 小时的纳秒时约 270K 字节.
+ */
+public class LatencyHistogram {
+  private static final byte TYPE = 4;
+  private static final byte VERSION = 1;
+  private static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(long[].class);
+
+  private final long highestTrackableValue;
+  private final int significantDigits;
+  private final int subBucketHalfCountMagnitude;
+  private final int subBucketHalfCount;
+  private final long subBucketMask;
+  private final int leadingZeroCountBase;
+  private final int length;
+  /* counts, then the sum of all values and the max value */
+  private final long[] counts;
+  private final int sumIndex;
+  private final int maxIndex;
+
+  /**
+   * 上限为 1 小时的纳秒数, 3 位有效数字
+   */
+  public LatencyHistogram() {
+    this(TimeUnit.HOURS.toNanos(1), 3);
+  }
+
+  /**
+   * @param highestTrackableValue 能够精确记录的最大值, 至少为 2
+   * @param significantDigits     有效数字的位数, 在 [0, 5] 之间
+   */
+  public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+    if (highestTrackableValue < 2)
+      throw new IllegalArgumentException("highestTrackableValue must be >= 2, was " + highestTrackableValue);
+    if (significantDigits < 0 || significantDigits > 5)
+      throw new IllegalArgumentException("significantDigits must be in [0, 5], was " + significantDigits);
+    this.highestTrackableValue = highestTrackableValue;
+    this.significantDigits = significantDigits;
+    // the smallest power of two which resolves 10^significantDigits steps within one order of magnitude
+    int subBucketCount = Maths.nextPower2((int) (2 * Maths.power10(significantDigits)), 2);
+    this.subBucketHalfCountMagnitude = Maths.intLog2(subBucketCount) - 1;
+    this.subBucketHalfCount = subBucketCount >> 1;
+    this.subBucketMask = subBucketCount - 1;
+    this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+    this.length = (bucketCount(highestTrackableValue, subBucketCount) + 1) * subBucketHalfCount;
+    this.counts = new long[length + 2];
+    this.sumIndex = length;
+    this.maxIndex = length + 1;
+  }
+
+  private static int bucketCount(long highestTrackableValue, int subBucketCount) {
+    long smallestUntrackable = subBucketCount;
+    int buckets = 1;
+    while (smallestUntrackable <= highestTrackableValue) {
+      if (smallestUntrackable > Long.MAX_VALUE / 2)
+        return buckets + 1;
+      smallestUntrackable <<= 1;
+      buckets++;
+    }
+    return buckets;
+  }
+
+  // ---------------------------------------------------------------- recording
+
+  public void record(long value) {
+    record(value, 1);
+  }
+
+  /**
+   * 记录 count 次同一个值
+   *
+   * @param count 不能为负数
+   */
+  public void record(long value, long count) {
+    if (count < 0)
+      throw new IllegalArgumentException("count must be >= 0, was " + count);
+    if (value < 0)
+      value = 0;
+    int index = value > highestTrackableValue ? length - 1 : index(value);
+    UNSAFE.getAndAddLong(counts, offset(index), count);
+    UNSAFE.getAndAddLong(counts, offset(sumIndex), value * count);
+    long offset = offset(maxIndex);
+    long max;
+    while (value > (max = UNSAFE.getLongVolatile(counts, offset)) && !UNSAFE.compareAndSwapLong(counts, offset, max, value)) {
+      // retry
+    }
+  }
+
+  /**
+   * 记录从 startNanos ({@link System#nanoTime()}) 到现在的时间
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos, 1);
+  }
+
+  private static long offset(int index) {
+    return ARRAY_BASE + ((long) index << 3);
+  }
+
+  private long get(int index) {
+    return UNSAFE.getLongVolatile(counts, offset(index));
+  }
+
+  private int index(long value) {
+    int bucket = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+    int subBucket = (int) (value >>> bucket);
+    return ((bucket + 1) << subBucketHalfCountMagnitude) + subBucket - subBucketHalfCount;
+  }
+
+  /**
+   * 桶里最小的值
+   */
+  private long lowestValue(int index) {
+    int bucket = (index >> subBucketHalfCountMagnitude) - 1;
+    int subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+    if (bucket < 0) {
+      subBucket -= subBucketHalfCount;
+      bucket = 0;
+    }
+    return (long) subBucket << bucket;
+  }
+
+  /**
+   * 桶里最大的值
+   */
+  private long highestValue(int index) {
+    return index + 1 < length ? lowestValue(index + 1) - 1 : Long.MAX_VALUE;
+  }
+
+  // ---------------------------------------------------------------- reading
+
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < length; i++)
+      count += get(i);
+    return count;
+  }
+
+  public long max() {
+    return get(maxIndex);
+  }
+
+  /**
+   * 最小值所在的桶的下界, 没有记录时返回 0
+   */
+  public long min() {
+    for (int i = 0; i < length; i++) {
+      if (get(i) != 0)
+        return lowestValue(i);
+    }
+    return 0;
+  }
+
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0 : get(sumIndex) / (double) count;
+  }
+
+  /**
+   * @param fraction 0 到 1, 比如 0.99
+   * @return 该百分位所在的桶的上界 (不超过 max), 相对误差不超过 10^-significantDigits; 没有记录时返回 0
+   */
+  public long percentile(double fraction) {
+    if (!(fraction >= 0 && fraction <= 1))
+      throw new IllegalArgumentException("fraction must be in [0, 1], was " + fraction);
+    long count = count();
+    if (count == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(fraction * count));
+    long seen = 0;
+    for (int i = 0; i < length; i++) {
+      seen += get(i);
+      if (seen >= rank)
+        return Math.min(highestValue(i), max());
+    }
+    return max();
+  }
+
+  /**
+   * @param fractions 从小到大, 一次扫描计算多个百分位
+   */
+  public long[] percentiles(double... fractions) {
+    long[] result = new long[fractions.length];
+    long count = count();
+    if (count == 0)
+      return result;
+    long max = max();
+    long seen = 0;
+    int f = 0;
+    for (int i = 0; i < length && f < fractions.length; i++) {
+      seen += get(i);
+      while (f < fractions.length && seen >= Math.max(1, (long) Math.ceil(fractions[f] * count)))
+        result[f++] = Math.min(highestValue(i), max);
+    }
+    while (f < fractions.length)
+      result[f++] = max;
+    return result;
+  }
+
+  public long highestTrackableValue() {
+    return highestTrackableValue;
+  }
+
+  public int significantDigits() {
+    return significantDigits;
+  }
+
+  // ---------------------------------------------------------------- merging
+
+  /**
+   * 把 other 的计数加进来. 配置相同时逐个桶相加, 否则按 other 每个桶的下界重新记录
+   */
+  public void merge(LatencyHistogram other) {
+    if (other.length == length && other.subBucketHalfCountMagnitude == subBucketHalfCountMagnitude) {
+      for (int i = 0; i < length; i++) {
+        long count = other.get(i);
+        if (count != 0)
+          UNSAFE.getAndAddLong(counts, offset(i), count);
+      }
+    } else {
+      for (int i = 0; i < other.length; i++) {
+        long count = other.get(i);
+        if (count != 0) {
+          long value = other.lowestValue(i);
+          UNSAFE.getAndAddLong(counts, offset(value > highestTrackableValue ? length - 1 : index(value)), count);
+        }
+      }
+    }
+    UNSAFE.getAndAddLong(counts, offset(sumIndex), other.get(sumIndex));
+    long offset = offset(maxIndex);
+    long otherMax = other.max();
+    long max;
+    while (otherMax > (max = UNSAFE.getLongVolatile(counts, offset)) && !UNSAFE.compareAndSwapLong(counts, offset, max, otherMax)) {
+      // retry
+    }
+  }
+
+  /**
+   * 清空计数. 同时有线程在记录时可能留下一部分计数, 需要准确的区间时用 {@link Recorder}
+   */
+  public void reset() {
+    for (int i = 0; i < counts.length; i++)
+      UNSAFE.putLongVolatile(counts, offset(i), 0);
+  }
+
+  // ---------------------------------------------------------------- encoding
+
+  /**
+   * | type 1 | version 1 | digits 1 | highestTrackableValue | sum | max | 计数 ... |, 除了前三个字节都是变长整数.
+   * 计数只写到最后一个非 0 的桶, 每个计数 zigzag 编码, 连续 n 个 0 写成 -n
+   */
+  public byte[] toBytes() {
+    long[] snapshot = new long[counts.length];
+    int last = -1;
+    for (int i = 0; i < counts.length; i++) {
+      snapshot[i] = get(i);
+      if (i < length && snapshot[i] != 0)
+        last = i;
+    }
+    int size = 3 + Sketches.varLongSize(highestTrackableValue) + Sketches.varLongSize(snapshot[sumIndex])
+      + Sketches.varLongSize(snapshot[maxIndex]);
+    for (int i = 0; i <= last; ) {
+      int run = zeros(snapshot, i, last);
+      size += Sketches.varLongSize(zigzag(run > 0 ? -run : snapshot[i]));
+      i += Math.max(run, 1);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put(TYPE).put(VERSION).put((byte) significantDigits);
+    Sketches.putVarLong(buffer, highestTrackableValue);
+    Sketches.putVarLong(buffer, snapshot[sumIndex]);
+    Sketches.putVarLong(buffer, snapshot[maxIndex]);
+    for (int i = 0; i <= last; ) {
+      int run = zeros(snapshot, i, last);
+      Sketches.putVarLong(buffer, zigzag(run > 0 ? -run : snapshot[i]));
+      i += Math.max(run, 1);
+    }
+    return buffer.array();
+  }
+
+  private static int zeros(long[] counts, int from, int last) {
+    int i = from;
+    while (i <= last && counts[i] == 0)
+      i++;
+    return i - from;
+  }
+
+  private static long zigzag(long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  private static long unzigzag(long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+  public static LatencyHistogram fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (bytes.length < 3 || buffer.get() != TYPE)
+      throw new IllegalArgumentException("Not a serialized LatencyHistogram");
+    byte version = buffer.get();
+    if (version != VERSION)
+      throw new IllegalArgumentException("LatencyHistogram version " + version + " is not supported");
+    int digits = buffer.get();
+    LatencyHistogram histogram = new LatencyHistogram(Sketches.getVarLong(buffer), digits);
+    long[] counts = histogram.counts;
+    counts[histogram.sumIndex] = Sketches.getVarLong(buffer);
+    counts[histogram.maxIndex] = Sketches.getVarLong(buffer);
+    int i = 0;
+    while (buffer.hasRemaining()) {
+      long value = unzigzag(Sketches.getVarLong(buffer));
+      if (value < 0) {
+        // a run of -value zeros, compared this way round so that neither side can overflow
+        if (value < i - histogram.length)
+          throw new IllegalArgumentException("Too many counts for LatencyHistogram");
+        i -= (int) value;
+      } else {
+        if (i >= histogram.length)
+          throw new IllegalArgumentException("Too many counts for LatencyHistogram");
+        counts[i++] = value;
+      }
+    }
+    return histogram;
+  }
+
+  @Override
+  public String toString() {
+    long[] p = percentiles(0.5, 0.9, 0.99, 0.999);
+    return "LatencyHistogram{count=" + count() + ", mean=" + Math.round(mean()) + ", p50=" + p[0] + ", p90=" + p[1]
+      + ", p99=" + p[2] + ", p999=" + p[3] + ", max=" + max() + '}';
+  }
+
+  /**
+   * 区间统计: 记录的线程写入当前的直方图, 读取的线程调用 {@link #interval()} 换上另一个空的直方图,
+   * 等正在写旧直方图的线程退出后返回旧的那个. 记录的线程从不等待, 每次记录多两次原子加.
+   * <pre>
+   * LatencyHistogram.Recorder recorder = new LatencyHistogram.Recorder(TimeUnit.SECONDS.toNanos(10), 3);
+   * recorder.record(elapsed);                   // 任意线程
+   * LatencyHistogram last = recorder.interval();  // 报告线程, 每秒一次
+   * total.merge(last);
+   * </pre>
+   * interval 返回的直方图在下一次调用 interval 之前有效, 之后会被清空重用.
+   */
+  public static final class Recorder {
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEndEpoch = new AtomicLong();
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private volatile LatencyHistogram active;
+    private LatencyHistogram inactive;
+
+    public Recorder(long highestTrackableValue, int significantDigits) {
+      active = new LatencyHistogram(highestTrackableValue, significantDigits);
+      inactive = new LatencyHistogram(highestTrackableValue, significantDigits);
+    }
+
+    public void record(long value) {
+      // the sign of the epoch tells which phase this writer entered, see interval()
+      long epoch = startEpoch.getAndIncrement();
+      try {
+        active.record(value, 1);
+      } finally {
+        (epoch < 0 ? oddEndEpoch : evenEndEpoch).getAndIncrement();
+      }
+    }
+
+    public void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 换上空的直方图, 返回上一次调用以来记录的所有值
+     */
+    public synchronized LatencyHistogram interval() {
+      inactive.reset();
+      LatencyHistogram previous = active;
+      active = inactive;
+      // flip the phase: writers entering from now on count on the other end epoch
+      boolean nextPhaseEven = startEpoch.get() < 0;
+      long initial = nextPhaseEven ? 0 : Long.MIN_VALUE;
+      (nextPhaseEven ? evenEndEpoch : oddEndEpoch).set(initial);
+      long startAtFlip = startEpoch.getAndSet(initial);
+      AtomicLong previousEnd = nextPhaseEven ? oddEndEpoch : evenEndEpoch;
+      // wait for writers which may still be recording into the previous histogram
+      for (int attempt = 0; previousEnd.get() != startAtFlip; attempt++)
+        WaitStrategy.BACKOFF.idle(attempt);
+      inactive = previous;
+      return previous;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package com.tomwen.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Locker} 的竞争统计: 等待时间和持有时间的直方图, 竞争次数, 最大的等待队列长度.
+ * 持有时间超过阈值时打印持有者的线程栈.
+ * <pre>
+ * Locker locker = new Locker(new LockMetrics("orderBook", 10, TimeUnit.MILLISECONDS).register());
+ * ...
+ * LockMetrics.Snapshot snapshot = locker.metrics().snapshot();
+ * </pre>
+ * 通过 JMX 暴露在 {@code com.tomwen.tools:type=Locker,name=<name>} 下.
+ */
+public class LockMetrics implements LockMetricsMXBean {
+  private static final Logger logger = LoggerFactory.getLogger(LockMetrics.class);
+
+  private final String name;
+  private final long slowHolderNanos;
+  private final Log2Histogram waitTime = new Log2Histogram();
+  private final Log2Histogram holdTime = new Log2Histogram();
+  private final AtomicLong contended = new AtomicLong();
+  private final AtomicInteger maxQueueLength = new AtomicInteger();
+  private final AtomicLong slowHolders = new AtomicLong();
+  private ObjectName objectName;
+
+  /**
+   * 不检查持有时间
+   */
+  public LockMetrics(String name) {
+    this(name, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @param slowHolder 持有时间超过它时打印持有者的线程栈
+   */
+  public LockMetrics(String name, long slowHolder, TimeUnit unit) {
+    if (name == null)
+      throw new NullPointerException("name");
+    this.name = name;
+    this.slowHolderNanos = unit.toNanos(slowHolder);
+  }
+
+  /**
+   * 注册到 platform MBeanServer
+   *
+   * @throws IllegalStateException 同名的已经注册过了
+   */
+  public synchronized LockMetrics register() {
+    if (objectName != null)
+      return this;
+    try {
+      ObjectName on = new ObjectName("com.tomwen.tools:type=Locker,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+      objectName = on;
+      return this;
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to register LockMetrics " + name, e);
+    }
+  }
+
+  public synchronized void unregister() {
+    if (objectName == null)
+      return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(objectName);
+    } catch (JMException e) {
+      logger.warn("Unable to unregister " + objectName, e);
+    }
+    objectName = null;
+  }
+
+  void contended(int queueLength) {
+    contended.getAndIncrement();
+    int max;
+    while (queueLength > (max = maxQueueLength.get()) && !maxQueueLength.compareAndSet(max, queueLength)) {
+      // retry
+    }
+  }
+
+  void acquired(long waitNanos) {
+    waitTime.record(waitNanos);
+  }
+
+  void released(long holdNanos) {
+    holdTime.record(holdNanos);
+    if (holdNanos > slowHolderNanos) {
+      slowHolders.getAndIncrement();
+      StringBuilder sb = new StringBuilder(256)
+        .append("Locker ").append(name).append(" held for ")
+        .append(holdNanos / 1000).append(" us by ").append(Thread.currentThread().getName());
+      Jvm.trimStackTrace(sb, Thread.currentThread().getStackTrace());
+      logger.warn(sb.toString());
+    }
+  }
+
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getAcquireCount() {
+    return waitTime.count();
+  }
+
+  @Override
+  public long getContendedCount() {
+    return contended.get();
+  }
+
+  @Override
+  public int getMaxQueueLength() {
+    return maxQueueLength.get();
+  }
+
+  @Override
+  public long getSlowHolderCount() {
+    return slowHolders.get();
+  }
+
+  @Override
+  public long getSlowHolderThresholdNanos() {
+    return slowHolderNanos;
+  }
+
+  @Override
+  public double getWaitTimeMeanNanos() {
+    return waitTime.mean();
+  }
+
+  @Override
+  public long getWaitTimeP50Nanos() {
+    return waitTime.percentile(0.5);
+  }
+
+  @Override
+  public long getWaitTimeP99Nanos() {
+    return waitTime.percentile(0.99);
+  }
+
+  @Override
+  public long getWaitTimeMaxNanos() {
+    return waitTime.max();
+  }
+
+  @Override
+  public double getHoldTimeMeanNanos() {
+    return holdTime.mean();
+  }
+
+  @Override
+  public long getHoldTimeP50Nanos() {
+    return holdTime.percentile(0.5);
+  }
+
+  @Override
+  public long getHoldTimeP99Nanos() {
+    return holdTime.percentile(0.99);
+  }
+
+  @Override
+  public long getHoldTimeMaxNanos() {
+    return holdTime.max();
+  }
+
+  @Override
+  public void reset() {
+    waitTime.reset();
+    holdTime.reset();
+    contended.set(0);
+    maxQueueLength.set(0);
+    slowHolders.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  /**
+   * 某一时刻的统计值, 百分位是 2 的幂的上界
+   */
+  public static final class Snapshot {
+    public final String name;
+    public final long acquireCount;
+    public final long contendedCount;
+    public final int maxQueueLength;
+    public final long slowHolderCount;
+    public final double waitTimeMeanNanos;
+    public final long waitTimeP50Nanos;
+    public final long waitTimeP99Nanos;
+    public final long waitTimeMaxNanos;
+    public final double holdTimeMeanNanos;
+    public final long holdTimeP50Nanos;
+    public final long holdTimeP99Nanos;
+    public final long holdTimeMaxNanos;
+
+    Snapshot(LockMetrics metrics) {
+      name = metrics.getName();
+      acquireCount = metrics.getAcquireCount();
+      contendedCount = metrics.getContendedCount();
+      maxQueueLength = metrics.getMaxQueueLength();
+      slowHolderCount = metrics.getSlowHolderCount();
+      waitTimeMeanNanos = metrics.getWaitTimeMeanNanos();
+      waitTimeP50Nanos = metrics.getWaitTimeP50Nanos();
+      waitTimeP99Nanos = metrics.getWaitTimeP99Nanos();
+      waitTimeMaxNanos = metrics.getWaitTimeMaxNanos();
+      holdTimeMeanNanos = metrics.getHoldTimeMeanNanos();
+      holdTimeP50Nanos = metrics.getHoldTimeP50Nanos();
+      holdTimeP99Nanos = metrics.getHoldTimeP99Nanos();
+      holdTimeMaxNanos = metrics.getHoldTimeMaxNanos();
+    }
+
+    @Override
+    public String toString() {
+      return "LockMetrics{" + name
+        + ", acquired=" + acquireCount
+        + ", contended=" + contendedCount
+        + ", maxQueueLength=" + maxQueueLength
+        + ", slowHolders=" + slowHolderCount
+        + ", wait(mean/p50/p99/max ns)=" + (long) waitTimeMeanNanos + "/" + waitTimeP50Nanos + "/" + waitTimeP99Nanos + "/" + waitTimeMaxNanos
+        + ", hold(mean/p50/p99/max ns)=" + (long) holdTimeMeanNanos + "/" + holdTimeP50Nanos + "/" + holdTimeP99Nanos + "/" + holdTimeMaxNanos
+        + '}';
+    }
+  }
+}
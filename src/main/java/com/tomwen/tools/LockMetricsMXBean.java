@@ -0,0 +1,36 @@
+package com.tomwen.tools;
+
+/**
+ * {@link LockMetrics} 的 JMX 接口, 时间的单位都是纳秒
+ */
+public interface LockMetricsMXBean {
+  String getName();
+
+  long getAcquireCount();
+
+  long getContendedCount();
+
+  int getMaxQueueLength();
+
+  long getSlowHolderCount();
+
+  long getSlowHolderThresholdNanos();
+
+  double getWaitTimeMeanNanos();
+
+  long getWaitTimeP50Nanos();
+
+  long getWaitTimeP99Nanos();
+
+  long getWaitTimeMaxNanos();
+
+  double getHoldTimeMeanNanos();
+
+  long getHoldTimeP50Nanos();
+
+  long getHoldTimeP99Nanos();
+
+  long getHoldTimeMaxNanos();
+
+  void reset();
+}
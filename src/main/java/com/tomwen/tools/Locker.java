@@ -14,18 +14,31 @@ import java.util.concurrent.locks.ReentrantLock;
  *   // something
  * }
  * </pre>
+ * 传入 {@link LockMetrics} 时统计等待和持有的时间, 不传时只多一次 final 字段的判断.
  */
 public class Locker {
   private static final Lock LOCKED = new Lock();
   private final ReentrantLock _lock = new ReentrantLock();
   private final Lock _unlock = new UnLock();
+  private final LockMetrics _metrics;
+  private long _acquiredAt;
 
   public Locker() {
+    this(null);
+  }
+
+  /**
+   * @param metrics 为 null 时不统计
+   */
+  public Locker(LockMetrics metrics) {
+    _metrics = metrics;
   }
 
   public Lock lock() {
     if (_lock.isHeldByCurrentThread())
       throw new IllegalStateException("Locker is not reentrant");
+    if (_metrics != null)
+      return lockInstrumented();
     _lock.lock();
     return _unlock;
   }
@@ -33,10 +46,31 @@ public class Locker {
   public Lock lockIfNotHeld() {
     if (_lock.isHeldByCurrentThread())
       return LOCKED;
+    if (_metrics != null)
+      return lockInstrumented();
     _lock.lock();
     return _unlock;
   }
 
+  private Lock lockInstrumented() {
+    long start = System.nanoTime();
+    if (!_lock.tryLock()) {
+      _metrics.contended(_lock.getQueueLength() + 1);
+      _lock.lock();
+    }
+    long now = System.nanoTime();
+    _metrics.acquired(now - start);
+    _acquiredAt = now;
+    return _unlock;
+  }
+
+  /**
+   * @return 不统计时返回 null
+   */
+  public LockMetrics metrics() {
+    return _metrics;
+  }
+
   public boolean isLocked() {
     return _lock.isLocked();
   }
@@ -50,6 +84,8 @@ public class Locker {
   public class UnLock extends Lock {
     @Override
     public void close() {
+      if (_metrics != null && _lock.isHeldByCurrentThread())
+        _metrics.released(System.nanoTime() - _acquiredAt);
       _lock.unlock();
     }
   }
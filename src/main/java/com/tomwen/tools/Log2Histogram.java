@@ -0,0 +1,66 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按 2 的幂分桶的直方图, 记录时只有几次原子加, 百分位的精度是 2 倍以内.
+ * 第 i 个桶记录 [2^(i-1), 2^i) 之间的值, 第 0 个桶记录 0 和负数.
+ */
+final class Log2Histogram {
+  private static final int BUCKETS = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long value) {
+    buckets.getAndIncrement(value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value));
+    count.getAndIncrement();
+    sum.getAndAdd(value);
+    long m;
+    while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+      // retry
+    }
+  }
+
+  long count() {
+    return count.get();
+  }
+
+  long max() {
+    return max.get();
+  }
+
+  double mean() {
+    long n = count.get();
+    return n == 0 ? 0 : sum.get() / (double) n;
+  }
+
+  /**
+   * @param fraction 0 到 1, 比如 0.99
+   * @return 不小于该百分位的值的上界, 没有记录时返回 0
+   */
+  long percentile(double fraction) {
+    long n = count.get();
+    if (n == 0)
+      return 0;
+    long rank = (long) Math.ceil(fraction * n);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= Math.max(rank, 1))
+        return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+    }
+    return max.get();
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++)
+      buckets.set(i, 0);
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+}
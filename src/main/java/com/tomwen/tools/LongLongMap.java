@@ -0,0 +1,245 @@
+package com.tomwen.tools;
+
+import java.util.Arrays;
+
+/**
+ * long -&gt; long 的开放寻址哈希表, key 和 value 都不装箱.
+ * 使用线性探测, 删除时向后移位(backward-shift), 不留墓碑.
+ * 非线程安全.
+ * <pre>
+ * LongLongMap map = new LongLongMap();
+ * map.put(1L, 100L);
+ * map.forEach((k, v) -&gt; ...);
+ * </pre>
+ */
+public class LongLongMap {
+  private static final long FREE_KEY = 0;
+
+  private final float loadFactor;
+  private final long missingValue;
+  private long[] keys;
+  private long[] values;
+  private int mask;
+  private int maxFill;
+  private int size;
+  private boolean hasFreeKey;
+  private long freeValue;
+
+  public LongLongMap() {
+    this(PrimitiveHash.DEFAULT_EXPECTED_SIZE, PrimitiveHash.DEFAULT_LOAD_FACTOR, 0L);
+  }
+
+  public LongLongMap(int expectedSize) {
+    this(expectedSize, PrimitiveHash.DEFAULT_LOAD_FACTOR, 0L);
+  }
+
+  /**
+   * @param expectedSize 预计的元素个数
+   * @param loadFactor   装载因子, (0, 1)
+   * @param missingValue key 不存在时 get/put/remove 返回的值
+   */
+  public LongLongMap(int expectedSize, float loadFactor, long missingValue) {
+    this.loadFactor = PrimitiveHash.checkLoadFactor(loadFactor);
+    this.missingValue = missingValue;
+    allocate(PrimitiveHash.capacity(expectedSize, loadFactor));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    mask = capacity - 1;
+    maxFill = PrimitiveHash.maxFill(capacity, loadFactor);
+  }
+
+  public long missingValue() {
+    return missingValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == FREE_KEY)
+      return hasFreeKey;
+    return indexOf(key) >= 0;
+  }
+
+  public long get(long key) {
+    return getOrDefault(key, missingValue);
+  }
+
+  public long getOrDefault(long key, long defaultValue) {
+    if (key == FREE_KEY)
+      return hasFreeKey ? freeValue : defaultValue;
+    int index = indexOf(key);
+    return index < 0 ? defaultValue : values[index];
+  }
+
+  /**
+   * @return 之前的值, 没有时返回 {@link #missingValue()}
+   */
+  public long put(long key, long value) {
+    if (key == FREE_KEY) {
+      long previous = hasFreeKey ? freeValue : missingValue;
+      if (!hasFreeKey) {
+        hasFreeKey = true;
+        size++;
+      }
+      freeValue = value;
+      return previous;
+    }
+    long[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (long k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key) {
+        long previous = values[index];
+        values[index] = value;
+        return previous;
+      }
+    }
+    keys[index] = key;
+    values[index] = value;
+    if (++size > maxFill)
+      rehash();
+    return missingValue;
+  }
+
+  /**
+   * 对 key 的值加上 delta, key 不存在时以 {@link #missingValue()} 为初始值
+   *
+   * @return 相加后的值
+   */
+  public long addValue(long key, long delta) {
+    if (key == FREE_KEY) {
+      if (!hasFreeKey) {
+        hasFreeKey = true;
+        freeValue = missingValue;
+        size++;
+      }
+      return freeValue += delta;
+    }
+    long[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (long k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key)
+        return values[index] += delta;
+    }
+    long value = missingValue + delta;
+    keys[index] = key;
+    values[index] = value;
+    if (++size > maxFill)
+      rehash();
+    return value;
+  }
+
+  /**
+   * @return 被删除的值, 没有时返回 {@link #missingValue()}
+   */
+  public long remove(long key) {
+    if (key == FREE_KEY) {
+      if (!hasFreeKey)
+        return missingValue;
+      hasFreeKey = false;
+      size--;
+      return freeValue;
+    }
+    int index = indexOf(key);
+    if (index < 0)
+      return missingValue;
+    long previous = values[index];
+    shiftKeys(index);
+    size--;
+    return previous;
+  }
+
+  public void clear() {
+    if (size == 0)
+      return;
+    Arrays.fill(keys, FREE_KEY);
+    hasFreeKey = false;
+    size = 0;
+  }
+
+  /**
+   * 遍历所有的 entry, 不分配对象. 遍历过程中不能修改 map.
+   */
+  public void forEach(EntryConsumer consumer) {
+    if (hasFreeKey)
+      consumer.accept(FREE_KEY, freeValue);
+    long[] keys = this.keys;
+    long[] values = this.values;
+    for (int i = 0; i < keys.length; i++) {
+      long k = keys[i];
+      if (k != FREE_KEY)
+        consumer.accept(k, values[i]);
+    }
+  }
+
+  private int indexOf(long key) {
+    long[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (long k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key)
+        return index;
+    }
+    return -1;
+  }
+
+  private void shiftKeys(int hole) {
+    long[] keys = this.keys;
+    long[] values = this.values;
+    int j = hole;
+    while (true) {
+      j = (j + 1) & mask;
+      long k = keys[j];
+      if (k == FREE_KEY)
+        break;
+      if (PrimitiveHash.canShift(hole, j, PrimitiveHash.slot(k, mask))) {
+        keys[hole] = k;
+        values[hole] = values[j];
+        hole = j;
+      }
+    }
+    keys[hole] = FREE_KEY;
+  }
+
+  private void rehash() {
+    if (keys.length == PrimitiveHash.MAX_CAPACITY)
+      throw PrimitiveHash.full(size);
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(keys.length * 2);
+    long[] keys = this.keys;
+    long[] values = this.values;
+    for (int i = 0; i < oldKeys.length; i++) {
+      long k = oldKeys[i];
+      if (k == FREE_KEY)
+        continue;
+      int index = PrimitiveHash.slot(k, mask);
+      while (keys[index] != FREE_KEY)
+        index = (index + 1) & mask;
+      keys[index] = k;
+      values[index] = oldValues[i];
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append('{');
+    forEach((key, value) -> {
+      if (sb.length() > 1)
+        sb.append(", ");
+      sb.append(key).append('=').append(value);
+    });
+    return sb.append('}').toString();
+  }
+
+  public interface EntryConsumer {
+    void accept(long key, long value);
+  }
+}
@@ -0,0 +1,210 @@
+package com.tomwen.tools;
+
+import java.util.Arrays;
+
+/**
+ * long -&gt; Object 的开放寻址哈希表, key 不装箱.
+ * 使用线性探测, 删除时向后移位(backward-shift), 不留墓碑.
+ * value 不能为 null, get 返回 null 表示 key 不存在.
+ * 非线程安全.
+ */
+public class LongObjMap<V> {
+  private static final long FREE_KEY = 0;
+
+  private final float loadFactor;
+  private long[] keys;
+  private V[] values;
+  private int mask;
+  private int maxFill;
+  private int size;
+  private V freeValue;
+
+  public LongObjMap() {
+    this(PrimitiveHash.DEFAULT_EXPECTED_SIZE, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+  }
+
+  public LongObjMap(int expectedSize) {
+    this(expectedSize, PrimitiveHash.DEFAULT_LOAD_FACTOR);
+  }
+
+  /**
+   * @param expectedSize 预计的元素个数
+   * @param loadFactor   装载因子, (0, 1)
+   */
+  public LongObjMap(int expectedSize, float loadFactor) {
+    this.loadFactor = PrimitiveHash.checkLoadFactor(loadFactor);
+    allocate(PrimitiveHash.capacity(expectedSize, loadFactor));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = (V[]) new Object[capacity];
+    mask = capacity - 1;
+    maxFill = PrimitiveHash.maxFill(capacity, loadFactor);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == FREE_KEY)
+      return freeValue != null;
+    return indexOf(key) >= 0;
+  }
+
+  public V get(long key) {
+    if (key == FREE_KEY)
+      return freeValue;
+    int index = indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  public V getOrDefault(long key, V defaultValue) {
+    V value = get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  /**
+   * @return 之前的值, 没有时返回 null
+   */
+  public V put(long key, V value) {
+    if (value == null)
+      throw new NullPointerException("value");
+    if (key == FREE_KEY) {
+      V previous = freeValue;
+      if (previous == null)
+        size++;
+      freeValue = value;
+      return previous;
+    }
+    long[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (long k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key) {
+        V previous = values[index];
+        values[index] = value;
+        return previous;
+      }
+    }
+    keys[index] = key;
+    values[index] = value;
+    if (++size > maxFill)
+      rehash();
+    return null;
+  }
+
+  /**
+   * @return 被删除的值, 没有时返回 null
+   */
+  public V remove(long key) {
+    if (key == FREE_KEY) {
+      V previous = freeValue;
+      if (previous != null) {
+        freeValue = null;
+        size--;
+      }
+      return previous;
+    }
+    int index = indexOf(key);
+    if (index < 0)
+      return null;
+    V previous = values[index];
+    shiftKeys(index);
+    size--;
+    return previous;
+  }
+
+  public void clear() {
+    if (size == 0)
+      return;
+    Arrays.fill(keys, FREE_KEY);
+    Arrays.fill(values, null);
+    freeValue = null;
+    size = 0;
+  }
+
+  /**
+   * 遍历所有的 entry, 不分配对象. 遍历过程中不能修改 map.
+   */
+  public void forEach(EntryConsumer<? super V> consumer) {
+    if (freeValue != null)
+      consumer.accept(FREE_KEY, freeValue);
+    long[] keys = this.keys;
+    V[] values = this.values;
+    for (int i = 0; i < keys.length; i++) {
+      long k = keys[i];
+      if (k != FREE_KEY)
+        consumer.accept(k, values[i]);
+    }
+  }
+
+  private int indexOf(long key) {
+    long[] keys = this.keys;
+    int index = PrimitiveHash.slot(key, mask);
+    for (long k; (k = keys[index]) != FREE_KEY; index = (index + 1) & mask) {
+      if (k == key)
+        return index;
+    }
+    return -1;
+  }
+
+  private void shiftKeys(int hole) {
+    long[] keys = this.keys;
+    V[] values = this.values;
+    int j = hole;
+    while (true) {
+      j = (j + 1) & mask;
+      long k = keys[j];
+      if (k == FREE_KEY)
+        break;
+      if (PrimitiveHash.canShift(hole, j, PrimitiveHash.slot(k, mask))) {
+        keys[hole] = k;
+        values[hole] = values[j];
+        hole = j;
+      }
+    }
+    keys[hole] = FREE_KEY;
+    values[hole] = null;
+  }
+
+  private void rehash() {
+    if (keys.length == PrimitiveHash.MAX_CAPACITY)
+      throw PrimitiveHash.full(size);
+    long[] oldKeys = keys;
+    V[] oldValues = values;
+    allocate(keys.length * 2);
+    long[] keys = this.keys;
+    V[] values = this.values;
+    for (int i = 0; i < oldKeys.length; i++) {
+      long k = oldKeys[i];
+      if (k == FREE_KEY)
+        continue;
+      int index = PrimitiveHash.slot(k, mask);
+      while (keys[index] != FREE_KEY)
+        index = (index + 1) & mask;
+      keys[index] = k;
+      values[index] = oldValues[i];
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append('{');
+    forEach((key, value) -> {
+      if (sb.length() > 1)
+        sb.append(", ");
+      sb.append(key).append('=').append(value);
+    });
+    return sb.append('}').toString();
+  }
+
+  public interface EntryConsumer<V> {
+    void accept(long key, V value);
+  }
+}
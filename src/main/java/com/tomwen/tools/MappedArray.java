@@ -0,0 +1,371 @@
+package com.tomwen.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * {@link MappedLongArray} 和 {@link MappedDoubleArray} 共用的部分: 文件头, 分段映射和扩容.
+ * <pre>
+ * | magic 8 | version 4 | type 2 | byte order 2 | length 8 | 保留到 64 字节 | 元素 ... |
+ * </pre>
+ * 文件按段 (默认 1G, 单个 {@link MappedByteBuffer} 不能超过 2G) 映射, 8 字节的元素不会跨段.
+ * 元素按本机字节序存储, 打开字节序不同的文件时抛出 {@link IllegalStateException}.
+ */
+abstract class MappedArray implements Closeable {
+  static final long MAGIC = 0x4A54_4D41_5041_5252L; // "JTMAPARR"
+  static final int VERSION = 1;
+  static final int HEADER = 64;
+  static final int TYPE_LONG = 1;
+  static final int TYPE_DOUBLE = 2;
+  static final int DEFAULT_CHUNK_SHIFT = 30;
+  static final long DEFAULT_CAPACITY = 1024;
+  private static final int ELEMENT_SHIFT = 3;
+  private static final int VERSION_OFFSET = 8;
+  private static final int TYPE_OFFSET = 12;
+  private static final int ORDER_OFFSET = 14;
+  private static final int LENGTH_OFFSET = 16;
+  private static final short NATIVE_ORDER = (short) (UnsafeMemory.LITTLE_ENDIAN ? 1 : 2);
+
+  private final File file;
+  private final int type;
+  private final int chunkShift;
+  private final long chunkMask;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private MappedByteBuffer[] chunks = new MappedByteBuffer[4];
+  /* start address of every chunk, elements are addressed as addresses[pos >>> chunkShift] + (pos & chunkMask) */
+  private long[] addresses = new long[4];
+  private int chunkCount;
+  private long mappedBytes;
+  long length;
+  long capacity;
+  private boolean closed;
+
+  MappedArray(File file, int type, long initialCapacity, int chunkShift) {
+    if (initialCapacity < 0)
+      throw new IllegalArgumentException("initialCapacity must be >= 0, was " + initialCapacity);
+    if (chunkShift < 12 || chunkShift > 30)
+      throw new IllegalArgumentException("chunkShift must be in [12, 30], was " + chunkShift);
+    this.file = file;
+    this.type = type;
+    this.chunkShift = chunkShift;
+    this.chunkMask = (1L << chunkShift) - 1;
+    try {
+      File dir = file.getAbsoluteFile().getParentFile();
+      if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+        throw new IOException("Unable to create directory " + dir);
+      raf = new RandomAccessFile(file, "rw");
+      channel = raf.getChannel();
+      long size = channel.size();
+      if (size == 0) {
+        create(initialCapacity);
+      } else {
+        open(size);
+      }
+    } catch (IOException e) {
+      closeQuietly();
+      throw new UncheckedIOException("Unable to open " + file, e);
+    } catch (RuntimeException e) {
+      closeQuietly();
+      throw e;
+    }
+  }
+
+  private void create(long initialCapacity) throws IOException {
+    capacity = Maths.nextPower2(Math.max(initialCapacity, 1), DEFAULT_CAPACITY);
+    map(HEADER + (capacity << ELEMENT_SHIFT));
+    long header = addresses[0];
+    UNSAFE.putInt(header + VERSION_OFFSET, VERSION);
+    UNSAFE.putShort(header + TYPE_OFFSET, (short) type);
+    UNSAFE.putShort(header + ORDER_OFFSET, NATIVE_ORDER);
+    UNSAFE.putLong(header + LENGTH_OFFSET, 0);
+    // the magic goes last, a file without it is not a valid array
+    UNSAFE.putLong(header, MAGIC);
+  }
+
+  private void open(long size) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder());
+    while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+      // read the whole header
+    }
+    if (header.hasRemaining() || header.getLong(0) != MAGIC)
+      throw new IllegalStateException(file + " is not a mapped array");
+    int version = header.getInt(VERSION_OFFSET);
+    if (version != VERSION)
+      throw new IllegalStateException(file + " has version " + version + ", expected " + VERSION);
+    if (header.getShort(ORDER_OFFSET) != NATIVE_ORDER)
+      throw new IllegalStateException(file + " was written with a different byte order");
+    int fileType = header.getShort(TYPE_OFFSET);
+    if (fileType != type)
+      throw new IllegalStateException(file + " holds " + typeName(fileType) + ", not " + typeName(type));
+    long length = header.getLong(LENGTH_OFFSET);
+    long capacity = (size - HEADER) >> ELEMENT_SHIFT;
+    if (length < 0 || length > capacity)
+      throw new IllegalStateException(file + " has length " + length + " but room for " + capacity);
+    this.capacity = capacity;
+    this.length = length;
+    map(size);
+  }
+
+  private static String typeName(int type) {
+    return type == TYPE_LONG ? "long" : type == TYPE_DOUBLE ? "double" : "type " + type;
+  }
+
+  /**
+   * 把文件扩大到 size 并映射新增的部分; 最后一段没有映射满时重新映射
+   */
+  private void map(long size) throws IOException {
+    if (raf.length() < size)
+      raf.setLength(size);
+    long chunkSize = 1L << chunkShift;
+    if (chunkCount > 0 && chunks[chunkCount - 1].capacity() < chunkSize) {
+      chunkCount--;
+      UnsafeMemory.unmap(chunks[chunkCount]);
+      chunks[chunkCount] = null;
+      mappedBytes = (long) chunkCount << chunkShift;
+    }
+    while (mappedBytes < size) {
+      long bytes = Math.min(chunkSize, size - mappedBytes);
+      MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, bytes);
+      if (chunkCount == chunks.length) {
+        chunks = Arrays.copyOf(chunks, chunkCount << 1);
+        addresses = Arrays.copyOf(addresses, chunkCount << 1);
+      }
+      chunks[chunkCount] = chunk;
+      addresses[chunkCount] = UnsafeMemory.address(chunk);
+      chunkCount++;
+      mappedBytes += bytes;
+    }
+  }
+
+  public File file() {
+    return file;
+  }
+
+  /**
+   * 文件格式的版本
+   */
+  public int version() {
+    return VERSION;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  /**
+   * 不扩容时最多能放的元素个数
+   */
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * 文件的大小
+   */
+  public long sizeInBytes() {
+    return mappedBytes;
+  }
+
+  /**
+   * 修改长度, 变长时新增的元素为 0, 容量不够时把文件扩大到 2 的幂
+   */
+  public void setLength(long newLength) {
+    if (newLength < 0)
+      throw new IllegalArgumentException("length must be >= 0, was " + newLength);
+    ensureCapacity(newLength);
+    if (newLength > length)
+      zero(length, newLength);
+    updateLength(newLength);
+  }
+
+  /**
+   * 保证能放下 minCapacity 个元素, 扩容后之前取得的地址失效
+   */
+  public void ensureCapacity(long minCapacity) {
+    checkOpen();
+    if (minCapacity <= capacity)
+      return;
+    long newCapacity = Maths.nextPower2(minCapacity, DEFAULT_CAPACITY);
+    try {
+      map(HEADER + (newCapacity << ELEMENT_SHIFT));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to grow " + file + " to " + newCapacity + " elements", e);
+    }
+    capacity = newCapacity;
+  }
+
+  /**
+   * 把修改写到磁盘, 返回后即使进程或者机器崩溃, 重新打开时也能看到之前的所有修改
+   */
+  public void force() {
+    checkOpen();
+    // the header lives in the first chunk, force it last so the length never covers unwritten elements
+    for (int i = chunkCount - 1; i >= 0; i--)
+      chunks[i].force();
+  }
+
+  /**
+   * 解除映射并关闭文件, 数据保留在文件里, 但不保证已经写到磁盘 (见 {@link #force()}).
+   * 之后再访问会抛出 {@link IllegalStateException}; 其它线程正在访问时关闭可能使 jvm 崩溃.
+   */
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      closeQuietly();
+    }
+  }
+
+  /**
+   * 关闭并删除文件
+   */
+  public boolean delete() {
+    close();
+    return file.delete();
+  }
+
+  private void closeQuietly() {
+    for (int i = 0; i < chunkCount; i++) {
+      UnsafeMemory.unmap(chunks[i]);
+      chunks[i] = null;
+    }
+    chunkCount = 0;
+    length = capacity = 0;
+    try {
+      if (raf != null)
+        raf.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  final void checkOpen() {
+    if (closed)
+      throw new IllegalStateException(file + " is closed");
+  }
+
+  final void updateLength(long newLength) {
+    length = newLength;
+    UNSAFE.putLong(addresses[0] + LENGTH_OFFSET, newLength);
+  }
+
+  /**
+   * 追加一个元素的位置, 必要时扩容
+   */
+  final long append() {
+    long index = length;
+    if (index == capacity)
+      ensureCapacity(index + 1);
+    return index;
+  }
+
+  final void checkIndex(long index) {
+    if (index < 0 || index >= length) {
+      checkOpen();
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    }
+  }
+
+  final void checkRange(long from, long to) {
+    if (from < 0 || to > length || from > to) {
+      checkOpen();
+      throw new IndexOutOfBoundsException("range [" + from + ", " + to + "), length " + length);
+    }
+  }
+
+  static void checkArray(int arrayLength, int offset, int count) {
+    if (offset < 0 || count < 0 || offset > arrayLength - count)
+      throw new IndexOutOfBoundsException("offset " + offset + ", count " + count + ", array length " + arrayLength);
+  }
+
+  /**
+   * 第 index 个元素的地址, 不检查范围
+   */
+  final long address(long index) {
+    long pos = HEADER + (index << ELEMENT_SHIFT);
+    return addresses[(int) (pos >>> chunkShift)] + (pos & chunkMask);
+  }
+
+  /**
+   * index 所在的段之后第一个元素的下标, [index, chunkEnd(index)) 的地址是连续的
+   */
+  final long chunkEnd(long index) {
+    long pos = HEADER + (index << ELEMENT_SHIFT);
+    long end = (pos | chunkMask) + 1;
+    return (end - HEADER) >> ELEMENT_SHIFT;
+  }
+
+  /**
+   * 在文件和 java 数组之间复制 count 个元素, 每段一次 copyMemory
+   */
+  final void transfer(long index, Object array, long arrayOffset, long count, boolean toFile) {
+    while (count > 0) {
+      long n = Math.min(count, chunkEnd(index) - index);
+      long bytes = n << ELEMENT_SHIFT;
+      long address = address(index);
+      if (toFile) {
+        UNSAFE.copyMemory(array, arrayOffset, null, address, bytes);
+      } else {
+        UNSAFE.copyMemory(null, address, array, arrayOffset, bytes);
+      }
+      index += n;
+      arrayOffset += bytes;
+      count -= n;
+    }
+  }
+
+  /**
+   * 从 src 的 srcIndex 复制 count 个元素到这里的 index, 超出长度时变长. 同一个数组里复制时按 memmove 处理重叠
+   */
+  final void copy(MappedArray src, long srcIndex, long index, long count) {
+    src.checkRange(srcIndex, srcIndex + count);
+    if (index < 0 || index > length)
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    if (index + count > length)
+      setLength(index + count);
+    if (src == this && srcIndex < index && index < srcIndex + count) {
+      // overlapping with the destination after the source, copy backwards
+      for (long i = count - 1; i >= 0; i--)
+        UNSAFE.putLong(address(index + i), UNSAFE.getLong(src.address(srcIndex + i)));
+      return;
+    }
+    while (count > 0) {
+      long n = Math.min(count, Math.min(src.chunkEnd(srcIndex) - srcIndex, chunkEnd(index) - index));
+      UNSAFE.copyMemory(src.address(srcIndex), address(index), n << ELEMENT_SHIFT);
+      srcIndex += n;
+      index += n;
+      count -= n;
+    }
+  }
+
+  private void zero(long from, long to) {
+    while (from < to) {
+      long n = Math.min(to, chunkEnd(from)) - from;
+      UNSAFE.setMemory(address(from), n << ELEMENT_SHIFT, (byte) 0);
+      from += n;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{file=" + file + ", length=" + length + ", capacity=" + capacity + ", closed=" + closed + '}';
+  }
+}
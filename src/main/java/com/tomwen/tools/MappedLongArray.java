@@ -0,0 +1,148 @@
+package com.tomwen.tools;
+
+import java.io.File;
+import java.util.function.LongConsumer;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 存在内存映射文件里的 long 数组, 可以超过堆的大小, 进程重启后打开同一个文件即可继续使用, 不需要重建.
+ * <pre>
+ * try (MappedLongArray ids = MappedLongArray.open("order-ids")) {   // Jvm.TMP/order-ids
+ *   ids.add(orderId);
+ *   ids.set(0, firstId);
+ *   long id = ids.get(i);
+ *   ids.force();
+ * }
+ * </pre>
+ * <ul>
+ * <li>文件按 {@link Maths#nextPower2(long, long)} 扩容, 分多段映射, 可以超过 2G.</li>
+ * <li>文件头记录格式版本和长度, 重新打开时检查版本和元素类型.</li>
+ * <li>修改直接写到映射的内存, 由操作系统写回磁盘; {@link #force()} 返回后保证已经写到磁盘.</li>
+ * </ul>
+ * 不同线程可以同时读写不同的下标, 但是扩容 (add, setLength, ensureCapacity) 和 close 时不能有其它线程在访问.
+ */
+public class MappedLongArray extends MappedArray {
+  private static final long ARRAY_OFFSET = UNSAFE.arrayBaseOffset(long[].class);
+
+  MappedLongArray(File file, long initialCapacity, int chunkShift) {
+    super(file, TYPE_LONG, initialCapacity, chunkShift);
+  }
+
+  /**
+   * 打开 {@link Jvm#TMP} 下的文件, 不存在时创建
+   */
+  public static MappedLongArray open(String name) {
+    return open(new File(Jvm.TMP, name));
+  }
+
+  /**
+   * 打开已有的文件, 不存在时创建
+   */
+  public static MappedLongArray open(File file) {
+    return open(file, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity 创建新文件时的容量, 打开已有的文件时忽略
+   */
+  public static MappedLongArray open(File file, long initialCapacity) {
+    return new MappedLongArray(file, initialCapacity, DEFAULT_CHUNK_SHIFT);
+  }
+
+  public long get(long index) {
+    checkIndex(index);
+    return UNSAFE.getLong(address(index));
+  }
+
+  public void set(long index, long value) {
+    checkIndex(index);
+    UNSAFE.putLong(address(index), value);
+  }
+
+  /**
+   * 追加到末尾, 必要时扩容
+   *
+   * @return 新元素的下标
+   */
+  public long add(long value) {
+    checkOpen();
+    long index = append();
+    UNSAFE.putLong(address(index), value);
+    updateLength(index + 1);
+    return index;
+  }
+
+  /**
+   * 把 src[offset, offset + count) 复制到 [index, index + count), 超出长度时变长
+   */
+  public void set(long index, long[] src, int offset, int count) {
+    checkArray(src.length, offset, count);
+    if (index < 0 || index > length)
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+    if (index + count > length) {
+      ensureCapacity(index + count);
+      updateLength(index + count);
+    }
+    transfer(index, src, ARRAY_OFFSET + ((long) offset << 3), count, true);
+  }
+
+  /**
+   * 把 [index, index + count) 复制到 dst[offset, offset + count)
+   */
+  public void get(long index, long[] dst, int offset, int count) {
+    checkArray(dst.length, offset, count);
+    checkRange(index, index + count);
+    transfer(index, dst, ARRAY_OFFSET + ((long) offset << 3), count, false);
+  }
+
+  public void addAll(long[] src) {
+    set(length, src, 0, src.length);
+  }
+
+  /**
+   * 复制 [from, to) 到一个新数组
+   */
+  public long[] toArray(long from, long to) {
+    checkRange(from, to);
+    if (to - from > Integer.MAX_VALUE - 8)
+      throw new IllegalArgumentException("range [" + from + ", " + to + ") is too large for an array");
+    long[] result = new long[(int) (to - from)];
+    get(from, result, 0, result.length);
+    return result;
+  }
+
+  /**
+   * 从 src 的 srcIndex 复制 count 个元素到 index, 超出长度时变长. src 可以是自己, 范围可以重叠
+   */
+  public void copy(MappedLongArray src, long srcIndex, long index, long count) {
+    super.copy(src, srcIndex, index, count);
+  }
+
+  public void fill(long from, long to, long value) {
+    checkRange(from, to);
+    while (from < to) {
+      long end = Math.min(to, chunkEnd(from));
+      for (long address = address(from), last = address(end - 1); address <= last; address += 8)
+        UNSAFE.putLong(address, value);
+      from = end;
+    }
+  }
+
+  /**
+   * 按顺序访问 [from, to), 每段只计算一次地址. action 里不能扩容
+   */
+  public void forEach(long from, long to, LongConsumer action) {
+    checkRange(from, to);
+    while (from < to) {
+      long end = Math.min(to, chunkEnd(from));
+      for (long address = address(from), last = address(end - 1); address <= last; address += 8)
+        action.accept(UNSAFE.getLong(address));
+      from = end;
+    }
+  }
+
+  public void forEach(LongConsumer action) {
+    forEach(0, length, action);
+  }
+}
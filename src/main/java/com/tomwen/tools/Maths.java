@@ -1,5 +1,10 @@
 package com.tomwen.tools;
 
+import java.nio.BufferOverflowException;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * from https://github.com/OpenHFT/Java-Lang/blob/master/lang/src/main/java/net/openhft/lang/Maths.java
  * @author peter.lawrey
@@ -10,6 +15,10 @@ public class Maths {
      */
     private static final double WHOLE_NUMBER = 1L << 53;
     private static final long[] TENS = new long[19];
+    /**
+     * Bulk operations on more elements than this are split across the common ForkJoinPool.
+     */
+    private static volatile int parallelThreshold = Integer.getInteger("javatools.maths.parallelThreshold", 1 << 16);
 
     static {
         TENS[0] = 1;
@@ -73,6 +82,174 @@ public class Maths {
                 (long) (d < 0 ? d * factor - 0.5 : d * factor + 0.5) / factor;
     }
 
+    /**
+     * Performs a round to {@code decimals} places with the same 1 ulp accuracy as {@link #round2(double)} etc.
+     *
+     * @param d        value to round
+     * @param decimals number of decimal places, 0 to 18
+     * @return rounded value
+     */
+    public static double round(double d, int decimals) {
+        final double factor = factor(decimals);
+        final double limit = roundLimit(factor);
+        return d > limit || d < -limit ? d :
+                (long) (d < 0 ? d * factor - 0.5 : d * factor + 0.5) / factor;
+    }
+
+    /**
+     * Rounds {@code src[from, to)} into {@code dst[from, to)} as {@link #round2(double)} does. src and dst may be the
+     * same array.
+     */
+    public static void round2(double[] src, double[] dst, int from, int to) {
+        round(src, dst, from, to, 2);
+    }
+
+    public static void round4(double[] src, double[] dst, int from, int to) {
+        round(src, dst, from, to, 4);
+    }
+
+    public static void round6(double[] src, double[] dst, int from, int to) {
+        round(src, dst, from, to, 6);
+    }
+
+    public static void round8(double[] src, double[] dst, int from, int to) {
+        round(src, dst, from, to, 8);
+    }
+
+    /**
+     * Rounds {@code src[from, to)} into {@code dst[from, to)} as {@link #round(double, int)} does. src and dst may be
+     * the same array. Ranges longer than {@link #parallelThreshold()} are split across the common ForkJoinPool.
+     */
+    public static void round(double[] src, double[] dst, int from, int to, int decimals) {
+        checkRange(from, to, src.length);
+        checkRange(from, to, dst.length);
+        final double factor = factor(decimals);
+        if (to - from > parallelThreshold)
+            ForkJoinPool.commonPool().invoke(new RoundTask(src, dst, 0, null, null, from, to, factor));
+        else
+            round0(src, dst, 0, from, to, factor);
+    }
+
+    /**
+     * Rounds the remaining values of {@code src} into {@code dst}, advancing the position of both, like
+     * {@link DoubleBuffer#put(DoubleBuffer)}. src and dst may be the same buffer.
+     *
+     * @throws BufferOverflowException if dst has less remaining than src
+     */
+    public static void round(DoubleBuffer src, DoubleBuffer dst, int decimals) {
+        final double factor = factor(decimals);
+        final int length = src.remaining();
+        if (dst.remaining() < length)
+            throw new BufferOverflowException();
+        final int srcPos = src.position();
+        final int dstPos = dst.position();
+        if (src.hasArray() && dst.hasArray()) {
+            final int from = src.arrayOffset() + srcPos;
+            final int shift = dst.arrayOffset() + dstPos - from;
+            if (length > parallelThreshold)
+                ForkJoinPool.commonPool().invoke(
+                        new RoundTask(src.array(), dst.array(), shift, null, null, from, from + length, factor));
+            else
+                round0(src.array(), dst.array(), shift, from, from + length, factor);
+        } else {
+            final int shift = dstPos - srcPos;
+            if (length > parallelThreshold)
+                ForkJoinPool.commonPool().invoke(
+                        new RoundTask(null, null, shift, src, dst, srcPos, srcPos + length, factor));
+            else
+                round0(src, dst, shift, srcPos, srcPos + length, factor);
+        }
+        src.position(srcPos + length);
+        dst.position(dstPos + length);
+    }
+
+    public static int parallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param threshold bulk operations on more elements than this run in parallel, defaults to the
+     *                  {@code javatools.maths.parallelThreshold} system property or 65536
+     */
+    public static void parallelThreshold(int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be > 0, was " + threshold);
+        parallelThreshold = threshold;
+    }
+
+    /*
+     * Straight-line loops so the JIT can unroll and vectorize them. dst is written at index + shift.
+     */
+    private static void round0(double[] src, double[] dst, int shift, int from, int to, double factor) {
+        final double limit = roundLimit(factor);
+        for (int i = from; i < to; i++) {
+            final double d = src[i];
+            dst[i + shift] = Math.abs(d) > limit ? d : (long) (d * factor + Math.copySign(0.5, d)) / factor;
+        }
+    }
+
+    private static void round0(DoubleBuffer src, DoubleBuffer dst, int shift, int from, int to, double factor) {
+        final double limit = roundLimit(factor);
+        for (int i = from; i < to; i++) {
+            final double d = src.get(i);
+            dst.put(i + shift, Math.abs(d) > limit ? d : (long) (d * factor + Math.copySign(0.5, d)) / factor);
+        }
+    }
+
+    private static double factor(int decimals) {
+        final long factor = power10(decimals);
+        if (factor < 0)
+            throw new IllegalArgumentException("decimals must be in [0, 18], was " + decimals);
+        return factor;
+    }
+
+    /*
+     * The same limits as the roundN methods, above this the value is either a whole number or would overflow a long.
+     */
+    private static double roundLimit(double factor) {
+        return Math.min(WHOLE_NUMBER, Long.MAX_VALUE / factor);
+    }
+
+    private static void checkRange(int from, int to, int length) {
+        if (from < 0 || to > length || from > to)
+            throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + length);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class RoundTask extends RecursiveAction {
+        private final double[] src, dst;
+        private final int shift;
+        private final DoubleBuffer srcBuffer, dstBuffer;
+        private final int from, to;
+        private final double factor;
+
+        RoundTask(double[] src, double[] dst, int shift, DoubleBuffer srcBuffer, DoubleBuffer dstBuffer,
+                  int from, int to, double factor) {
+            this.src = src;
+            this.dst = dst;
+            this.shift = shift;
+            this.srcBuffer = srcBuffer;
+            this.dstBuffer = dstBuffer;
+            this.from = from;
+            this.to = to;
+            this.factor = factor;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= parallelThreshold) {
+                if (src != null)
+                    round0(src, dst, shift, from, to, factor);
+                else
+                    round0(srcBuffer, dstBuffer, shift, from, to, factor);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new RoundTask(src, dst, shift, srcBuffer, dstBuffer, from, mid, factor),
+                    new RoundTask(src, dst, shift, srcBuffer, dstBuffer, mid, to, factor));
+        }
+    }
+
     public static long power10(int n) {
         if (n < 0 || n >= TENS.length) return -1;
         return TENS[n];
@@ -126,6 +303,10 @@ public class Maths {
         return n;
     }
 
+    /**
+     * Hashes one char at a time, see {@link Hasher#hash(CharSequence)} for a faster and better distributed hash.
+     * The two produce different values.
+     */
     public static long hash(CharSequence cs) {
         long hash = 0;
         for (int i = 0; i < cs.length(); i++)
@@ -0,0 +1,121 @@
+package com.tomwen.tools;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 多个生产者线程, 多个消费者线程的 {@link RingQueue}, 算法来自 Dmitry Vyukov 的 bounded MPMC queue:
+ * 每个位置有一个序号, 等于生产者期望的序号时可以写入, 等于消费者期望的序号加一时可以读出, 双方都用 CAS 领取.
+ * <p>
+ * drain 和 fill 逐个领取位置. fill 领取之后才调用 supplier, supplier 返回 null 或者抛出异常时这个位置写入一个标记,
+ * 消费者跳过它, 后面的元素仍然可以读出.
+ */
+public class MpmcRingQueue<E> extends RingQueue<E> {
+  private static final long SEQUENCE_BASE = UNSAFE.arrayBaseOffset(long[].class);
+
+  /* sequence of every slot: == t when free for producer t, == h + 1 when readable by consumer h */
+  private final long[] sequences;
+
+  public MpmcRingQueue(int capacity) {
+    this(capacity, WaitStrategy.BACKOFF);
+  }
+
+  public MpmcRingQueue(int capacity, WaitStrategy waitStrategy) {
+    super(capacity, waitStrategy);
+    sequences = new long[buffer.length];
+    for (int i = 0; i < sequences.length; i++)
+      sequences[i] = i;
+  }
+
+  private long sequenceOffset(long sequence) {
+    return SEQUENCE_BASE + ((sequence & mask) << 3);
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null)
+      throw new NullPointerException();
+    long t = claimTail();
+    if (t < 0)
+      return false;
+    publish(t, e);
+    return true;
+  }
+
+  /**
+   * @return 领取到的序号, 队列满时返回 -1
+   */
+  private long claimTail() {
+    while (true) {
+      long t = tail.get();
+      long s = UNSAFE.getLongVolatile(sequences, sequenceOffset(t));
+      if (s == t) {
+        if (tail.compareAndSet(t, t + 1))
+          return t;
+      } else if (s - t < 0) {
+        // the slot still holds the element from the previous lap
+        return -1;
+      }
+    }
+  }
+
+  private void publish(long t, Object e) {
+    putPlain(offset(t), e);
+    UNSAFE.putOrderedLong(sequences, sequenceOffset(t), t + 1);
+  }
+
+  @Override
+  public E poll() {
+    while (true) {
+      long h = head.get();
+      long sequenceOffset = sequenceOffset(h);
+      long s = UNSAFE.getLongVolatile(sequences, sequenceOffset);
+      if (s == h + 1) {
+        if (head.compareAndSet(h, h + 1)) {
+          long offset = offset(h);
+          E e = getPlain(offset);
+          putPlain(offset, null);
+          UNSAFE.putOrderedLong(sequences, sequenceOffset, h + buffer.length);
+          if (e != SKIP)
+            return e;
+        }
+      } else if (s - (h + 1) < 0) {
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public int drain(Consumer<? super E> consumer, int limit) {
+    checkLimit(limit);
+    int n = 0;
+    E e;
+    while (n < limit && (e = poll()) != null) {
+      n++;
+      consumer.accept(e);
+    }
+    return n;
+  }
+
+  @Override
+  public int fill(Supplier<? extends E> supplier, int limit) {
+    checkLimit(limit);
+    int n = 0;
+    long t;
+    while (n < limit && (t = claimTail()) >= 0) {
+      E e = null;
+      try {
+        e = supplier.get();
+        if (e == null)
+          throw new NullPointerException("supplier returned null");
+      } finally {
+        // the slot is claimed whatever happens, consumers skip the marker
+        publish(t, e != null ? e : SKIP);
+      }
+      n++;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,124 @@
+package com.tomwen.tools;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 多个生产者线程, 一个消费者线程的 {@link RingQueue}. 生产者用 CAS 领取序号后再写入元素, 消费者不需要 CAS.
+ * poll, take 和 drain 只能在消费者线程里调用.
+ * <p>
+ * fill 先领取一批位置再调用 supplier. supplier 返回 null 或者抛出异常时, 剩下没有填的位置写入一个标记,
+ * 消费者跳过它们, 不会卡在空的位置上.
+ */
+public class MpscRingQueue<E> extends RingQueue<E> {
+
+  public MpscRingQueue(int capacity) {
+    this(capacity, WaitStrategy.BACKOFF);
+  }
+
+  public MpscRingQueue(int capacity, WaitStrategy waitStrategy) {
+    super(capacity, waitStrategy);
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null)
+      throw new NullPointerException();
+    long t;
+    do {
+      t = tail.get();
+      if (t - tail.cache >= buffer.length) {
+        // tail.cache is shared by the producers, a stale value only costs another read of head
+        long h = head.get();
+        tail.cache = h;
+        if (t - h >= buffer.length)
+          return false;
+      }
+    } while (!tail.compareAndSet(t, t + 1));
+    putOrdered(offset(t), e);
+    return true;
+  }
+
+  @Override
+  public E poll() {
+    while (true) {
+      long h = head.plain();
+      long offset = offset(h);
+      E e = getVolatile(offset);
+      if (e == null) {
+        if (h == tail.get())
+          return null;
+        // a producer has claimed the slot but not written it yet
+        do {
+          e = getVolatile(offset);
+        } while (e == null);
+      }
+      putPlain(offset, null);
+      head.lazySet(h + 1);
+      if (e != SKIP)
+        return e;
+    }
+  }
+
+  /**
+   * 只取出已经写入的元素, 遇到已经领取但还没写入的位置就停止
+   */
+  @Override
+  public int drain(Consumer<? super E> consumer, int limit) {
+    checkLimit(limit);
+    long h = head.plain();
+    int i = 0;
+    int n = 0;
+    try {
+      while (n < limit) {
+        long offset = offset(h + i);
+        E e = getVolatile(offset);
+        if (e == null)
+          break;
+        putPlain(offset, null);
+        i++;
+        if (e != SKIP) {
+          n++;
+          consumer.accept(e);
+        }
+      }
+    } finally {
+      if (i > 0)
+        head.lazySet(h + i);
+    }
+    return n;
+  }
+
+  @Override
+  public int fill(Supplier<? extends E> supplier, int limit) {
+    checkLimit(limit);
+    long t;
+    int n;
+    do {
+      t = tail.get();
+      long free = buffer.length - (t - tail.cache);
+      if (free < limit) {
+        long h = head.get();
+        tail.cache = h;
+        free = buffer.length - (t - h);
+      }
+      n = (int) Math.min(free, limit);
+      if (n <= 0)
+        return 0;
+    } while (!tail.compareAndSet(t, t + n));
+    int i = 0;
+    try {
+      for (; i < n; i++) {
+        E e = supplier.get();
+        if (e == null)
+          throw new NullPointerException("supplier returned null");
+        putOrdered(offset(t + i), e);
+      }
+    } finally {
+      // the slots are claimed whatever happens, release the rest to the consumer
+      for (; i < n; i++)
+        putOrdered(offset(t + i), SKIP);
+    }
+    return n;
+  }
+}
@@ -0,0 +1,487 @@
+package com.tomwen.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.tomwen.tools.UnsafeMemory.BYTE_ARRAY_OFFSET;
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 堆外内存的分配器, 数据不在堆上, 不增加 GC 的负担.
+ * <p>
+ * 块的大小向上取整为 2 的幂 (最小 8 字节). 不超过 slab 大小的块从 slab 里切出来, 释放后放回同样大小的空闲链表里复用;
+ * 更大的块单独向系统申请, 释放时直接归还. {@link #reset()} 一次释放所有块, slab 保留下来给之后的分配使用.
+ * <pre>
+ * try (OffHeapArena arena = new OffHeapArena("quotes", 256 &lt;&lt; 20)) {
+ *   long block = arena.allocate(24);
+ *   arena.putLong(block, 0, orderId);
+ *   arena.putDouble(block, 8, price);
+ *   ...
+ *   arena.free(block);
+ * }
+ * </pre>
+ * <ul>
+ * <li>块用地址表示. 读写方法的 offset 是相对块起点的偏移; debug 模式下检查块是否有效以及是否越界,
+ * 否则不做任何检查, 越界会破坏其它块甚至使 jvm 崩溃.</li>
+ * <li>预留的内存 (slab 加上大块) 超过上限时 allocate 抛出 {@link IllegalStateException}, 已经分配的不受影响.</li>
+ * <li>泄漏检测模式下记录每个块分配时的线程栈, {@link #close()} 时打印还没有释放的块.</li>
+ * </ul>
+ * debug 和泄漏检测的默认值来自系统属性 {@code javatools.arena.debug} 和 {@code javatools.arena.leakDetection}.
+ * 非线程安全.
+ */
+public class OffHeapArena implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(OffHeapArena.class);
+  private static final int MIN_SHIFT = 3;
+  private static final int MIN_BLOCK = 1 << MIN_SHIFT;
+  public static final int DEFAULT_SLAB_SIZE = 64 << 10;
+
+  private final String name;
+  private final long maxBytes;
+  private final int slabSize;
+  private final int slabClass;
+  private boolean debug = Boolean.getBoolean("javatools.arena.debug");
+  private boolean leakDetection = Boolean.getBoolean("javatools.arena.leakDetection");
+
+  /* free blocks per size class, used as stacks */
+  private final long[][] free;
+  private final int[] freeCount;
+  /* every slab, and the slabs which are not carved into blocks */
+  private long[] slabs = new long[16];
+  private int slabCount;
+  private long[] emptySlabs = new long[16];
+  private int emptySlabCount;
+  /* address -> requested size of every live block */
+  private final LongLongMap live = new LongLongMap(1024, PrimitiveHash.DEFAULT_LOAD_FACTOR, -1);
+  private final LongObjMap<String> allocationSites = new LongObjMap<>();
+
+  private long reservedBytes;
+  private long peakReservedBytes;
+  private long allocatedBytes;
+  private long requestedBytes;
+  private boolean closed;
+
+  /**
+   * 64 位 jvm 上不限制大小, 32 位上最多 1G
+   */
+  public OffHeapArena(String name) {
+    this(name, Jvm.is64Bit() ? Long.MAX_VALUE : 1L << 30);
+  }
+
+  public OffHeapArena(String name, long maxBytes) {
+    this(name, maxBytes, DEFAULT_SLAB_SIZE);
+  }
+
+  /**
+   * @param maxBytes 预留内存的上限
+   * @param slabSize 2 的幂, 不超过它的块从 slab 里分配
+   */
+  public OffHeapArena(String name, long maxBytes, int slabSize) {
+    if (name == null)
+      throw new NullPointerException("name");
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("maxBytes must be > 0, was " + maxBytes);
+    if (slabSize < MIN_BLOCK || !Maths.isPowerOf2(slabSize))
+      throw new IllegalArgumentException("slabSize must be a power of 2 >= " + MIN_BLOCK + ", was " + slabSize);
+    this.name = name;
+    this.maxBytes = maxBytes;
+    this.slabSize = slabSize;
+    this.slabClass = sizeClass(slabSize);
+    this.free = new long[slabClass + 1][];
+    this.freeCount = new int[slabClass + 1];
+  }
+
+  /**
+   * 检查读写是否越界以及块是否已经释放, 默认关闭
+   */
+  public OffHeapArena debug(boolean debug) {
+    this.debug = debug;
+    return this;
+  }
+
+  /**
+   * 记录分配时的线程栈, 只对之后分配的块有效, 默认关闭
+   */
+  public OffHeapArena leakDetection(boolean leakDetection) {
+    this.leakDetection = leakDetection;
+    return this;
+  }
+
+  /**
+   * 分配至少 size 字节, 内容未初始化
+   *
+   * @return 块的地址
+   * @throws IllegalStateException 超出了上限或者 arena 已经关闭
+   */
+  public long allocate(long size) {
+    if (closed)
+      throw new IllegalStateException("Arena " + name + " is closed");
+    if (size <= 0)
+      throw new IllegalArgumentException("size must be > 0, was " + size);
+    long blockSize = Maths.nextPower2(size, MIN_BLOCK);
+    if (blockSize <= 0 || blockSize < size)
+      throw new IllegalArgumentException("size too large: " + size);
+    long address;
+    if (blockSize > slabSize) {
+      address = reserve(blockSize, size);
+    } else {
+      int c = sizeClass(blockSize);
+      if (freeCount[c] == 0)
+        carve(c, size);
+      address = free[c][--freeCount[c]];
+    }
+    live.put(address, size);
+    allocatedBytes += blockSize;
+    requestedBytes += size;
+    if (leakDetection) {
+      StringBuilder sb = new StringBuilder(256).append("block of ").append(size).append(" bytes allocated by ")
+        .append(Thread.currentThread().getName());
+      Jvm.trimStackTrace(sb, Thread.currentThread().getStackTrace());
+      allocationSites.put(address, sb.toString());
+    }
+    return address;
+  }
+
+  /**
+   * 分配并清零
+   */
+  public long allocateZeroed(long size) {
+    long address = allocate(size);
+    UNSAFE.setMemory(address, size, (byte) 0);
+    return address;
+  }
+
+  /**
+   * @throws IllegalStateException 不是这个 arena 分配的块, 或者已经释放
+   */
+  public void free(long block) {
+    long size = live.remove(block);
+    if (size < 0)
+      throw new IllegalStateException("Block " + Long.toHexString(block) + " is not allocated by arena " + name);
+    allocationSites.remove(block);
+    long blockSize = Maths.nextPower2(size, MIN_BLOCK);
+    allocatedBytes -= blockSize;
+    requestedBytes -= size;
+    if (blockSize > slabSize) {
+      UNSAFE.freeMemory(block);
+      reservedBytes -= blockSize;
+    } else {
+      push(sizeClass(blockSize), block);
+    }
+  }
+
+  public void free(long[] blocks) {
+    free(blocks, 0, blocks.length);
+  }
+
+  public void free(long[] blocks, int from, int to) {
+    for (int i = from; i < to; i++)
+      free(blocks[i]);
+  }
+
+  /**
+   * 释放所有的块. slab 留给之后的分配, 大块归还给系统
+   */
+  public void reset() {
+    live.forEach((address, size) -> {
+      if (Maths.nextPower2(size, MIN_BLOCK) > slabSize) {
+        UNSAFE.freeMemory(address);
+        reservedBytes -= Maths.nextPower2(size, MIN_BLOCK);
+      }
+    });
+    live.clear();
+    allocationSites.clear();
+    Arrays.fill(freeCount, 0);
+    emptySlabs = Arrays.copyOf(slabs, slabs.length);
+    emptySlabCount = slabCount;
+    allocatedBytes = 0;
+    requestedBytes = 0;
+  }
+
+  /**
+   * 归还所有内存; 泄漏检测模式下打印还没有释放的块
+   */
+  @Override
+  public void close() {
+    if (closed)
+      return;
+    if (!live.isEmpty()) {
+      if (leakDetection) {
+        allocationSites.forEach((address, site) -> logger.warn("Arena " + name + " leaked a " + site));
+      } else {
+        logger.warn("Arena " + name + " closed with " + live.size() + " blocks not freed, enable leakDetection to see where they were allocated");
+      }
+    }
+    reset();
+    for (int i = 0; i < slabCount; i++)
+      UNSAFE.freeMemory(slabs[i]);
+    reservedBytes -= (long) slabCount * slabSize;
+    slabCount = 0;
+    emptySlabCount = 0;
+    closed = true;
+  }
+
+  /**
+   * 未释放的块的分配位置, 只在泄漏检测模式下有
+   */
+  public List<String> leaks() {
+    List<String> leaks = new ArrayList<>();
+    allocationSites.forEach((address, site) -> leaks.add(site));
+    return leaks;
+  }
+
+  /**
+   * 块的实际可用大小 (2 的幂)
+   *
+   * @throws IllegalStateException 块无效
+   */
+  public long blockSize(long block) {
+    return Maths.nextPower2(requestedSize(block), MIN_BLOCK);
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * 向系统申请的内存: slab 加上大块
+   */
+  public long reservedBytes() {
+    return reservedBytes;
+  }
+
+  public long peakReservedBytes() {
+    return peakReservedBytes;
+  }
+
+  /**
+   * 未释放的块占用的内存, 按取整后的大小
+   */
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * 未释放的块请求的大小之和, 与 {@link #allocatedBytes()} 的差是取整浪费的
+   */
+  public long requestedBytes() {
+    return requestedBytes;
+  }
+
+  public int liveBlocks() {
+    return live.size();
+  }
+
+  public byte getByte(long block, long offset) {
+    check(block, offset, 1);
+    return UNSAFE.getByte(block + offset);
+  }
+
+  public void putByte(long block, long offset, byte value) {
+    check(block, offset, 1);
+    UNSAFE.putByte(block + offset, value);
+  }
+
+  public short getShort(long block, long offset) {
+    check(block, offset, 2);
+    return UNSAFE.getShort(block + offset);
+  }
+
+  public void putShort(long block, long offset, short value) {
+    check(block, offset, 2);
+    UNSAFE.putShort(block + offset, value);
+  }
+
+  public char getChar(long block, long offset) {
+    check(block, offset, 2);
+    return UNSAFE.getChar(block + offset);
+  }
+
+  public void putChar(long block, long offset, char value) {
+    check(block, offset, 2);
+    UNSAFE.putChar(block + offset, value);
+  }
+
+  public int getInt(long block, long offset) {
+    check(block, offset, 4);
+    return UNSAFE.getInt(block + offset);
+  }
+
+  public void putInt(long block, long offset, int value) {
+    check(block, offset, 4);
+    UNSAFE.putInt(block + offset, value);
+  }
+
+  public long getLong(long block, long offset) {
+    check(block, offset, 8);
+    return UNSAFE.getLong(block + offset);
+  }
+
+  public void putLong(long block, long offset, long value) {
+    check(block, offset, 8);
+    UNSAFE.putLong(block + offset, value);
+  }
+
+  public float getFloat(long block, long offset) {
+    check(block, offset, 4);
+    return UNSAFE.getFloat(block + offset);
+  }
+
+  public void putFloat(long block, long offset, float value) {
+    check(block, offset, 4);
+    UNSAFE.putFloat(block + offset, value);
+  }
+
+  public double getDouble(long block, long offset) {
+    check(block, offset, 8);
+    return UNSAFE.getDouble(block + offset);
+  }
+
+  public void putDouble(long block, long offset, double value) {
+    check(block, offset, 8);
+    UNSAFE.putDouble(block + offset, value);
+  }
+
+  public void putBytes(long block, long offset, byte[] bytes, int from, int length) {
+    checkArray(from, length, bytes.length);
+    check(block, offset, length);
+    UNSAFE.copyMemory(bytes, BYTE_ARRAY_OFFSET + from, null, block + offset, length);
+  }
+
+  public void getBytes(long block, long offset, byte[] bytes, int from, int length) {
+    checkArray(from, length, bytes.length);
+    check(block, offset, length);
+    UNSAFE.copyMemory(null, block + offset, bytes, BYTE_ARRAY_OFFSET + from, length);
+  }
+
+  /**
+   * 每个字符写一个字节 (ISO-8859-1), 只有 0 到 255 的字符能原样读回
+   *
+   * @return 写入的字节数, 即 cs.length()
+   */
+  public int putChars(long block, long offset, CharSequence cs) {
+    int length = cs.length();
+    check(block, offset, length);
+    long address = block + offset;
+    for (int i = 0; i < length; i++)
+      UNSAFE.putByte(address + i, (byte) cs.charAt(i));
+    return length;
+  }
+
+  /**
+   * 读取 {@link #putChars(long, long, CharSequence)} 写入的 length 个字节, 追加到 sb
+   */
+  public StringBuilder getChars(long block, long offset, long length, StringBuilder sb) {
+    int n = Maths.toInt(length, "length %d is too large");
+    check(block, offset, n);
+    long address = block + offset;
+    for (int i = 0; i < n; i++)
+      sb.append((char) (UNSAFE.getByte(address + i) & 0xFF));
+    return sb;
+  }
+
+  /**
+   * 计算 {@link #putChars(long, long, CharSequence)} 写入的字节的哈希, 与 {@link Hasher#hash(byte[])} 相同
+   */
+  public long hashBytes(long block, long offset, long length) {
+    check(block, offset, length);
+    return Hasher.hashAddress(block + offset, length);
+  }
+
+  public void copy(long fromBlock, long fromOffset, long toBlock, long toOffset, long length) {
+    check(fromBlock, fromOffset, length);
+    check(toBlock, toOffset, length);
+    UNSAFE.copyMemory(fromBlock + fromOffset, toBlock + toOffset, length);
+  }
+
+  public void fill(long block, long offset, long length, byte value) {
+    check(block, offset, length);
+    UNSAFE.setMemory(block + offset, length, value);
+  }
+
+  @Override
+  public String toString() {
+    return "OffHeapArena{" + name +
+      ", liveBlocks=" + live.size() +
+      ", allocatedBytes=" + allocatedBytes +
+      ", requestedBytes=" + requestedBytes +
+      ", reservedBytes=" + reservedBytes +
+      ", peakReservedBytes=" + peakReservedBytes +
+      ", maxBytes=" + maxBytes +
+      '}';
+  }
+
+  private void check(long block, long offset, long length) {
+    if (!debug)
+      return;
+    long size = requestedSize(block);
+    if (offset < 0 || length < 0 || offset > size - length)
+      throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + size);
+  }
+
+  private long requestedSize(long block) {
+    long size = live.get(block);
+    if (size < 0)
+      throw new IllegalStateException("Block " + Long.toHexString(block) + " is not allocated by arena " + name + " or already freed");
+    return size;
+  }
+
+  /**
+   * 取一个空的 slab, 切成 sizeClass 的块放到空闲链表里
+   */
+  private void carve(int sizeClass, long requested) {
+    long slab;
+    if (emptySlabCount > 0) {
+      slab = emptySlabs[--emptySlabCount];
+    } else {
+      slab = reserve(slabSize, requested);
+      if (slabCount == slabs.length)
+        slabs = Arrays.copyOf(slabs, slabCount << 1);
+      slabs[slabCount++] = slab;
+    }
+    int blockSize = 1 << sizeClass;
+    for (int offset = slabSize - blockSize; offset >= 0; offset -= blockSize)
+      push(sizeClass, slab + offset);
+  }
+
+  private void push(int sizeClass, long block) {
+    long[] stack = free[sizeClass];
+    if (stack == null)
+      stack = free[sizeClass] = new long[Math.max(16, slabSize >> sizeClass)];
+    else if (freeCount[sizeClass] == stack.length)
+      stack = free[sizeClass] = Arrays.copyOf(stack, stack.length << 1);
+    stack[freeCount[sizeClass]++] = block;
+  }
+
+  /**
+   * 向系统申请内存
+   *
+   * @throws IllegalStateException 超出上限
+   */
+  private long reserve(long bytes, long requested) {
+    if (reservedBytes + bytes > maxBytes || reservedBytes + bytes < 0)
+      throw new IllegalStateException("Arena " + name + " cannot allocate " + requested + " bytes: reserved "
+        + reservedBytes + " + " + bytes + " would exceed the cap of " + maxBytes);
+    long address = UNSAFE.allocateMemory(bytes);
+    reservedBytes += bytes;
+    peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+    return address;
+  }
+
+  private static int sizeClass(long powerOf2) {
+    return 63 - Long.numberOfLeadingZeros(powerOf2);
+  }
+
+  private static void checkArray(int from, int length, int size) {
+    if (from < 0 || length < 0 || from > size - length)
+      throw new IndexOutOfBoundsException("from=" + from + ", length=" + length + ", size=" + size);
+  }
+}
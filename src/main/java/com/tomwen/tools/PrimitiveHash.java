@@ -0,0 +1,53 @@
+package com.tomwen.tools;
+
+/**
+ * 原始类型开放寻址哈希表共用的容量及槽位计算
+ */
+final class PrimitiveHash {
+  static final int MIN_CAPACITY = 4;
+  static final int MAX_CAPACITY = 1 << 30;
+  static final float DEFAULT_LOAD_FACTOR = 0.5f;
+  static final int DEFAULT_EXPECTED_SIZE = 16;
+
+  private PrimitiveHash() {
+  }
+
+  static float checkLoadFactor(float loadFactor) {
+    if (!(loadFactor > 0 && loadFactor < 1))
+      throw new IllegalArgumentException("loadFactor must be in (0, 1), was " + loadFactor);
+    return loadFactor;
+  }
+
+  static int capacity(int expectedSize, float loadFactor) {
+    if (expectedSize < 0)
+      throw new IllegalArgumentException("expectedSize must be >= 0, was " + expectedSize);
+    long needed = (long) Math.ceil(expectedSize / (double) loadFactor) + 1;
+    if (needed > MAX_CAPACITY)
+      return MAX_CAPACITY;
+    return Maths.nextPower2((int) needed, MIN_CAPACITY);
+  }
+
+  static int maxFill(int capacity, float loadFactor) {
+    // always leave at least one free slot so that a probe terminates.
+    return Math.min(capacity - 1, (int) Math.ceil(capacity * loadFactor));
+  }
+
+  static int slot(long key, int mask) {
+    return (int) Maths.agitate(Maths.hash(key)) & mask;
+  }
+
+  static int slot(int key, int mask) {
+    return (int) Maths.agitate(Maths.hash(key)) & mask;
+  }
+
+  /**
+   * whether the entry at {@code j} whose home slot is {@code home} can be moved back into the hole at {@code hole}.
+   */
+  static boolean canShift(int hole, int j, int home) {
+    return hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+  }
+
+  static IllegalStateException full(int size) {
+    return new IllegalStateException("Hash table is full, size=" + size);
+  }
+}
@@ -0,0 +1,623 @@
+package com.tomwen.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 定期读取 linux 的 /proc/meminfo, /proc/self/status, /proc/self/stat 和 /proc/loadavg.
+ * <p>
+ * 文件只打开一次, 每次采样从位置 0 重新读到同一个 direct buffer 里, 数字手工解析, 所以采样不分配对象.
+ * 采样结果由 {@link StampedLock} 的乐观读发布, 其它线程读取时不加锁:
+ * <pre>
+ * ProcSampler sampler = Jvm.procSampler();   // 每秒采样一次, 已注册到 JMX
+ * ProcSampler.Snapshot snapshot = new ProcSampler.Snapshot();
+ * sampler.snapshot(snapshot);                 // 复用 snapshot 时也不分配对象
+ * long rss = snapshot.residentSetSize();
+ * </pre>
+ * 读不到的文件或字段的值为 -1. 通过 JMX 暴露在 {@code com.tomwen.tools:type=ProcSampler} 下.
+ */
+public class ProcSampler implements ProcSamplerMXBean, Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(ProcSampler.class);
+  /**
+   * 用户态看到的 USER_HZ, 主流的 linux 平台上都是 100
+   */
+  private static final int TICKS_PER_SECOND = 100;
+  private static final int BUFFER_SIZE = 16 << 10;
+
+  private static final byte[] MEM_TOTAL = key("MemTotal");
+  private static final byte[] MEM_FREE = key("MemFree");
+  private static final byte[] MEM_AVAILABLE = key("MemAvailable");
+  private static final byte[] SWAP_TOTAL = key("SwapTotal");
+  private static final byte[] SWAP_FREE = key("SwapFree");
+  private static final byte[] VM_RSS = key("VmRSS");
+  private static final byte[] VM_HWM = key("VmHWM");
+  private static final byte[] VM_SIZE = key("VmSize");
+  private static final byte[] THREADS = key("Threads");
+
+  private final FileChannel meminfo;
+  private final FileChannel status;
+  private final FileChannel stat;
+  private final FileChannel loadavg;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final int processors = Runtime.getRuntime().availableProcessors();
+  private final StampedLock lock = new StampedLock();
+  private final Snapshot current = new Snapshot();
+  private long lastCpuTicks = -1;
+  private long lastNanos;
+  private ScheduledExecutorService scheduler;
+  private ObjectName objectName;
+
+  /**
+   * 读取 /proc
+   */
+  public ProcSampler() {
+    this("/proc");
+  }
+
+  /**
+   * @param procDir proc 文件系统的目录, 测试时可以指向一个假的目录
+   */
+  public ProcSampler(String procDir) {
+    meminfo = open(procDir, "meminfo");
+    status = open(procDir, "self/status");
+    stat = open(procDir, "self/stat");
+    loadavg = open(procDir, "loadavg");
+  }
+
+  /**
+   * 以固定的间隔在一个 daemon 线程里采样, 重复调用时只有第一次生效
+   */
+  public synchronized ProcSampler start(long period, TimeUnit unit) {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "proc-sampler");
+        t.setDaemon(true);
+        return t;
+      });
+      scheduler.scheduleAtFixedRate(this::sampleQuietly, 0, period, unit);
+    }
+    return this;
+  }
+
+  /**
+   * 注册到 platform MBeanServer
+   *
+   * @throws IllegalStateException 已经注册过另一个 ProcSampler
+   */
+  public synchronized ProcSampler register() {
+    if (objectName != null)
+      return this;
+    try {
+      ObjectName on = new ObjectName("com.tomwen.tools:type=ProcSampler");
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+      objectName = on;
+      return this;
+    } catch (JMException e) {
+      throw new IllegalStateException("Unable to register ProcSampler", e);
+    }
+  }
+
+  public synchronized void unregister() {
+    if (objectName == null)
+      return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.unregisterMBean(objectName);
+    } catch (JMException e) {
+      logger.warn("Unable to unregister " + objectName, e);
+    }
+    objectName = null;
+  }
+
+  /**
+   * 停止定期采样, 从 JMX 注销并关闭文件
+   */
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    unregister();
+    closeQuietly(meminfo);
+    closeQuietly(status);
+    closeQuietly(stat);
+    closeQuietly(loadavg);
+  }
+
+  /**
+   * 立即采样一次
+   *
+   * @throws IOException 读文件出错
+   */
+  public synchronized void sample() throws IOException {
+    long nanos = System.nanoTime();
+    long memTotal = -1, memFree = -1, memAvailable = -1, swapTotal = -1, swapFree = -1;
+    long rss = -1, rssPeak = -1, vmSize = -1, threads = -1;
+    long utime = -1, stime = -1;
+    double load1 = -1, load5 = -1, load15 = -1;
+    int runnable = -1, total = -1;
+
+    int n = read(meminfo);
+    for (int i = 0; i < n; i = nextLine(i, n)) {
+      if (startsWith(i, n, MEM_TOTAL)) memTotal = kiloBytes(i + MEM_TOTAL.length, n);
+      else if (startsWith(i, n, MEM_FREE)) memFree = kiloBytes(i + MEM_FREE.length, n);
+      else if (startsWith(i, n, MEM_AVAILABLE)) memAvailable = kiloBytes(i + MEM_AVAILABLE.length, n);
+      else if (startsWith(i, n, SWAP_TOTAL)) swapTotal = kiloBytes(i + SWAP_TOTAL.length, n);
+      else if (startsWith(i, n, SWAP_FREE)) swapFree = kiloBytes(i + SWAP_FREE.length, n);
+    }
+
+    n = read(status);
+    for (int i = 0; i < n; i = nextLine(i, n)) {
+      if (startsWith(i, n, VM_RSS)) rss = kiloBytes(i + VM_RSS.length, n);
+      else if (startsWith(i, n, VM_HWM)) rssPeak = kiloBytes(i + VM_HWM.length, n);
+      else if (startsWith(i, n, VM_SIZE)) vmSize = kiloBytes(i + VM_SIZE.length, n);
+      else if (startsWith(i, n, THREADS)) threads = parseLong(skipSpaces(i + THREADS.length, n), n);
+    }
+
+    n = read(stat);
+    if (n > 0) {
+      // the command name may contain spaces and ')', so count fields from the last ')'
+      int i = n;
+      while (i > 0 && buffer.get(i - 1) != ')')
+        i--;
+      // fields after the name start at 3 (state), utime is 14 and stime is 15
+      for (int field = 3; field < 14 && i < n; field++)
+        i = skipToken(skipSpaces(i, n), n);
+      i = skipSpaces(i, n);
+      utime = parseLong(i, n);
+      stime = parseLong(skipSpaces(skipToken(i, n), n), n);
+    }
+
+    n = read(loadavg);
+    if (n > 0) {
+      int i = skipSpaces(0, n);
+      int end = skipToken(i, n);
+      load1 = Decimals.parseDouble(buffer, i, end);
+      i = skipSpaces(end, n);
+      end = skipToken(i, n);
+      load5 = Decimals.parseDouble(buffer, i, end);
+      i = skipSpaces(end, n);
+      end = skipToken(i, n);
+      load15 = Decimals.parseDouble(buffer, i, end);
+      i = skipSpaces(end, n);
+      runnable = (int) parseLong(i, n);
+      while (i < n && buffer.get(i) != '/')
+        i++;
+      total = (int) parseLong(i + 1, n);
+    }
+
+    double cpuLoad = -1;
+    long cpuTicks = utime < 0 || stime < 0 ? -1 : utime + stime;
+    if (cpuTicks >= 0 && lastCpuTicks >= 0 && nanos > lastNanos) {
+      double cpuNanos = (cpuTicks - lastCpuTicks) * (1e9 / TICKS_PER_SECOND);
+      cpuLoad = Math.min(1.0, cpuNanos / (nanos - lastNanos) / processors);
+    }
+    lastCpuTicks = cpuTicks;
+    lastNanos = nanos;
+
+    long stamp = lock.writeLock();
+    try {
+      Snapshot s = current;
+      s.sampleCount++;
+      s.sampleTimeMillis = System.currentTimeMillis();
+      s.memTotal = memTotal;
+      s.memFree = memFree;
+      s.memAvailable = memAvailable;
+      s.swapTotal = swapTotal;
+      s.swapFree = swapFree;
+      s.residentSetSize = rss;
+      s.residentSetSizePeak = rssPeak;
+      s.virtualSize = vmSize;
+      s.threads = (int) threads;
+      s.userCpuMillis = ticksToMillis(utime);
+      s.systemCpuMillis = ticksToMillis(stime);
+      s.processCpuLoad = cpuLoad;
+      s.loadAverage1 = load1;
+      s.loadAverage5 = load5;
+      s.loadAverage15 = load15;
+      s.runnableTasks = runnable;
+      s.totalTasks = total;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * 最近一次采样的结果
+   */
+  public Snapshot snapshot() {
+    return snapshot(new Snapshot());
+  }
+
+  /**
+   * 把最近一次采样的结果复制到 into, 不加锁, 不分配对象
+   */
+  public Snapshot snapshot(Snapshot into) {
+    long stamp = lock.tryOptimisticRead();
+    into.copyFrom(current);
+    if (!lock.validate(stamp)) {
+      // a sample is being published, wait for it
+      stamp = lock.readLock();
+      try {
+        into.copyFrom(current);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return into;
+  }
+
+  @Override
+  public long getSampleCount() {
+    return snapshot().sampleCount;
+  }
+
+  @Override
+  public long getSampleTimeMillis() {
+    return snapshot().sampleTimeMillis;
+  }
+
+  @Override
+  public long getMemTotal() {
+    return snapshot().memTotal;
+  }
+
+  @Override
+  public long getMemFree() {
+    return snapshot().memFree;
+  }
+
+  @Override
+  public long getMemAvailable() {
+    return snapshot().memAvailable;
+  }
+
+  @Override
+  public long getSwapTotal() {
+    return snapshot().swapTotal;
+  }
+
+  @Override
+  public long getSwapFree() {
+    return snapshot().swapFree;
+  }
+
+  @Override
+  public long getResidentSetSize() {
+    return snapshot().residentSetSize;
+  }
+
+  @Override
+  public long getResidentSetSizePeak() {
+    return snapshot().residentSetSizePeak;
+  }
+
+  @Override
+  public long getVirtualSize() {
+    return snapshot().virtualSize;
+  }
+
+  @Override
+  public int getThreads() {
+    return snapshot().threads;
+  }
+
+  @Override
+  public long getUserCpuMillis() {
+    return snapshot().userCpuMillis;
+  }
+
+  @Override
+  public long getSystemCpuMillis() {
+    return snapshot().systemCpuMillis;
+  }
+
+  @Override
+  public double getProcessCpuLoad() {
+    return snapshot().processCpuLoad;
+  }
+
+  @Override
+  public double getLoadAverage1() {
+    return snapshot().loadAverage1;
+  }
+
+  @Override
+  public double getLoadAverage5() {
+    return snapshot().loadAverage5;
+  }
+
+  @Override
+  public double getLoadAverage15() {
+    return snapshot().loadAverage15;
+  }
+
+  @Override
+  public int getRunnableTasks() {
+    return snapshot().runnableTasks;
+  }
+
+  @Override
+  public int getTotalTasks() {
+    return snapshot().totalTasks;
+  }
+
+  private void sampleQuietly() {
+    try {
+      sample();
+    } catch (Throwable t) {
+      // keep the schedule alive
+      logger.warn("Unable to sample /proc", t);
+    }
+  }
+
+  /**
+   * 从位置 0 读取整个文件到 buffer
+   *
+   * @return 读到的字节数, 文件不存在时为 0
+   */
+  private int read(FileChannel channel) throws IOException {
+    if (channel == null)
+      return 0;
+    buffer.clear();
+    int n;
+    while (buffer.hasRemaining() && (n = channel.read(buffer, buffer.position())) > 0)
+      buffer.position(buffer.position() + n);
+    return buffer.position();
+  }
+
+  private boolean startsWith(int i, int n, byte[] key) {
+    if (n - i < key.length)
+      return false;
+    for (int j = 0; j < key.length; j++) {
+      if (buffer.get(i + j) != key[j])
+        return false;
+    }
+    return true;
+  }
+
+  private int nextLine(int i, int n) {
+    while (i < n && buffer.get(i) != '\n')
+      i++;
+    return i + 1;
+  }
+
+  private int skipSpaces(int i, int n) {
+    while (i < n && (buffer.get(i) == ' ' || buffer.get(i) == '\t'))
+      i++;
+    return i;
+  }
+
+  private int skipToken(int i, int n) {
+    byte b;
+    while (i < n && (b = buffer.get(i)) != ' ' && b != '\t' && b != '\n')
+      i++;
+    return i;
+  }
+
+  /**
+   * 形如 "   123 kB" 的值, 返回字节数
+   */
+  private long kiloBytes(int i, int n) {
+    long v = parseLong(skipSpaces(i, n), n);
+    return v < 0 ? v : v << 10;
+  }
+
+  /**
+   * @return 非负整数, 没有数字时返回 -1
+   */
+  private long parseLong(int i, int n) {
+    long v = 0;
+    int start = i;
+    for (; i < n; i++) {
+      int d = buffer.get(i) - '0';
+      if (d < 0 || d > 9)
+        break;
+      v = v * 10 + d;
+    }
+    return i == start ? -1 : v;
+  }
+
+  private static long ticksToMillis(long ticks) {
+    return ticks < 0 ? ticks : ticks * 1000 / TICKS_PER_SECOND;
+  }
+
+  /**
+   * 键后面紧跟着 ':'
+   */
+  private static byte[] key(String name) {
+    return (name + ':').getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static FileChannel open(String dir, String name) {
+    File file = new File(dir, name);
+    if (!file.canRead())
+      return null;
+    try {
+      return new RandomAccessFile(file, "r").getChannel();
+    } catch (IOException e) {
+      logger.warn("Unable to open " + file, e);
+      return null;
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null)
+      return;
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      logger.warn("", e);
+    }
+  }
+
+  /**
+   * 一次采样的结果, 可以复用. 内存的单位是字节, 不可用的值为 -1.
+   */
+  public static final class Snapshot {
+    long sampleCount;
+    long sampleTimeMillis;
+    long memTotal = -1;
+    long memFree = -1;
+    long memAvailable = -1;
+    long swapTotal = -1;
+    long swapFree = -1;
+    long residentSetSize = -1;
+    long residentSetSizePeak = -1;
+    long virtualSize = -1;
+    int threads = -1;
+    long userCpuMillis = -1;
+    long systemCpuMillis = -1;
+    double processCpuLoad = -1;
+    double loadAverage1 = -1;
+    double loadAverage5 = -1;
+    double loadAverage15 = -1;
+    int runnableTasks = -1;
+    int totalTasks = -1;
+
+    void copyFrom(Snapshot s) {
+      sampleCount = s.sampleCount;
+      sampleTimeMillis = s.sampleTimeMillis;
+      memTotal = s.memTotal;
+      memFree = s.memFree;
+      memAvailable = s.memAvailable;
+      swapTotal = s.swapTotal;
+      swapFree = s.swapFree;
+      residentSetSize = s.residentSetSize;
+      residentSetSizePeak = s.residentSetSizePeak;
+      virtualSize = s.virtualSize;
+      threads = s.threads;
+      userCpuMillis = s.userCpuMillis;
+      systemCpuMillis = s.systemCpuMillis;
+      processCpuLoad = s.processCpuLoad;
+      loadAverage1 = s.loadAverage1;
+      loadAverage5 = s.loadAverage5;
+      loadAverage15 = s.loadAverage15;
+      runnableTasks = s.runnableTasks;
+      totalTasks = s.totalTasks;
+    }
+
+    /**
+     * 已经完成的采样次数, 0 表示还没有采样
+     */
+    public long sampleCount() {
+      return sampleCount;
+    }
+
+    public long sampleTimeMillis() {
+      return sampleTimeMillis;
+    }
+
+    public long memTotal() {
+      return memTotal;
+    }
+
+    public long memFree() {
+      return memFree;
+    }
+
+    /**
+     * 不换出的情况下还能分配的内存, 需要 linux 3.14 以上
+     */
+    public long memAvailable() {
+      return memAvailable;
+    }
+
+    public long swapTotal() {
+      return swapTotal;
+    }
+
+    public long swapFree() {
+      return swapFree;
+    }
+
+    public long residentSetSize() {
+      return residentSetSize;
+    }
+
+    public long residentSetSizePeak() {
+      return residentSetSizePeak;
+    }
+
+    public long virtualSize() {
+      return virtualSize;
+    }
+
+    public int threads() {
+      return threads;
+    }
+
+    public long userCpuMillis() {
+      return userCpuMillis;
+    }
+
+    public long systemCpuMillis() {
+      return systemCpuMillis;
+    }
+
+    /**
+     * 两次采样之间进程占用的 cpu 比例, 已经除以 cpu 个数, 在 [0, 1] 之间; 只采样过一次时为 -1
+     */
+    public double processCpuLoad() {
+      return processCpuLoad;
+    }
+
+    public double loadAverage1() {
+      return loadAverage1;
+    }
+
+    public double loadAverage5() {
+      return loadAverage5;
+    }
+
+    public double loadAverage15() {
+      return loadAverage15;
+    }
+
+    public int runnableTasks() {
+      return runnableTasks;
+    }
+
+    public int totalTasks() {
+      return totalTasks;
+    }
+
+    @Override
+    public String toString() {
+      return "Snapshot{" +
+        "sampleCount=" + sampleCount +
+        ", memTotal=" + memTotal +
+        ", memFree=" + memFree +
+        ", memAvailable=" + memAvailable +
+        ", swapTotal=" + swapTotal +
+        ", swapFree=" + swapFree +
+        ", residentSetSize=" + residentSetSize +
+        ", residentSetSizePeak=" + residentSetSizePeak +
+        ", virtualSize=" + virtualSize +
+        ", threads=" + threads +
+        ", userCpuMillis=" + userCpuMillis +
+        ", systemCpuMillis=" + systemCpuMillis +
+        ", processCpuLoad=" + processCpuLoad +
+        ", loadAverage=" + loadAverage1 + '/' + loadAverage5 + '/' + loadAverage15 +
+        ", tasks=" + runnableTasks + '/' + totalTasks +
+        '}';
+    }
+  }
+}
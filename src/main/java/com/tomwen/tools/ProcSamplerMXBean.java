@@ -0,0 +1,44 @@
+package com.tomwen.tools;
+
+/**
+ * {@link ProcSampler} 的 JMX 接口, 内存的单位都是字节, 不可用的值为 -1
+ */
+public interface ProcSamplerMXBean {
+  long getSampleCount();
+
+  long getSampleTimeMillis();
+
+  long getMemTotal();
+
+  long getMemFree();
+
+  long getMemAvailable();
+
+  long getSwapTotal();
+
+  long getSwapFree();
+
+  long getResidentSetSize();
+
+  long getResidentSetSizePeak();
+
+  long getVirtualSize();
+
+  int getThreads();
+
+  long getUserCpuMillis();
+
+  long getSystemCpuMillis();
+
+  double getProcessCpuLoad();
+
+  double getLoadAverage1();
+
+  double getLoadAverage5();
+
+  double getLoadAverage15();
+
+  int getRunnableTasks();
+
+  int getTotalTasks();
+}
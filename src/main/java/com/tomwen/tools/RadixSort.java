@@ -0,0 +1,840 @@
+package com.tomwen.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * 基本类型数组的 LSD 基数排序和查找, 浮点数的顺序与 {@link Compare#isEqual(Double, Double)} 一致.
+ * <p>
+ * {@link Arrays#sort(double[])} 按值排序, 而 Compare 按原始的位比较 (NaN 等于 NaN, -0.0 不等于 0.0),
+ * 这里的浮点数按 {@link #sortableBits(double)} 排序, 两个值在排序后相邻且 {@link #compare(double, double)} 为 0
+ * 当且仅当原始的位相同:
+ * <pre>
+ * -NaN &lt; -Infinity &lt; ... &lt; -0.0 &lt; 0.0 &lt; ... &lt; Infinity &lt; NaN
+ * </pre>
+ * 负号的 NaN 排在最前面, 不同 payload 的 NaN 各自按位排序. int 和 long 就是普通的有符号顺序.
+ * <ul>
+ * <li>每次处理 8 位, long 和 double 最多 8 趟, int 和 float 最多 4 趟, 所有元素这一位都相同的趟跳过.
+ * 需要一个同样大小的缓冲区, 浮点数还需要一个存放 key 的数组. 排序是稳定的.</li>
+ * <li>parallelSort 和 parallelArgsort 在元素个数超过 {@link Maths#parallelThreshold()} 时
+ * 把每一趟的计数和分配分块交给 common ForkJoinPool.</li>
+ * <li>argsort 不修改数组, 返回排序后的下标: a[order[0]] &lt;= a[order[1]] &lt;= ...</li>
+ * <li>binarySearch 和 interpolationSearch 在按这里的顺序排好的数组上查找, 有多个相等的值时返回第一个的下标,
+ * 找不到时与 {@link Arrays#binarySearch(long[], long)} 一样返回 -(插入位置) - 1.
+ * 插值查找适合分布大致均匀的数据, 不收敛时退回二分查找.</li>
+ * </ul>
+ */
+public final class RadixSort {
+  private static final int BITS = 8;
+  private static final int RADIX = 1 << BITS;
+  private static final int MASK = RADIX - 1;
+  private static final int INSERTION_THRESHOLD = 64;
+  private static final int INTERPOLATION_THRESHOLD = 64;
+  private static final int MIN_BLOCK = 1 << 12;
+
+  private RadixSort() {
+  }
+
+  /**
+   * 有符号比较的顺序与浮点数的排序顺序相同, 相等当且仅当原始的位相同. 这个变换是自己的逆
+   */
+  public static long sortableBits(double d) {
+    long bits = Double.doubleToRawLongBits(d);
+    return bits ^ (bits >> 63 & Long.MAX_VALUE);
+  }
+
+  public static int sortableBits(float f) {
+    int bits = Float.floatToRawIntBits(f);
+    return bits ^ (bits >> 31 & Integer.MAX_VALUE);
+  }
+
+  private static double fromSortable(long key) {
+    return Double.longBitsToDouble(key ^ (key >> 63 & Long.MAX_VALUE));
+  }
+
+  private static float fromSortable(int key) {
+    return Float.intBitsToFloat(key ^ (key >> 31 & Integer.MAX_VALUE));
+  }
+
+  public static int compare(double a, double b) {
+    return Long.compare(sortableBits(a), sortableBits(b));
+  }
+
+  public static int compare(float a, float b) {
+    return Integer.compare(sortableBits(a), sortableBits(b));
+  }
+
+  // ---------------------------------------------------------------- sort
+
+  public static void sort(int[] a) {
+    sort(a, 0, a.length, false);
+  }
+
+  public static void sort(int[] a, int from, int to) {
+    sort(a, from, to, false);
+  }
+
+  public static void parallelSort(int[] a) {
+    sort(a, 0, a.length, true);
+  }
+
+  public static void parallelSort(int[] a, int from, int to) {
+    sort(a, from, to, true);
+  }
+
+  public static void sort(long[] a) {
+    sort(a, 0, a.length, false);
+  }
+
+  public static void sort(long[] a, int from, int to) {
+    sort(a, from, to, false);
+  }
+
+  public static void parallelSort(long[] a) {
+    sort(a, 0, a.length, true);
+  }
+
+  public static void parallelSort(long[] a, int from, int to) {
+    sort(a, from, to, true);
+  }
+
+  public static void sort(float[] a) {
+    sort(a, 0, a.length, false);
+  }
+
+  public static void sort(float[] a, int from, int to) {
+    sort(a, from, to, false);
+  }
+
+  public static void parallelSort(float[] a) {
+    sort(a, 0, a.length, true);
+  }
+
+  public static void parallelSort(float[] a, int from, int to) {
+    sort(a, from, to, true);
+  }
+
+  public static void sort(double[] a) {
+    sort(a, 0, a.length, false);
+  }
+
+  public static void sort(double[] a, int from, int to) {
+    sort(a, from, to, false);
+  }
+
+  public static void parallelSort(double[] a) {
+    sort(a, 0, a.length, true);
+  }
+
+  public static void parallelSort(double[] a, int from, int to) {
+    sort(a, from, to, true);
+  }
+
+  private static void sort(int[] a, int from, int to, boolean parallel) {
+    checkRange(from, to, a.length);
+    int[] keys = from == 0 ? a : Arrays.copyOfRange(a, from, to);
+    sortKeys(keys, null, to - from, parallel);
+    if (keys != a)
+      System.arraycopy(keys, 0, a, from, to - from);
+  }
+
+  private static void sort(long[] a, int from, int to, boolean parallel) {
+    checkRange(from, to, a.length);
+    long[] keys = from == 0 ? a : Arrays.copyOfRange(a, from, to);
+    sortKeys(keys, null, to - from, parallel);
+    if (keys != a)
+      System.arraycopy(keys, 0, a, from, to - from);
+  }
+
+  private static void sort(float[] a, int from, int to, boolean parallel) {
+    int[] keys = keys(a, from, to);
+    sortKeys(keys, null, keys.length, parallel);
+    for (int i = 0; i < keys.length; i++)
+      a[from + i] = fromSortable(keys[i]);
+  }
+
+  private static void sort(double[] a, int from, int to, boolean parallel) {
+    long[] keys = keys(a, from, to);
+    sortKeys(keys, null, keys.length, parallel);
+    for (int i = 0; i < keys.length; i++)
+      a[from + i] = fromSortable(keys[i]);
+  }
+
+  // ---------------------------------------------------------------- argsort
+
+  public static int[] argsort(int[] a) {
+    return argsort(a, 0, a.length, false);
+  }
+
+  /**
+   * @return [from, to) 的下标按 a 的值排序, 值相等时下标小的在前
+   */
+  public static int[] argsort(int[] a, int from, int to) {
+    return argsort(a, from, to, false);
+  }
+
+  public static int[] parallelArgsort(int[] a, int from, int to) {
+    return argsort(a, from, to, true);
+  }
+
+  public static int[] argsort(long[] a) {
+    return argsort(a, 0, a.length, false);
+  }
+
+  public static int[] argsort(long[] a, int from, int to) {
+    return argsort(a, from, to, false);
+  }
+
+  public static int[] parallelArgsort(long[] a, int from, int to) {
+    return argsort(a, from, to, true);
+  }
+
+  public static int[] argsort(float[] a) {
+    return argsort(a, 0, a.length, false);
+  }
+
+  public static int[] argsort(float[] a, int from, int to) {
+    return argsort(a, from, to, false);
+  }
+
+  public static int[] parallelArgsort(float[] a, int from, int to) {
+    return argsort(a, from, to, true);
+  }
+
+  public static int[] argsort(double[] a) {
+    return argsort(a, 0, a.length, false);
+  }
+
+  public static int[] argsort(double[] a, int from, int to) {
+    return argsort(a, from, to, false);
+  }
+
+  public static int[] parallelArgsort(double[] a, int from, int to) {
+    return argsort(a, from, to, true);
+  }
+
+  private static int[] argsort(int[] a, int from, int to, boolean parallel) {
+    checkRange(from, to, a.length);
+    int[] order = identity(from, to);
+    sortKeys(Arrays.copyOfRange(a, from, to), order, to - from, parallel);
+    return order;
+  }
+
+  private static int[] argsort(long[] a, int from, int to, boolean parallel) {
+    checkRange(from, to, a.length);
+    int[] order = identity(from, to);
+    sortKeys(Arrays.copyOfRange(a, from, to), order, to - from, parallel);
+    return order;
+  }
+
+  private static int[] argsort(float[] a, int from, int to, boolean parallel) {
+    int[] keys = keys(a, from, to);
+    int[] order = identity(from, to);
+    sortKeys(keys, order, keys.length, parallel);
+    return order;
+  }
+
+  private static int[] argsort(double[] a, int from, int to, boolean parallel) {
+    long[] keys = keys(a, from, to);
+    int[] order = identity(from, to);
+    sortKeys(keys, order, keys.length, parallel);
+    return order;
+  }
+
+  private static int[] identity(int from, int to) {
+    int[] order = new int[to - from];
+    for (int i = 0; i < order.length; i++)
+      order[i] = from + i;
+    return order;
+  }
+
+  private static int[] keys(float[] a, int from, int to) {
+    checkRange(from, to, a.length);
+    int[] keys = new int[to - from];
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = sortableBits(a[from + i]);
+    return keys;
+  }
+
+  private static long[] keys(double[] a, int from, int to) {
+    checkRange(from, to, a.length);
+    long[] keys = new long[to - from];
+    for (int i = 0; i < keys.length; i++)
+      keys[i] = sortableBits(a[from + i]);
+    return keys;
+  }
+
+  // ---------------------------------------------------------------- radix sort of signed keys[0, n), idx moves along
+
+  private static void sortKeys(int[] keys, int[] idx, int n, boolean parallel) {
+    if (n < INSERTION_THRESHOLD) {
+      insertionSort(keys, idx, n);
+      return;
+    }
+    int blocks = parallel ? blocks(n) : 1;
+    int[] src = keys, dst = new int[n];
+    int[] isrc = idx, idst = idx == null ? null : new int[n];
+    int[][] histograms = blocks == 1 ? histograms(keys, n) : null;
+    for (int shift = 0; shift < Integer.SIZE; shift += BITS) {
+      boolean moved = blocks == 1
+        ? scatter(src, dst, isrc, idst, n, shift, histograms[shift / BITS])
+        : parallelScatter(src, dst, isrc, idst, n, shift, blocks);
+      if (moved) {
+        int[] t = src; src = dst; dst = t;
+        t = isrc; isrc = idst; idst = t;
+      }
+    }
+    if (src != keys) {
+      System.arraycopy(src, 0, keys, 0, n);
+      if (idx != null)
+        System.arraycopy(isrc, 0, idx, 0, n);
+    }
+  }
+
+  private static void sortKeys(long[] keys, int[] idx, int n, boolean parallel) {
+    if (n < INSERTION_THRESHOLD) {
+      insertionSort(keys, idx, n);
+      return;
+    }
+    int blocks = parallel ? blocks(n) : 1;
+    long[] src = keys, dst = new long[n];
+    int[] isrc = idx, idst = idx == null ? null : new int[n];
+    int[][] histograms = blocks == 1 ? histograms(keys, n) : null;
+    for (int shift = 0; shift < Long.SIZE; shift += BITS) {
+      boolean moved = blocks == 1
+        ? scatter(src, dst, isrc, idst, n, shift, histograms[shift / BITS])
+        : parallelScatter(src, dst, isrc, idst, n, shift, blocks);
+      if (moved) {
+        long[] t = src; src = dst; dst = t;
+        int[] it = isrc; isrc = idst; idst = it;
+      }
+    }
+    if (src != keys) {
+      System.arraycopy(src, 0, keys, 0, n);
+      if (idx != null)
+        System.arraycopy(isrc, 0, idx, 0, n);
+    }
+  }
+
+  /*
+   * The sign bit is flipped when extracting digits so the unsigned digit order is the signed key order.
+   */
+  private static int digit(int key, int shift) {
+    return (key ^ Integer.MIN_VALUE) >>> shift & MASK;
+  }
+
+  private static int digit(long key, int shift) {
+    return (int) ((key ^ Long.MIN_VALUE) >>> shift) & MASK;
+  }
+
+  /**
+   * 一次读完所有趟的计数
+   */
+  private static int[][] histograms(int[] keys, int n) {
+    int[][] h = new int[Integer.SIZE / BITS][RADIX];
+    int[] h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3];
+    for (int i = 0; i < n; i++) {
+      int k = keys[i] ^ Integer.MIN_VALUE;
+      h0[k & MASK]++;
+      h1[k >>> 8 & MASK]++;
+      h2[k >>> 16 & MASK]++;
+      h3[k >>> 24]++;
+    }
+    return h;
+  }
+
+  private static int[][] histograms(long[] keys, int n) {
+    int[][] h = new int[Long.SIZE / BITS][RADIX];
+    for (int i = 0; i < n; i++) {
+      long k = keys[i] ^ Long.MIN_VALUE;
+      for (int p = 0; p < h.length; p++)
+        h[p][(int) (k >>> p * BITS) & MASK]++;
+    }
+    return h;
+  }
+
+  /**
+   * @return false 时所有元素这一位都相同, 没有移动
+   */
+  private static boolean scatter(int[] src, int[] dst, int[] isrc, int[] idst, int n, int shift, int[] counts) {
+    if (trivial(counts, n))
+      return false;
+    int[] offsets = prefix(counts);
+    if (isrc == null) {
+      for (int i = 0; i < n; i++) {
+        int k = src[i];
+        dst[offsets[digit(k, shift)]++] = k;
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        int k = src[i];
+        int pos = offsets[digit(k, shift)]++;
+        dst[pos] = k;
+        idst[pos] = isrc[i];
+      }
+    }
+    return true;
+  }
+
+  private static boolean scatter(long[] src, long[] dst, int[] isrc, int[] idst, int n, int shift, int[] counts) {
+    if (trivial(counts, n))
+      return false;
+    int[] offsets = prefix(counts);
+    if (isrc == null) {
+      for (int i = 0; i < n; i++) {
+        long k = src[i];
+        dst[offsets[digit(k, shift)]++] = k;
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        long k = src[i];
+        int pos = offsets[digit(k, shift)]++;
+        dst[pos] = k;
+        idst[pos] = isrc[i];
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 每块先各自计数, 再按 (digit, block) 的顺序分配起点, 各块写入不相交的位置, 结果和顺序执行相同
+   */
+  private static boolean parallelScatter(int[] src, int[] dst, int[] isrc, int[] idst, int n, int shift, int blocks) {
+    int[][] counts = new int[blocks][RADIX];
+    run(blocks, b -> {
+      int[] c = counts[b];
+      for (int i = start(b, n, blocks), end = start(b + 1, n, blocks); i < end; i++)
+        c[digit(src[i], shift)]++;
+    });
+    if (!offsets(counts, n))
+      return false;
+    run(blocks, b -> {
+      int[] offsets = counts[b];
+      for (int i = start(b, n, blocks), end = start(b + 1, n, blocks); i < end; i++) {
+        int k = src[i];
+        int pos = offsets[digit(k, shift)]++;
+        dst[pos] = k;
+        if (isrc != null)
+          idst[pos] = isrc[i];
+      }
+    });
+    return true;
+  }
+
+  private static boolean parallelScatter(long[] src, long[] dst, int[] isrc, int[] idst, int n, int shift, int blocks) {
+    int[][] counts = new int[blocks][RADIX];
+    run(blocks, b -> {
+      int[] c = counts[b];
+      for (int i = start(b, n, blocks), end = start(b + 1, n, blocks); i < end; i++)
+        c[digit(src[i], shift)]++;
+    });
+    if (!offsets(counts, n))
+      return false;
+    run(blocks, b -> {
+      int[] offsets = counts[b];
+      for (int i = start(b, n, blocks), end = start(b + 1, n, blocks); i < end; i++) {
+        long k = src[i];
+        int pos = offsets[digit(k, shift)]++;
+        dst[pos] = k;
+        if (isrc != null)
+          idst[pos] = isrc[i];
+      }
+    });
+    return true;
+  }
+
+  private static boolean trivial(int[] counts, int n) {
+    for (int c : counts) {
+      if (c == n)
+        return true;
+      if (c != 0)
+        return false;
+    }
+    return false;
+  }
+
+  private static int[] prefix(int[] counts) {
+    int[] offsets = new int[RADIX];
+    for (int d = 0, sum = 0; d < RADIX; d++) {
+      offsets[d] = sum;
+      sum += counts[d];
+    }
+    return offsets;
+  }
+
+  /**
+   * 把每块的计数原地换成这一块每个 digit 的起点
+   *
+   * @return false 时所有元素这一位都相同
+   */
+  private static boolean offsets(int[][] counts, int n) {
+    for (int d = 0; d < RADIX; d++) {
+      int total = 0;
+      for (int[] c : counts)
+        total += c[d];
+      if (total == n)
+        return false;
+      if (total != 0)
+        break;
+    }
+    for (int d = 0, sum = 0; d < RADIX; d++) {
+      for (int[] c : counts) {
+        int count = c[d];
+        c[d] = sum;
+        sum += count;
+      }
+    }
+    return true;
+  }
+
+  private static int blocks(int n) {
+    if (n <= Maths.parallelThreshold())
+      return 1;
+    int parallelism = ForkJoinPool.getCommonPoolParallelism();
+    return Math.max(1, Math.min(parallelism * 4, n / MIN_BLOCK));
+  }
+
+  private static int start(int block, int n, int blocks) {
+    return (int) ((long) n * block / blocks);
+  }
+
+  private static void run(int blocks, IntConsumer body) {
+    ForkJoinPool.commonPool().invoke(new BlockTask(body, 0, blocks));
+  }
+
+  private static void insertionSort(int[] keys, int[] idx, int n) {
+    for (int i = 1; i < n; i++) {
+      int k = keys[i];
+      int x = idx == null ? 0 : idx[i];
+      int j = i - 1;
+      for (; j >= 0 && keys[j] > k; j--) {
+        keys[j + 1] = keys[j];
+        if (idx != null)
+          idx[j + 1] = idx[j];
+      }
+      keys[j + 1] = k;
+      if (idx != null)
+        idx[j + 1] = x;
+    }
+  }
+
+  private static void insertionSort(long[] keys, int[] idx, int n) {
+    for (int i = 1; i < n; i++) {
+      long k = keys[i];
+      int x = idx == null ? 0 : idx[i];
+      int j = i - 1;
+      for (; j >= 0 && keys[j] > k; j--) {
+        keys[j + 1] = keys[j];
+        if (idx != null)
+          idx[j + 1] = idx[j];
+      }
+      keys[j + 1] = k;
+      if (idx != null)
+        idx[j + 1] = x;
+    }
+  }
+
+  // ---------------------------------------------------------------- search
+
+  public static int binarySearch(int[] a, int key) {
+    return binarySearch(a, 0, a.length, key);
+  }
+
+  public static int binarySearch(int[] a, int from, int to, int key) {
+    checkRange(from, to, a.length);
+    int lo = from, hi = to;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < to && a[lo] == key ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(long[] a, long key) {
+    return binarySearch(a, 0, a.length, key);
+  }
+
+  public static int binarySearch(long[] a, int from, int to, long key) {
+    checkRange(from, to, a.length);
+    int lo = from, hi = to;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < to && a[lo] == key ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(float[] a, float key) {
+    return binarySearch(a, 0, a.length, key);
+  }
+
+  public static int binarySearch(float[] a, int from, int to, float key) {
+    checkRange(from, to, a.length);
+    int k = sortableBits(key);
+    int lo = lowerBound(a, from, to, k);
+    return lo < to && sortableBits(a[lo]) == k ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(double[] a, double key) {
+    return binarySearch(a, 0, a.length, key);
+  }
+
+  public static int binarySearch(double[] a, int from, int to, double key) {
+    checkRange(from, to, a.length);
+    long k = sortableBits(key);
+    int lo = lowerBound(a, from, to, k);
+    return lo < to && sortableBits(a[lo]) == k ? lo : -lo - 1;
+  }
+
+  /**
+   * 在 {@link #argsort(int[])} 的结果上查找
+   *
+   * @return key 在 order 里的位置, 找不到时为 -(插入位置) - 1
+   */
+  public static int binarySearch(int[] a, int[] order, int key) {
+    int lo = 0, hi = order.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[order[mid]] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < order.length && a[order[lo]] == key ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(long[] a, int[] order, long key) {
+    int lo = 0, hi = order.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[order[mid]] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < order.length && a[order[lo]] == key ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(float[] a, int[] order, float key) {
+    int k = sortableBits(key);
+    int lo = 0, hi = order.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortableBits(a[order[mid]]) < k)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < order.length && sortableBits(a[order[lo]]) == k ? lo : -lo - 1;
+  }
+
+  public static int binarySearch(double[] a, int[] order, double key) {
+    long k = sortableBits(key);
+    int lo = 0, hi = order.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortableBits(a[order[mid]]) < k)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < order.length && sortableBits(a[order[lo]]) == k ? lo : -lo - 1;
+  }
+
+  public static int interpolationSearch(int[] a, int key) {
+    return interpolationSearch(a, 0, a.length, key);
+  }
+
+  public static int interpolationSearch(int[] a, int from, int to, int key) {
+    checkRange(from, to, a.length);
+    int lo = from, hi = to;
+    for (int probes = probes(to - from); hi - lo > INTERPOLATION_THRESHOLD && probes > 0; probes--) {
+      int first = a[lo], last = a[hi - 1];
+      if (key <= first) {
+        hi = lo;
+        break;
+      }
+      if (key > last) {
+        lo = hi;
+        break;
+      }
+      int probe = probe(lo, hi, first, last, key);
+      if (a[probe] < key)
+        lo = probe + 1;
+      else
+        hi = probe;
+    }
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < to && a[lo] == key ? lo : -lo - 1;
+  }
+
+  public static int interpolationSearch(long[] a, long key) {
+    return interpolationSearch(a, 0, a.length, key);
+  }
+
+  public static int interpolationSearch(long[] a, int from, int to, long key) {
+    checkRange(from, to, a.length);
+    int lo = from, hi = to;
+    for (int probes = probes(to - from); hi - lo > INTERPOLATION_THRESHOLD && probes > 0; probes--) {
+      long first = a[lo], last = a[hi - 1];
+      if (key <= first) {
+        hi = lo;
+        break;
+      }
+      if (key > last) {
+        lo = hi;
+        break;
+      }
+      int probe = probe(lo, hi, first, last, key);
+      if (a[probe] < key)
+        lo = probe + 1;
+      else
+        hi = probe;
+    }
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo < to && a[lo] == key ? lo : -lo - 1;
+  }
+
+  public static int interpolationSearch(float[] a, float key) {
+    return interpolationSearch(a, 0, a.length, key);
+  }
+
+  public static int interpolationSearch(float[] a, int from, int to, float key) {
+    checkRange(from, to, a.length);
+    int k = sortableBits(key);
+    int lo = from, hi = to;
+    for (int probes = probes(to - from); hi - lo > INTERPOLATION_THRESHOLD && probes > 0; probes--) {
+      int first = sortableBits(a[lo]), last = sortableBits(a[hi - 1]);
+      if (k <= first) {
+        hi = lo;
+        break;
+      }
+      if (k > last) {
+        lo = hi;
+        break;
+      }
+      int probe = probe(lo, hi, first, last, k);
+      if (sortableBits(a[probe]) < k)
+        lo = probe + 1;
+      else
+        hi = probe;
+    }
+    lo = lowerBound(a, lo, hi, k);
+    return lo < to && sortableBits(a[lo]) == k ? lo : -lo - 1;
+  }
+
+  public static int interpolationSearch(double[] a, double key) {
+    return interpolationSearch(a, 0, a.length, key);
+  }
+
+  public static int interpolationSearch(double[] a, int from, int to, double key) {
+    checkRange(from, to, a.length);
+    long k = sortableBits(key);
+    int lo = from, hi = to;
+    for (int probes = probes(to - from); hi - lo > INTERPOLATION_THRESHOLD && probes > 0; probes--) {
+      long first = sortableBits(a[lo]), last = sortableBits(a[hi - 1]);
+      if (k <= first) {
+        hi = lo;
+        break;
+      }
+      if (k > last) {
+        lo = hi;
+        break;
+      }
+      int probe = probe(lo, hi, first, last, k);
+      if (sortableBits(a[probe]) < k)
+        lo = probe + 1;
+      else
+        hi = probe;
+    }
+    lo = lowerBound(a, lo, hi, k);
+    return lo < to && sortableBits(a[lo]) == k ? lo : -lo - 1;
+  }
+
+  /**
+   * 第一个不小于 key 的下标
+   */
+  private static int lowerBound(float[] a, int lo, int hi, int key) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortableBits(a[mid]) < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  private static int lowerBound(double[] a, int lo, int hi, long key) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (sortableBits(a[mid]) < key)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * 插值的次数上限, 超过后说明分布不均匀, 剩下的交给二分查找
+   */
+  private static int probes(int n) {
+    return 2 * (32 - Integer.numberOfLeadingZeros(n));
+  }
+
+  /**
+   * a[lo] = first &lt; key &lt;= last = a[hi - 1], 在 double 上计算避免差值溢出
+   */
+  private static int probe(int lo, int hi, double first, double last, double key) {
+    int probe = lo + (int) ((key - first) / (last - first) * (hi - 1 - lo));
+    return Math.max(lo, Math.min(hi - 1, probe));
+  }
+
+  private static void checkRange(int from, int to, int length) {
+    if (from < 0 || to > length || from > to)
+      throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + length);
+  }
+
+  @SuppressWarnings("serial")
+  private static final class BlockTask extends RecursiveAction {
+    private final IntConsumer body;
+    private final int from, to;
+
+    BlockTask(IntConsumer body, int from, int to) {
+      this.body = body;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        body.accept(from);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new BlockTask(body, from, mid), new BlockTask(body, mid, to));
+    }
+  }
+}
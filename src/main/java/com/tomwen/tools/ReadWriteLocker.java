@@ -0,0 +1,181 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 读写锁版本的 {@link Locker}, 基于 jdk8 的 {@link StampedLock}, 适合读多写少的场景.
+ * 与 {@link Locker} 一样使用 try-with-resources 释放, 锁不可重入.
+ * <pre>
+ * try (Locker.Lock lock = locker.readLock()) {
+ *   // read
+ * }
+ * try (Locker.Lock lock = locker.writeLock()) {
+ *   // write
+ * }
+ * try (ReadWriteLocker.Optimistic read = locker.optimisticRead()) {
+ *   do {
+ *     x = this.x;
+ *     y = this.y;
+ *   } while (read.retry());
+ * }
+ * </pre>
+ * 乐观读不加锁, 也不会阻塞写线程; 读到的值只有在 {@link Optimistic#retry()} 返回 false 之后才能使用.
+ * <p>
+ * 与 {@link Locker} 一样, 只有加锁的线程能释放它的锁, 否则 (包括重复 close) 抛出 {@link IllegalMonitorStateException}.
+ * 读锁不能升级: 持有读锁的线程调用 writeLock 会永远等待自己, 所以直接抛出 {@link IllegalStateException}.
+ */
+public class ReadWriteLocker {
+  private static final Locker.Lock LOCKED = new Locker.Lock();
+  private final StampedLock _lock = new StampedLock();
+  private final Locker.Lock _readUnlock = new ReadUnLock();
+  private final Locker.Lock _writeUnlock = new WriteUnLock();
+  private final ThreadLocal<ReadStamp> _readStamp = ThreadLocal.withInitial(ReadStamp::new);
+  private volatile Thread _writer;
+  /* only read and written by _writer */
+  private long _writeStamp;
+
+  public ReadWriteLocker() {
+  }
+
+  /**
+   * @throws IllegalStateException 当前线程已经持有读锁或者写锁
+   */
+  public Locker.Lock readLock() {
+    if (_writer == Thread.currentThread())
+      throw new IllegalStateException("Locker is not reentrant");
+    ReadStamp held = _readStamp.get();
+    if (held.stamp != 0)
+      throw new IllegalStateException("Locker is not reentrant");
+    held.stamp = _lock.readLock();
+    return _readUnlock;
+  }
+
+  /**
+   * @throws IllegalStateException 当前线程已经持有写锁, 或者持有读锁 (升级会死锁)
+   */
+  public Locker.Lock writeLock() {
+    Thread current = Thread.currentThread();
+    if (_writer == current)
+      throw new IllegalStateException("Locker is not reentrant");
+    return acquireWrite(current);
+  }
+
+  /**
+   * 当前线程已经持有写锁时返回一个什么也不做的 Lock
+   *
+   * @throws IllegalStateException 当前线程持有读锁 (升级会死锁)
+   */
+  public Locker.Lock writeLockIfNotHeld() {
+    Thread current = Thread.currentThread();
+    if (_writer == current)
+      return LOCKED;
+    return acquireWrite(current);
+  }
+
+  private Locker.Lock acquireWrite(Thread current) {
+    if (_readStamp.get().stamp != 0)
+      throw new IllegalStateException("read lock can not be upgraded to a write lock");
+    long stamp = _lock.writeLock();
+    _writeStamp = stamp;
+    _writer = current;
+    return _writeUnlock;
+  }
+
+  /**
+   * 开始一次乐观读, 有写线程持有写锁时自旋等待它释放
+   */
+  public Optimistic optimisticRead() {
+    return new Optimistic();
+  }
+
+  public boolean isReadLocked() {
+    return _lock.isReadLocked();
+  }
+
+  public boolean isWriteLocked() {
+    return _lock.isWriteLocked();
+  }
+
+  public boolean isWriteLockedByCurrentThread() {
+    return _writer == Thread.currentThread();
+  }
+
+  public int getReadLockCount() {
+    return _lock.getReadLockCount();
+  }
+
+  private long nextStamp() {
+    long stamp;
+    while ((stamp = _lock.tryOptimisticRead()) == 0) {
+      Jvm.checkInterrupted();
+      Thread.yield();
+    }
+    return stamp;
+  }
+
+  /**
+   * @throws IllegalMonitorStateException 当前线程没有持有读锁
+   */
+  public class ReadUnLock extends Locker.Lock {
+    @Override
+    public void close() {
+      ReadStamp held = _readStamp.get();
+      long stamp = held.stamp;
+      if (stamp == 0)
+        throw new IllegalMonitorStateException("read lock is not held by " + Thread.currentThread().getName());
+      held.stamp = 0;
+      _lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * @throws IllegalMonitorStateException 当前线程没有持有写锁
+   */
+  public class WriteUnLock extends Locker.Lock {
+    @Override
+    public void close() {
+      if (_writer != Thread.currentThread())
+        throw new IllegalMonitorStateException("write lock is not held by " + Thread.currentThread().getName());
+      long stamp = _writeStamp;
+      _writer = null;
+      _lock.unlockWrite(stamp);
+    }
+  }
+
+  /* the stamp of the read lock the thread holds, 0 if none */
+  private static final class ReadStamp {
+    long stamp;
+  }
+
+  /**
+   * 一次乐观读. 只能在创建它的线程里使用.
+   */
+  public class Optimistic extends Locker.Lock {
+    private long stamp;
+
+    Optimistic() {
+      if (_writer == Thread.currentThread())
+        throw new IllegalStateException("Locker is not reentrant");
+      stamp = nextStamp();
+    }
+
+    /**
+     * @return 从开始(或上一次 retry)到现在没有发生过写
+     */
+    public boolean validate() {
+      return _lock.validate(stamp);
+    }
+
+    /**
+     * 读到的值有效时返回 false; 否则等待当前的写完成, 开始新一轮乐观读并返回 true.
+     *
+     * @throws InterruptedRuntimeException 等待时线程被中断
+     */
+    public boolean retry() {
+      if (_lock.validate(stamp))
+        return false;
+      stamp = nextStamp();
+      return true;
+    }
+  }
+}
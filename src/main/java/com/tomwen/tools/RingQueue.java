@@ -0,0 +1,204 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 基于数组的有界无锁队列, 容量是 2 的幂, 用来代替 {@link Locker} 保护的 ArrayDeque 在流水线的各个阶段之间传递消息.
+ * <ul>
+ * <li>{@link SpscRingQueue}: 一个生产者线程, 一个消费者线程.</li>
+ * <li>{@link MpscRingQueue}: 多个生产者线程, 一个消费者线程.</li>
+ * <li>{@link MpmcRingQueue}: 多个生产者线程, 多个消费者线程.</li>
+ * </ul>
+ * 生产和消费的序号各自在独占缓存行的计数器里. offer 和 poll 不阻塞, 队列满或者空时立即返回;
+ * put 和 take 按 {@link WaitStrategy} 等待, 线程被中断时抛出 {@link InterruptedRuntimeException}
+ * (与 {@link Jvm#checkInterrupted()} 一样不清除中断状态). drain 和 fill 一次处理一批, 尽量只更新一次序号.
+ * <pre>
+ * RingQueue&lt;Order&gt; queue = new SpscRingQueue&lt;&gt;(4096, WaitStrategy.BACKOFF);
+ * queue.put(order);                          // 生产者
+ * queue.drain(this::process, 256);           // 消费者
+ * </pre>
+ * 不能放入 null.
+ */
+public abstract class RingQueue<E> {
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(Object[].class);
+  private static final int ARRAY_SHIFT = Integer.numberOfTrailingZeros(UNSAFE.arrayIndexScale(Object[].class));
+  /* published into a slot a producer claimed but could not fill, consumers release it without returning it */
+  static final Object SKIP = new Object();
+
+  final Object[] buffer;
+  final int mask;
+  final WaitStrategy waitStrategy;
+  /* the next sequence to consume, its cache is the consumer's view of tail */
+  final Sequence head = new Sequence();
+  /* the next sequence to produce, its cache is the producers' view of head */
+  final Sequence tail = new Sequence();
+
+  /**
+   * @param capacity 向上取整为 2 的幂
+   */
+  RingQueue(int capacity, WaitStrategy waitStrategy) {
+    if (capacity < 1 || capacity > MAX_CAPACITY)
+      throw new IllegalArgumentException("capacity must be in [1, " + MAX_CAPACITY + "], was " + capacity);
+    if (waitStrategy == null)
+      throw new NullPointerException("waitStrategy");
+    int size = Maths.nextPower2(capacity, 2);
+    this.buffer = new Object[size];
+    this.mask = size - 1;
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * 不等待, 队列满时返回 false
+   */
+  public abstract boolean offer(E e);
+
+  /**
+   * 不等待, 队列空时返回 null
+   */
+  public abstract E poll();
+
+  /**
+   * 把最多 limit 个元素依次交给 consumer.
+   * consumer 抛出异常时已经交出的元素 (包括抛出异常的那个) 从队列里移除, 异常继续抛出.
+   *
+   * @return 交出的元素个数
+   */
+  public abstract int drain(Consumer<? super E> consumer, int limit);
+
+  /**
+   * 用 supplier 产生的元素填充队列, 最多 limit 个, 只在确定有空位之后才调用 supplier.
+   * supplier 抛出异常时之前产生的元素留在队列里, 异常继续抛出; supplier 返回 null 时抛出 {@link NullPointerException}.
+   *
+   * @return 放入的元素个数
+   */
+  public abstract int fill(Supplier<? extends E> supplier, int limit);
+
+  public int drain(Consumer<? super E> consumer) {
+    return drain(consumer, capacity());
+  }
+
+  /**
+   * 队列满时按 waitStrategy 等待
+   *
+   * @throws InterruptedRuntimeException 等待时线程被中断
+   */
+  public void put(E e) {
+    if (offer(e))
+      return;
+    for (int attempt = 0; ; attempt++) {
+      Jvm.checkInterrupted();
+      waitStrategy.idle(attempt);
+      if (offer(e))
+        return;
+    }
+  }
+
+  /**
+   * 队列空时按 waitStrategy 等待
+   *
+   * @throws InterruptedRuntimeException 等待时线程被中断
+   */
+  public E take() {
+    E e = poll();
+    for (int attempt = 0; e == null; attempt++) {
+      Jvm.checkInterrupted();
+      waitStrategy.idle(attempt);
+      e = poll();
+    }
+    return e;
+  }
+
+  /**
+   * @return 超时返回 false
+   * @throws InterruptedRuntimeException 等待时线程被中断
+   */
+  public boolean offer(E e, long timeout, TimeUnit unit) {
+    if (offer(e))
+      return true;
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (int attempt = 0; System.nanoTime() - deadline < 0; attempt++) {
+      Jvm.checkInterrupted();
+      waitStrategy.idle(attempt);
+      if (offer(e))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return 超时返回 null
+   * @throws InterruptedRuntimeException 等待时线程被中断
+   */
+  public E poll(long timeout, TimeUnit unit) {
+    E e = poll();
+    if (e != null)
+      return e;
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (int attempt = 0; System.nanoTime() - deadline < 0; attempt++) {
+      Jvm.checkInterrupted();
+      waitStrategy.idle(attempt);
+      if ((e = poll()) != null)
+        return e;
+    }
+    return null;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * 其它线程同时在读写时只是一个估计值. 包括还没有被消费的 SKIP 位置 (多生产者的 fill 在 supplier 抛出异常或者
+   * 返回 null 后, 已经占用但没有填入元素的位置), 所以可能大于 drain 能取出的元素个数
+   */
+  public int size() {
+    // read head first so a concurrent consumer can only make the result smaller, never negative
+    long h = head.get();
+    long t = tail.get();
+    return (int) Math.max(0, Math.min(buffer.length, t - h));
+  }
+
+  /**
+   * 与 {@link #size()} 一样计入还没有被消费的 SKIP 位置, 只剩 SKIP 时返回 false, 而 poll 跳过它们后返回 null
+   */
+  public boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+
+  final long offset(long sequence) {
+    return ARRAY_BASE + ((sequence & mask) << ARRAY_SHIFT);
+  }
+
+  @SuppressWarnings("unchecked")
+  final E getVolatile(long offset) {
+    return (E) UNSAFE.getObjectVolatile(buffer, offset);
+  }
+
+  @SuppressWarnings("unchecked")
+  final E getPlain(long offset) {
+    return (E) UNSAFE.getObject(buffer, offset);
+  }
+
+  final void putOrdered(long offset, Object e) {
+    UNSAFE.putOrderedObject(buffer, offset, e);
+  }
+
+  final void putPlain(long offset, Object e) {
+    UNSAFE.putObject(buffer, offset, e);
+  }
+
+  static void checkLimit(int limit) {
+    if (limit < 0)
+      throw new IllegalArgumentException("limit must be >= 0, was " + limit);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{capacity=" + capacity() + ", size=" + size() + '}';
+  }
+}
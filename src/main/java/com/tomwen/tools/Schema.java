@@ -0,0 +1,311 @@
+package com.tomwen.tools;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个类的字段信息, 每个类只解析一次. 包括父类里的字段, 不包括 static 和 synthetic 字段.
+ * <p>
+ * 集合和 Map 的元素类型按字段声明的泛型解析, 父类的类型变量按子类给出的类型参数替换:
+ * <pre>
+ * class Order { List&lt;Long&gt; ids; Map&lt;String, BigDecimal&gt; prices; }
+ * Schema.Property ids = Schema.of(Order.class).property("ids");
+ * ids.componentType();      // Long.class
+ * ids.get(order);           // 预先绑定的 MethodHandle, 不走反射
+ * </pre>
+ * 不能访问的字段 (例如 jdk 9 以上模块内部的字段) 仍然列出, 但 get/set 抛出 {@link IllegalStateException}.
+ */
+public final class Schema {
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+  private static final MethodType LONG_GETTER = MethodType.methodType(long.class, Object.class);
+  private static final MethodType DOUBLE_GETTER = MethodType.methodType(double.class, Object.class);
+
+  private static final ClassValue<Schema> SCHEMAS = new ClassValue<Schema>() {
+    @Override
+    protected Schema computeValue(Class<?> type) {
+      return new Schema(type);
+    }
+  };
+
+  private final Class<?> type;
+  private final List<Property> properties;
+  private final Map<String, Property> byName;
+
+  private Schema(Class<?> type) {
+    this.type = type;
+    List<Property> properties = new ArrayList<>();
+    collect(type, Collections.<TypeVariable<?>, Type>emptyMap(), properties);
+    this.properties = Collections.unmodifiableList(properties);
+    Map<String, Property> byName = new HashMap<>();
+    for (Property p : properties) {
+      // a field hides the field of the same name in its super class
+      byName.put(p.name(), p);
+    }
+    this.byName = byName;
+  }
+
+  public static Schema of(Class<?> type) {
+    return SCHEMAS.get(type);
+  }
+
+  public Class<?> type() {
+    return type;
+  }
+
+  public Typ.Info info() {
+    return Typ.classify(type);
+  }
+
+  /**
+   * 父类的字段在前, 同一个类里按声明的顺序
+   */
+  public List<Property> properties() {
+    return properties;
+  }
+
+  /**
+   * @return 没有这个字段时返回 null
+   */
+  public Property property(String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * 字段名到字段值, 按 {@link #properties()} 的顺序
+   */
+  public Map<String, Object> toMap(Object target) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (Property p : properties)
+      map.put(p.name(), p.get(target));
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return "Schema{" + type.getName() + ", " + properties + '}';
+  }
+
+  private static void collect(Class<?> type, Map<TypeVariable<?>, Type> bindings, List<Property> properties) {
+    if (type == null || type == Object.class)
+      return;
+    Type superclass = type.getGenericSuperclass();
+    if (superclass != null)
+      collect(Typ.erasure(superclass), Typ.bindings(superclass, bindings), properties);
+    for (Field field : type.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic())
+        continue;
+      properties.add(new Property(field, bindings));
+    }
+  }
+
+  /**
+   * 一个字段. get 和 set 使用创建时绑定好的 {@link MethodHandle}.
+   */
+  public static final class Property {
+    private final Field field;
+    private final Type genericType;
+    private final Typ.Info info;
+    private final Class<?> componentType;
+    private final Class<?> keyType;
+    private final Class<?> valueType;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final MethodHandle longGetter;
+    private final MethodHandle doubleGetter;
+
+    Property(Field field, Map<TypeVariable<?>, Type> bindings) {
+      this.field = field;
+      Type generic = field.getGenericType();
+      Type bound = generic instanceof TypeVariable ? bindings.get(generic) : null;
+      this.genericType = bound != null ? bound : generic;
+      Class<?> type = field.getType();
+      this.info = Typ.classify(Typ.erasure(genericType));
+      this.componentType = info.isArray() || info.isCollection() ? Typ.getComponentType(genericType, bindings) : null;
+      this.keyType = info.isMap() ? Typ.getKeyType(genericType, bindings) : null;
+      this.valueType = info.isMap() ? Typ.getValueType(genericType, bindings) : null;
+
+      MethodHandle getter = null;
+      MethodHandle setter = null;
+      try {
+        field.setAccessible(true);
+        getter = LOOKUP.unreflectGetter(field);
+        if (!Modifier.isFinal(field.getModifiers()))
+          setter = LOOKUP.unreflectSetter(field);
+      } catch (IllegalAccessException | RuntimeException e) {
+        // not accessible, e.g. a field of a jdk internal class on java 9+
+      }
+      this.getter = getter == null ? null : getter.asType(GETTER);
+      this.setter = setter == null ? null : setter.asType(SETTER);
+      this.longGetter = getter != null && isIntegral(type) ? getter.asType(LONG_GETTER) : null;
+      this.doubleGetter = getter != null && type.isPrimitive() && type != boolean.class ? getter.asType(DOUBLE_GETTER) : null;
+    }
+
+    public String name() {
+      return field.getName();
+    }
+
+    public Field field() {
+      return field;
+    }
+
+    public Class<?> type() {
+      return field.getType();
+    }
+
+    /**
+     * 声明的类型. 字段本身是类型变量 (例如 {@code T value}) 时按子类给出的类型参数替换
+     */
+    public Type genericType() {
+      return genericType;
+    }
+
+    public Class<?> declaringClass() {
+      return field.getDeclaringClass();
+    }
+
+    /**
+     * 按 {@link #genericType()} 分类, 例如 {@code T value} 在 {@code Box<Long>} 的子类里是 Long 的分类
+     */
+    public Typ.Info info() {
+      return info;
+    }
+
+    /**
+     * 数组或集合的元素类型, 泛型未声明时为 Object; 其它类型返回 null
+     */
+    public Class<?> componentType() {
+      return componentType;
+    }
+
+    /**
+     * Map 的 key 类型, 泛型未声明时为 Object; 其它类型返回 null
+     */
+    public Class<?> keyType() {
+      return keyType;
+    }
+
+    /**
+     * Map 的 value 类型, 泛型未声明时为 Object; 其它类型返回 null
+     */
+    public Class<?> valueType() {
+      return valueType;
+    }
+
+    public boolean isFinal() {
+      return Modifier.isFinal(field.getModifiers());
+    }
+
+    public boolean isTransient() {
+      return Modifier.isTransient(field.getModifiers());
+    }
+
+    public boolean isReadable() {
+      return getter != null;
+    }
+
+    public boolean isWritable() {
+      return setter != null;
+    }
+
+    /**
+     * 类型为 (Object)Object 的 getter, 可以用 invokeExact 调用
+     *
+     * @return 字段不能访问时返回 null
+     */
+    public MethodHandle getter() {
+      return getter;
+    }
+
+    /**
+     * 类型为 (Object, Object)void 的 setter, 可以用 invokeExact 调用
+     *
+     * @return final 或者不能访问的字段返回 null
+     */
+    public MethodHandle setter() {
+      return setter;
+    }
+
+    /**
+     * 基本类型的字段返回包装类型
+     */
+    public Object get(Object target) {
+      if (getter == null)
+        throw new IllegalStateException("Field is not accessible: " + this);
+      try {
+        return (Object) getter.invokeExact(target);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    }
+
+    /**
+     * long, int, short, byte 和 char 字段不装箱, 其它 {@link Number} 类型的字段取 longValue
+     */
+    public long getLong(Object target) {
+      if (longGetter == null)
+        return ((Number) get(target)).longValue();
+      try {
+        return (long) longGetter.invokeExact(target);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    }
+
+    /**
+     * 除 boolean 外的基本类型字段不装箱, 其它 {@link Number} 类型的字段取 doubleValue
+     */
+    public double getDouble(Object target) {
+      if (doubleGetter == null)
+        return ((Number) get(target)).doubleValue();
+      try {
+        return (double) doubleGetter.invokeExact(target);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    }
+
+    /**
+     * @throws IllegalStateException 字段是 final 的或者不能访问
+     * @throws ClassCastException    value 的类型不对
+     */
+    public void set(Object target, Object value) {
+      if (setter == null)
+        throw new IllegalStateException("Field is not writable: " + this);
+      try {
+        setter.invokeExact(target, value);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return field.getDeclaringClass().getSimpleName() + '.' + field.getName();
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+      return type == long.class || type == int.class || type == short.class || type == byte.class || type == char.class;
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+      if (t instanceof RuntimeException)
+        throw (RuntimeException) t;
+      if (t instanceof Error)
+        throw (Error) t;
+      throw new IllegalStateException(t);
+    }
+  }
+}
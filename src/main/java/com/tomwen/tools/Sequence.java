@@ -0,0 +1,58 @@
+package com.tomwen.tools;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 独占一个缓存行的 long 计数器, 前后的填充字段使它不和其它对象或者另一个计数器发生 false sharing.
+ * cache 是拥有这个计数器的一方对另一个计数器的缓存, 和 value 在同一个缓存行上. 它是普通字段, 只是一个提示:
+ * SPSC 时只被拥有者写, 但 {@link MpscRingQueue} 的所有生产者都会写 tail.cache, 读到过期或者被其它生产者覆盖的值
+ * 只会多读一次另一个计数器, 不影响正确性.
+ */
+@SuppressWarnings("unused")
+final class Sequence {
+  private static final long VALUE_OFFSET = valueOffset0();
+
+  private long p1, p2, p3, p4, p5, p6, p7;
+  private volatile long value;
+  long cache;
+  private long p9, p10, p11, p12, p13, p14, p15;
+
+  private static long valueOffset0() {
+    try {
+      return UNSAFE.objectFieldOffset(Sequence.class.getDeclaredField("value"));
+    } catch (NoSuchFieldException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  long get() {
+    return value;
+  }
+
+  /**
+   * 普通读, 只用于拥有者读自己写的值
+   */
+  long plain() {
+    return UNSAFE.getLong(this, VALUE_OFFSET);
+  }
+
+  void set(long value) {
+    this.value = value;
+  }
+
+  /**
+   * store-release: 之前的写对读到这个值的线程可见, 但不等待写缓冲清空, 比 volatile 写便宜
+   */
+  void lazySet(long value) {
+    UNSAFE.putOrderedLong(this, VALUE_OFFSET, value);
+  }
+
+  boolean compareAndSet(long expect, long update) {
+    return UNSAFE.compareAndSwapLong(this, VALUE_OFFSET, expect, update);
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(value);
+  }
+}
@@ -0,0 +1,215 @@
+package com.tomwen.tools;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * {@link BloomFilter}, {@link HyperLogLog} 和 {@link CountMinSketch} 共用的哈希, long[] 的原子操作和序列化
+ */
+final class Sketches {
+  static final byte TYPE_BLOOM = 1;
+  static final byte TYPE_HLL = 2;
+  static final byte TYPE_CMS = 3;
+  static final byte VERSION = 1;
+  private static final long LONG_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(long[].class);
+
+  private Sketches() {
+  }
+
+  /**
+   * murmur3 的 fmix64, 是一一映射, 每一位都均匀. {@link Maths#hash(long)} 不是一一映射
+   * (100 万个连续的 long 有 1% 以上冲突), 冲突会直接变成误报和低估, 所以只用来派生第二个哈希
+   */
+  static long spread(long hash) {
+    long h = hash;
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * 从第一个哈希派生第二个, Kirsch-Mitzenmacher 的 h1 + i * h2 用来代替 k 个独立的哈希. 总是奇数
+   */
+  static long second(long hash) {
+    return spread(Maths.agitate(Maths.hash(Long.rotateLeft(hash, 32)))) | 1;
+  }
+
+  static long hash(long key) {
+    return spread(key);
+  }
+
+  /**
+   * 字符串用 {@link Hasher#hash(CharSequence)}, 比 {@link Compare#calcLongHashCode(CharSequence)} 分布更均匀
+   */
+  static long hash(CharSequence key) {
+    return spread(Hasher.hash(key));
+  }
+
+  /**
+   * 装箱的数字按 {@link Compare} 的规则, 与对应的基本类型的重载结果相同 (double 按原始的位)
+   */
+  static long hash(Object key) {
+    if (key == null)
+      return spread(Compare.calcLongHashCode((Long) null));
+    if (key instanceof Long)
+      return spread(Compare.calcLongHashCode((Long) key));
+    if (key instanceof Integer)
+      return spread(Compare.calcLongHashCode((Integer) key));
+    if (key instanceof Short)
+      return spread(Compare.calcLongHashCode((Short) key));
+    if (key instanceof Byte)
+      return spread(Compare.calcLongHashCode((Byte) key));
+    if (key instanceof Character)
+      return spread(Compare.calcLongHashCode((Character) key));
+    if (key instanceof Boolean)
+      return spread(Compare.calcLongHashCode((Boolean) key));
+    if (key instanceof Double)
+      return spread(Compare.calcLongHashCode((Double) key));
+    if (key instanceof Float)
+      return spread(Compare.calcLongHashCode((Float) key));
+    if (key instanceof CharSequence)
+      return hash((CharSequence) key);
+    if (key instanceof byte[])
+      return spread(Hasher.hash((byte[]) key));
+    return spread(key.hashCode());
+  }
+
+  static int log2(long powerOf2) {
+    return 63 - Long.numberOfLeadingZeros(powerOf2);
+  }
+
+  // ---------------------------------------------------------------- long[] updates, atomic when concurrent
+
+  private static long offset(int index) {
+    return LONG_ARRAY_OFFSET + ((long) index << 3);
+  }
+
+  static long getVolatile(long[] words, int index) {
+    return UNSAFE.getLongVolatile(words, offset(index));
+  }
+
+  /**
+   * @return 是否有新的位被置 1
+   */
+  static boolean or(long[] words, int index, long bits, boolean concurrent) {
+    if (!concurrent) {
+      long word = words[index];
+      words[index] = word | bits;
+      return (word & bits) != bits;
+    }
+    long offset = offset(index);
+    while (true) {
+      long word = UNSAFE.getLongVolatile(words, offset);
+      if ((word & bits) == bits)
+        return false;
+      if (UNSAFE.compareAndSwapLong(words, offset, word, word | bits))
+        return true;
+    }
+  }
+
+  static void add(long[] words, int index, long delta, boolean concurrent) {
+    if (concurrent)
+      UNSAFE.getAndAddLong(words, offset(index), delta);
+    else
+      words[index] += delta;
+  }
+
+  /**
+   * 把 word 里 [shift, shift + bits) 的无符号字段更新为 max(原值, value)
+   *
+   * @return 是否变大
+   */
+  static boolean max(long[] words, int index, int shift, int bits, long value, boolean concurrent) {
+    long mask = ((1L << bits) - 1) << shift;
+    long field = value << shift;
+    if (!concurrent) {
+      long word = words[index];
+      if ((word & mask) >= field)
+        return false;
+      words[index] = word & ~mask | field;
+      return true;
+    }
+    long offset = offset(index);
+    while (true) {
+      long word = UNSAFE.getLongVolatile(words, offset);
+      if ((word & mask) >= field)
+        return false;
+      if (UNSAFE.compareAndSwapLong(words, offset, word, word & ~mask | field))
+        return true;
+    }
+  }
+
+  // ---------------------------------------------------------------- serialization
+
+  /**
+   * 类型和版本各一个字节, 其余的字段 little endian
+   */
+  static ByteBuffer header(byte type, int capacity) {
+    ByteBuffer buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(type).put(VERSION);
+    return buffer;
+  }
+
+  static ByteBuffer readHeader(byte[] bytes, byte type) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (bytes.length < 2 || buffer.get() != type)
+      throw new IllegalArgumentException("Not a serialized " + typeName(type));
+    byte version = buffer.get();
+    if (version != VERSION)
+      throw new IllegalArgumentException(typeName(type) + " version " + version + " is not supported");
+    return buffer;
+  }
+
+  private static String typeName(byte type) {
+    return type == TYPE_BLOOM ? "BloomFilter" : type == TYPE_HLL ? "HyperLogLog" : "CountMinSketch";
+  }
+
+  static void putLongs(ByteBuffer buffer, long[] words, boolean concurrent) {
+    for (int i = 0; i < words.length; i++)
+      buffer.putLong(concurrent ? getVolatile(words, i) : words[i]);
+  }
+
+  static long[] getLongs(ByteBuffer buffer, int count) {
+    if (buffer.remaining() != (long) count << 3)
+      throw new IllegalArgumentException("Expected " + ((long) count << 3) + " bytes of state, found " + buffer.remaining());
+    long[] words = new long[count];
+    buffer.asLongBuffer().get(words);
+    return words;
+  }
+
+  /**
+   * 无符号 LEB128, 每个字节 7 位
+   */
+  static void putVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static long getVarLong(ByteBuffer buffer) {
+    long value = 0;
+    try {
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = buffer.get();
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0)
+          return value;
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated varint", e);
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  static int varLongSize(long value) {
+    return value == 0 ? 1 : (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+  }
+}
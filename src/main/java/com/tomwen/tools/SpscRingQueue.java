@@ -0,0 +1,100 @@
+package com.tomwen.tools;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 一个生产者线程, 一个消费者线程的 {@link RingQueue}. 双方都没有 CAS, 只有在缓存的对方序号不够用时才读对方的计数器.
+ * offer, put 和 fill 只能在生产者线程里调用, poll, take 和 drain 只能在消费者线程里调用.
+ */
+public class SpscRingQueue<E> extends RingQueue<E> {
+
+  public SpscRingQueue(int capacity) {
+    this(capacity, WaitStrategy.BACKOFF);
+  }
+
+  public SpscRingQueue(int capacity, WaitStrategy waitStrategy) {
+    super(capacity, waitStrategy);
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null)
+      throw new NullPointerException();
+    long t = tail.plain();
+    if (t - tail.cache >= buffer.length) {
+      tail.cache = head.get();
+      if (t - tail.cache >= buffer.length)
+        return false;
+    }
+    putPlain(offset(t), e);
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  @Override
+  public E poll() {
+    long h = head.plain();
+    if (h >= head.cache) {
+      head.cache = tail.get();
+      if (h >= head.cache)
+        return null;
+    }
+    long offset = offset(h);
+    E e = getPlain(offset);
+    putPlain(offset, null);
+    head.lazySet(h + 1);
+    return e;
+  }
+
+  @Override
+  public int drain(Consumer<? super E> consumer, int limit) {
+    checkLimit(limit);
+    long h = head.plain();
+    long available = head.cache - h;
+    if (available < limit) {
+      head.cache = tail.get();
+      available = head.cache - h;
+    }
+    int n = (int) Math.min(available, limit);
+    int i = 0;
+    try {
+      while (i < n) {
+        long offset = offset(h + i);
+        E e = getPlain(offset);
+        putPlain(offset, null);
+        i++;
+        consumer.accept(e);
+      }
+    } finally {
+      if (i > 0)
+        head.lazySet(h + i);
+    }
+    return n;
+  }
+
+  @Override
+  public int fill(Supplier<? extends E> supplier, int limit) {
+    checkLimit(limit);
+    long t = tail.plain();
+    long free = buffer.length - (t - tail.cache);
+    if (free < limit) {
+      tail.cache = head.get();
+      free = buffer.length - (t - tail.cache);
+    }
+    int n = (int) Math.min(free, limit);
+    int i = 0;
+    try {
+      for (; i < n; i++) {
+        E e = supplier.get();
+        if (e == null)
+          throw new NullPointerException("supplier returned null");
+        putPlain(offset(t + i), e);
+      }
+    } finally {
+      if (i > 0)
+        tail.lazySet(t + i);
+    }
+    return n;
+  }
+}
@@ -0,0 +1,362 @@
+package com.tomwen.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内的采样 profiler: 定期抓取所有线程的栈, 合并到一棵调用树里, 输出 flame graph 的 folded 格式
+ * (https://github.com/brendangregg/FlameGraph):
+ * <pre>
+ * StackProfiler profiler = new StackProfiler().start(10, TimeUnit.MILLISECONDS);
+ * ...
+ * profiler.writeFolded(writer);   // com.foo.Main.main;com.foo.Service.handle;... 42
+ * </pre>
+ * <ul>
+ * <li>栈按 {@link Jvm#trimStackTrace(StringBuilder, StackTraceElement...)} 的规则裁剪: 去掉栈顶和栈底连续的
+ * {@link Jvm#isInternal(String)} 帧, 只保留最靠近的一两帧. 全部是内部帧的线程 (Reference Handler 等) 默认不采样.</li>
+ * <li>帧按 类名.方法名 去重成 int, 调用树的节点只在第一次出现这条路径时分配, 之后的采样只增加计数.
+ * 抓取栈本身 ({@link ThreadMXBean#getThreadInfo(long[], int)}) 仍然会分配.</li>
+ * <li>栈的深度和节点数有上限, 节点用完后新路径计在已有的最长前缀上. 去重的帧最多 maxNodes 个 (每个节点一个帧),
+ * StackTraceElement 的缓存 (按行号区分) 超过 maxNodes 个时清空重建, 长时间运行时内存不会一直增长.
+ * 一次采样花的时间超过间隔的 cpuBudget 比例时, 跳过后面相应次数的采样, 但每秒至少采样一次.</li>
+ * </ul>
+ */
+public class StackProfiler implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(StackProfiler.class);
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final int ROOT = 0;
+  private static final long NO_CHILD = -1;
+
+  private final int maxDepth;
+  private final int maxNodes;
+  private final double cpuBudget;
+  private boolean includeInternalThreads;
+  private boolean runnableOnly;
+
+  /* StackTraceElement -> frame (a cache, cleared when it reaches maxNodes), class.method -> frame */
+  private final Map<StackTraceElement, Integer> elements = new HashMap<>();
+  private final Map<String, Integer> frameIds = new HashMap<>();
+  private final List<String> frames = new ArrayList<>();
+  /* (parent << 32 | frame) -> node */
+  private final LongLongMap children = new LongLongMap(1024, PrimitiveHash.DEFAULT_LOAD_FACTOR, NO_CHILD);
+  private int[] parent = new int[1024];
+  private int[] frame = new int[1024];
+  private long[] counts = new long[1024];
+  private int nodes = 1;
+  private int[] path;
+
+  private long samples;
+  private long stacks;
+  private long truncated;
+  private long skipped;
+  private long sampleNanos;
+  private int skip;
+  private long periodNanos;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * 栈深度最多 128, 最多 65536 个节点, 采样最多占用 1% 的时间
+   */
+  public StackProfiler() {
+    this(128, 1 << 16, 0.01);
+  }
+
+  /**
+   * @param maxDepth  每个栈最多抓取的帧数 (从栈顶开始), 更深的栈在 folded 输出里不是从线程的入口开始
+   * @param maxNodes  调用树最多的节点数
+   * @param cpuBudget 采样花的时间占采样间隔的最大比例, 例如 0.01
+   */
+  public StackProfiler(int maxDepth, int maxNodes, double cpuBudget) {
+    if (maxDepth < 1)
+      throw new IllegalArgumentException("maxDepth must be > 0, was " + maxDepth);
+    if (maxNodes < 2)
+      throw new IllegalArgumentException("maxNodes must be > 1, was " + maxNodes);
+    if (!(cpuBudget > 0 && cpuBudget <= 1))
+      throw new IllegalArgumentException("cpuBudget must be in (0, 1], was " + cpuBudget);
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
+    this.cpuBudget = cpuBudget;
+    this.path = new int[maxDepth];
+  }
+
+  /**
+   * 是否采样全部是内部帧的线程, 默认 false
+   */
+  public synchronized StackProfiler includeInternalThreads(boolean includeInternalThreads) {
+    this.includeInternalThreads = includeInternalThreads;
+    return this;
+  }
+
+  /**
+   * 只采样 RUNNABLE 的线程, 即只看 cpu 时间花在哪里, 默认 false
+   */
+  public synchronized StackProfiler runnableOnly(boolean runnableOnly) {
+    this.runnableOnly = runnableOnly;
+    return this;
+  }
+
+  /**
+   * 以固定的间隔在一个 daemon 线程里采样, 重复调用时只有第一次生效
+   */
+  public synchronized StackProfiler start(long period, TimeUnit unit) {
+    if (scheduler == null) {
+      periodNanos = unit.toNanos(period);
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stack-profiler");
+        t.setDaemon(true);
+        return t;
+      });
+      scheduler.scheduleAtFixedRate(this::sampleQuietly, period, period, unit);
+    }
+    return this;
+  }
+
+  /**
+   * 停止定期采样, 已经收集的数据仍然可以输出
+   */
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  /**
+   * 采样一次所有线程, 不包括调用者自己
+   */
+  public synchronized void sample() {
+    long start = System.nanoTime();
+    long[] ids = THREADS.getAllThreadIds();
+    ThreadInfo[] infos = THREADS.getThreadInfo(ids, maxDepth);
+    long self = Thread.currentThread().getId();
+    for (ThreadInfo info : infos) {
+      if (info == null || info.getThreadId() == self)
+        continue;
+      if (runnableOnly && info.getThreadState() != Thread.State.RUNNABLE)
+        continue;
+      record(info.getStackTrace());
+    }
+    samples++;
+    sampleNanos += System.nanoTime() - start;
+  }
+
+  private void sampleQuietly() {
+    if (skip > 0) {
+      skip--;
+      skipped++;
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      sample();
+    } catch (Throwable t) {
+      // keep the schedule alive
+      logger.warn("Unable to sample stacks", t);
+    }
+    long elapsed = System.nanoTime() - start;
+    long budget = (long) (periodNanos * cpuBudget);
+    if (elapsed > budget) {
+      // a slow first sample (class loading, jit) should not stop sampling for long, so sample at least once a second
+      long maxSkip = Math.max(1, TimeUnit.SECONDS.toNanos(1) / Math.max(periodNanos, 1));
+      skip = (int) Math.min(maxSkip, elapsed / Math.max(budget, 1));
+    }
+  }
+
+  private void record(StackTraceElement[] stes) {
+    if (stes.length == 0 || !includeInternalThreads && allInternal(stes))
+      return;
+    int first = Jvm.trimFirst(stes);
+    int last = Jvm.trimLast(first, stes);
+    // walk from the bottom of the stack (the thread's root) to the top
+    boolean full = false;
+    int depth = 0;
+    for (int i = last; i >= first && depth < maxDepth; i--) {
+      int id = frameId(stes[i]);
+      if (id < 0) {
+        full = true;
+        break;
+      }
+      path[depth++] = id;
+    }
+    int node = ROOT;
+    for (int i = 0; i < depth; i++) {
+      int child = child(node, path[i]);
+      if (child < 0) {
+        full = true;
+        break;
+      }
+      node = child;
+    }
+    if (full)
+      truncated++;
+    counts[node]++;
+    stacks++;
+  }
+
+  private static boolean allInternal(StackTraceElement[] stes) {
+    for (StackTraceElement ste : stes) {
+      if (!Jvm.isInternal(ste.getClassName()))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return 帧用完时返回 -1. 没有用完节点时路径上的每个帧都有节点, 所以帧数达到 maxNodes 时节点已经用完, 新的帧不会有节点
+   */
+  private int frameId(StackTraceElement ste) {
+    Integer id = elements.get(ste);
+    if (id == null) {
+      String name = ste.getClassName() + '.' + ste.getMethodName();
+      id = frameIds.get(name);
+      if (id == null) {
+        if (frames.size() >= maxNodes)
+          return -1;
+        id = frames.size();
+        frames.add(name);
+        frameIds.put(name, id);
+      }
+      if (elements.size() >= maxNodes)
+        elements.clear();
+      elements.put(ste, id);
+    }
+    return id;
+  }
+
+  /**
+   * @return 节点用完时返回 -1
+   */
+  private int child(int node, int frameId) {
+    long key = (long) node << 32 | frameId;
+    long child = children.get(key);
+    if (child != NO_CHILD)
+      return (int) child;
+    if (nodes >= maxNodes)
+      return -1;
+    if (nodes == parent.length) {
+      int capacity = (int) Math.min((long) maxNodes, (long) nodes << 1);
+      parent = Arrays.copyOf(parent, capacity);
+      frame = Arrays.copyOf(frame, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    }
+    int id = nodes++;
+    parent[id] = node;
+    frame[id] = frameId;
+    children.put(key, id);
+    return id;
+  }
+
+  /**
+   * 每条路径一行: 从栈底到栈顶的帧用 ';' 连接, 空格后是采样到的次数
+   */
+  public synchronized void writeFolded(Appendable out) throws IOException {
+    int[] stack = new int[maxDepth];
+    StringBuilder sb = new StringBuilder(256);
+    for (int node = 1; node < nodes; node++) {
+      if (counts[node] == 0)
+        continue;
+      int depth = 0;
+      for (int n = node; n != ROOT; n = parent[n])
+        stack[depth++] = frame[n];
+      sb.setLength(0);
+      for (int i = depth - 1; i >= 0; i--) {
+        sb.append(frames.get(stack[i]));
+        if (i > 0)
+          sb.append(';');
+      }
+      sb.append(' ').append(counts[node]).append('\n');
+      out.append(sb);
+    }
+  }
+
+  public String folded() {
+    StringBuilder sb = new StringBuilder();
+    try {
+      writeFolded(sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * 清空已经收集的数据和去重的帧
+   */
+  public synchronized void reset() {
+    children.clear();
+    elements.clear();
+    frameIds.clear();
+    frames.clear();
+    Arrays.fill(counts, 0, nodes, 0);
+    nodes = 1;
+    samples = stacks = truncated = skipped = sampleNanos = 0;
+  }
+
+  /**
+   * 采样的次数
+   */
+  public synchronized long samples() {
+    return samples;
+  }
+
+  /**
+   * 记录的线程栈的个数
+   */
+  public synchronized long stacks() {
+    return stacks;
+  }
+
+  /**
+   * 因为节点用完而计在前缀上的栈的个数
+   */
+  public synchronized long truncated() {
+    return truncated;
+  }
+
+  /**
+   * 因为超出 cpuBudget 而跳过的采样次数
+   */
+  public synchronized long skipped() {
+    return skipped;
+  }
+
+  public synchronized int nodes() {
+    return nodes;
+  }
+
+  /**
+   * 不同的帧名的个数
+   */
+  synchronized int frames() {
+    return frames.size();
+  }
+
+  /**
+   * 平均每次采样花的时间
+   */
+  public synchronized long meanSampleNanos() {
+    return samples == 0 ? 0 : sampleNanos / samples;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "StackProfiler{samples=" + samples + ", stacks=" + stacks + ", nodes=" + nodes + ", frames=" + frames.size()
+      + ", truncated=" + truncated + ", skipped=" + skipped + ", meanSampleNanos=" + meanSampleNanos() + '}';
+  }
+}
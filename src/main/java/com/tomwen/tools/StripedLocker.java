@@ -0,0 +1,198 @@
+package com.tomwen.tools;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * 按 key 分段的锁, 不相关的 key 大概率落在不同的段上, 互相不阻塞.
+ * 段的个数是 2 的幂, key 经过 {@link Maths#hash(long)} 和 {@link Maths#agitate(long)} 映射到段上,
+ * {@link CharSequence} 先用 {@link Compare#calcLongHashCode(CharSequence)} 计算哈希.
+ * <p>
+ * 与 {@link Locker} 一样不可重入, 使用 try-with-resources 释放:
+ * <pre>
+ * try (Locker.Lock lock = striped.lock(accountId)) {
+ *   // something
+ * }
+ * try (Locker.Lock lock = striped.lockAll(fromAccount, toAccount)) {
+ *   // 按段的顺序加锁, 不会死锁
+ * }
+ * </pre>
+ */
+public class StripedLocker {
+  private final Stripe[] stripes;
+  private final int mask;
+
+  /**
+   * 段数为 cpu 个数的 4 倍
+   */
+  public StripedLocker() {
+    this(Runtime.getRuntime().availableProcessors() * 4);
+  }
+
+  /**
+   * @param stripes 段数, 向上取整为 2 的幂
+   */
+  public StripedLocker(int stripes) {
+    if (stripes < 1)
+      throw new IllegalArgumentException("stripes must be > 0, was " + stripes);
+    int n = Maths.nextPower2(stripes, 1);
+    this.stripes = new Stripe[n];
+    for (int i = 0; i < n; i++)
+      this.stripes[i] = new Stripe();
+    this.mask = n - 1;
+  }
+
+  public int stripes() {
+    return stripes.length;
+  }
+
+  public int stripeOf(long key) {
+    return PrimitiveHash.slot(key, mask);
+  }
+
+  public int stripeOf(CharSequence key) {
+    return PrimitiveHash.slot(Compare.calcLongHashCode(key), mask);
+  }
+
+  /**
+   * 相等的 key 映射到同一个段. {@link CharSequence} 按内容, Long/Integer/Short/Byte 与 {@link #stripeOf(long)} 相同,
+   * 其它对象按 hashCode
+   */
+  public int stripeOf(Object key) {
+    if (key instanceof CharSequence)
+      return stripeOf((CharSequence) key);
+    if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte)
+      return stripeOf(((Number) key).longValue());
+    return PrimitiveHash.slot(key == null ? 0 : key.hashCode(), mask);
+  }
+
+  public Locker.Lock lock(long key) {
+    return stripes[stripeOf(key)].lock();
+  }
+
+  public Locker.Lock lock(CharSequence key) {
+    return stripes[stripeOf(key)].lock();
+  }
+
+  public Locker.Lock lock(Object key) {
+    return stripes[stripeOf(key)].lock();
+  }
+
+  /**
+   * 同 {@link #lockAll(long[])}
+   */
+  public Locker.Lock lockAll(long key1, long key2) {
+    return lockStripes(new int[]{stripeOf(key1), stripeOf(key2)});
+  }
+
+  /**
+   * 锁住所有 key 所在的段. 按段的下标从小到大加锁, 所以多个线程同时 lockAll 不会死锁.
+   *
+   * @throws IllegalStateException 当前线程已经持有其中的某个段
+   */
+  public Locker.Lock lockAll(long[] keys) {
+    int[] indexes = new int[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      indexes[i] = stripeOf(keys[i]);
+    return lockStripes(indexes);
+  }
+
+  /**
+   * 同 {@link #lockAll(long[])}
+   */
+  public Locker.Lock lockAll(Object... keys) {
+    int[] indexes = new int[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      indexes[i] = stripeOf(keys[i]);
+    return lockStripes(indexes);
+  }
+
+  public boolean isLocked(long key) {
+    return stripes[stripeOf(key)].isLocked();
+  }
+
+  public boolean isLocked(Object key) {
+    return stripes[stripeOf(key)].isLocked();
+  }
+
+  private Locker.Lock lockStripes(int[] indexes) {
+    Arrays.sort(indexes);
+    int n = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      if (i == 0 || indexes[i] != indexes[i - 1])
+        indexes[n++] = indexes[i];
+    }
+    for (int i = 0; i < n; i++) {
+      if (stripes[indexes[i]].isHeldExclusively())
+        throw new IllegalStateException("Locker is not reentrant");
+    }
+    for (int i = 0; i < n; i++)
+      stripes[indexes[i]].acquire(1);
+    return new MultiUnLock(indexes, n);
+  }
+
+  private class MultiUnLock extends Locker.Lock {
+    private final int[] indexes;
+    private int count;
+
+    MultiUnLock(int[] indexes, int count) {
+      this.indexes = indexes;
+      this.count = count;
+    }
+
+    @Override
+    public void close() {
+      // release in the reverse order, close() is idempotent.
+      while (count > 0)
+        stripes[indexes[--count]].release(1);
+    }
+  }
+
+  /**
+   * 不可重入的互斥锁, 状态就保存在这个对象里, 后面的填充字段使相邻的段不在同一个缓存行上.
+   */
+  @SuppressWarnings("unused")
+  private static final class Stripe extends AbstractQueuedSynchronizer {
+    private final Locker.Lock unlock = new Locker.Lock() {
+      @Override
+      public void close() {
+        release(1);
+      }
+    };
+    private long p1, p2, p3, p4, p5, p6, p7, p8;
+
+    Locker.Lock lock() {
+      if (isHeldExclusively())
+        throw new IllegalStateException("Locker is not reentrant");
+      acquire(1);
+      return unlock;
+    }
+
+    boolean isLocked() {
+      return getState() != 0;
+    }
+
+    @Override
+    protected boolean tryAcquire(int arg) {
+      if (compareAndSetState(0, 1)) {
+        setExclusiveOwnerThread(Thread.currentThread());
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    protected boolean tryRelease(int arg) {
+      if (getExclusiveOwnerThread() != Thread.currentThread())
+        throw new IllegalMonitorStateException();
+      setExclusiveOwnerThread(null);
+      setState(0);
+      return true;
+    }
+
+    @Override
+    protected boolean isHeldExclusively() {
+      return getExclusiveOwnerThread() == Thread.currentThread();
+    }
+  }
+}
@@ -0,0 +1,279 @@
+package com.tomwen.tools;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.tomwen.tools.UnsafeMemory.UNSAFE;
+
+/**
+ * 有界的字符串去重缓存: 按内容查找解析出来的字符, 命中时返回同一个 String 实例, 只在未命中时分配.
+ * 用来代替解析器对反复出现的少量符号 (代码, 字段名) 每次 new String.
+ * <pre>
+ * SymbolTable symbols = new SymbolTable(4096);
+ * String symbol = symbols.intern(buffer, start, length);   // ASCII 字节, 不分配
+ * String field = symbols.intern(chars, 0, n);
+ * </pre>
+ * <ul>
+ * <li>哈希用 {@link Hasher#hashLatin1(CharSequence)}, 与同样内容的字节的 {@link Hasher#hash(byte[])} 相同,
+ * 所以 byte[], ByteBuffer, char[] 和 CharSequence 查到的是同一个实例. 命中后逐个字符比较内容, 不会误判.</li>
+ * <li>4 路组相联, 每组满时按 CLOCK 淘汰: 命中的项有第二次机会. 超过 maxLength 的内容不缓存.</li>
+ * <li>读不加锁, 插入用 CAS; 多个线程同时对同一个内容未命中时只有一个实例被缓存, 其它线程这一次拿到自己的实例.</li>
+ * <li>字节按 ISO-8859-1 解码, ASCII 是它的子集.</li>
+ * </ul>
+ */
+public class SymbolTable {
+  private static final int WAYS = 4;
+  private static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(Entry[].class);
+  private static final int ARRAY_SHIFT = Integer.numberOfTrailingZeros(UNSAFE.arrayIndexScale(Entry[].class));
+
+  private final Entry[] entries;
+  private final int setMask;
+  private final int maxLength;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * 只缓存不超过 64 个字符的内容
+   */
+  public SymbolTable(int capacity) {
+    this(capacity, 64);
+  }
+
+  /**
+   * @param capacity  最多缓存的个数, 向上取整为 2 的幂, 最少 4
+   * @param maxLength 更长的内容直接 new String, 不查也不缓存
+   */
+  public SymbolTable(int capacity, int maxLength) {
+    if (capacity < 1 || capacity > 1 << 28)
+      throw new IllegalArgumentException("capacity must be in [1, " + (1 << 28) + "], was " + capacity);
+    if (maxLength < 0)
+      throw new IllegalArgumentException("maxLength must be >= 0, was " + maxLength);
+    int size = Maths.nextPower2(capacity, WAYS);
+    this.entries = new Entry[size];
+    this.setMask = size / WAYS - 1;
+    this.maxLength = maxLength;
+  }
+
+  public String intern(CharSequence cs) {
+    return intern(cs, 0, cs.length());
+  }
+
+  /**
+   * 内容为 cs 的 [from, to)
+   */
+  public String intern(CharSequence cs, int from, int to) {
+    int length = to - from;
+    if (length > maxLength)
+      return cs.subSequence(from, to).toString();
+    long hash = Hasher.hashLatin1(cs, from, length);
+    Entry hit = find(hash, cs, null, null, null, from, length);
+    if (hit != null)
+      return hit.value;
+    String value = cs.subSequence(from, to).toString();
+    return insert(hash, value, cs, null, null, null, from, length);
+  }
+
+  public String intern(char[] chars, int offset, int length) {
+    if (length > maxLength)
+      return new String(chars, offset, length);
+    long hash = Hasher.hashLatin1(chars, offset, length);
+    Entry hit = find(hash, null, chars, null, null, offset, length);
+    if (hit != null)
+      return hit.value;
+    return insert(hash, new String(chars, offset, length), null, chars, null, null, offset, length);
+  }
+
+  /**
+   * 按 ISO-8859-1 解码 bytes 的 [offset, offset + length)
+   */
+  public String intern(byte[] bytes, int offset, int length) {
+    if (length > maxLength)
+      return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    long hash = Hasher.hash(bytes, offset, length);
+    Entry hit = find(hash, null, null, bytes, null, offset, length);
+    if (hit != null)
+      return hit.value;
+    return insert(hash, new String(bytes, offset, length, StandardCharsets.ISO_8859_1), null, null, bytes, null, offset, length);
+  }
+
+  /**
+   * 按 ISO-8859-1 解码 buffer 的 [offset, offset + length), 使用绝对位置, 不修改 position
+   */
+  public String intern(ByteBuffer buffer, int offset, int length) {
+    if (buffer.hasArray())
+      return intern(buffer.array(), buffer.arrayOffset() + offset, length);
+    if (length > maxLength)
+      return decode(buffer, offset, length);
+    long hash = Hasher.hash(buffer, offset, length, 0);
+    Entry hit = find(hash, null, null, null, buffer, offset, length);
+    if (hit != null)
+      return hit.value;
+    return insert(hash, decode(buffer, offset, length), null, null, null, buffer, offset, length);
+  }
+
+  private static String decode(ByteBuffer buffer, int offset, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++)
+      chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+    return new String(chars);
+  }
+
+  /*
+   * Exactly one of cs, chars, bytes and buffer is not null, so the four public entry points share the probing.
+   */
+  private Entry find(long hash, CharSequence cs, char[] chars, byte[] bytes, ByteBuffer buffer, int offset, int length) {
+    long base = offset(((int) hash & setMask) * WAYS);
+    for (int way = 0; way < WAYS; way++) {
+      Entry e = (Entry) UNSAFE.getObjectVolatile(entries, base + ((long) way << ARRAY_SHIFT));
+      if (e != null && e.hash == hash && e.matches(cs, chars, bytes, buffer, offset, length)) {
+        if (!e.referenced)
+          e.referenced = true;
+        hits.increment();
+        return e;
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * 放进一个空位, 或者按 CLOCK 淘汰一个最近没有命中的项; CAS 失败时如果别的线程刚放入了同样的内容就返回它的实例
+   */
+  private String insert(long hash, String value, CharSequence cs, char[] chars, byte[] bytes, ByteBuffer buffer,
+                        int offset, int length) {
+    Entry entry = new Entry(hash, value);
+    long base = offset(((int) hash & setMask) * WAYS);
+    for (int attempt = 0; attempt < 2; attempt++) {
+      int victim = -1;
+      Entry old = null;
+      Entry[] set = new Entry[WAYS];
+      for (int way = 0; way < WAYS; way++) {
+        Entry e = set[way] = (Entry) UNSAFE.getObjectVolatile(entries, base + ((long) way << ARRAY_SHIFT));
+        if (e == null) {
+          if (victim < 0)
+            victim = way;
+        } else if (e.hash == hash && e.matches(cs, chars, bytes, buffer, offset, length)) {
+          return e.value;
+        }
+      }
+      // the set is full, the first entry not hit since the hand last passed loses
+      for (int way = 0; way < WAYS && victim < 0; way++) {
+        Entry e = set[way];
+        if (e.referenced) {
+          e.referenced = false;
+        } else {
+          victim = way;
+          old = e;
+        }
+      }
+      if (victim < 0) {
+        victim = (int) (hash >>> 32) & (WAYS - 1);
+        old = set[victim];
+      }
+      if (UNSAFE.compareAndSwapObject(entries, base + ((long) victim << ARRAY_SHIFT), old, entry)) {
+        if (old != null)
+          evictions.increment();
+        return value;
+      }
+    }
+    return value;
+  }
+
+  private static long offset(int index) {
+    return ARRAY_BASE + ((long) index << ARRAY_SHIFT);
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * 命中率, 没有查找过时为 0
+   */
+  public double hitRate() {
+    long hits = hits(), total = hits + misses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public int capacity() {
+    return entries.length;
+  }
+
+  /**
+   * 当前缓存的个数, 需要扫描整个表
+   */
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < entries.length; i++) {
+      if (UNSAFE.getObjectVolatile(entries, offset(i)) != null)
+        size++;
+    }
+    return size;
+  }
+
+  public void clear() {
+    for (int i = 0; i < entries.length; i++)
+      UNSAFE.putObjectVolatile(entries, offset(i), null);
+  }
+
+  public void resetStats() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "SymbolTable{capacity=" + capacity() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions() + '}';
+  }
+
+  private static final class Entry {
+    final long hash;
+    final String value;
+    /* set on every hit, cleared when the CLOCK hand passes; races only affect which entry is evicted */
+    boolean referenced;
+
+    Entry(long hash, String value) {
+      this.hash = hash;
+      this.value = value;
+    }
+
+    boolean matches(CharSequence cs, char[] chars, byte[] bytes, ByteBuffer buffer, int offset, int length) {
+      String s = value;
+      if (s.length() != length)
+        return false;
+      if (cs != null) {
+        for (int i = 0; i < length; i++) {
+          if (s.charAt(i) != cs.charAt(offset + i))
+            return false;
+        }
+      } else if (chars != null) {
+        for (int i = 0; i < length; i++) {
+          if (s.charAt(i) != chars[offset + i])
+            return false;
+        }
+      } else if (bytes != null) {
+        for (int i = 0; i < length; i++) {
+          if (s.charAt(i) != (bytes[offset + i] & 0xFF))
+            return false;
+        }
+      } else {
+        for (int i = 0; i < length; i++) {
+          if (s.charAt(i) != (buffer.get(offset + i) & 0xFF))
+            return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,391 @@
+package com.tomwen.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 机器和容器实际给这个进程的 cpu 和内存, 用来决定线程池的大小和堆外内存的预算.
+ * <p>
+ * 在容器里 {@link Runtime#availableProcessors()} 和物理内存都可能偏大, 这里读取:
+ * <ul>
+ * <li>/sys/devices/system/cpu: 在线和隔离的 cpu, 每个 cpu 的 core 和 package, 由此得到物理核数和超线程</li>
+ * <li>/sys/devices/system/node/online: NUMA 节点</li>
+ * <li>/proc/self/status 的 Cpus_allowed_list: taskset 等设置的亲和性</li>
+ * <li>cgroup v1 (cpu.cfs_quota_us, memory.limit_in_bytes) 或 v2 (cpu.max, memory.max), 取当前 cgroup 和所有上级中最小的限制</li>
+ * </ul>
+ * 不是 linux 或者读不到的文件按没有限制处理. {@link Jvm#resources()} 缓存了第一次检测的结果,
+ * 测试时用 {@link #detect(String)} 读取一个假的目录树, 目录结构与真实的 / 相同.
+ */
+public final class SystemResources {
+  /**
+   * cgroup v1 用接近 Long.MAX_VALUE 的值表示没有内存限制
+   */
+  private static final long UNLIMITED_MEMORY = Long.MAX_VALUE / 2;
+  private static final long MIN_HEADROOM = 64L << 20;
+  private static final int MAX_IO_PARALLELISM = 256;
+
+  private final String root;
+  private final BitSet onlineCpus;
+  private final BitSet isolatedCpus;
+  private final BitSet allowedCpus;
+  private final int physicalCores;
+  private final int packages;
+  private final int numaNodes;
+  private final int cgroupVersion;
+  private final double cpuQuota;
+  private final long memoryLimit;
+  private final long physicalMemory;
+
+  private SystemResources(String root) {
+    this.root = root;
+    int jvmCpus = Runtime.getRuntime().availableProcessors();
+    BitSet online = cpuList(read("/sys/devices/system/cpu/online"));
+    if (online.isEmpty())
+      online.set(0, jvmCpus);
+    this.onlineCpus = online;
+    this.isolatedCpus = cpuList(read("/sys/devices/system/cpu/isolated"));
+    BitSet allowed = cpuList(statusValue("Cpus_allowed_list"));
+    if (allowed.isEmpty())
+      allowed = (BitSet) online.clone();
+    allowed.and(online);
+    this.allowedCpus = allowed;
+
+    Set<Long> cores = new HashSet<>();
+    Set<Long> sockets = new HashSet<>();
+    for (int cpu = online.nextSetBit(0); cpu >= 0; cpu = online.nextSetBit(cpu + 1)) {
+      String dir = "/sys/devices/system/cpu/cpu" + cpu + "/topology/";
+      long pkg = parseLong(read(dir + "physical_package_id"), 0);
+      long core = parseLong(read(dir + "core_id"), cpu);
+      sockets.add(pkg);
+      cores.add(pkg << 32 | core);
+    }
+    this.physicalCores = cores.size();
+    this.packages = sockets.size();
+    this.numaNodes = Math.max(1, cpuList(read("/sys/devices/system/node/online")).cardinality());
+
+    if (new File(root + "/sys/fs/cgroup/cgroup.controllers").exists()) {
+      this.cgroupVersion = 2;
+      String path = cgroupPath("");
+      this.cpuQuota = cpuQuotaV2(path);
+      this.memoryLimit = memoryLimit(path, "/sys/fs/cgroup", "memory.max");
+    } else if (new File(root + "/sys/fs/cgroup/cpu").exists() || new File(root + "/sys/fs/cgroup/memory").exists()) {
+      this.cgroupVersion = 1;
+      this.cpuQuota = cpuQuotaV1(cgroupPath("cpu"));
+      this.memoryLimit = memoryLimit(cgroupPath("memory"), "/sys/fs/cgroup/memory", "memory.limit_in_bytes");
+    } else {
+      this.cgroupVersion = 0;
+      this.cpuQuota = -1;
+      this.memoryLimit = -1;
+    }
+    this.physicalMemory = meminfoTotal();
+  }
+
+  /**
+   * 读取真实的 /sys 和 /proc
+   */
+  public static SystemResources detect() {
+    return new SystemResources("");
+  }
+
+  /**
+   * @param root 假的根目录, 下面有 sys/devices/system/cpu, sys/fs/cgroup, proc/self/cgroup 等
+   */
+  public static SystemResources detect(String root) {
+    return new SystemResources(root);
+  }
+
+  public int onlineCpus() {
+    return onlineCpus.cardinality();
+  }
+
+  /**
+   * 被内核参数 isolcpus 隔离的 cpu, 普通线程不会被调度到上面
+   */
+  public int isolatedCpus() {
+    return isolatedCpus.cardinality();
+  }
+
+  /**
+   * 这个进程可以运行的在线 cpu
+   */
+  public int allowedCpus() {
+    return allowedCpus.cardinality();
+  }
+
+  /**
+   * 可运行又没有被隔离的 cpu; 如果进程被绑定在隔离的 cpu 上, 就是 {@link #allowedCpus()}
+   */
+  public int usableCpus() {
+    BitSet usable = (BitSet) allowedCpus.clone();
+    usable.andNot(isolatedCpus);
+    return usable.isEmpty() ? allowedCpus() : usable.cardinality();
+  }
+
+  public int physicalCores() {
+    return physicalCores;
+  }
+
+  public int packages() {
+    return packages;
+  }
+
+  /**
+   * 每个物理核上的硬件线程数, 开启超线程时通常是 2
+   */
+  public int threadsPerCore() {
+    return Math.max(1, onlineCpus() / Math.max(1, physicalCores));
+  }
+
+  public int numaNodes() {
+    return numaNodes;
+  }
+
+  /**
+   * @return 0 表示没有 cgroup, 1 或 2
+   */
+  public int cgroupVersion() {
+    return cgroupVersion;
+  }
+
+  /**
+   * cgroup 允许使用的 cpu 个数, 例如 quota 200ms / period 100ms 为 2.0; 没有限制时为 -1
+   */
+  public double cpuQuota() {
+    return cpuQuota;
+  }
+
+  /**
+   * cgroup 的内存限制, 字节; 没有限制时为 -1
+   */
+  public long memoryLimit() {
+    return memoryLimit;
+  }
+
+  /**
+   * /proc/meminfo 的 MemTotal, 字节; 读不到时为 -1
+   */
+  public long physicalMemory() {
+    return physicalMemory;
+  }
+
+  /**
+   * 进程实际可以用的内存: cgroup 限制和物理内存中较小的一个, 都不知道时为 -1
+   */
+  public long effectiveMemory() {
+    if (memoryLimit < 0)
+      return physicalMemory;
+    return physicalMemory < 0 ? memoryLimit : Math.min(memoryLimit, physicalMemory);
+  }
+
+  /**
+   * 可以同时运行的 cpu 个数: {@link #usableCpus()} 再受 {@link #cpuQuota()} 限制
+   */
+  public double effectiveCpus() {
+    int usable = usableCpus();
+    return cpuQuota < 0 ? usable : Math.min(usable, cpuQuota);
+  }
+
+  /**
+   * 计算密集的线程池的大小. 超线程对计算密集的任务帮助不大, 所以按可用的物理核数计算,
+   * 再受 cpu quota 向下取整的限制, 避免被 cgroup 节流. 至少为 1.
+   */
+  public int computeParallelism() {
+    int usable = usableCpus();
+    int cores = Math.max(1, usable / threadsPerCore());
+    if (cpuQuota >= 0)
+      cores = Math.min(cores, (int) cpuQuota);
+    return Math.max(1, cores);
+  }
+
+  /**
+   * 阻塞 IO 的线程池的大小: 可用 cpu 的 4 倍, 不超过 256
+   */
+  public int ioParallelism() {
+    return (int) Math.min(MAX_IO_PARALLELISM, Math.max(1, Math.ceil(effectiveCpus()) * 4));
+  }
+
+  /**
+   * 建议的堆外内存预算: 可用内存减去最大堆, 再留出 10% (至少 64M) 给元空间, 线程栈和 JIT.
+   * 不知道可用内存时为 -1.
+   */
+  public long offHeapBudget() {
+    long memory = effectiveMemory();
+    if (memory < 0)
+      return -1;
+    long headroom = Math.max(MIN_HEADROOM, memory / 10);
+    return Math.max(0, memory - Runtime.getRuntime().maxMemory() - headroom);
+  }
+
+  @Override
+  public String toString() {
+    return "SystemResources{" +
+      "onlineCpus=" + onlineCpus() +
+      ", isolatedCpus=" + isolatedCpus() +
+      ", allowedCpus=" + allowedCpus() +
+      ", physicalCores=" + physicalCores +
+      ", packages=" + packages +
+      ", numaNodes=" + numaNodes +
+      ", cgroupVersion=" + cgroupVersion +
+      ", cpuQuota=" + cpuQuota +
+      ", memoryLimit=" + memoryLimit +
+      ", physicalMemory=" + physicalMemory +
+      ", computeParallelism=" + computeParallelism() +
+      ", ioParallelism=" + ioParallelism() +
+      ", offHeapBudget=" + offHeapBudget() +
+      '}';
+  }
+
+  /**
+   * v1 取 quota 和 period, 当前 cgroup 和上级中最小的
+   */
+  private double cpuQuotaV1(String path) {
+    double min = -1;
+    for (String p = path; p != null; p = parent(p)) {
+      String dir = "/sys/fs/cgroup/cpu" + p + "/";
+      long quota = parseLong(read(dir + "cpu.cfs_quota_us"), -1);
+      long period = parseLong(read(dir + "cpu.cfs_period_us"), -1);
+      if (quota > 0 && period > 0)
+        min = min(min, (double) quota / period);
+    }
+    return min;
+  }
+
+  /**
+   * v2 的 cpu.max 是 "$MAX $PERIOD", 没有限制时 $MAX 为 max
+   */
+  private double cpuQuotaV2(String path) {
+    double min = -1;
+    for (String p = path; p != null; p = parent(p)) {
+      String max = read("/sys/fs/cgroup" + p + "/cpu.max");
+      if (max == null)
+        continue;
+      String[] parts = max.trim().split("\\s+");
+      long quota = parseLong(parts[0], -1);
+      long period = parts.length > 1 ? parseLong(parts[1], -1) : 100000;
+      if (quota > 0 && period > 0)
+        min = min(min, (double) quota / period);
+    }
+    return min;
+  }
+
+  private long memoryLimit(String path, String mount, String file) {
+    long min = -1;
+    for (String p = path; p != null; p = parent(p)) {
+      long limit = parseLong(read(mount + p + "/" + file), -1);
+      if (limit > 0 && limit < UNLIMITED_MEMORY)
+        min = min < 0 ? limit : Math.min(min, limit);
+    }
+    return min;
+  }
+
+  /**
+   * /proc/self/cgroup 里的路径, 每行是 "id:controllers:path", v2 的 controllers 为空.
+   * 在容器里这个路径通常是宿主机的, 容器内看不到, 所以上面查找时一直找到根.
+   */
+  private String cgroupPath(String controller) {
+    String cgroup = read("/proc/self/cgroup");
+    if (cgroup != null) {
+      for (String line : cgroup.split("\n")) {
+        String[] parts = line.split(":", 3);
+        if (parts.length < 3)
+          continue;
+        for (String c : parts[1].split(",")) {
+          if (c.equals(controller))
+            return "/".equals(parts[2]) ? "" : parts[2];
+        }
+      }
+    }
+    return "";
+  }
+
+  private static String parent(String path) {
+    if (path.isEmpty())
+      return null;
+    int slash = path.lastIndexOf('/');
+    return slash <= 0 ? "" : path.substring(0, slash);
+  }
+
+  private static double min(double current, double value) {
+    return current < 0 ? value : Math.min(current, value);
+  }
+
+  private String statusValue(String key) {
+    String status = read("/proc/self/status");
+    if (status == null)
+      return null;
+    for (String line : status.split("\n")) {
+      if (line.startsWith(key + ':'))
+        return line.substring(key.length() + 1).trim();
+    }
+    return null;
+  }
+
+  private long meminfoTotal() {
+    String meminfo = read("/proc/meminfo");
+    if (meminfo == null)
+      return -1;
+    for (String line : meminfo.split("\n")) {
+      if (line.startsWith("MemTotal:")) {
+        String[] parts = line.substring("MemTotal:".length()).trim().split("\\s+");
+        long kb = parseLong(parts[0], -1);
+        return kb < 0 ? -1 : kb << 10;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return 文件不存在或者读不了时返回 null
+   */
+  private String read(String path) {
+    File file = new File(root + path);
+    if (!file.canRead())
+      return null;
+    try {
+      List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+      return String.join("\n", lines);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static long parseLong(String s, long defaultValue) {
+    if (s == null)
+      return defaultValue;
+    try {
+      return Long.parseLong(s.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * 解析 "0-3,8,10-11" 形式的 cpu 列表
+   */
+  static BitSet cpuList(String list) {
+    BitSet cpus = new BitSet();
+    if (list == null)
+      return cpus;
+    for (String range : list.trim().split(",")) {
+      if (range.isEmpty())
+        continue;
+      int dash = range.indexOf('-');
+      try {
+        if (dash < 0) {
+          cpus.set(Integer.parseInt(range.trim()));
+        } else {
+          cpus.set(Integer.parseInt(range.substring(0, dash).trim()), Integer.parseInt(range.substring(dash + 1).trim()) + 1);
+        }
+      } catch (NumberFormatException e) {
+        // ignore a malformed range
+      }
+    }
+    return cpus;
+  }
+}
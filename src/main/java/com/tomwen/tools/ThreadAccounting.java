@@ -0,0 +1,406 @@
+package com.tomwen.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按线程统计 cpu 时间和分配的字节数, 线程用 {@link Jvm#getUniqueTid(long)} 标识, 与日志里的 tid 一致.
+ * <p>
+ * 每次 {@link #sample()} 读取所有存活线程的累计值, 与上一次相减得到这个区间的增量, 最近的若干个区间保存在环形缓冲里.
+ * 分配的字节数需要 HotSpot 的 {@code com.sun.management.ThreadMXBean}, 不支持时为 -1.
+ * <pre>
+ * ThreadAccounting accounting = new ThreadAccounting(60).start(1, TimeUnit.SECONDS);
+ * List&lt;ThreadAccounting.Usage&gt; top = accounting.topByCpu(5);
+ *
+ * try (ThreadAccounting.Measure m = ThreadAccounting.measure()) {
+ *   // something
+ *   logger.info("cpu {} ns, allocated {} bytes", m.cpuNanos(), m.allocatedBytes());
+ * }
+ * </pre>
+ */
+public class ThreadAccounting implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(ThreadAccounting.class);
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final com.sun.management.ThreadMXBean HOTSPOT_THREADS = hotspot0();
+  private static final Comparator<Usage> BY_CPU = (a, b) -> Long.compare(b.cpuNanos, a.cpuNanos);
+  private static final Comparator<Usage> BY_ALLOCATION = (a, b) -> Long.compare(b.allocatedBytes, a.allocatedBytes);
+
+  private final Interval[] history;
+  private int count;
+  private LongLongMap lastCpu = new LongLongMap();
+  private LongLongMap lastAllocated = new LongLongMap();
+  private long lastNanos;
+  private long lastMillis;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param history 保存最近多少个区间
+   */
+  public ThreadAccounting(int history) {
+    if (history < 1)
+      throw new IllegalArgumentException("history must be > 0, was " + history);
+    this.history = new Interval[history];
+    enable();
+    lastNanos = System.nanoTime();
+    lastMillis = System.currentTimeMillis();
+  }
+
+  public static boolean isCpuTimeSupported() {
+    return THREADS.isThreadCpuTimeSupported();
+  }
+
+  public static boolean isAllocatedBytesSupported() {
+    return HOTSPOT_THREADS != null && HOTSPOT_THREADS.isThreadAllocatedMemorySupported();
+  }
+
+  /**
+   * 开始测量当前线程, 在 close 之前只能在这个线程里使用
+   */
+  public static Measure measure() {
+    return new Measure();
+  }
+
+  /**
+   * 以固定的间隔在一个 daemon 线程里采样, 重复调用时只有第一次生效
+   */
+  public synchronized ThreadAccounting start(long period, TimeUnit unit) {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "thread-accounting");
+        t.setDaemon(true);
+        return t;
+      });
+      scheduler.scheduleAtFixedRate(this::sampleQuietly, period, period, unit);
+    }
+    return this;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  /**
+   * 结束当前区间并保存. 第一次看到的线程, 增量从线程启动开始计算.
+   *
+   * @return 这个区间
+   */
+  public synchronized Interval sample() {
+    long[] ids = THREADS.getAllThreadIds();
+    long[] cpu = cpuTimes(ids);
+    long[] allocated = allocatedBytes(ids);
+    ThreadInfo[] infos = THREADS.getThreadInfo(ids);
+    long nanos = System.nanoTime();
+    long millis = System.currentTimeMillis();
+
+    LongLongMap nextCpu = new LongLongMap(ids.length);
+    LongLongMap nextAllocated = new LongLongMap(ids.length);
+    List<Usage> usages = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      // a thread which has died since getAllThreadIds()
+      if (infos[i] == null || cpu[i] < 0 && allocated[i] < 0)
+        continue;
+      long tid = Jvm.getUniqueTid(ids[i]);
+      long cpuDelta = cpu[i] < 0 ? -1 : cpu[i] - lastCpu.getOrDefault(tid, 0);
+      long allocatedDelta = allocated[i] < 0 ? -1 : allocated[i] - lastAllocated.getOrDefault(tid, 0);
+      nextCpu.put(tid, cpu[i]);
+      nextAllocated.put(tid, allocated[i]);
+      usages.add(new Usage(tid, ids[i], infos[i].getThreadName(), cpuDelta, allocatedDelta));
+    }
+    lastCpu = nextCpu;
+    lastAllocated = nextAllocated;
+
+    Interval interval = new Interval(lastMillis, millis, nanos - lastNanos, usages);
+    lastNanos = nanos;
+    lastMillis = millis;
+    history[count++ % history.length] = interval;
+    return interval;
+  }
+
+  /**
+   * 从旧到新, 最多 history 个
+   */
+  public synchronized List<Interval> intervals() {
+    int n = Math.min(count, history.length);
+    List<Interval> list = new ArrayList<>(n);
+    for (int i = count - n; i < count; i++)
+      list.add(history[i % history.length]);
+    return list;
+  }
+
+  /**
+   * @return 还没有采样时返回 null
+   */
+  public synchronized Interval latest() {
+    return count == 0 ? null : history[(count - 1) % history.length];
+  }
+
+  /**
+   * 最近一个区间里 cpu 时间最多的 n 个线程
+   */
+  public List<Usage> topByCpu(int n) {
+    Interval latest = latest();
+    return latest == null ? Collections.<Usage>emptyList() : latest.topByCpu(n);
+  }
+
+  /**
+   * 最近一个区间里分配字节数最多的 n 个线程
+   */
+  public List<Usage> topByAllocation(int n) {
+    Interval latest = latest();
+    return latest == null ? Collections.<Usage>emptyList() : latest.topByAllocation(n);
+  }
+
+  private void sampleQuietly() {
+    try {
+      sample();
+    } catch (Throwable t) {
+      // keep the schedule alive
+      logger.warn("Unable to sample threads", t);
+    }
+  }
+
+  private static long[] cpuTimes(long[] ids) {
+    if (!THREADS.isThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled()) {
+      long[] none = new long[ids.length];
+      Arrays.fill(none, -1);
+      return none;
+    }
+    if (HOTSPOT_THREADS != null)
+      return HOTSPOT_THREADS.getThreadCpuTime(ids);
+    long[] cpu = new long[ids.length];
+    for (int i = 0; i < ids.length; i++)
+      cpu[i] = THREADS.getThreadCpuTime(ids[i]);
+    return cpu;
+  }
+
+  private static long[] allocatedBytes(long[] ids) {
+    if (!isAllocatedBytesSupported() || !HOTSPOT_THREADS.isThreadAllocatedMemoryEnabled()) {
+      long[] none = new long[ids.length];
+      Arrays.fill(none, -1);
+      return none;
+    }
+    return HOTSPOT_THREADS.getThreadAllocatedBytes(ids);
+  }
+
+  private static long currentCpuTime() {
+    return THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()
+      ? THREADS.getCurrentThreadCpuTime() : -1;
+  }
+
+  private static long currentAllocatedBytes() {
+    return isAllocatedBytesSupported() && HOTSPOT_THREADS.isThreadAllocatedMemoryEnabled()
+      ? HOTSPOT_THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
+  private static void enable() {
+    try {
+      if (THREADS.isThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled())
+        THREADS.setThreadCpuTimeEnabled(true);
+      if (isAllocatedBytesSupported() && !HOTSPOT_THREADS.isThreadAllocatedMemoryEnabled())
+        HOTSPOT_THREADS.setThreadAllocatedMemoryEnabled(true);
+    } catch (SecurityException | UnsupportedOperationException e) {
+      logger.warn("Unable to enable thread cpu time or allocated memory", e);
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean hotspot0() {
+    try {
+      return THREADS instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) THREADS : null;
+    } catch (NoClassDefFoundError e) {
+      // not a HotSpot based jvm
+      return null;
+    }
+  }
+
+  /**
+   * 两次采样之间的区间
+   */
+  public static final class Interval {
+    private final long startMillis;
+    private final long endMillis;
+    private final long durationNanos;
+    private final List<Usage> usages;
+
+    Interval(long startMillis, long endMillis, long durationNanos, List<Usage> usages) {
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+      this.durationNanos = durationNanos;
+      this.usages = Collections.unmodifiableList(usages);
+      for (Usage usage : usages)
+        usage.interval = this;
+    }
+
+    public long startMillis() {
+      return startMillis;
+    }
+
+    public long endMillis() {
+      return endMillis;
+    }
+
+    public long durationNanos() {
+      return durationNanos;
+    }
+
+    /**
+     * 采样时存活的所有线程
+     */
+    public List<Usage> usages() {
+      return usages;
+    }
+
+    public List<Usage> topByCpu(int n) {
+      return top(n, BY_CPU);
+    }
+
+    public List<Usage> topByAllocation(int n) {
+      return top(n, BY_ALLOCATION);
+    }
+
+    private List<Usage> top(int n, Comparator<Usage> comparator) {
+      List<Usage> sorted = new ArrayList<>(usages);
+      sorted.sort(comparator);
+      return sorted.subList(0, Math.min(n, sorted.size()));
+    }
+
+    @Override
+    public String toString() {
+      return "Interval{" + (endMillis - startMillis) + " ms, threads=" + usages.size() + '}';
+    }
+  }
+
+  /**
+   * 一个线程在一个区间里的 cpu 时间和分配的字节数, 不支持时为 -1
+   */
+  public static final class Usage {
+    private final long uniqueTid;
+    private final long threadId;
+    private final String threadName;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+    private Interval interval;
+
+    Usage(long uniqueTid, long threadId, String threadName, long cpuNanos, long allocatedBytes) {
+      this.uniqueTid = uniqueTid;
+      this.threadId = threadId;
+      this.threadName = threadName;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * {@link Jvm#getUniqueTid(long)}
+     */
+    public long uniqueTid() {
+      return uniqueTid;
+    }
+
+    public long threadId() {
+      return threadId;
+    }
+
+    public String threadName() {
+      return threadName;
+    }
+
+    public long cpuNanos() {
+      return cpuNanos;
+    }
+
+    public long allocatedBytes() {
+      return allocatedBytes;
+    }
+
+    /**
+     * 占用一个 cpu 的比例
+     */
+    public double cpuLoad() {
+      return cpuNanos < 0 ? -1 : (double) cpuNanos / interval.durationNanos;
+    }
+
+    /**
+     * 每秒分配的字节数
+     */
+    public double allocationRate() {
+      return allocatedBytes < 0 ? -1 : allocatedBytes * 1e9 / interval.durationNanos;
+    }
+
+    @Override
+    public String toString() {
+      return threadName + '[' + uniqueTid + "] cpu=" + cpuNanos / 1000 + " us, allocated=" + allocatedBytes + " bytes";
+    }
+  }
+
+  /**
+   * 测量一段代码在当前线程里的 cpu 时间, 分配的字节数和经过的时间.
+   * close 之前读取时返回到目前为止的值, close 之后不再变化.
+   */
+  public static final class Measure implements AutoCloseable {
+    private final Thread thread = Thread.currentThread();
+    private final long startCpu = currentCpuTime();
+    private final long startAllocated = currentAllocatedBytes();
+    private final long startNanos = System.nanoTime();
+    private long cpuNanos = -1;
+    private long allocatedBytes = -1;
+    private long elapsedNanos = -1;
+    private boolean closed;
+
+    Measure() {
+    }
+
+    public long cpuNanos() {
+      if (closed)
+        return cpuNanos;
+      checkThread();
+      return startCpu < 0 ? -1 : currentCpuTime() - startCpu;
+    }
+
+    public long allocatedBytes() {
+      if (closed)
+        return allocatedBytes;
+      checkThread();
+      return startAllocated < 0 ? -1 : currentAllocatedBytes() - startAllocated;
+    }
+
+    public long elapsedNanos() {
+      return closed ? elapsedNanos : System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public void close() {
+      if (closed)
+        return;
+      cpuNanos = cpuNanos();
+      allocatedBytes = allocatedBytes();
+      elapsedNanos = elapsedNanos();
+      closed = true;
+    }
+
+    private void checkThread() {
+      if (Thread.currentThread() != thread)
+        throw new IllegalStateException("Measure started in " + thread.getName() + " used in " + Thread.currentThread().getName());
+    }
+
+    @Override
+    public String toString() {
+      return "Measure{cpu=" + cpuNanos() / 1000 + " us, allocated=" + allocatedBytes() + " bytes, elapsed=" + elapsedNanos() / 1000 + " us}";
+    }
+  }
+}
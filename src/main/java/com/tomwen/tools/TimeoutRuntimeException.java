@@ -0,0 +1,10 @@
+package com.tomwen.tools;
+
+/**
+ * Like TimeoutException except unchecked, thrown when a {@link CancellationToken} passes its deadline
+ */
+public class TimeoutRuntimeException extends InterruptedRuntimeException {
+  public TimeoutRuntimeException(String message) {
+    super(message);
+  }
+}
@@ -1,7 +1,12 @@
 package com.tomwen.tools;
 
 import java.io.File;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.file.Path;
@@ -66,18 +71,115 @@ public class Typ {
   public static final Class<double[]> doubleArray = double[].class;
   public static final Class<Object[]> objectArray = Object[].class;
 
+  /* Classification flags, see classify(Class). */
+  /** {@link #isBasicType(Class)} */
+  public static final int BASIC = 1;
+  /** {@link #isBasicType(Object)} for an instance of the class */
+  public static final int BASIC_VALUE = 1 << 1;
+  /** {@link #isPrimitiveOrWrapper(Class)} */
+  public static final int PRIMITIVE_OR_WRAPPER = 1 << 2;
+  public static final int PRIMITIVE = 1 << 3;
+  /** {@link #isPrimitiveNumber(Class)} */
+  public static final int PRIMITIVE_NUMBER = 1 << 4;
+  /** boxed primitive: Boolean, Character, Byte, Short, Integer, Long, Float, Double */
+  public static final int WRAPPER = 1 << 5;
+  /** {@link #isBasicTypeOrCollection(Class)} */
+  public static final int BASIC_OR_COLLECTION = 1 << 6;
+  public static final int NUMBER = 1 << 7;
+  public static final int CHAR_SEQUENCE = 1 << 8;
+  public static final int DATE = 1 << 9;
+  public static final int CALENDAR = 1 << 10;
+  public static final int COLLECTION = 1 << 11;
+  public static final int LIST = 1 << 12;
+  public static final int SET = 1 << 13;
+  public static final int SORTED_SET = 1 << 14;
+  public static final int MAP = 1 << 15;
+  public static final int ARRAY = 1 << 16;
+  public static final int STRING_ARRAY = 1 << 17;
+  public static final int ENUM = 1 << 18;
+  public static final int COMPARABLE = 1 << 19;
+  public static final int ABSTRACT = 1 << 20;
+
+  private static final ClassValue<Info> CLASSIFICATION = new ClassValue<Info>() {
+    @Override
+    protected Info computeValue( Class<?> type ) {
+      return new Info( type, classify0( type ) );
+    }
+  };
+
+  /**
+   * 类型的所有分类, 每个类只计算一次
+   */
+  public static Info classify( Class<?> type ) {
+    return CLASSIFICATION.get( type );
+  }
+
+  /**
+   * @return 上面的 BASIC, MAP 等常量的组合
+   */
+  public static int flags( Class<?> type ) {
+    return CLASSIFICATION.get( type ).flags;
+  }
+
+  public static boolean is( Class<?> type, int flag ) {
+    return ( CLASSIFICATION.get( type ).flags & flag ) != 0;
+  }
+
+  /**
+   * 同 {@link Schema#of(Class)}
+   */
+  public static Schema schema( Class<?> type ) {
+    return Schema.of( type );
+  }
+
+  private static int classify0( Class<?> type ) {
+    int flags = 0;
+    if ( isBasicType0( type ) ) flags |= BASIC;
+    if ( isBasicValue0( type ) ) flags |= BASIC_VALUE;
+    if ( isPrimitiveOrWrapper0( type ) ) flags |= PRIMITIVE_OR_WRAPPER;
+    if ( type.isPrimitive() ) flags |= PRIMITIVE;
+    if ( primitiveNumber.contains( type ) ) flags |= PRIMITIVE_NUMBER;
+    if ( wrapper.contains( type ) ) flags |= WRAPPER;
+    if ( basicTypeOrCollection.contains( type ) ) flags |= BASIC_OR_COLLECTION;
+    if ( isSuperType( type, Number.class ) ) flags |= NUMBER;
+    if ( isSuperType( type, CharSequence.class ) ) flags |= CHAR_SEQUENCE;
+    if ( isSuperType( type, Date.class ) ) flags |= DATE;
+    if ( isSuperType( type, Calendar.class ) ) flags |= CALENDAR;
+    if ( isSuperType( type, Collection.class ) ) flags |= COLLECTION;
+    if ( isSuperType( type, List.class ) ) flags |= LIST;
+    if ( isSuperType( type, Set.class ) ) flags |= SET;
+    if ( isSuperType( type, SortedSet.class ) ) flags |= SORTED_SET;
+    if ( isSuperType( type, Map.class ) ) flags |= MAP;
+    if ( type.isArray() ) flags |= ARRAY;
+    if ( type == String[].class ) flags |= STRING_ARRAY;
+    if ( type.isEnum() ) flags |= ENUM;
+    if ( implementsInterface( type, comparable ) ) flags |= COMPARABLE;
+    if ( Modifier.isAbstract( type.getModifiers() ) ) flags |= ABSTRACT;
+    return flags;
+  }
+
   public static boolean doesMapHaveKeyTypeString( Object value ) {
     return getKeyType( (Map<?, ?>) value ) == string;
   }
 
   public static boolean isBasicType( Object value ) {
-    return ( value instanceof Number || value instanceof CharSequence
-      || value instanceof Date || value instanceof Calendar || value instanceof Currency
-      || value instanceof Boolean );
+    return value != null && is( value.getClass(), BASIC_VALUE );
   }
 
+  private static boolean isBasicValue0( Class<?> theClass ) {
+    return ( number.isAssignableFrom( theClass )
+      || chars.isAssignableFrom( theClass )
+      || date.isAssignableFrom( theClass )
+      || calendar.isAssignableFrom( theClass )
+      || Currency.class.isAssignableFrom( theClass )
+      || bool.isAssignableFrom( theClass ) );
+  }
 
   public static boolean isPrimitiveOrWrapper( Class<?> theClass ) {
+    return is( theClass, PRIMITIVE_OR_WRAPPER );
+  }
+
+  private static boolean isPrimitiveOrWrapper0( Class<?> theClass ) {
     return ( number.isAssignableFrom( theClass )
       || date.isAssignableFrom( theClass )
       || calendar.isAssignableFrom( theClass )
@@ -86,6 +188,10 @@ public class Typ {
   }
 
   public static boolean isBasicType( Class<?> theClass ) {
+    return is( theClass, BASIC );
+  }
+
+  private static boolean isBasicType0( Class<?> theClass ) {
     return ( number.isAssignableFrom( theClass )
       || chars.isAssignableFrom( theClass )
       || date.isAssignableFrom( theClass )
@@ -95,27 +201,27 @@ public class Typ {
   }
 
   public static boolean isMap( Class<?> thisType ) {
-    return isSuperType( thisType, Map.class );
+    return is( thisType, MAP );
   }
 
   public static boolean isCharSequence( Class<?> thisType ) {
-    return isSuperType( thisType, CharSequence.class );
+    return is( thisType, CHAR_SEQUENCE );
   }
 
   public static boolean isCollection( Class<?> thisType ) {
-    return isSuperType( thisType, Collection.class );
+    return is( thisType, COLLECTION );
   }
 
   public static boolean isList( Class<?> thisType ) {
-    return isSuperType( thisType, List.class );
+    return is( thisType, LIST );
   }
 
   public static boolean isSet( Class<?> thisType ) {
-    return isSuperType( thisType, Set.class );
+    return is( thisType, SET );
   }
 
   public static boolean isSortedSet( Class<?> thisType ) {
-    return isSuperType( thisType, SortedSet.class );
+    return is( thisType, SORTED_SET );
   }
 
   public static boolean isType( Class<?> thisType, Class<?> isThisType ) {
@@ -127,7 +233,7 @@ public class Typ {
   }
 
   public static boolean isComparable( Class<?> type ) {
-    return implementsInterface( type, comparable );
+    return is( type, COMPARABLE );
   }
 
   public static boolean isSuperClass( Class<?> type, Class<?> possibleSuperType ) {
@@ -152,6 +258,9 @@ public class Typ {
 
   }
 
+  /**
+   * 按第一个 key 猜测类型, 空的或者 key 类型不一的 Map 结果不可靠. 知道声明的类型时使用 {@link #getKeyType(Type)}
+   */
   public static Class<?> getKeyType( Map<?, ?> value ) {
     if ( value.size() > 0 ) {
       return value.keySet().iterator().next().getClass();
@@ -160,6 +269,9 @@ public class Typ {
     }
   }
 
+  /**
+   * 按第一个元素猜测类型, 空的或者元素类型不一的集合结果不可靠. 知道声明的类型时使用 {@link #getComponentType(Type)}
+   */
   public static Class<?> getComponentType( Collection value ) {
     if ( value.size() > 0 ) {
       return value.iterator().next().getClass();
@@ -168,8 +280,137 @@ public class Typ {
     }
   }
 
+  /**
+   * 声明的 Map 类型的 key 类型, 例如 {@code Map<String, Long>} 返回 String, 不能确定时返回 Object
+   */
+  public static Class<?> getKeyType( Type mapType ) {
+    return getKeyType( mapType, Collections.<TypeVariable<?>, Type>emptyMap() );
+  }
+
+  /**
+   * 声明的 Map 类型的 value 类型, 不能确定时返回 Object
+   */
+  public static Class<?> getValueType( Type mapType ) {
+    return getValueType( mapType, Collections.<TypeVariable<?>, Type>emptyMap() );
+  }
+
+  /**
+   * 声明的数组或者集合类型的元素类型, 例如 {@code List<String>} 返回 String, 不能确定时返回 Object
+   */
+  public static Class<?> getComponentType( Type type ) {
+    return getComponentType( type, Collections.<TypeVariable<?>, Type>emptyMap() );
+  }
+
+  /**
+   * 把 type 看作 target 时第 index 个类型参数, 会沿着父类和接口解析类型变量:
+   * <pre>
+   * class Names extends ArrayList&lt;String&gt; {}
+   * Typ.getTypeArgument( Names.class, Collection.class, 0 ) == String.class
+   * </pre>
+   *
+   * @return 不能确定时返回 null
+   */
+  public static Type getTypeArgument( Type type, Class<?> target, int index ) {
+    return typeArgument( type, target, index, Collections.<TypeVariable<?>, Type>emptyMap() );
+  }
+
+  /**
+   * 类型擦除后的类, 类型变量和通配符取第一个上界
+   */
+  public static Class<?> erasure( Type type ) {
+    if ( type instanceof Class ) {
+      return ( Class<?> ) type;
+    } else if ( type instanceof ParameterizedType ) {
+      return ( Class<?> ) ( ( ParameterizedType ) type ).getRawType();
+    } else if ( type instanceof GenericArrayType ) {
+      Class<?> component = erasure( ( ( GenericArrayType ) type ).getGenericComponentType() );
+      return java.lang.reflect.Array.newInstance( component, 0 ).getClass();
+    } else if ( type instanceof TypeVariable ) {
+      return erasure( ( ( TypeVariable<?> ) type ).getBounds()[0] );
+    } else if ( type instanceof WildcardType ) {
+      return erasure( ( ( WildcardType ) type ).getUpperBounds()[0] );
+    }
+    return Object.class;
+  }
+
+  /* bindings 是 type 所在的类的类型变量的取值 */
+  static Class<?> getKeyType( Type mapType, Map<TypeVariable<?>, Type> bindings ) {
+    return erasureOrObject( typeArgument( mapType, Map.class, 0, bindings ) );
+  }
+
+  static Class<?> getValueType( Type mapType, Map<TypeVariable<?>, Type> bindings ) {
+    return erasureOrObject( typeArgument( mapType, Map.class, 1, bindings ) );
+  }
+
+  static Class<?> getComponentType( Type type, Map<TypeVariable<?>, Type> bindings ) {
+    type = bind( type, bindings );
+    if ( type instanceof GenericArrayType ) {
+      return erasure( bind( ( ( GenericArrayType ) type ).getGenericComponentType(), bindings ) );
+    } else if ( type instanceof Class && ( ( Class<?> ) type ).isArray() ) {
+      return ( ( Class<?> ) type ).getComponentType();
+    }
+    return erasureOrObject( typeArgument( type, Collection.class, 0, bindings ) );
+  }
+
+  /**
+   * type 的类型变量的取值, 用于解析它的字段和父类
+   */
+  static Map<TypeVariable<?>, Type> bindings( Type type, Map<TypeVariable<?>, Type> outer ) {
+    Class<?> raw = erasure( type );
+    TypeVariable<?>[] vars = raw.getTypeParameters();
+    if ( vars.length == 0 || !( type instanceof ParameterizedType ) ) {
+      return Collections.emptyMap();
+    }
+    Type[] args = ( ( ParameterizedType ) type ).getActualTypeArguments();
+    Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+    for ( int i = 0; i < vars.length; i++ ) {
+      bindings.put( vars[i], bind( args[i], outer ) );
+    }
+    return bindings;
+  }
+
+  private static Type typeArgument( Type type, Class<?> target, int index, Map<TypeVariable<?>, Type> outer ) {
+    type = bind( type, outer );
+    Class<?> raw = erasure( type );
+    if ( !target.isAssignableFrom( raw ) ) {
+      return null;
+    }
+    Map<TypeVariable<?>, Type> bindings = bindings( type, outer );
+    if ( raw == target ) {
+      return bindings.get( target.getTypeParameters()[index] );
+    }
+    Type superclass = raw.getGenericSuperclass();
+    if ( superclass != null ) {
+      Type found = typeArgument( superclass, target, index, bindings );
+      if ( found != null ) {
+        return found;
+      }
+    }
+    for ( Type itf : raw.getGenericInterfaces() ) {
+      Type found = typeArgument( itf, target, index, bindings );
+      if ( found != null ) {
+        return found;
+      }
+    }
+    return null;
+  }
+
+  private static Type bind( Type type, Map<TypeVariable<?>, Type> bindings ) {
+    if ( type instanceof TypeVariable ) {
+      Type bound = bindings.get( type );
+      if ( bound != null ) {
+        return bound;
+      }
+    }
+    return type;
+  }
+
+  private static Class<?> erasureOrObject( Type type ) {
+    return type == null ? Object.class : erasure( type );
+  }
+
   public static <T> boolean isAbstract ( Class<T> clazz ) {
-    return Modifier.isAbstract ( clazz.getModifiers () );
+    return is( clazz, ABSTRACT );
   }
 
 
@@ -200,6 +441,18 @@ public class Typ {
     basicTypeOrCollection.add(Boolean.class);
   }
 
+  private static Set<Class> wrapper = new CopyOnWriteArraySet<>();
+  static {
+    wrapper.add(Boolean.class);
+    wrapper.add(Character.class);
+    wrapper.add(Byte.class);
+    wrapper.add(Short.class);
+    wrapper.add(Integer.class);
+    wrapper.add(Long.class);
+    wrapper.add(Float.class);
+    wrapper.add(Double.class);
+  }
+
   private static Set<Class> primitiveNumber = new CopyOnWriteArraySet<>();
   static {
     primitiveNumber.add(int.class);
@@ -212,25 +465,122 @@ public class Typ {
   }
 
   public static boolean isBasicTypeOrCollection( Class<?> type ) {
-    return basicTypeOrCollection.contains( type );
+    return is( type, BASIC_OR_COLLECTION );
   }
 
   public static boolean isPrimitiveNumber(Class<?> arg1) {
-    return primitiveNumber.contains(arg1);
+    return is( arg1, PRIMITIVE_NUMBER );
   }
 
   public static boolean isArray(Object obj) {
     if ( obj == null ) return false;
-    return obj.getClass().isArray();
+    return is( obj.getClass(), ARRAY );
   }
 
   public static boolean isStringArray(Object obj) {
     if ( obj == null ) return false;
-    return obj.getClass().isArray() && obj.getClass().getComponentType()==String.class;
+    return is( obj.getClass(), STRING_ARRAY );
   }
 
   public static boolean isEnum(Class<?> componentType) {
+    return is( componentType, ENUM );
+  }
+
+  /**
+   * 一个类的所有分类, 由 {@link #classify(Class)} 返回
+   */
+  public static final class Info {
+    private final Class<?> type;
+    private final int flags;
 
-    return componentType.isEnum();
+    Info( Class<?> type, int flags ) {
+      this.type = type;
+      this.flags = flags;
+    }
+
+    public Class<?> type() {
+      return type;
+    }
+
+    public int flags() {
+      return flags;
+    }
+
+    public boolean is( int flag ) {
+      return ( flags & flag ) != 0;
+    }
+
+    public boolean isBasicType() {
+      return ( flags & BASIC ) != 0;
+    }
+
+    public boolean isBasicValue() {
+      return ( flags & BASIC_VALUE ) != 0;
+    }
+
+    public boolean isPrimitiveOrWrapper() {
+      return ( flags & PRIMITIVE_OR_WRAPPER ) != 0;
+    }
+
+    public boolean isPrimitive() {
+      return ( flags & PRIMITIVE ) != 0;
+    }
+
+    public boolean isPrimitiveNumber() {
+      return ( flags & PRIMITIVE_NUMBER ) != 0;
+    }
+
+    public boolean isWrapper() {
+      return ( flags & WRAPPER ) != 0;
+    }
+
+    public boolean isBasicTypeOrCollection() {
+      return ( flags & BASIC_OR_COLLECTION ) != 0;
+    }
+
+    public boolean isNumber() {
+      return ( flags & NUMBER ) != 0;
+    }
+
+    public boolean isCharSequence() {
+      return ( flags & CHAR_SEQUENCE ) != 0;
+    }
+
+    public boolean isCollection() {
+      return ( flags & COLLECTION ) != 0;
+    }
+
+    public boolean isList() {
+      return ( flags & LIST ) != 0;
+    }
+
+    public boolean isSet() {
+      return ( flags & SET ) != 0;
+    }
+
+    public boolean isMap() {
+      return ( flags & MAP ) != 0;
+    }
+
+    public boolean isArray() {
+      return ( flags & ARRAY ) != 0;
+    }
+
+    public boolean isEnum() {
+      return ( flags & ENUM ) != 0;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder( type.getName() ).append( '[' );
+      String[] names = { "BASIC", "BASIC_VALUE", "PRIMITIVE_OR_WRAPPER", "PRIMITIVE", "PRIMITIVE_NUMBER", "WRAPPER",
+        "BASIC_OR_COLLECTION", "NUMBER", "CHAR_SEQUENCE", "DATE", "CALENDAR", "COLLECTION", "LIST", "SET",
+        "SORTED_SET", "MAP", "ARRAY", "STRING_ARRAY", "ENUM", "COMPARABLE", "ABSTRACT" };
+      for ( int i = 0; i < names.length; i++ ) {
+        if ( ( flags & ( 1 << i ) ) != 0 )
+          sb.append( sb.charAt( sb.length() - 1 ) == '[' ? "" : "|" ).append( names[i] );
+      }
+      return sb.append( ']' ).toString();
+    }
   }
 }
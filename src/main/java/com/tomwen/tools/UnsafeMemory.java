@@ -0,0 +1,98 @@
+package com.tomwen.tools;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 持有 {@link Unsafe} 实例, 供需要直接读写内存的类使用
+ */
+final class UnsafeMemory {
+  static final Unsafe UNSAFE = unsafe0();
+  static final long BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
+  static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+  private static final long BUFFER_ADDRESS_OFFSET = bufferAddressOffset0();
+
+  private UnsafeMemory() {
+  }
+
+  private static Unsafe unsafe0() {
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return (Unsafe) field.get(null);
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static long bufferAddressOffset0() {
+    try {
+      return UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (NoSuchFieldException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * direct buffer 的起始地址
+   */
+  static long address(ByteBuffer buffer) {
+    if (!buffer.isDirect())
+      throw new IllegalArgumentException("Not a direct buffer");
+    return UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+  }
+
+  /**
+   * 立即释放 direct 或 mapped buffer 的内存, 之后不能再访问这个 buffer.
+   * java 9 以上使用 Unsafe.invokeCleaner, java 8 使用 DirectBuffer.cleaner().
+   *
+   * @return 不支持时返回 false, 内存等 GC 回收 buffer 时释放
+   */
+  static boolean unmap(ByteBuffer buffer) {
+    if (!buffer.isDirect())
+      return false;
+    try {
+      Method invokeCleaner = Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(UNSAFE, buffer);
+      return true;
+    } catch (NoSuchMethodException e) {
+      // java 8
+    } catch (Exception e) {
+      return false;
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner == null)
+        return false;
+      Method clean = cleaner.getClass().getMethod("clean");
+      clean.setAccessible(true);
+      clean.invoke(cleaner);
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * 以 little endian 读取 8 个字节
+   */
+  static long getLongLE(Object base, long offset) {
+    long l = UNSAFE.getLong(base, offset);
+    return LITTLE_ENDIAN ? l : Long.reverseBytes(l);
+  }
+
+  /**
+   * 以 little endian 读取 4 个字节, 返回无符号值
+   */
+  static long getUnsignedIntLE(Object base, long offset) {
+    int i = UNSAFE.getInt(base, offset);
+    return (LITTLE_ENDIAN ? i : Integer.reverseBytes(i)) & 0xFFFFFFFFL;
+  }
+}
@@ -0,0 +1,52 @@
+package com.tomwen.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link RingQueue} 在队列满或者空时的等待方式. 等待的一方不被唤醒, 而是在每次 idle 之后重新检查,
+ * 所以生产者和消费者之间没有任何锁或者通知的开销.
+ * <ul>
+ * <li>{@link #SPIN}: 延迟最低, 占满一个 cpu.</li>
+ * <li>{@link #YIELD}: 让出 cpu 但仍然处于 RUNNABLE.</li>
+ * <li>{@link #park(long, TimeUnit)}: 每次睡眠固定的时间, 延迟约为这个时间.</li>
+ * <li>{@link #backoff(int, int, long, TimeUnit)}: 先自旋, 再 yield, 最后 park 的时间逐次加倍直到上限.</li>
+ * </ul>
+ */
+public interface WaitStrategy {
+  WaitStrategy SPIN = attempt -> {
+  };
+  WaitStrategy YIELD = attempt -> Thread.yield();
+  /**
+   * 自旋 100 次, yield 10 次, 然后从 1 微秒开始 park, 最长 1 毫秒
+   */
+  WaitStrategy BACKOFF = backoff(100, 10, 1, TimeUnit.MILLISECONDS);
+
+  /**
+   * @param attempt 这一次等待中第几次 idle, 从 0 开始
+   */
+  void idle(int attempt);
+
+  static WaitStrategy park(long time, TimeUnit unit) {
+    long nanos = unit.toNanos(time);
+    if (nanos <= 0)
+      throw new IllegalArgumentException("time must be > 0, was " + time);
+    return attempt -> LockSupport.parkNanos(nanos);
+  }
+
+  static WaitStrategy backoff(int spins, int yields, long maxPark, TimeUnit unit) {
+    long maxParkNanos = unit.toNanos(maxPark);
+    if (spins < 0 || yields < 0 || maxParkNanos <= 0)
+      throw new IllegalArgumentException("spins and yields must be >= 0 and maxPark > 0");
+    return attempt -> {
+      if (attempt < spins)
+        return;
+      if (attempt - spins < yields) {
+        Thread.yield();
+        return;
+      }
+      int parks = Math.min(attempt - spins - yields, 30);
+      LockSupport.parkNanos(Math.min(maxParkNanos, TimeUnit.MICROSECONDS.toNanos(1) << parks));
+    };
+  }
+}
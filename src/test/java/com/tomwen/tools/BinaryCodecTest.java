@@ -0,0 +1,164 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+
+  private static Object roundTrip(Object value) {
+    return BinaryCodec.fromBytes(BinaryCodec.toBytes(value));
+  }
+
+  @Test
+  public void roundTrips() {
+    assertEquals(null, roundTrip(null));
+    assertEquals(5, roundTrip(5));
+    assertEquals(-5L, roundTrip(-5L));
+    assertEquals(Long.MIN_VALUE, roundTrip(Long.MIN_VALUE));
+    assertEquals(1.5, roundTrip(1.5));
+    assertEquals(1.5f, roundTrip(1.5f));
+    assertEquals("héllo 😀", roundTrip("héllo 😀"));
+    assertEquals(new BigDecimal("-123.456"), roundTrip(new BigDecimal("-123.456")));
+    BigInteger big = BigInteger.ONE.shiftLeft(100).negate();
+    assertEquals(big, roundTrip(big));
+    assertEquals(new Date(1234567890L), roundTrip(new Date(1234567890L)));
+    assertArrayEquals(new int[]{1, -2, Integer.MAX_VALUE}, (int[]) roundTrip(new int[]{1, -2, Integer.MAX_VALUE}));
+    assertArrayEquals(new String[]{"a", null}, (String[]) roundTrip(new String[]{"a", null}));
+
+    Map<Object, Object> map = new LinkedHashMap<>();
+    map.put("list", Arrays.asList(1, "two", 3.0));
+    map.put("set", new TreeSet<>(Arrays.asList(3, 1, 2)));
+    map.put(7L, null);
+    assertEquals(map, roundTrip(map));
+  }
+
+  @Test
+  public void exactSizeBufferIsEnough() {
+    Object[] values = {5, 5L, "abc", Arrays.asList(1, 2, 3), new int[]{1, 2, 3}, new long[]{1, 2, 3},
+        new short[]{1, 2, 3}, new char[]{'a', 'b'}, new BigDecimal("1.5"), new BigInteger("7"), new Date(1), (short) 5, 'c'};
+    for (Object v : values) {
+      byte[] expected = BinaryCodec.toBytes(v);
+      ByteBuffer exact = ByteBuffer.allocate(expected.length);
+      BinaryCodec.write(exact, v);
+      assertArrayEquals(String.valueOf(v), expected, exact.array());
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+      BinaryCodec.write(direct, v);
+      assertEquals(expected.length, direct.position());
+
+      ByteBuffer small = ByteBuffer.allocate(expected.length - 1);
+      try {
+        BinaryCodec.write(small, v);
+        fail(String.valueOf(v));
+      } catch (BufferOverflowException e) {
+        assertEquals(0, small.position());
+      }
+    }
+  }
+
+  @Test
+  public void smallIntsPackTightly() {
+    BinaryCodec.Encoder out = new BinaryCodec.Encoder(ByteBuffer.allocate(64));
+    for (int i = 0; i < 32; i++)
+      out.writeInt(1);
+    assertEquals(64, out.size());
+    BinaryCodec.Decoder in = new BinaryCodec.Decoder(out.buffer());
+    for (int i = 0; i < 32; i++)
+      assertEquals(1, in.readInt());
+  }
+
+  @Test
+  public void failedWriteLeavesTheBufferUnchanged() {
+    List<Object> self = new ArrayList<>();
+    self.add(self);
+    Object[] invalid = {self, Arrays.asList(1, "x", new Object())};
+    for (Object v : invalid) {
+      ByteBuffer buffer = ByteBuffer.allocate(4096);
+      buffer.put((byte) 42);
+      try {
+        BinaryCodec.write(buffer, v);
+        fail();
+      } catch (IllegalArgumentException expected) {
+        assertEquals(1, buffer.position());
+      }
+      BinaryCodec.write(buffer, 7);
+      buffer.flip();
+      assertEquals(42, buffer.get());
+      assertEquals(7, BinaryCodec.read(buffer));
+    }
+
+    BinaryCodec.Encoder out = BinaryCodec.encoder().writeInt(5);
+    try {
+      out.write(Arrays.asList(1, new Object()));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertEquals(2, out.size());
+    }
+  }
+
+  @Test
+  public void deepNestingIsRejected() {
+    byte[] bytes = new byte[100_000];
+    for (int i = 0; i < bytes.length; i += 2) {
+      bytes[i] = BinaryCodec.LIST;
+      bytes[i + 1] = 1;
+    }
+    try {
+      BinaryCodec.fromBytes(bytes);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("Nesting"));
+    }
+    try {
+      new BinaryCodec.Decoder(ByteBuffer.wrap(bytes)).skip();
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+
+    List<Object> self = new ArrayList<>();
+    self.add(self);
+    try {
+      BinaryCodec.toBytes(self);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    // the thread's encoder is still usable
+    assertEquals(1, BinaryCodec.fromBytes(BinaryCodec.toBytes(1)));
+  }
+
+  @Test
+  public void nestingUpToTheLimit() {
+    Object value = 1;
+    for (int i = 0; i < BinaryCodec.MAX_DEPTH; i++)
+      value = new ArrayList<>(Arrays.asList(value));
+    assertEquals(value, roundTrip(value));
+  }
+
+  @Test
+  public void truncatedInputIsRejected() {
+    byte[] bytes = BinaryCodec.toBytes(Arrays.asList("abc", 1L << 40));
+    for (int n = 0; n < bytes.length; n++) {
+      try {
+        BinaryCodec.fromBytes(Arrays.copyOf(bytes, n));
+        fail("length " + n);
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
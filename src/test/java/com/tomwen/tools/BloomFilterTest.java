@@ -0,0 +1,64 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BloomFilterTest {
+
+  private static double theoreticalFpp(BloomFilter filter, long insertions) {
+    int k = filter.numHashes();
+    return Math.pow(1 - Math.exp(-(double) k * insertions / filter.numBits()), k);
+  }
+
+  @Test
+  public void createMeetsTheFpp() {
+    long[] insertions = {1, 1000, 1 << 20};
+    double[] fpps = {0.5, 0.01, 1e-3, 1e-6, 1e-12};
+    for (long n : insertions) {
+      for (double fpp : fpps) {
+        BloomFilter filter = BloomFilter.create(n, fpp);
+        assertTrue(n + " " + fpp, theoreticalFpp(filter, n) <= fpp);
+        assertEquals(0, Long.bitCount(filter.numBits() - 1 & filter.numBits()));
+      }
+    }
+    // more than 32 hashes would be optimal
+    BloomFilter filter = BloomFilter.create(1000, 1e-15);
+    assertEquals(32, filter.numHashes());
+    assertTrue(theoreticalFpp(filter, 1000) <= 1e-15);
+  }
+
+  @Test
+  public void createRejectsMoreThanMaxBits() {
+    // about 2^37 and 2^40 bits, used to be capped at 2^36 with a much higher fpp
+    try {
+      BloomFilter.create(10_000_000_000L, 1e-3);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      BloomFilter.create(1L << 40, 0.5);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void observedFpp() {
+    int n = 100_000;
+    BloomFilter filter = BloomFilter.create(n, 0.01);
+    for (long i = 0; i < n; i++)
+      filter.put(i * 2);
+    int falsePositives = 0;
+    for (long i = 0; i < n; i++) {
+      assertTrue(filter.mightContain(i * 2));
+      if (filter.mightContain(i * 2 + 1))
+        falsePositives++;
+    }
+    assertTrue(String.valueOf(falsePositives), falsePositives < n * 0.01);
+    assertFalse(filter.put(0L));
+  }
+}
@@ -0,0 +1,68 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConvertersTest {
+
+  @Test
+  public void floatToBigDecimalKeepsTheFloatDigits() {
+    assertEquals(new BigDecimal("1.1"), Converters.convert(1.1f, BigDecimal.class));
+    assertEquals(new BigDecimal("0.1"), Converters.convert(0.1f, BigDecimal.class));
+    assertEquals(new BigDecimal("-3.4028235E38"), Converters.convert(-Float.MAX_VALUE, BigDecimal.class));
+    assertEquals(new BigDecimal("1.1"), Converters.convert(1.1d, BigDecimal.class));
+    assertEquals(BigInteger.valueOf(3), Converters.convert(3.0f, BigInteger.class));
+    try {
+      Converters.convert(Float.NaN, BigDecimal.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void narrowingToFloatIsChecked() {
+    String[] invalid = {"1e300", "-1e300"};
+    for (String s : invalid) {
+      double d = Double.parseDouble(s);
+      for (Object value : new Object[]{d, s, new BigDecimal(s)}) {
+        for (Class<?> target : new Class<?>[]{float.class, Float.class}) {
+          try {
+            Converters.convert(value, target);
+            fail(value + " -> " + target);
+          } catch (IllegalArgumentException expected) {
+          }
+        }
+      }
+      try {
+        Converters.convert(new double[]{1, d}, float[].class);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+        Converters.convert(new Object[]{1, s}, float[].class);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+        Converters.to(float.class).toDouble(d);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    // in range values are rounded, infinities and NaN are kept
+    assertEquals(1.1f, Converters.convert(1.1, float.class), 0);
+    assertEquals(Float.MAX_VALUE, Converters.convert((double) Float.MAX_VALUE, Float.class), 0);
+    assertEquals(Float.POSITIVE_INFINITY, Converters.convert(Double.POSITIVE_INFINITY, float.class), 0);
+    assertTrue(Float.isNaN(Converters.convert(Double.NaN, float.class)));
+    assertEquals(0f, Converters.convert(1e-300, float.class), 0);
+    assertArrayEquals(new float[]{1.5f, 2f}, Converters.convert(new double[]{1.5, 2}, float[].class), 0);
+    assertEquals(2.5f, Converters.to(float.class).toDouble("2.5"), 0);
+  }
+}
@@ -0,0 +1,69 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecimalsTest {
+
+  private static String appendChars(double d, int decimals) {
+    char[] buf = new char[64];
+    return new String(buf, 0, Decimals.append(buf, 0, d, decimals));
+  }
+
+  private static String appendBuffer(double d, int decimals) {
+    ByteBuffer bb = ByteBuffer.allocate(64);
+    Decimals.append(bb, d, decimals);
+    return new String(bb.array(), 0, bb.position(), StandardCharsets.US_ASCII);
+  }
+
+  private static void assertAppends(String expected, double d, int decimals) {
+    assertEquals(expected, Decimals.append(new StringBuilder(), d, decimals).toString());
+    assertEquals(expected, appendChars(d, decimals));
+    assertEquals(expected, appendBuffer(d, decimals));
+  }
+
+  @Test
+  public void append() {
+    assertAppends("1.2346", 1.23456, 4);
+    assertAppends("-1.2346", -1.23456, 4);
+    assertAppends("0.05", 0.05, 2);
+    assertAppends("-0.50", -0.5, 2);
+    assertAppends("12", 12.4, 0);
+  }
+
+  @Test
+  public void appendAtTheLimitFallsBackInsteadOfOverflowing() {
+    // scales to exactly 2^63, which used to become Long.MIN_VALUE and overflow on negation
+    double d = -(double) Long.MAX_VALUE / 100;
+    assertAppends(Double.toString(d), d, 2);
+    assertAppends(Double.toString(-d), -d, 2);
+    assertAppends(Double.toString(-0x1p63), -0x1p63, 0);
+    assertAppends(Double.toString(0x1p63), 0x1p63, 0);
+  }
+
+  @Test
+  public void appendLargestInRange() {
+    double d = 0x1p63 - 1024;
+    assertAppends(Long.toString((long) d), d, 0);
+    assertAppends(Long.toString((long) -d), -d, 0);
+  }
+
+  @Test
+  public void appendNonFinite() {
+    assertAppends("NaN", Double.NaN, 2);
+    assertAppends("Infinity", Double.POSITIVE_INFINITY, 2);
+    assertAppends("-Infinity", Double.NEGATIVE_INFINITY, 2);
+  }
+
+  @Test
+  public void parse() {
+    assertEquals(1.2346, Decimals.parseDouble("1.2346"), 0);
+    assertEquals(-0.5, Decimals.parseDouble("-0.5"), 0);
+    assertEquals(1e300, Decimals.parseDouble("1e300"), 0);
+    assertEquals(-124, Decimals.parseScaled("-1.235", 0, 6, 2));
+  }
+}
@@ -0,0 +1,150 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HasherTest {
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  @Test
+  public void referenceVectors() {
+    assertEquals(0xEF46DB3751D8E999L, Hasher.hash(new byte[0]));
+    assertEquals(0xD24EC4F1A98C6E5BL, Hasher.hash(bytes("a")));
+    assertEquals(0x44BC2CF5AD770999L, Hasher.hash(bytes("abc")));
+    assertEquals(0xFBCEA83C8A378BF1L, Hasher.hash(bytes("Nobody inspects the spammish repetition")));
+    byte[] sequence = new byte[100];
+    for (int i = 0; i < sequence.length; i++)
+      sequence[i] = (byte) i;
+    assertEquals(0x6AC1E58032166597L, Hasher.hash(sequence));
+    assertEquals(0xBEA9CA8199328908L, Hasher.hash(bytes("abc"), 0, 3, 1));
+  }
+
+  @Test
+  public void allInputsAgree() {
+    Random random = new Random(42);
+    ByteBuffer direct = ByteBuffer.allocateDirect(128);
+    for (int length = 0; length <= 100; length++) {
+      byte[] data = new byte[length + 3];
+      random.nextBytes(data);
+      long seed = length % 2 == 0 ? 0 : random.nextLong();
+      long expected = Hasher.hash(data, 3, length, seed);
+      assertEquals(expected, Hasher.hash(Arrays.copyOfRange(data, 3, data.length), 0, length, seed));
+
+      ByteBuffer heap = ByteBuffer.wrap(data);
+      assertEquals(expected, Hasher.hash(heap, 3, length, seed));
+      heap.position(1);
+      ByteBuffer sliced = heap.slice();
+      assertEquals(expected, Hasher.hash(sliced, 2, length, seed));
+      assertEquals(expected, Hasher.hash(heap.asReadOnlyBuffer(), 3, length, seed));
+
+      direct.clear();
+      direct.put(data);
+      assertEquals(expected, Hasher.hash(direct, 3, length, seed));
+      assertEquals(expected, Hasher.hash(direct.asReadOnlyBuffer(), 3, length, seed));
+      assertEquals(expected, Hasher.hashAddress(UnsafeMemory.address(direct) + 3, length, seed));
+
+      if (seed == 0) {
+        String latin1 = new String(data, 3, length, StandardCharsets.ISO_8859_1);
+        assertEquals(expected, Hasher.hashLatin1(latin1));
+        assertEquals(expected, Hasher.hashLatin1(latin1.toCharArray(), 0, length));
+        direct.position(3).limit(3 + length);
+        assertEquals(expected, Hasher.hash(direct));
+      }
+    }
+  }
+
+  /**
+   * 2^20 个 key 在低 32 位上的碰撞期望约为 n^2 / 2^33 = 128, 64 位上期望为 0
+   */
+  private static void assertFewCollisions(long[] hashes) {
+    long[] sorted = hashes.clone();
+    Arrays.sort(sorted);
+    int full = 0;
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i] == sorted[i - 1])
+        full++;
+    }
+    long[] low = new long[hashes.length];
+    for (int i = 0; i < hashes.length; i++)
+      low[i] = hashes[i] & 0xFFFFFFFFL;
+    Arrays.sort(low);
+    int partial = 0;
+    for (int i = 1; i < low.length; i++) {
+      if (low[i] == low[i - 1])
+        partial++;
+    }
+    double expected = (double) hashes.length * hashes.length / 0x1p33;
+    assertEquals(0, full);
+    assertTrue("low 32 bit collisions " + partial + ", expected about " + expected, partial < expected * 2);
+  }
+
+  @Test
+  public void sequentialKeys() {
+    int n = 1 << 20;
+    long[] numbers = new long[n];
+    long[] strings = new long[n];
+    byte[] key = new byte[8];
+    for (int i = 0; i < n; i++) {
+      for (int b = 0; b < 8; b++)
+        key[b] = (byte) ((long) i >>> (b << 3));
+      numbers[i] = Hasher.hash(key);
+      strings[i] = Hasher.hashLatin1("order-" + i);
+    }
+    assertFewCollisions(numbers);
+    assertFewCollisions(strings);
+  }
+
+  @Test
+  public void randomKeys() {
+    int n = 1 << 20;
+    Random random = new Random(7);
+    long[] hashes = new long[n];
+    byte[] key = new byte[20];
+    for (int i = 0; i < n; i++) {
+      random.nextBytes(key);
+      hashes[i] = Hasher.hash(key);
+    }
+    assertFewCollisions(hashes);
+  }
+
+  /**
+   * 翻转输入的任意一位, 输出的每一位翻转的概率都接近 1/2
+   */
+  @Test
+  public void avalanche() {
+    int trials = 4000;
+    for (int length : new int[]{8, 16, 40}) {
+      int[][] flips = new int[length * 8][64];
+      Random random = new Random(length);
+      byte[] data = new byte[length];
+      for (int t = 0; t < trials; t++) {
+        random.nextBytes(data);
+        long h = Hasher.hash(data);
+        for (int bit = 0; bit < length * 8; bit++) {
+          data[bit >> 3] ^= 1 << (bit & 7);
+          long diff = h ^ Hasher.hash(data);
+          data[bit >> 3] ^= 1 << (bit & 7);
+          for (int out = 0; out < 64; out++)
+            flips[bit][out] += (int) (diff >>> out & 1);
+        }
+      }
+      double worst = 0;
+      for (int[] row : flips) {
+        for (int count : row)
+          worst = Math.max(worst, Math.abs((double) count / trials - 0.5));
+      }
+      // the standard deviation of one cell is 0.008, 0.05 is over 6 sigma
+      assertTrue("length " + length + " worst bias " + worst, worst < 0.05);
+    }
+  }
+}
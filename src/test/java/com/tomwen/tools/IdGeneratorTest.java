@@ -0,0 +1,126 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IdGeneratorTest {
+
+  @Test
+  public void defaultLeavesEnoughSequenceBits() {
+    for (int pidBits : new int[]{12, 15, 16, 22}) {
+      int timeBits = IdGenerator.defaultTimeBits(pidBits);
+      long tick = IdGenerator.defaultTickMillis(pidBits);
+      IdGenerator ids = new IdGenerator(IdGenerator.DEFAULT_EPOCH, timeBits, tick, IdGenerator.DEFAULT_MAX_LEAD_MILLIS,
+          0, pidBits, System::currentTimeMillis);
+      assertTrue("pidBits=" + pidBits, ids.sequenceBits() >= 12);
+      // still spans 2^40 milliseconds
+      assertEquals("pidBits=" + pidBits, 1L << IdGenerator.DEFAULT_TIME_BITS, tick << timeBits);
+    }
+    assertTrue(new IdGenerator().sequenceBits() >= 12);
+  }
+
+  @Test
+  public void rejectsTooFewSequenceBits() {
+    try {
+      // 40 + 16 leaves 8 sequence bits, the old default
+      new IdGenerator(IdGenerator.DEFAULT_EPOCH, 40, 1, IdGenerator.DEFAULT_MAX_LEAD_MILLIS, 0, 16,
+          System::currentTimeMillis);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    new IdGenerator(IdGenerator.DEFAULT_EPOCH, 38, 1, IdGenerator.DEFAULT_MAX_LEAD_MILLIS, 0, 16,
+        System::currentTimeMillis);
+  }
+
+  @Test
+  public void coarseTicks() {
+    long epoch = IdGenerator.DEFAULT_EPOCH;
+    AtomicLong now = new AtomicLong(epoch + 1000);
+    IdGenerator ids = new IdGenerator(epoch, 30, 1024, IdGenerator.DEFAULT_MAX_LEAD_MILLIS, 7, 22, now::get);
+    long id = ids.next();
+    assertEquals(0, ids.timeMillis(id) - epoch);
+    assertEquals(7, ids.pid(id));
+    now.set(epoch + 5000);
+    long later = ids.next();
+    assertEquals(4096, ids.timeMillis(later) - epoch);
+    assertTrue(Long.compareUnsigned(later, id) > 0);
+  }
+
+  @Test
+  public void uniqueAndIncreasingWhenSequenceRunsOut() {
+    AtomicLong now = new AtomicLong(IdGenerator.DEFAULT_EPOCH);
+    IdGenerator ids = new IdGenerator(IdGenerator.DEFAULT_EPOCH, 38, 1, IdGenerator.DEFAULT_MAX_LEAD_MILLIS, 3, 16, now::get);
+    Set<Long> seen = new HashSet<>();
+    long previous = ids.next();
+    seen.add(previous);
+    // ten ticks worth of ids without the clock moving
+    for (int i = 0; i < 10 << ids.sequenceBits(); i++) {
+      long id = ids.next();
+      assertTrue(Long.compareUnsigned(id, previous) > 0);
+      assertTrue(seen.add(id));
+      previous = id;
+    }
+    assertTrue(ids.timeMillis(previous) > now.get());
+  }
+
+  @Test(timeout = 30000)
+  public void leadIsBoundedWithTwentyTwoPidBits() throws InterruptedException {
+    long epoch = IdGenerator.DEFAULT_EPOCH;
+    AtomicLong now = new AtomicLong(epoch);
+    IdGenerator ids = new IdGenerator(epoch, IdGenerator.defaultTimeBits(22), IdGenerator.defaultTickMillis(22),
+        IdGenerator.DEFAULT_MAX_LEAD_MILLIS, 5, 22, now::get);
+    assertEquals(1024, ids.tickMillis());
+    // the current tick plus the one tick that fits in 2000 ms of lead
+    long limit = (IdGenerator.DEFAULT_MAX_LEAD_MILLIS / ids.tickMillis() + 1) << ids.sequenceBits();
+    AtomicLong generated = new AtomicLong();
+    Thread producer = new Thread(() -> {
+      for (long i = 0; i < limit + 10; i++) {
+        ids.next();
+        generated.incrementAndGet();
+      }
+    });
+    producer.start();
+    while (generated.get() < limit)
+      Thread.sleep(1);
+    Thread.sleep(100);
+    // blocked until the clock catches up, instead of running ahead of it
+    assertEquals(limit, generated.get());
+    assertTrue(producer.isAlive());
+    assertEquals(ids.tickMillis(), ids.leadMillis());
+    assertTrue(ids.leadMillis() <= IdGenerator.DEFAULT_MAX_LEAD_MILLIS);
+
+    now.addAndGet(ids.tickMillis());
+    producer.join();
+    assertEquals(limit + 10, generated.get());
+    assertTrue(ids.leadMillis() <= IdGenerator.DEFAULT_MAX_LEAD_MILLIS);
+  }
+
+  @Test
+  public void zeroLeadWaitsForTheNextTick() throws InterruptedException {
+    long epoch = IdGenerator.DEFAULT_EPOCH;
+    AtomicLong now = new AtomicLong(epoch);
+    IdGenerator ids = new IdGenerator(epoch, 38, 1, 0, 3, 16, now::get);
+    for (int i = 0; i < 1 << ids.sequenceBits(); i++)
+      ids.next();
+    assertEquals(0, ids.leadMillis());
+    Thread advance = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException ignored) {
+      }
+      now.incrementAndGet();
+    });
+    advance.start();
+    long id = ids.next();
+    assertEquals(epoch + 1, ids.timeMillis(id));
+    assertEquals(0, ids.sequence(id));
+    advance.join();
+  }
+}
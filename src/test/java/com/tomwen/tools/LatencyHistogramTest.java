@@ -0,0 +1,80 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void roundTrip() {
+    LatencyHistogram h = new LatencyHistogram(1_000_000, 2);
+    h.record(5);
+    h.record(1000, 3);
+    h.record(999_999);
+    h.record(7, 0);
+    LatencyHistogram copy = LatencyHistogram.fromBytes(h.toBytes());
+    assertEquals(5, copy.count());
+    assertEquals(h.max(), copy.max());
+    assertEquals(h.mean(), copy.mean(), 0);
+    assertEquals(h.percentile(0.5), copy.percentile(0.5));
+  }
+
+  @Test
+  public void negativeCountIsRejected() {
+    LatencyHistogram h = new LatencyHistogram();
+    h.record(10, 2);
+    try {
+      h.record(10, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    assertEquals(2, h.count());
+  }
+
+  /**
+   * 头部之后的计数是 zigzag 变长整数, 负数表示一段 0
+   */
+  private static byte[] withCounts(LatencyHistogram h, long... values) {
+    byte[] header = h.toBytes();
+    ByteBuffer buffer = ByteBuffer.allocate(header.length + 10 * values.length);
+    buffer.put(header);
+    for (long v : values)
+      Sketches.putVarLong(buffer, v << 1 ^ v >> 63);
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  private static boolean accepts(byte[] bytes) {
+    try {
+      LatencyHistogram.fromBytes(bytes);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Test
+  public void runsPastTheEndAreRejected() {
+    LatencyHistogram empty = new LatencyHistogram(1000, 1);
+    // the number of buckets, the first run of zeros which leaves no room for a count after it
+    int length = 1;
+    while (accepts(withCounts(empty, -length, 1)))
+      length++;
+    assertEquals(1, LatencyHistogram.fromBytes(withCounts(empty, -(length - 1), 1)).count());
+    assertEquals(0, LatencyHistogram.fromBytes(withCounts(empty, -length)).count());
+
+    long[][] invalid = {{-(length + 1)}, {1, -length}, {-length, 1}, {-Integer.MAX_VALUE, -Integer.MAX_VALUE, 1},
+        {-(1L << 32) - 1, 1}, {Long.MIN_VALUE}, {-Long.MAX_VALUE, 1}};
+    for (long[] counts : invalid) {
+      try {
+        LatencyHistogram.fromBytes(withCounts(empty, counts));
+        fail(Arrays.toString(counts));
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+}
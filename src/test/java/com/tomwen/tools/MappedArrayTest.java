@@ -0,0 +1,196 @@
+package com.tomwen.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 4K 的段, 少量元素就会跨段和多次扩容
+ */
+public class MappedArrayTest {
+  private static final int CHUNK_SHIFT = 12;
+  /* elements in one chunk, the first chunk holds the 64 byte header and 504 elements */
+  private static final int PER_CHUNK = 1 << CHUNK_SHIFT >> 3;
+  private static final int N = 10 * PER_CHUNK + 123;
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private MappedLongArray longs(File file) {
+    return new MappedLongArray(file, 1, CHUNK_SHIFT);
+  }
+
+  private static long[] values(int n) {
+    long[] values = new long[n];
+    for (int i = 0; i < n; i++)
+      values[i] = i * 31L - 7;
+    return values;
+  }
+
+  @Test
+  public void appendAcrossSegments() throws IOException {
+    long[] expected = values(N);
+    try (MappedLongArray a = longs(tmp.newFile())) {
+      for (long v : expected)
+        a.add(v);
+      assertEquals(N, a.length());
+      assertTrue(a.capacity() >= N);
+      assertEquals(MappedArray.HEADER + (a.capacity() << 3), a.sizeInBytes());
+      for (int i = 0; i < N; i++)
+        assertEquals(expected[i], a.get(i));
+      assertArrayEquals(expected, a.toArray(0, N));
+
+      // bulk reads and writes that start and end inside different segments
+      long[] part = new long[3 * PER_CHUNK];
+      a.get(PER_CHUNK - 70, part, 0, part.length);
+      assertArrayEquals(Arrays.copyOfRange(expected, PER_CHUNK - 70, PER_CHUNK - 70 + part.length), part);
+      a.fill(PER_CHUNK - 70, 3 * PER_CHUNK + 5, -1);
+      Arrays.fill(expected, PER_CHUNK - 70, 3 * PER_CHUNK + 5, -1);
+      a.addAll(values(2 * PER_CHUNK));
+      expected = concat(expected, values(2 * PER_CHUNK));
+      assertArrayEquals(expected, a.toArray(0, a.length()));
+
+      AtomicLong sum = new AtomicLong();
+      a.forEach(sum::addAndGet);
+      assertEquals(Arrays.stream(expected).sum(), sum.get());
+    }
+
+    try (MappedDoubleArray d = new MappedDoubleArray(tmp.newFile(), 1, CHUNK_SHIFT)) {
+      for (int i = 0; i < N; i++)
+        d.add(i / 4.0);
+      for (int i = 0; i < N; i++)
+        assertEquals(i / 4.0, d.get(i), 0);
+    }
+  }
+
+  private static long[] concat(long[] a, long[] b) {
+    long[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+
+  @Test
+  public void overlappingCopy() throws IOException {
+    // destination after the source, before it, and running past the end
+    long[][] copies = {{100, 300, 2 * PER_CHUNK}, {300, 100, 2 * PER_CHUNK}, {PER_CHUNK, PER_CHUNK + 1, PER_CHUNK},
+        {0, N - 1000, 3000}};
+    for (long[] c : copies) {
+      int srcIndex = (int) c[0], index = (int) c[1], count = (int) c[2];
+      try (MappedLongArray a = longs(tmp.newFile())) {
+        long[] expected = values(N);
+        a.addAll(expected);
+        a.copy(a, srcIndex, index, count);
+        long[] copied = Arrays.copyOf(expected, Math.max(N, index + count));
+        System.arraycopy(expected, srcIndex, copied, index, count);
+        assertArrayEquals(Arrays.toString(c), copied, a.toArray(0, a.length()));
+      }
+    }
+
+    try (MappedLongArray a = longs(tmp.newFile()); MappedLongArray b = longs(tmp.newFile())) {
+      a.addAll(values(N));
+      b.copy(a, 10, 0, N - 10);
+      assertArrayEquals(Arrays.copyOfRange(values(N), 10, N), b.toArray(0, b.length()));
+    }
+  }
+
+  @Test
+  public void shrinkThenGrowZeroes() throws IOException {
+    try (MappedLongArray a = longs(tmp.newFile())) {
+      a.addAll(values(N));
+      long capacity = a.capacity();
+      a.setLength(100);
+      assertEquals(100, a.length());
+      assertEquals(capacity, a.capacity());
+      try {
+        a.get(100);
+        fail();
+      } catch (IndexOutOfBoundsException expected) {
+      }
+      // grows back over the old values, and past the old capacity
+      a.setLength(capacity + 10);
+      long[] expected = new long[(int) capacity + 10];
+      System.arraycopy(values(100), 0, expected, 0, 100);
+      assertArrayEquals(expected, a.toArray(0, a.length()));
+    }
+  }
+
+  @Test
+  public void reopen() throws IOException {
+    File file = tmp.newFile();
+    long capacity;
+    try (MappedLongArray a = longs(file)) {
+      a.addAll(values(N));
+      a.setLength(N - 3);
+      capacity = a.capacity();
+      a.force();
+    }
+    // the chunk size is not part of the format
+    for (int chunkShift : new int[]{CHUNK_SHIFT, 13, MappedArray.DEFAULT_CHUNK_SHIFT}) {
+      try (MappedLongArray a = new MappedLongArray(file, 1, chunkShift)) {
+        assertEquals(N - 3, a.length());
+        assertEquals(capacity, a.capacity());
+        assertArrayEquals(values(N - 3), a.toArray(0, a.length()));
+      }
+    }
+    MappedLongArray a = MappedLongArray.open(file);
+    a.close();
+    assertTrue(a.isClosed());
+    try {
+      a.get(0);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    assertTrue(a.delete());
+    assertTrue(!file.exists());
+  }
+
+  @Test
+  public void typeAndByteOrderMismatch() throws IOException {
+    File file = tmp.newFile();
+    try (MappedLongArray a = longs(file)) {
+      a.add(1);
+    }
+    try {
+      new MappedDoubleArray(file, 1, CHUNK_SHIFT);
+      fail();
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("holds long"));
+    }
+
+    // the same header written on a machine with the other byte order
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      ByteBuffer order = ByteBuffer.allocate(2).order(ByteOrder.nativeOrder());
+      order.putShort(0, (short) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 2 : 1));
+      raf.getChannel().write(order, 14);
+    }
+    try {
+      longs(file);
+      fail();
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains("byte order"));
+    }
+
+    File garbage = tmp.newFile();
+    try (RandomAccessFile raf = new RandomAccessFile(garbage, "rw")) {
+      raf.write(new byte[100]);
+    }
+    try {
+      longs(garbage);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LongLongMap, LongObjMap, IntIntMap, DoubleObjMap, LongSet 和 IntSet 与 java.util 的结果逐个操作比较
+ */
+public class PrimitiveHashTest {
+  private static final int OPS = 200_000;
+  private static final int CHECK_EVERY = 9973;
+  /* PrimitiveHash.capacity(EXPECTED, 0.5) == CAPACITY and the pool stays below maxFill, so the table never grows */
+  private static final int EXPECTED = 20;
+  private static final int CAPACITY = 64;
+  private static final long MISSING = -7;
+
+  /**
+   * 0 (free key), 12 个 home slot 在表尾最后 3 个位置的 key 和 8 个 home slot 在 0 或 1 的 key:
+   * 探测和删除时的移位都要绕过表尾
+   */
+  private static long[] wrappingPool(boolean intKeys) {
+    List<Long> end = new ArrayList<>();
+    List<Long> start = new ArrayList<>();
+    for (long k = 1; end.size() < 12 || start.size() < 8; k++) {
+      int slot = intKeys ? PrimitiveHash.slot((int) k, CAPACITY - 1) : PrimitiveHash.slot(k, CAPACITY - 1);
+      if (slot >= CAPACITY - 3 && end.size() < 12)
+        end.add(k);
+      else if (slot <= 1 && start.size() < 8)
+        start.add(k);
+    }
+    long[] pool = new long[end.size() + start.size() + 1];
+    int i = 1;
+    for (long k : end)
+      pool[i++] = k;
+    for (long k : start)
+      pool[i++] = k;
+    return pool;
+  }
+
+  private static LongSupplier wrappingKeys(Random random, boolean intKeys) {
+    assertEquals(CAPACITY, PrimitiveHash.capacity(EXPECTED, PrimitiveHash.DEFAULT_LOAD_FACTOR));
+    long[] pool = wrappingPool(intKeys);
+    assertTrue(pool.length <= PrimitiveHash.maxFill(CAPACITY, PrimitiveHash.DEFAULT_LOAD_FACTOR));
+    return () -> pool[random.nextInt(pool.length)];
+  }
+
+  /**
+   * 0, 很多重复的小 key 和随机的 key, 表会多次扩容
+   */
+  private static LongSupplier randomKeys(Random random, boolean intKeys) {
+    return () -> {
+      int kind = random.nextInt(10);
+      if (kind == 0)
+        return 0;
+      if (kind <= 5)
+        return random.nextInt(200) - 100;
+      return intKeys ? random.nextInt() : random.nextLong();
+    };
+  }
+
+  /**
+   * 小的表每次操作后都完整比较, 大的表间隔地比较
+   */
+  private static boolean fullCheck(int op, int size) {
+    return size <= 32 || op % CHECK_EVERY == 0;
+  }
+
+  @Test
+  public void longLongMap() {
+    checkLongLongMap(new LongLongMap(EXPECTED, PrimitiveHash.DEFAULT_LOAD_FACTOR, MISSING),
+        wrappingKeys(new Random(1), false));
+    checkLongLongMap(new LongLongMap(1, PrimitiveHash.DEFAULT_LOAD_FACTOR, MISSING), randomKeys(new Random(2), false));
+  }
+
+  private static void checkLongLongMap(LongLongMap map, LongSupplier keys) {
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(3);
+    for (int op = 0; op < OPS; op++) {
+      long key = keys.getAsLong();
+      int kind = random.nextInt(10);
+      if (kind < 4) {
+        long value = random.nextLong();
+        assertEquals(expected.getOrDefault(key, MISSING).longValue(), map.put(key, value));
+        expected.put(key, value);
+      } else if (kind < 5) {
+        long value = expected.getOrDefault(key, MISSING) + 3;
+        assertEquals(value, map.addValue(key, 3));
+        expected.put(key, value);
+      } else if (kind < 8) {
+        Long removed = expected.remove(key);
+        assertEquals(removed == null ? MISSING : removed, map.remove(key));
+      } else {
+        assertEquals(expected.getOrDefault(key, MISSING).longValue(), map.get(key));
+        assertEquals(expected.containsKey(key), map.containsKey(key));
+      }
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), map.size());
+        Map<Long, Long> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+      }
+    }
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(MISSING, map.get(0));
+  }
+
+  @Test
+  public void intIntMap() {
+    checkIntIntMap(new IntIntMap(EXPECTED, PrimitiveHash.DEFAULT_LOAD_FACTOR, (int) MISSING),
+        wrappingKeys(new Random(1), true));
+    checkIntIntMap(new IntIntMap(1, PrimitiveHash.DEFAULT_LOAD_FACTOR, (int) MISSING), randomKeys(new Random(2), true));
+  }
+
+  private static void checkIntIntMap(IntIntMap map, LongSupplier keys) {
+    Map<Integer, Integer> expected = new HashMap<>();
+    Random random = new Random(3);
+    int missing = (int) MISSING;
+    for (int op = 0; op < OPS; op++) {
+      int key = (int) keys.getAsLong();
+      int kind = random.nextInt(10);
+      if (kind < 4) {
+        int value = random.nextInt();
+        assertEquals(expected.getOrDefault(key, missing).intValue(), map.put(key, value));
+        expected.put(key, value);
+      } else if (kind < 5) {
+        int value = expected.getOrDefault(key, missing) + 3;
+        assertEquals(value, map.addValue(key, 3));
+        expected.put(key, value);
+      } else if (kind < 8) {
+        Integer removed = expected.remove(key);
+        assertEquals(removed == null ? missing : removed, map.remove(key));
+      } else {
+        assertEquals(expected.getOrDefault(key, missing).intValue(), map.get(key));
+        assertEquals(expected.containsKey(key), map.containsKey(key));
+      }
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), map.size());
+        Map<Integer, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void longObjMap() {
+    checkLongObjMap(new LongObjMap<>(EXPECTED), wrappingKeys(new Random(1), false));
+    checkLongObjMap(new LongObjMap<>(1), randomKeys(new Random(2), false));
+  }
+
+  private static void checkLongObjMap(LongObjMap<String> map, LongSupplier keys) {
+    Map<Long, String> expected = new HashMap<>();
+    Random random = new Random(3);
+    for (int op = 0; op < OPS; op++) {
+      long key = keys.getAsLong();
+      int kind = random.nextInt(10);
+      if (kind < 5) {
+        String value = Integer.toString(random.nextInt(1000));
+        assertEquals(expected.put(key, value), map.put(key, value));
+      } else if (kind < 8) {
+        assertEquals(expected.remove(key), map.remove(key));
+      } else {
+        assertEquals(expected.get(key), map.get(key));
+        assertEquals(expected.containsKey(key), map.containsKey(key));
+      }
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), map.size());
+        Map<Long, String> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  /**
+   * key 按原始位比较, 所以参照的 HashMap 以 doubleToRawLongBits 为 key. 池里的 0 是 +0.0 (free key), 另外加上 -0.0 和 NaN
+   */
+  @Test
+  public void doubleObjMap() {
+    checkDoubleObjMap(new DoubleObjMap<>(EXPECTED), wrappingKeys(new Random(1), false));
+    checkDoubleObjMap(new DoubleObjMap<>(1), randomKeys(new Random(2), false));
+  }
+
+  private static void checkDoubleObjMap(DoubleObjMap<String> map, LongSupplier keys) {
+    Map<Long, String> expected = new HashMap<>();
+    Random random = new Random(3);
+    for (int op = 0; op < OPS; op++) {
+      int special = random.nextInt(50);
+      long bits = special == 0 ? Double.doubleToRawLongBits(-0.0)
+        : special == 1 ? Double.doubleToRawLongBits(Double.NaN) : keys.getAsLong();
+      double key = Double.longBitsToDouble(bits);
+      int kind = random.nextInt(10);
+      if (kind < 5) {
+        String value = Integer.toString(random.nextInt(1000));
+        assertEquals(expected.put(bits, value), map.put(key, value));
+      } else if (kind < 8) {
+        assertEquals(expected.remove(bits), map.remove(key));
+      } else {
+        assertEquals(expected.get(bits), map.get(key));
+        assertEquals(expected.containsKey(bits), map.containsKey(key));
+      }
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), map.size());
+        Map<Long, String> actual = new HashMap<>();
+        map.forEach((k, v) -> actual.put(Double.doubleToRawLongBits(k), v));
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void longSet() {
+    checkLongSet(new LongSet(EXPECTED), wrappingKeys(new Random(1), false));
+    checkLongSet(new LongSet(1), randomKeys(new Random(2), false));
+  }
+
+  private static void checkLongSet(LongSet set, LongSupplier keys) {
+    Set<Long> expected = new HashSet<>();
+    Random random = new Random(3);
+    for (int op = 0; op < OPS; op++) {
+      long key = keys.getAsLong();
+      int kind = random.nextInt(10);
+      if (kind < 5)
+        assertEquals(expected.add(key), set.add(key));
+      else if (kind < 8)
+        assertEquals(expected.remove(key), set.remove(key));
+      else
+        assertEquals(expected.contains(key), set.contains(key));
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), set.size());
+        Set<Long> actual = new HashSet<>();
+        set.forEach(actual::add);
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void intSet() {
+    checkIntSet(new IntSet(EXPECTED), wrappingKeys(new Random(1), true));
+    checkIntSet(new IntSet(1), randomKeys(new Random(2), true));
+  }
+
+  private static void checkIntSet(IntSet set, LongSupplier keys) {
+    Set<Integer> expected = new HashSet<>();
+    Random random = new Random(3);
+    for (int op = 0; op < OPS; op++) {
+      int key = (int) keys.getAsLong();
+      int kind = random.nextInt(10);
+      if (kind < 5)
+        assertEquals(expected.add(key), set.add(key));
+      else if (kind < 8)
+        assertEquals(expected.remove(key), set.remove(key));
+      else
+        assertEquals(expected.contains(key), set.contains(key));
+      if (fullCheck(op, expected.size())) {
+        assertEquals(expected.size(), set.size());
+        Set<Integer> actual = new HashSet<>();
+        set.forEach(actual::add);
+        assertEquals(expected, actual);
+      }
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RadixSortTest {
+  /* below and above INSERTION_THRESHOLD, and large enough for several parallel blocks */
+  private static final int[] SIZES = {0, 1, 5, 63, 64, 65, 1000, 20_000};
+  private static final int PARALLEL_THRESHOLD = 1000;
+
+  private static final double NEGATIVE_NAN = Double.longBitsToDouble(0xfff8000000000000L);
+  private static final double LOW_NAN = Double.longBitsToDouble(0x7ff0000000000001L);
+  private static final double[] DOUBLE_ORDER = {NEGATIVE_NAN, Double.NEGATIVE_INFINITY, -1, -Double.MIN_VALUE, -0.0,
+      0.0, Double.MIN_VALUE, 1, Double.POSITIVE_INFINITY, LOW_NAN, Double.NaN};
+  private static final float[] FLOAT_ORDER = {Float.intBitsToFloat(0xffc00000), Float.NEGATIVE_INFINITY, -1,
+      -Float.MIN_VALUE, -0.0f, 0.0f, Float.MIN_VALUE, 1, Float.POSITIVE_INFINITY, Float.intBitsToFloat(0x7f800001),
+      Float.NaN};
+
+  /**
+   * 一半取值很少 (大量重复, 高位的趟被跳过), 一半是整个范围的随机数
+   */
+  private static int[] ints(Random random, int n) {
+    int[] a = new int[n];
+    boolean narrow = random.nextBoolean();
+    for (int i = 0; i < n; i++)
+      a[i] = narrow ? random.nextInt(50) - 25 : random.nextInt();
+    return a;
+  }
+
+  private static long[] longs(Random random, int n) {
+    long[] a = new long[n];
+    boolean narrow = random.nextBoolean();
+    for (int i = 0; i < n; i++)
+      a[i] = narrow ? random.nextInt(50) - 25 : random.nextLong();
+    return a;
+  }
+
+  /**
+   * 没有负号的 NaN 和其它 payload 的 NaN, 这时与 Arrays.sort 的顺序相同
+   */
+  private static double[] doubles(Random random, int n) {
+    double[] specials = {-0.0, 0.0, Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.MIN_VALUE};
+    double[] a = new double[n];
+    for (int i = 0; i < n; i++) {
+      int kind = random.nextInt(10);
+      a[i] = kind == 0 ? specials[random.nextInt(specials.length)]
+        : kind < 4 ? random.nextInt(20) - 10
+        : kind < 7 ? random.nextGaussian() * 1e6
+        : Double.longBitsToDouble(random.nextLong() & 0xffefffffffffffffL);
+    }
+    return a;
+  }
+
+  private static float[] floats(Random random, int n) {
+    double[] d = doubles(random, n);
+    float[] a = new float[n];
+    for (int i = 0; i < n; i++)
+      a[i] = Double.isNaN(d[i]) ? Float.NaN : (float) d[i];
+    return a;
+  }
+
+  private static long[] bits(double[] a) {
+    long[] bits = new long[a.length];
+    for (int i = 0; i < a.length; i++)
+      bits[i] = Double.doubleToRawLongBits(a[i]);
+    return bits;
+  }
+
+  private static int[] bits(float[] a) {
+    int[] bits = new int[a.length];
+    for (int i = 0; i < a.length; i++)
+      bits[i] = Float.floatToRawIntBits(a[i]);
+    return bits;
+  }
+
+  @Test
+  public void sortAgreesWithArraysSort() {
+    Random random = new Random(1);
+    int threshold = Maths.parallelThreshold();
+    Maths.parallelThreshold(PARALLEL_THRESHOLD);
+    try {
+      for (int n : SIZES) {
+        for (int round = 0; round < 4; round++) {
+          boolean parallel = round >= 2;
+          int from = n < 2 ? 0 : random.nextInt(n / 2), to = n - from / 2;
+
+          int[] ints = ints(random, n), expectedInts = ints.clone();
+          Arrays.sort(expectedInts, from, to);
+          if (parallel)
+            RadixSort.parallelSort(ints, from, to);
+          else
+            RadixSort.sort(ints, from, to);
+          assertArrayEquals("n=" + n, expectedInts, ints);
+
+          long[] longs = longs(random, n), expectedLongs = longs.clone();
+          Arrays.sort(expectedLongs, from, to);
+          if (parallel)
+            RadixSort.parallelSort(longs, from, to);
+          else
+            RadixSort.sort(longs, from, to);
+          assertArrayEquals("n=" + n, expectedLongs, longs);
+
+          double[] doubles = doubles(random, n), expectedDoubles = doubles.clone();
+          Arrays.sort(expectedDoubles, from, to);
+          if (parallel)
+            RadixSort.parallelSort(doubles, from, to);
+          else
+            RadixSort.sort(doubles, from, to);
+          assertArrayEquals("n=" + n, bits(expectedDoubles), bits(doubles));
+
+          float[] floats = floats(random, n), expectedFloats = floats.clone();
+          Arrays.sort(expectedFloats, from, to);
+          if (parallel)
+            RadixSort.parallelSort(floats, from, to);
+          else
+            RadixSort.sort(floats, from, to);
+          assertArrayEquals("n=" + n, bits(expectedFloats), bits(floats));
+        }
+      }
+    } finally {
+      Maths.parallelThreshold(threshold);
+    }
+  }
+
+  @Test
+  public void nanAndSignedZeroOrder() {
+    // once on its own (insertion sort) and repeated and shuffled (radix passes)
+    for (int copies : new int[]{1, 30}) {
+      Random random = new Random(copies);
+      double[] doubles = new double[DOUBLE_ORDER.length * copies];
+      float[] floats = new float[FLOAT_ORDER.length * copies];
+      for (int i = 0; i < doubles.length; i++) {
+        doubles[i] = DOUBLE_ORDER[i / copies];
+        floats[i] = FLOAT_ORDER[i / copies];
+      }
+      long[] expectedDoubles = bits(doubles);
+      int[] expectedFloats = bits(floats);
+      for (int i = doubles.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        double d = doubles[i];
+        doubles[i] = doubles[j];
+        doubles[j] = d;
+        float f = floats[i];
+        floats[i] = floats[j];
+        floats[j] = f;
+      }
+      double[] unsortedDoubles = doubles.clone();
+      float[] unsortedFloats = floats.clone();
+      RadixSort.sort(doubles);
+      RadixSort.sort(floats);
+      assertArrayEquals(expectedDoubles, bits(doubles));
+      assertArrayEquals(expectedFloats, bits(floats));
+
+      int[] order = RadixSort.argsort(unsortedDoubles);
+      for (int i = 0; i < order.length; i++)
+        assertEquals(expectedDoubles[i], Double.doubleToRawLongBits(unsortedDoubles[order[i]]));
+      order = RadixSort.argsort(unsortedFloats);
+      for (int i = 0; i < order.length; i++)
+        assertEquals(expectedFloats[i], Float.floatToRawIntBits(unsortedFloats[order[i]]));
+    }
+    for (int i = 1; i < DOUBLE_ORDER.length; i++) {
+      assertTrue(RadixSort.compare(DOUBLE_ORDER[i - 1], DOUBLE_ORDER[i]) < 0);
+      assertTrue(RadixSort.compare(FLOAT_ORDER[i - 1], FLOAT_ORDER[i]) < 0);
+    }
+    assertEquals(0, RadixSort.compare(Double.NaN, Double.NaN));
+    assertEquals(0, RadixSort.compare(Float.NaN, Float.NaN));
+  }
+
+  @Test
+  public void argsortIsStable() {
+    Random random = new Random(2);
+    int threshold = Maths.parallelThreshold();
+    Maths.parallelThreshold(PARALLEL_THRESHOLD);
+    try {
+      for (int n : SIZES) {
+        int from = n < 2 ? 0 : random.nextInt(n / 2), to = n - from / 2;
+
+        int[] ints = ints(random, n);
+        checkOrder(from, to, RadixSort.argsort(ints, from, to), (i, j) -> Integer.compare(ints[i], ints[j]));
+        checkOrder(from, to, RadixSort.parallelArgsort(ints, from, to), (i, j) -> Integer.compare(ints[i], ints[j]));
+
+        long[] longs = longs(random, n);
+        checkOrder(from, to, RadixSort.argsort(longs, from, to), (i, j) -> Long.compare(longs[i], longs[j]));
+        checkOrder(from, to, RadixSort.parallelArgsort(longs, from, to), (i, j) -> Long.compare(longs[i], longs[j]));
+
+        double[] doubles = doubles(random, n);
+        checkOrder(from, to, RadixSort.argsort(doubles, from, to),
+            (i, j) -> RadixSort.compare(doubles[i], doubles[j]));
+        checkOrder(from, to, RadixSort.parallelArgsort(doubles, from, to),
+            (i, j) -> RadixSort.compare(doubles[i], doubles[j]));
+
+        float[] floats = floats(random, n);
+        checkOrder(from, to, RadixSort.argsort(floats, from, to), (i, j) -> RadixSort.compare(floats[i], floats[j]));
+        checkOrder(from, to, RadixSort.parallelArgsort(floats, from, to),
+            (i, j) -> RadixSort.compare(floats[i], floats[j]));
+      }
+    } finally {
+      Maths.parallelThreshold(threshold);
+    }
+  }
+
+  private interface IndexComparator {
+    int compare(int i, int j);
+  }
+
+  /**
+   * order 是 [from, to) 的一个排列, 按值排序, 值相等时下标递增
+   */
+  private static void checkOrder(int from, int to, int[] order, IndexComparator values) {
+    assertEquals(to - from, order.length);
+    boolean[] seen = new boolean[to - from];
+    for (int i = 0; i < order.length; i++) {
+      assertTrue(order[i] >= from && order[i] < to && !seen[order[i] - from]);
+      seen[order[i] - from] = true;
+      if (i > 0) {
+        int c = values.compare(order[i - 1], order[i]);
+        assertTrue(c < 0 || c == 0 && order[i - 1] < order[i]);
+      }
+    }
+  }
+
+  /**
+   * 线性查找第一个不小于 key 的位置, 与 {@link RadixSort#binarySearch(long[], long)} 的返回值约定相同
+   */
+  private static int linearSearch(int from, int to, IntUnaryOperator compareToKey) {
+    int i = from;
+    while (i < to && compareToKey.applyAsInt(i) < 0)
+      i++;
+    return i < to && compareToKey.applyAsInt(i) == 0 ? i : -i - 1;
+  }
+
+  @Test
+  public void binaryAndInterpolationSearchAgree() {
+    Random random = new Random(3);
+    for (int n : SIZES) {
+      // uniform, many duplicates, heavily skewed (interpolation falls back to binary search) and special doubles
+      for (int round = 0; round < 4; round++) {
+        long[] longs = new long[n];
+        int[] ints = new int[n];
+        double[] doubles = new double[n];
+        for (int i = 0; i < n; i++) {
+          longs[i] = round == 0 ? random.nextLong() >> 8
+            : round == 1 ? random.nextInt(100)
+            : (long) Math.exp(random.nextDouble() * 40);
+          ints[i] = (int) longs[i];
+          doubles[i] = round == 3 ? DOUBLE_ORDER[random.nextInt(DOUBLE_ORDER.length)] : longs[i] / 7.0;
+        }
+        long[] unsortedLongs = longs.clone();
+        int[] unsortedInts = ints.clone();
+        double[] unsortedDoubles = doubles.clone();
+        int[] longOrder = RadixSort.argsort(longs);
+        int[] intOrder = RadixSort.argsort(ints);
+        int[] doubleOrder = RadixSort.argsort(doubles);
+        RadixSort.sort(longs);
+        RadixSort.sort(ints);
+        RadixSort.sort(doubles);
+        int from = n < 2 ? 0 : random.nextInt(n / 2), to = n - from / 2;
+        for (int probe = 0; probe < 200; probe++) {
+          boolean present = n > 0 && random.nextBoolean();
+          int at = present ? random.nextInt(n) : 0;
+
+          long longKey = present ? longs[at] : random.nextLong() >> random.nextInt(64);
+          int expected = linearSearch(from, to, i -> Long.compare(longs[i], longKey));
+          assertEquals(expected, RadixSort.binarySearch(longs, from, to, longKey));
+          assertEquals(expected, RadixSort.interpolationSearch(longs, from, to, longKey));
+          assertEquals(RadixSort.binarySearch(longs, longKey), RadixSort.binarySearch(unsortedLongs, longOrder, longKey));
+
+          int intKey = present ? ints[at] : (int) longKey;
+          expected = linearSearch(from, to, i -> Integer.compare(ints[i], intKey));
+          assertEquals(expected, RadixSort.binarySearch(ints, from, to, intKey));
+          assertEquals(expected, RadixSort.interpolationSearch(ints, from, to, intKey));
+          assertEquals(RadixSort.binarySearch(ints, intKey), RadixSort.binarySearch(unsortedInts, intOrder, intKey));
+
+          double doubleKey = present ? doubles[at]
+            : random.nextBoolean() ? DOUBLE_ORDER[random.nextInt(DOUBLE_ORDER.length)] : longKey / 7.0;
+          expected = linearSearch(from, to, i -> RadixSort.compare(doubles[i], doubleKey));
+          assertEquals(expected, RadixSort.binarySearch(doubles, from, to, doubleKey));
+          assertEquals(expected, RadixSort.interpolationSearch(doubles, from, to, doubleKey));
+          assertEquals(RadixSort.binarySearch(doubles, doubleKey),
+              RadixSort.binarySearch(unsortedDoubles, doubleOrder, doubleKey));
+        }
+      }
+    }
+  }
+}
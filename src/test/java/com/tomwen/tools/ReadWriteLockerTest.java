@@ -0,0 +1,82 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadWriteLockerTest {
+
+  private static Throwable closeInOtherThread(Locker.Lock lock) throws InterruptedException {
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread t = new Thread(() -> {
+      try {
+        lock.close();
+      } catch (Throwable e) {
+        thrown.set(e);
+      }
+    });
+    t.start();
+    t.join();
+    return thrown.get();
+  }
+
+  @Test
+  public void writeUnlockByOtherThreadIsRejected() throws Exception {
+    ReadWriteLocker locker = new ReadWriteLocker();
+    try (Locker.Lock lock = locker.writeLock()) {
+      assertTrue(closeInOtherThread(lock) instanceof IllegalMonitorStateException);
+      assertTrue(locker.isWriteLocked());
+    }
+    // released by the owner, can be acquired again
+    locker.writeLock().close();
+  }
+
+  @Test
+  public void readUnlockByOtherThreadIsRejected() throws Exception {
+    ReadWriteLocker locker = new ReadWriteLocker();
+    try (Locker.Lock lock = locker.readLock()) {
+      assertTrue(closeInOtherThread(lock) instanceof IllegalMonitorStateException);
+    }
+    locker.writeLock().close();
+  }
+
+  @Test
+  public void doubleCloseIsRejected() {
+    ReadWriteLocker locker = new ReadWriteLocker();
+    Locker.Lock write = locker.writeLock();
+    write.close();
+    try {
+      write.close();
+      fail();
+    } catch (IllegalMonitorStateException expected) {
+    }
+    Locker.Lock read = locker.readLock();
+    read.close();
+    try {
+      read.close();
+      fail();
+    } catch (IllegalMonitorStateException expected) {
+    }
+  }
+
+  @Test
+  public void upgradeIsRejectedInsteadOfDeadlocking() {
+    ReadWriteLocker locker = new ReadWriteLocker();
+    try (Locker.Lock ignored = locker.readLock()) {
+      try {
+        locker.writeLock();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+      try {
+        locker.writeLockIfNotHeld();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    }
+    locker.writeLock().close();
+  }
+}
@@ -0,0 +1,85 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class RingQueueTest {
+
+  private static List<RingQueue<Integer>> queues() {
+    return Arrays.asList(new SpscRingQueue<>(8), new MpscRingQueue<>(8), new MpmcRingQueue<>(8));
+  }
+
+  /**
+   * 产生 1, 2, 然后返回 null 或者抛出异常
+   */
+  private static Supplier<Integer> failingAfterTwo(boolean returnNull) {
+    int[] calls = {0};
+    return () -> {
+      if (++calls[0] <= 2)
+        return calls[0];
+      if (returnNull)
+        return null;
+      throw new IllegalStateException("supplier failed");
+    };
+  }
+
+  private static void assertNotStuck(RingQueue<Integer> queue) {
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertEquals(Integer.valueOf(2), queue.poll());
+    assertNull(queue.poll());
+    queue.offer(3);
+    queue.offer(4);
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(2, queue.drain(drained::add, 8));
+    assertEquals(Arrays.asList(3, 4), drained);
+    assertNull(queue.poll());
+  }
+
+  @Test
+  public void fillWithThrowingSupplier() {
+    for (RingQueue<Integer> queue : queues()) {
+      try {
+        queue.fill(failingAfterTwo(false), 5);
+        fail(queue.toString());
+      } catch (IllegalStateException expected) {
+      }
+      assertNotStuck(queue);
+    }
+  }
+
+  @Test
+  public void fillWithNullFromSupplier() {
+    for (RingQueue<Integer> queue : queues()) {
+      try {
+        queue.fill(failingAfterTwo(true), 5);
+        fail(queue.toString());
+      } catch (NullPointerException expected) {
+      }
+      assertNotStuck(queue);
+    }
+  }
+
+  @Test
+  public void skippedSlotsAreReused() {
+    for (RingQueue<Integer> queue : queues()) {
+      // several laps around the ring, each leaving released slots behind
+      for (int lap = 0; lap < 10; lap++) {
+        try {
+          queue.fill(failingAfterTwo(false), 8);
+          fail(queue.toString());
+        } catch (IllegalStateException expected) {
+        }
+        assertNotStuck(queue);
+      }
+      assertEquals(8, queue.fill(() -> 0, 8));
+    }
+  }
+}
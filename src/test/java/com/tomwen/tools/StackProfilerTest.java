@@ -0,0 +1,31 @@
+package com.tomwen.tools;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StackProfilerTest {
+
+  @Test
+  public void framesAreBoundedByMaxNodes() {
+    StackProfiler profiler = new StackProfiler(128, 8, 1).includeInternalThreads(true);
+    for (int i = 0; i < 10; i++)
+      profiler.sample();
+    assertTrue(profiler.nodes() <= 8);
+    assertTrue(profiler.frames() <= 8);
+    assertTrue(profiler.truncated() > 0);
+  }
+
+  @Test
+  public void resetForgetsFrames() {
+    StackProfiler profiler = new StackProfiler().includeInternalThreads(true);
+    profiler.sample();
+    assertTrue(profiler.frames() > 0);
+    profiler.reset();
+    assertEquals(0, profiler.frames());
+    assertEquals("", profiler.folded());
+    profiler.sample();
+    assertTrue(profiler.folded().length() > 0);
+  }
+}